@@ -0,0 +1,73 @@
+package org.example.voicebot;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Synthetic embedding-like data for the benchmarks: points scattered around {@code size / 100} Gaussian centroids,
+ * each generated from its id, plus queries perturbed from random points. Built indexes are cached in
+ * {@code target/} because building a million-vector graph takes minutes.
+ */
+final class BenchVectors {
+
+    private static final long SEED = 42;
+
+    private final int dimension;
+    private final float[][] centroids;
+
+    BenchVectors(int size, int dimension) {
+        this.dimension = dimension;
+        SplittableRandom random = new SplittableRandom(SEED);
+        centroids = new float[Math.max(10, size / 100)][dimension];
+        for (float[] c : centroids) {
+            for (int i = 0; i < dimension; i++) c[i] = (float) gaussian(random);
+        }
+    }
+
+    float[] vector(int id) {
+        SplittableRandom random = new SplittableRandom(SEED * 31 + id);
+        float[] centroid = centroids[random.nextInt(centroids.length)];
+        float[] v = new float[dimension];
+        for (int i = 0; i < dimension; i++) v[i] = centroid[i] + 0.6f * (float) gaussian(random);
+        return v;
+    }
+
+    float[][] queries(int count, int size) {
+        SplittableRandom random = new SplittableRandom(SEED + 1);
+        float[][] queries = new float[count][];
+        for (int q = 0; q < count; q++) {
+            float[] v = vector(random.nextInt(size));
+            for (int i = 0; i < dimension; i++) v[i] += 0.3f * (float) gaussian(random);
+            queries[q] = v;
+        }
+        return queries;
+    }
+
+    /** Loads the cached index for this size and dimension, building and saving it first if needed. */
+    HnswIndex index(int size) throws IOException {
+        Path file = Path.of("target", "hnsw-bench-" + size + "-" + dimension + ".hnsw");
+        if (Files.isRegularFile(file)) return HnswIndex.load(file);
+        HnswIndex index = new HnswIndex(dimension, 16, 100, size);
+        int batch = 16_384;
+        long start = System.nanoTime();
+        for (int first = 0; first < size; first += batch) {
+            List<float[]> vectors = new ArrayList<>(batch);
+            for (int id = first; id < Math.min(size, first + batch); id++) vectors.add(vector(id));
+            index.addAll(vectors, Runtime.getRuntime().availableProcessors());
+        }
+        System.err.printf("Built %d x %d index in %.1f s (%s)%n", size, dimension,
+            (System.nanoTime() - start) / 1e9, index.getKernelName());
+        Files.createDirectories(file.getParent());
+        index.save(file);
+        return index;
+    }
+
+    private static double gaussian(SplittableRandom random) {
+        double u = 1 - random.nextDouble();
+        return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * random.nextDouble());
+    }
+}
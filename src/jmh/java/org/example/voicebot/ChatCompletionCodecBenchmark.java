@@ -0,0 +1,104 @@
+package org.example.voicebot;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding one chat request (knowledge prompt, four history messages, the query) and decoding one response:
+ * {@link ChatCompletionCodec} against the Gson trees it replaced. Allocation is what it is about, so run it with
+ * the GC profiler and compare {@code gc.alloc.rate.norm} (bytes per operation):
+ * {@code mvn -Pbench compile exec:exec -Djmh.args="ChatCompletionCodecBenchmark -prof gc"}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ChatCompletionCodecBenchmark {
+
+    private static final String MODEL = "gpt-4o-mini";
+
+    private final Gson gson = new Gson();
+    private List<OpenAIService.ChatMessage> messages;
+    private byte[] response;
+
+    @Setup
+    public void setUp() {
+        KnowledgeBase knowledge = KnowledgeBase.loadFromClasspath("knowledge.json");
+        messages = new ArrayList<>();
+        messages.add(new OpenAIService.ChatMessage("system",
+            VoiceBotPromptBuilder.buildStaticPromptForContext(knowledge, null, null)));
+        messages.add(new OpenAIService.ChatMessage("user", "I can't log in to the app."));
+        messages.add(new OpenAIService.ChatMessage("assistant", "Sorry to hear that. Do you see an error message?"));
+        messages.add(new OpenAIService.ChatMessage("user", "It says my account is locked."));
+        messages.add(new OpenAIService.ChatMessage("assistant", "I can help. Was it locked after several wrong PINs?"));
+        messages.add(new OpenAIService.ChatMessage("user", "Yes, how do I unlock it?"));
+        String reply = "You can unlock it in the app: tap Forgot PIN on the login screen, confirm with your ID, "
+            + "and choose a new PIN. If that doesn't work, call support and we'll unlock it for you right away.";
+        response = ("{\"id\":\"chatcmpl-1\",\"object\":\"chat.completion\",\"created\":1700000000,\"model\":\""
+            + MODEL + "\",\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"" + reply
+            + "\",\"refusal\":null},\"logprobs\":null,\"finish_reason\":\"stop\"}],\"usage\":{\"prompt_tokens\":6230,"
+            + "\"completion_tokens\":48,\"total_tokens\":6278,\"prompt_tokens_details\":{\"cached_tokens\":6144}},"
+            + "\"system_fingerprint\":\"fp_1\"}").getBytes(StandardCharsets.UTF_8);
+        System.err.println("\nrequest: " + requestGsonTree().length + " bytes, response: " + response.length + " bytes");
+    }
+
+    @Benchmark
+    public int requestCodec() {
+        Utf8ByteBuffer body = ChatCompletionCodec.writeRequest(MODEL, messages, 0.3, 256, false);
+        int size = body.size();
+        body.release();
+        return size;
+    }
+
+    @Benchmark
+    public byte[] requestGsonTree() {
+        JsonArray array = new JsonArray();
+        for (OpenAIService.ChatMessage m : messages) {
+            JsonObject o = new JsonObject();
+            o.addProperty("role", m.getRole());
+            o.addProperty("content", m.getContent());
+            array.add(o);
+        }
+        JsonObject body = new JsonObject();
+        body.addProperty("model", MODEL);
+        body.add("messages", array);
+        body.addProperty("temperature", 0.3);
+        body.addProperty("max_tokens", 256);
+        return body.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public ChatCompletion responseCodec() throws IOException {
+        return ChatCompletionCodec.readResponse(new ByteArrayInputStream(response));
+    }
+
+    @Benchmark
+    public ChatCompletion responseGsonTree() {
+        JsonObject root = gson.fromJson(new String(response, StandardCharsets.UTF_8), JsonObject.class);
+        JsonObject message = root.getAsJsonArray("choices").get(0).getAsJsonObject().getAsJsonObject("message");
+        JsonObject usage = root.getAsJsonObject("usage");
+        return new ChatCompletion(message.get("content").getAsString(), usage.get("prompt_tokens").getAsLong(),
+            usage.getAsJsonObject("prompt_tokens_details").get("cached_tokens").getAsLong(),
+            usage.get("completion_tokens").getAsLong());
+    }
+}
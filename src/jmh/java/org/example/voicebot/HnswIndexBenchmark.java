@@ -0,0 +1,75 @@
+package org.example.voicebot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Top-10 query latency of {@link HnswIndex} at 1M vectors for several candidate list sizes, against an exact scan.
+ * Setup prints recall@10 of each ef (over 100 queries) next to the timings.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules=jdk.incubator.vector", "-Xmx2g", "-XX:MaxDirectMemorySize=1g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class HnswIndexBenchmark {
+
+    private static final int QUERIES = 1024;
+    private static final int K = 10;
+
+    @Param("1000000")
+    int size;
+
+    @Param("128")
+    int dimension;
+
+    @Param({"16", "64", "128"})
+    int ef;
+
+    private HnswIndex index;
+    private float[][] queries;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        BenchVectors data = new BenchVectors(size, dimension);
+        index = data.index(size);
+        queries = data.queries(QUERIES, size);
+        int hits = 0;
+        for (int q = 0; q < 100; q++) {
+            Set<Integer> exact = new HashSet<>();
+            for (HnswIndex.Neighbor n : index.scan(queries[q], K)) exact.add(n.getId());
+            for (HnswIndex.Neighbor n : index.search(queries[q], K, ef)) if (exact.contains(n.getId())) hits++;
+        }
+        System.err.printf("%nkernel %s, ef %d: recall@%d %.3f%n", index.getKernelName(), ef, K, hits / (100.0 * K));
+    }
+
+    @Benchmark
+    public List<HnswIndex.Neighbor> search() {
+        return index.search(queries[next++ & (QUERIES - 1)], K, ef);
+    }
+
+    /** Brute-force baseline (same storage and kernel, every vector scored). */
+    @Benchmark
+    @Warmup(iterations = 1, time = 2)
+    @Measurement(iterations = 3, time = 2)
+    public List<HnswIndex.Neighbor> exactScan() {
+        return index.scan(queries[next++ & (QUERIES - 1)], K);
+    }
+}
@@ -0,0 +1,58 @@
+package org.example.voicebot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One dot product: the selected kernel (Vector API when the module is present) against the scalar fallback.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class VectorKernelBenchmark {
+
+    @Param({"128", "256", "768"})
+    int dimension;
+
+    private final VectorKernel selected = VectorKernel.get();
+    private final VectorKernel scalar = new VectorKernel.Scalar();
+    private float[] a;
+    private float[] b;
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(1);
+        a = new float[dimension];
+        b = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            a[i] = (float) random.nextDouble(-1, 1);
+            b[i] = (float) random.nextDouble(-1, 1);
+        }
+        System.err.println("\nselected kernel: " + selected.name());
+    }
+
+    @Benchmark
+    public float selected() {
+        return selected.dot(a, 0, b, 0, dimension);
+    }
+
+    @Benchmark
+    public float scalar() {
+        return scalar.dot(a, 0, b, 0, dimension);
+    }
+}
@@ -1,11 +1,30 @@
 package org.example;
 
+import org.example.voicebot.BatchRunner;
+import org.example.voicebot.CapturedTurn;
 import org.example.voicebot.ContextCatalog;
+import org.example.voicebot.ConversationSessions;
 import org.example.voicebot.CustomerContextStore;
+import org.example.voicebot.EventLog;
 import org.example.voicebot.KnowledgeBase;
+import org.example.voicebot.LocalOpenAIStub;
 import org.example.voicebot.OpenAIService;
 import org.example.voicebot.OpenAIService.ChatMessage;
+import org.example.voicebot.Priority;
+import org.example.voicebot.RecordedChatBackend;
+import org.example.voicebot.ReplayReport;
+import org.example.voicebot.ReplayRunner;
+import org.example.voicebot.RequestBudget;
+import org.example.voicebot.RoutingTrace;
+import org.example.voicebot.TenantRegistry;
+import org.example.voicebot.TrafficCapture;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
@@ -17,6 +36,17 @@ import java.nio.file.Path;
  * Customer support bot: text in → text out using OpenAI and configurable JSON knowledge base.
  * Uses a context catalog (context_schemas.json) so the model can choose which customer context
  * (e.g. balance_and_usage, loans) to use for each question.
+ * <p>
+ * Batch mode: {@code --batch <file.jsonl | ->} [{@code --parallelism N}] [{@code --rps R}] reads one
+ * {"id", "query", "sessionId"} object per line and prints JSONL results to stdout in completion order.
+ * <p>
+ * Replay: {@code --replay <capture.bin>} [{@code --speed S}] [{@code --parallelism N}]
+ * [{@code --upstream recorded|mock|openai}] [{@code --out <replay.bin>}] [{@code --tenants <dir>}] runs a traffic
+ * capture through the current pipeline and prints a report against the capture; {@code --replay-diff <a.bin>
+ * --against <b.bin>} compares two saved runs.
+ * <p>
+ * Interactive mode with {@code --events <dir>} writes each turn (routing, timings, transcript) and each error to an
+ * {@link EventLog} in that directory instead of printing routing decisions to the console.
  */
 public class Main {
 
@@ -39,10 +69,47 @@ public class Main {
 
         OpenAIService openAI = new OpenAIService(apiKey);
 
+        String replaySource = argValue(args, "--replay");
+        if (replaySource != null) {
+            runReplay(replaySource, args, apiKey, knowledge, contextCatalog, customerData);
+            return;
+        }
+        String diffSource = argValue(args, "--replay-diff");
+        if (diffSource != null) {
+            try {
+                String against = argValue(args, "--against");
+                System.out.println(ReplayReport.compare(diffSource, TrafficCapture.read(Path.of(diffSource)),
+                    against, TrafficCapture.read(Path.of(against))));
+            } catch (IOException e) {
+                System.err.println("Error: " + e.getMessage());
+            }
+            return;
+        }
+
+        String batchSource = argValue(args, "--batch");
+        if (batchSource != null) {
+            int parallelism = Integer.parseInt(argValue(args, "--parallelism", "8"));
+            double rps = Double.parseDouble(argValue(args, "--rps", "10"));
+            runBatch(batchSource, parallelism, rps, openAI, knowledge, contextCatalog, customerData);
+            return;
+        }
+
         // Keep conversation history so follow-ups like "What is the amount?" are understood in context (e.g. loan amount).
         List<ChatMessage> conversationHistory = new ArrayList<>();
         final int maxHistoryMessages = 10; // Last 5 exchanges to avoid token overflow
 
+        EventLog events = null;
+        String eventsDir = argValue(args, "--events");
+        if (eventsDir != null) {
+            try {
+                events = EventLog.open(Path.of(eventsDir), 1024, EventLog.OverflowPolicy.BLOCK, 64L * 1024 * 1024, 10);
+            } catch (IOException e) {
+                System.err.println("Error: cannot open event log " + eventsDir + ": " + e.getMessage());
+                return;
+            }
+        }
+        openAI.setLogRouting(events == null);
+
         System.out.println("Support bot ready. Type customer query (or 'quit' to exit).");
         System.out.println();
 
@@ -54,8 +121,16 @@ public class Main {
                 if (query.isEmpty()) continue;
                 if ("quit".equalsIgnoreCase(query)) break;
 
+                RoutingTrace trace = events != null ? new RoutingTrace() : null;
+                RequestBudget budget = RequestBudget.unlimited().withTrace(trace);
+                long start = System.nanoTime();
                 try {
-                    String reply = openAI.answerWithCategoryRouting(query, knowledge, contextCatalog, customerData, conversationHistory);
+                    String reply = openAI.answerWithCategoryRouting(query, knowledge, contextCatalog, customerData,
+                        conversationHistory, Priority.INTERACTIVE, budget);
+                    if (events != null) {
+                        events.publish(null, null, Priority.INTERACTIVE, query, reply, budget.getDegradations(), trace,
+                            System.nanoTime() - start, null);
+                    }
                     System.out.println("Bot: " + reply);
                     // Append this exchange to history for next turn
                     conversationHistory.add(new ChatMessage("user", query));
@@ -64,15 +139,98 @@ public class Main {
                         conversationHistory.remove(0);
                         conversationHistory.remove(0);
                     }
-                } catch (Exception e) {
+                } catch (RuntimeException e) {
+                    if (events != null) {
+                        events.publish(null, null, Priority.INTERACTIVE, query, null, budget.getDegradations(), trace,
+                            System.nanoTime() - start, e);
+                    }
                     System.err.println("Error: " + e.getMessage());
                 }
                 System.out.println();
             }
         }
+        if (events != null) events.close();
         System.out.println("Goodbye.");
     }
 
+    private static void runBatch(String source, int parallelism, double rps, OpenAIService openAI, KnowledgeBase knowledge,
+                                 ContextCatalog contextCatalog, CustomerContextStore customerData) {
+        ConversationSessions sessions = new ConversationSessions(10);
+        BatchRunner runner = new BatchRunner(parallelism, rps);
+        long start = System.nanoTime();
+        try (BufferedReader in = "-".equals(source)
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Path.of(source), StandardCharsets.UTF_8);
+             Writer out = new OutputStreamWriter(System.out, StandardCharsets.UTF_8)) {
+            long items = runner.run(in, out, item -> {
+                String sessionId = item.getSessionId() != null && !item.getSessionId().isBlank() ? item.getSessionId() : null;
+                String query = item.getQuery().trim();
+                String reply = openAI.answerWithCategoryRouting(query, knowledge, contextCatalog, customerData, sessions.snapshot(sessionId));
+                sessions.append(sessionId, query, reply);
+                return reply;
+            });
+            System.err.printf("Batch done: %d items in %d ms%n", items, (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Replays a capture against a recorded (default), mock (local stub) or real upstream and prints the diff report.
+     * Turns of other tenants use the tenant directories under {@code --tenants}.
+     */
+    private static void runReplay(String source, String[] args, String apiKey, KnowledgeBase knowledge,
+                                  ContextCatalog contextCatalog, CustomerContextStore customerData) {
+        double speed = Double.parseDouble(argValue(args, "--speed", "0"));
+        int parallelism = Integer.parseInt(argValue(args, "--parallelism", "8"));
+        String upstream = argValue(args, "--upstream", "recorded");
+        String outFile = argValue(args, "--out");
+        String tenantsDir = argValue(args, "--tenants");
+        TenantRegistry tenants = new TenantRegistry(tenantsDir != null ? Path.of(tenantsDir) : null, knowledge,
+            contextCatalog, Long.MAX_VALUE, id -> 0);
+        LocalOpenAIStub stub = null;
+        try {
+            List<CapturedTurn> capture = TrafficCapture.read(Path.of(source));
+            OpenAIService service;
+            if ("mock".equals(upstream)) {
+                stub = LocalOpenAIStub.start();
+                service = new OpenAIService(apiKey, null, stub.chatUri());
+            } else if ("openai".equals(upstream)) {
+                service = new OpenAIService(apiKey);
+            } else {
+                service = new OpenAIService(new RecordedChatBackend(capture, true, speed), null);
+            }
+            service.setLogRouting(false);
+            long start = System.nanoTime();
+            List<CapturedTurn> results = new ReplayRunner(service, tenants, customerData, speed, parallelism)
+                .run(capture);
+            System.err.printf("Replayed %d turns in %d ms%n", results.size(), (System.nanoTime() - start) / 1_000_000);
+            if (outFile != null) {
+                try (TrafficCapture out = TrafficCapture.open(Path.of(outFile), 1.0)) {
+                    for (CapturedTurn turn : results) out.write(turn);
+                }
+            }
+            System.out.println(ReplayReport.compare(source, capture, "replay (" + upstream + ")", results));
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (stub != null) stub.close();
+        }
+    }
+
+    private static String argValue(String[] args, String name) {
+        return argValue(args, name, null);
+    }
+
+    private static String argValue(String[] args, String name, String defaultValue) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (name.equals(args[i])) return args[i + 1];
+        }
+        return defaultValue;
+    }
+
     private static KnowledgeBase loadKnowledge() {
         String path = KNOWLEDGE_PATH_ENV;
         if (path != null && !path.isBlank()) {
@@ -0,0 +1,42 @@
+package org.example;
+
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+
+/**
+ * Reflection and resource hints for AOT-processed builds: Gson instantiates and fills these types reflectively
+ * when loading knowledge.json and context_schemas.json, for knowledge admin edits and when relaying requests between
+ * cluster nodes, and the JSON files are read from the classpath.
+ */
+public class VoiceBotRuntimeHints implements RuntimeHintsRegistrar {
+
+    private static final String[] GSON_TYPES = {
+        "org.example.voicebot.KnowledgeEntry",
+        "org.example.voicebot.ContextSchema",
+        "org.example.voicebot.ContextSchema$SchemaField",
+        "org.example.voicebot.ContextCatalog$Wrapper",
+        "org.example.voicebot.BatchItem",
+        "org.example.voicebot.BatchResult",
+        "org.example.api.QueryRequest",
+        "org.example.api.QueryResponse",
+        "org.example.api.ConversationHistoryResponse",
+        "org.example.api.ConversationHistoryResponse$HistoryMessage",
+        "org.example.api.SessionHandoff",
+        "org.example.api.SessionHandoff$Session",
+        "org.example.api.SessionHandoff$Message",
+        "org.example.api.KnowledgeEdit",
+        "org.example.api.ContextEdit",
+    };
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        for (String type : GSON_TYPES) {
+            hints.reflection().registerType(TypeReference.of(type),
+                MemberCategory.INVOKE_DECLARED_CONSTRUCTORS, MemberCategory.DECLARED_FIELDS);
+        }
+        hints.resources().registerPattern("knowledge.json");
+        hints.resources().registerPattern("context_schemas.json");
+    }
+}
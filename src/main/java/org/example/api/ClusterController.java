@@ -0,0 +1,45 @@
+package org.example.api;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * Cluster endpoints: membership and counters, and the node-to-node session handoff.
+ */
+@RestController
+@RequestMapping("/api/cluster")
+public class ClusterController {
+
+    private final ClusterService cluster;
+
+    public ClusterController(ClusterService cluster) {
+        this.cluster = cluster;
+    }
+
+    /**
+     * This node's id, the ring members, forwarded requests and handed-off sessions.
+     */
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Object>> status() {
+        return ResponseEntity.ok(cluster.toMap());
+    }
+
+    /**
+     * Sessions pushed by a peer that no longer owns them after a membership change.
+     */
+    @PostMapping(value = "/sessions", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Void> receiveSessions(@RequestBody SessionHandoff handoff,
+                                                @RequestHeader(value = ClusterService.SECRET_HEADER, required = false) String secret) {
+        if (!cluster.isEnabled()) return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        return cluster.accept(handoff, secret) ? ResponseEntity.ok().build() : ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+    }
+}
@@ -0,0 +1,320 @@
+package org.example.api;
+
+import com.google.gson.Gson;
+import org.example.voicebot.ClusterMembership;
+import org.example.voicebot.ClusterNode;
+import org.example.voicebot.HashRing;
+import org.example.voicebot.ConversationSessions;
+import org.example.voicebot.OpenAIService.ChatMessage;
+import org.example.voicebot.RequestBudget;
+import org.example.voicebot.TenantRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cluster mode (voicebot.cluster.*): sessions are assigned to nodes by consistent hashing of their tenant-scoped
+ * key, so follow-up turns find their history without a shared store. A request for a session owned elsewhere is
+ * forwarded to the owner once (marked with {@link #FORWARDED_HEADER}, which the owner answers locally whatever its
+ * view of the ring); if the owner can't be reached the request is answered here. A registry node joins the ring once
+ * the application is ready to serve. When membership changes, sessions this node no longer owns are pushed to their
+ * new owners on a handoff thread, retrying a few times if an owner isn't reachable yet; turns answered here while a
+ * session was being handed off follow it, and one more pass after the query deadline picks up turns of requests
+ * that were still running. Handoffs are authenticated with voicebot.cluster.secret, which cluster mode requires.
+ * Disabled unless voicebot.cluster.node-id is set.
+ */
+@Service
+public class ClusterService {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterService.class);
+
+    static final String FORWARDED_HEADER = "X-VoiceBot-Forwarded";
+    static final String SECRET_HEADER = "X-VoiceBot-Cluster-Secret";
+    /** Milliseconds left of the forwarding node's request budget; the owner answers within them. */
+    static final String BUDGET_HEADER = "X-VoiceBot-Budget-Ms";
+    private static final int HANDOFF_BATCH = 500;
+    private static final int HANDOFF_ATTEMPTS = 10;
+    private static final Gson GSON = new Gson();
+
+    private final VoiceBotQueryService queryService;
+    private final Environment environment;
+    private final AtomicLong forwarded = new AtomicLong();
+    private final AtomicLong forwardFailures = new AtomicLong();
+    private final AtomicLong handedOff = new AtomicLong();
+    private final AtomicLong handoffFailures = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+
+    private ClusterMembership membership;
+    private HttpClient httpClient;
+    private Duration forwardTimeout;
+    private Duration stragglerDelay;
+    private byte[] secret;
+    private ScheduledThreadPoolExecutor handoffExecutor;
+
+    public ClusterService(VoiceBotQueryService queryService, Environment environment) {
+        this.queryService = queryService;
+        this.environment = environment;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        String nodeId = environment.getProperty("voicebot.cluster.node-id");
+        if (nodeId == null || nodeId.isBlank()) return;
+        String configuredSecret = environment.getProperty("voicebot.cluster.secret", "");
+        if (configuredSecret.isBlank()) {
+            throw new IllegalStateException("voicebot.cluster.node-id needs voicebot.cluster.secret (shared by all nodes)");
+        }
+        secret = configuredSecret.getBytes(StandardCharsets.UTF_8);
+        ClusterNode self = new ClusterNode(nodeId, URI.create(environment.getProperty("voicebot.cluster.self-url",
+            "http://localhost:" + environment.getProperty("server.port", "8080"))));
+        int virtualNodes = environment.getProperty("voicebot.cluster.virtual-nodes", Integer.class, 128);
+        List<ClusterNode> nodes = new ArrayList<>();
+        for (int i = 0; environment.containsProperty("voicebot.cluster.nodes[" + i + "].url"); i++) {
+            String prefix = "voicebot.cluster.nodes[" + i + "].";
+            nodes.add(new ClusterNode(environment.getProperty(prefix + "id", "node-" + i),
+                URI.create(environment.getProperty(prefix + "url"))));
+        }
+        String registryDir = environment.getProperty("voicebot.cluster.registry-dir");
+        if (!nodes.isEmpty()) {
+            membership = ClusterMembership.fixed(self, nodes, virtualNodes);
+        } else if (registryDir != null && !registryDir.isBlank()) {
+            membership = ClusterMembership.registry(self, Path.of(registryDir),
+                Duration.ofMillis(environment.getProperty("voicebot.cluster.heartbeat-ms", Long.class, 1_000L)),
+                virtualNodes);
+        } else {
+            throw new IllegalStateException("voicebot.cluster.node-id needs voicebot.cluster.nodes[i] or voicebot.cluster.registry-dir");
+        }
+        forwardTimeout = Duration.ofMillis(environment.getProperty("voicebot.cluster.forward-timeout-ms", Long.class, 15_000L));
+        stragglerDelay = Duration.ofMillis(environment.getProperty("voicebot.deadline.query-ms", Long.class, 8_000L));
+        handoffExecutor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "cluster-handoff");
+            t.setDaemon(true);
+            return t;
+        });
+        // On shutdown only the final handoff runs, not pending retries.
+        handoffExecutor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(2)).build();
+        // History replayed from the durable log may belong to sessions that moved while this node was down.
+        List<ClusterNode> members = new ArrayList<>(membership.getRing().getNodes());
+        if (!members.contains(self)) members.add(self);
+        HashRing joined = new HashRing(members, virtualNodes);
+        for (String key : queryService.getSessionKeys()) {
+            if (!self.equals(joined.owner(key))) queryService.removeSession(key);
+        }
+        // Handoffs block on peers, so they never run on the membership (heartbeat) thread.
+        membership.setListener((previous, current) -> {
+            handoffExecutor.execute(() -> handOff(current, 1));
+            handoffExecutor.schedule(() -> handOff(current, 1), stragglerDelay.toMillis(), TimeUnit.MILLISECONDS);
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() throws IOException {
+        if (membership != null) membership.join();
+    }
+
+    /** Leaves the cluster, handing this node's sessions to the remaining members first. */
+    @PreDestroy
+    public void close() throws InterruptedException {
+        if (membership == null) return;
+        membership.close();
+        handoffExecutor.shutdown();
+        handoffExecutor.awaitTermination(forwardTimeout.toMillis() * 2, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isEnabled() {
+        return membership != null;
+    }
+
+    /**
+     * Node a request for this session should go to, or null to answer here: cluster mode off, this node owns the
+     * session, or the request was already forwarded by a peer.
+     */
+    public ClusterNode remoteOwner(String tenantId, String sessionId, String forwardedBy) {
+        if (membership == null || forwardedBy != null) return null;
+        String tenant = tenantId == null || tenantId.isBlank() ? TenantRegistry.DEFAULT_TENANT : tenantId;
+        ClusterNode owner = membership.owner(VoiceBotQueryService.sessionKey(tenant,
+            sessionId != null && !sessionId.isBlank() ? sessionId : VoiceBotQueryService.DEFAULT_SESSION));
+        return owner.equals(membership.getSelf()) ? null : owner;
+    }
+
+    /**
+     * Sends the request to {@code owner} (path with query string) and returns its response with the body unread,
+     * or null if the owner couldn't be reached, in which case the caller answers locally. With a {@code budget} the
+     * owner gets only the time left in it (and is told so in {@link #BUDGET_HEADER}); otherwise the forward timeout
+     * applies.
+     */
+    public HttpResponse<InputStream> forward(ClusterNode owner, String method, String pathAndQuery, String contentType,
+                                             byte[] body, String tenantId, RequestBudget budget) {
+        Duration timeout = budget != null ? budget.timeoutFor(forwardTimeout) : forwardTimeout;
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+            .uri(owner.getUrl().resolve(pathAndQuery))
+            .timeout(timeout)
+            .header(FORWARDED_HEADER, membership.getSelf().getId())
+            .method(method, body != null ? HttpRequest.BodyPublishers.ofByteArray(body) : HttpRequest.BodyPublishers.noBody());
+        if (contentType != null) request.header("Content-Type", contentType);
+        if (budget != null) request.header(BUDGET_HEADER, Long.toString(timeout.toMillis()));
+        if (tenantId != null && !tenantId.isBlank()) request.header(QueryController.TENANT_HEADER, tenantId);
+        try {
+            HttpResponse<InputStream> response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+            forwarded.incrementAndGet();
+            return response;
+        } catch (IOException e) {
+            forwardFailures.incrementAndGet();
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            forwardFailures.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Pushes every session whose owner is no longer this node to its new owner, in batches; a session is dropped
+     * here only after the owner has accepted it. Turns appended to a session between its export and its removal
+     * are sent right after, in a second batch. Failed batches are retried a second later while the ring is
+     * unchanged. Runs on the handoff thread.
+     */
+    private void handOff(HashRing current, int attempt) {
+        if (current != membership.getRing()) return; // A newer ring change has its own handoff.
+        boolean failed = false;
+        ClusterNode self = membership.getSelf();
+        Map<ClusterNode, List<String>> byOwner = new LinkedHashMap<>();
+        for (String key : queryService.getSessionKeys()) {
+            ClusterNode owner = current.owner(key);
+            if (owner == null || owner.equals(self)) continue;
+            byOwner.computeIfAbsent(owner, k -> new ArrayList<>()).add(key);
+        }
+        for (Map.Entry<ClusterNode, List<String>> e : byOwner.entrySet()) {
+            List<String> keys = e.getValue();
+            for (int from = 0; from < keys.size(); from += HANDOFF_BATCH) {
+                if (!handOffBatch(e.getKey(), keys.subList(from, Math.min(keys.size(), from + HANDOFF_BATCH)))) {
+                    failed = true;
+                }
+            }
+        }
+        if (failed && attempt < HANDOFF_ATTEMPTS && !handoffExecutor.isShutdown()) {
+            handoffExecutor.schedule(() -> handOff(current, attempt + 1), 1, TimeUnit.SECONDS);
+        }
+    }
+
+    /** Hands the sessions to {@code owner}; false if some of them stay here for a retry. */
+    private boolean handOffBatch(ClusterNode owner, List<String> keys) {
+        Map<String, ConversationSessions.Export> exports = new LinkedHashMap<>();
+        List<SessionHandoff.Session> batch = new ArrayList<>();
+        for (String key : keys) {
+            ConversationSessions.Export export = queryService.exportSession(key);
+            if (export == null) continue;
+            exports.put(key, export);
+            batch.add(session(key, export.getMessages()));
+        }
+        if (batch.isEmpty()) return true;
+        if (!send(owner, batch)) {
+            handoffFailures.addAndGet(batch.size());
+            return false;
+        }
+        handedOff.addAndGet(batch.size());
+        Map<String, List<ChatMessage>> late = new LinkedHashMap<>();
+        for (Map.Entry<String, ConversationSessions.Export> e : exports.entrySet()) {
+            List<ChatMessage> messages = queryService.removeExportedSession(e.getKey(), e.getValue());
+            if (!messages.isEmpty()) late.put(e.getKey(), messages);
+        }
+        if (late.isEmpty()) return true;
+        List<SessionHandoff.Session> lateBatch = new ArrayList<>();
+        late.forEach((key, messages) -> lateBatch.add(session(key, messages)));
+        if (send(owner, lateBatch)) return true;
+        late.forEach(queryService::restoreSession);
+        handoffFailures.addAndGet(lateBatch.size());
+        return false;
+    }
+
+    private static SessionHandoff.Session session(String key, List<ChatMessage> messages) {
+        SessionHandoff.Session session = new SessionHandoff.Session();
+        session.setKey(key);
+        for (ChatMessage m : messages) {
+            session.getMessages().add(new SessionHandoff.Message(m.getRole(), m.getContent()));
+        }
+        return session;
+    }
+
+    private boolean send(ClusterNode owner, List<SessionHandoff.Session> batch) {
+        SessionHandoff handoff = new SessionHandoff();
+        handoff.setFrom(membership.getSelf().getId());
+        handoff.setSessions(batch);
+        HttpRequest request = HttpRequest.newBuilder()
+            .uri(owner.getUrl().resolve("/api/cluster/sessions"))
+            .timeout(forwardTimeout)
+            .header("Content-Type", "application/json")
+            .header(SECRET_HEADER, new String(secret, StandardCharsets.UTF_8))
+            .POST(HttpRequest.BodyPublishers.ofString(GSON.toJson(handoff), StandardCharsets.UTF_8))
+            .build();
+        try {
+            return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+        } catch (IOException e) {
+            log.warn("Session handoff to {} failed: {}", owner, e.toString());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Accepts sessions handed over by a peer. Returns false if the shared secret doesn't match.
+     */
+    public boolean accept(SessionHandoff handoff, String presentedSecret) {
+        if (membership == null || presentedSecret == null
+            || !MessageDigest.isEqual(secret, presentedSecret.getBytes(StandardCharsets.UTF_8))) {
+            return false;
+        }
+        for (SessionHandoff.Session session : handoff.getSessions()) {
+            List<ChatMessage> messages = new ArrayList<>(session.getMessages().size());
+            for (SessionHandoff.Message m : session.getMessages()) {
+                messages.add(new ChatMessage(m.getRole(), m.getContent()));
+            }
+            queryService.importSession(session.getKey(), messages);
+        }
+        received.addAndGet(handoff.getSessions().size());
+        return true;
+    }
+
+    /**
+     * Membership plus forwarding and handoff counters.
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("enabled", membership != null);
+        if (membership == null) return map;
+        map.putAll(membership.toMap());
+        map.put("forwarded", forwarded.get());
+        map.put("forward_failures", forwardFailures.get());
+        map.put("sessions_handed_off", handedOff.get());
+        map.put("handoff_failures", handoffFailures.get());
+        map.put("sessions_received", received.get());
+        map.put("local_sessions", queryService.getSessionKeys().size());
+        return map;
+    }
+}
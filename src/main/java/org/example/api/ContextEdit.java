@@ -0,0 +1,31 @@
+package org.example.api;
+
+import org.example.voicebot.ContextSchema;
+
+import java.util.List;
+
+/**
+ * Body of POST /api/admin/contexts: context schemas to add or replace (matched by name) and context names to delete,
+ * applied as one new version. Schemas use the context_schemas.json format.
+ */
+public class ContextEdit {
+
+    private List<ContextSchema> upsert;
+    private List<String> delete;
+
+    public List<ContextSchema> getUpsert() {
+        return upsert != null ? upsert : List.of();
+    }
+
+    public void setUpsert(List<ContextSchema> upsert) {
+        this.upsert = upsert;
+    }
+
+    public List<String> getDelete() {
+        return delete != null ? delete : List.of();
+    }
+
+    public void setDelete(List<String> delete) {
+        this.delete = delete;
+    }
+}
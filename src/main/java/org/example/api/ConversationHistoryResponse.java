@@ -3,20 +3,31 @@ package org.example.api;
 import java.util.List;
 
 /**
- * Response for GET /api/load: list of conversation messages (role + content).
+ * Response for GET /api/load: list of conversation messages (role + content). When paging from the durable log,
+ * {@code nextBefore} is the cursor for the next older page (null when there is none).
  */
 public class ConversationHistoryResponse {
 
     private final List<HistoryMessage> history;
+    private final Long nextBefore;
 
     public ConversationHistoryResponse(List<HistoryMessage> history) {
+        this(history, null);
+    }
+
+    public ConversationHistoryResponse(List<HistoryMessage> history, Long nextBefore) {
         this.history = history;
+        this.nextBefore = nextBefore;
     }
 
     public List<HistoryMessage> getHistory() {
         return history;
     }
 
+    public Long getNextBefore() {
+        return nextBefore;
+    }
+
     public static class HistoryMessage {
         private final String role;
         private final String content;
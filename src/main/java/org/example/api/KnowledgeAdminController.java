@@ -0,0 +1,190 @@
+package org.example.api;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import org.example.voicebot.ContextCatalog;
+import org.example.voicebot.ContextSchema;
+import org.example.voicebot.KnowledgeBase;
+import org.example.voicebot.KnowledgeEntry;
+import org.example.voicebot.TenantRegistry;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
+
+/**
+ * Runtime edits of a tenant's knowledge entries and context schemas (tenant from the X-Tenant-Id header). Bodies and
+ * listings use the knowledge.json / context_schemas.json formats. Each edit publishes a new version; requests
+ * already running finish on the version they started with. Off (404) unless voicebot.admin.token is set, and every
+ * call must present it in the X-VoiceBot-Admin-Token header.
+ */
+@RestController
+@RequestMapping("/api/admin")
+public class KnowledgeAdminController {
+
+    static final String TOKEN_HEADER = "X-VoiceBot-Admin-Token";
+
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+
+    private final VoiceBotQueryService queryService;
+
+    public KnowledgeAdminController(VoiceBotQueryService queryService) {
+        this.queryService = queryService;
+    }
+
+    /**
+     * The tenant's knowledge entries (with ids) and version.
+     */
+    @GetMapping(value = "/knowledge", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<String> knowledge(@RequestHeader(value = QueryController.TENANT_HEADER, required = false) String tenantId,
+                                            @RequestHeader(value = TOKEN_HEADER, required = false) String token) {
+        return run(token, () -> {
+            KnowledgeBase knowledge = queryService.getKnowledge(tenantId);
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("version", knowledge.getVersion());
+            body.put("entries", knowledge.getEntries());
+            return body;
+        });
+    }
+
+    /**
+     * Adds/replaces and deletes several entries as one version: {"upsert": [entries], "delete": [ids]}.
+     */
+    @PostMapping(value = "/knowledge", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<String> editKnowledge(@RequestBody String body,
+                                                @RequestHeader(value = QueryController.TENANT_HEADER, required = false) String tenantId,
+                                                @RequestHeader(value = TOKEN_HEADER, required = false) String token) {
+        return run(token, () -> {
+            KnowledgeEdit edit = parse(body, KnowledgeEdit.class);
+            return knowledgeResult(() -> queryService.editKnowledge(tenantId, edit.getUpsert(), edit.getDelete()));
+        });
+    }
+
+    /**
+     * Adds or replaces the entry with this id.
+     */
+    @PutMapping(value = "/knowledge/{id}", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<String> putEntry(@PathVariable("id") String id, @RequestBody String body,
+                                           @RequestHeader(value = QueryController.TENANT_HEADER, required = false) String tenantId,
+                                           @RequestHeader(value = TOKEN_HEADER, required = false) String token) {
+        return run(token, () -> {
+            KnowledgeEntry entry = parse(body, KnowledgeEntry.class);
+            entry.setId(id);
+            return knowledgeResult(() -> queryService.editKnowledge(tenantId, List.of(entry), List.of()));
+        });
+    }
+
+    @DeleteMapping(value = "/knowledge/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<String> deleteEntry(@PathVariable("id") String id,
+                                              @RequestHeader(value = QueryController.TENANT_HEADER, required = false) String tenantId,
+                                              @RequestHeader(value = TOKEN_HEADER, required = false) String token) {
+        return run(token, () -> knowledgeResult(() -> queryService.editKnowledge(tenantId, List.of(), List.of(id))));
+    }
+
+    /**
+     * The tenant's context schemas and version.
+     */
+    @GetMapping(value = "/contexts", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<String> contexts(@RequestHeader(value = QueryController.TENANT_HEADER, required = false) String tenantId,
+                                           @RequestHeader(value = TOKEN_HEADER, required = false) String token) {
+        return run(token, () -> {
+            ContextCatalog catalog = queryService.getCatalog(tenantId);
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("version", catalog.getVersion());
+            body.put("contexts", catalog.getContexts());
+            return body;
+        });
+    }
+
+    /**
+     * Adds/replaces and deletes several contexts as one version: {"upsert": [schemas], "delete": [names]}.
+     */
+    @PostMapping(value = "/contexts", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<String> editContexts(@RequestBody String body,
+                                               @RequestHeader(value = QueryController.TENANT_HEADER, required = false) String tenantId,
+                                               @RequestHeader(value = TOKEN_HEADER, required = false) String token) {
+        return run(token, () -> {
+            ContextEdit edit = parse(body, ContextEdit.class);
+            return contextResult(() -> queryService.editContexts(tenantId, edit.getUpsert(), edit.getDelete()));
+        });
+    }
+
+    /**
+     * Adds or replaces the context with this name.
+     */
+    @PutMapping(value = "/contexts/{name}", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<String> putContext(@PathVariable("name") String name, @RequestBody String body,
+                                             @RequestHeader(value = QueryController.TENANT_HEADER, required = false) String tenantId,
+                                             @RequestHeader(value = TOKEN_HEADER, required = false) String token) {
+        return run(token, () -> {
+            ContextSchema schema = parse(body, ContextSchema.class);
+            schema.setName(name);
+            return contextResult(() -> queryService.editContexts(tenantId, List.of(schema), List.of()));
+        });
+    }
+
+    @DeleteMapping(value = "/contexts/{name}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<String> deleteContext(@PathVariable("name") String name,
+                                                @RequestHeader(value = QueryController.TENANT_HEADER, required = false) String tenantId,
+                                                @RequestHeader(value = TOKEN_HEADER, required = false) String token) {
+        return run(token, () -> contextResult(() -> queryService.editContexts(tenantId, List.of(), List.of(name))));
+    }
+
+    private ResponseEntity<String> run(String token, Supplier<Map<String, Object>> action) {
+        if (!queryService.isAdminEnabled()) return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        if (!queryService.isAdminAuthorized(token)) return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        try {
+            return ResponseEntity.ok(GSON.toJson(action.get()));
+        } catch (TenantRegistry.UnknownTenantException | NoSuchElementException e) {
+            return error(HttpStatus.NOT_FOUND, e);
+        } catch (IllegalArgumentException | JsonParseException e) {
+            return error(HttpStatus.BAD_REQUEST, e);
+        }
+    }
+
+    private static Map<String, Object> knowledgeResult(Supplier<KnowledgeBase> edit) {
+        long start = System.nanoTime();
+        KnowledgeBase knowledge = edit.get();
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("version", knowledge.getVersion());
+        body.put("entries", knowledge.size());
+        body.put("took_us", (System.nanoTime() - start) / 1000);
+        return body;
+    }
+
+    private static Map<String, Object> contextResult(Supplier<ContextCatalog> edit) {
+        long start = System.nanoTime();
+        ContextCatalog catalog = edit.get();
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("version", catalog.getVersion());
+        body.put("contexts", catalog.size());
+        body.put("took_us", (System.nanoTime() - start) / 1000);
+        return body;
+    }
+
+    private static <T> T parse(String body, Class<T> type) {
+        T value = GSON.fromJson(body, type);
+        if (value == null) throw new IllegalArgumentException("Empty request body");
+        return value;
+    }
+
+    private static ResponseEntity<String> error(HttpStatus status, RuntimeException e) {
+        return ResponseEntity.status(status).contentType(MediaType.APPLICATION_JSON)
+            .body(GSON.toJson(Map.of("error", String.valueOf(e.getMessage()))));
+    }
+}
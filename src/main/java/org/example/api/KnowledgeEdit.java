@@ -0,0 +1,31 @@
+package org.example.api;
+
+import org.example.voicebot.KnowledgeEntry;
+
+import java.util.List;
+
+/**
+ * Body of POST /api/admin/knowledge: entries to add or replace (matched by id) and entry ids to delete, applied as
+ * one new version. Entries use the knowledge.json format.
+ */
+public class KnowledgeEdit {
+
+    private List<KnowledgeEntry> upsert;
+    private List<String> delete;
+
+    public List<KnowledgeEntry> getUpsert() {
+        return upsert != null ? upsert : List.of();
+    }
+
+    public void setUpsert(List<KnowledgeEntry> upsert) {
+        this.upsert = upsert;
+    }
+
+    public List<String> getDelete() {
+        return delete != null ? delete : List.of();
+    }
+
+    public void setDelete(List<String> delete) {
+        this.delete = delete;
+    }
+}
@@ -1,44 +1,352 @@
 package org.example.api;
 
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.example.voicebot.ClusterNode;
+import org.example.voicebot.Priority;
+import org.example.voicebot.RequestBudget;
+import org.example.voicebot.TenantRegistry;
+import org.example.voicebot.UpstreamScheduler;
+import org.example.voicebot.VoicePipeline;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URLEncoder;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * REST API for the support bot: submit a user query (string only) and get an answer.
- * Conversation history is maintained on the backend, not accepted from the UI.
+ * Conversation history is maintained on the backend, not accepted from the UI. In cluster mode, session-bound
+ * requests (query, voice, load) for a session owned by another node are forwarded there ({@link ClusterService}).
  */
 @RestController
 @RequestMapping("/api")
 public class QueryController {
 
+    static final String TENANT_HEADER = "X-Tenant-Id";
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+
     private final VoiceBotQueryService queryService;
+    private final ClusterService cluster;
+    /** End-to-end budget per /api/query request (voicebot.deadline.query-ms); a voice caller won't wait longer. */
+    private final Duration queryDeadline;
 
-    public QueryController(VoiceBotQueryService queryService) {
+    public QueryController(VoiceBotQueryService queryService, ClusterService cluster, Environment environment) {
         this.queryService = queryService;
+        this.cluster = cluster;
+        this.queryDeadline = Duration.ofMillis(environment.getProperty("voicebot.deadline.query-ms", Long.class, 8_000L));
     }
 
     @PostMapping(value = "/query", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<QueryResponse> query(@RequestBody QueryRequest request) {
+    public ResponseEntity<QueryResponse> query(@RequestBody QueryRequest request,
+                                               @RequestHeader(value = TENANT_HEADER, required = false) String tenantHeader,
+                                               @RequestHeader(value = ClusterService.FORWARDED_HEADER, required = false) String forwardedBy,
+                                               @RequestHeader(value = ClusterService.BUDGET_HEADER, required = false) String budgetMs) {
         if (request == null || request.getQuery() == null || request.getQuery().isBlank()) {
             return ResponseEntity.badRequest()
                 .body(new QueryResponse(null, "Missing or empty 'query' in request body."));
         }
+        RequestBudget budget = budget(budgetMs);
+        ClusterNode owner = cluster.remoteOwner(request.getTenantId() != null && !request.getTenantId().isBlank()
+            ? request.getTenantId() : tenantHeader, request.getSessionId(), forwardedBy);
+        if (owner != null) {
+            try {
+                HttpResponse<InputStream> forwarded = cluster.forward(owner, "POST", "/api/query",
+                    MediaType.APPLICATION_JSON_VALUE, GSON.toJson(request).getBytes(StandardCharsets.UTF_8),
+                    tenantHeader, budget);
+                if (forwarded != null) {
+                    try (InputStream in = forwarded.body()) {
+                        QueryResponse body = GSON.fromJson(new String(in.readAllBytes(), StandardCharsets.UTF_8), QueryResponse.class);
+                        return ResponseEntity.status(forwarded.statusCode()).body(body);
+                    }
+                }
+            } catch (UpstreamScheduler.DeadlineExceededException e) {
+                return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT)
+                    .body(new QueryResponse(null, "Error: " + e.getMessage(), budget.getDegradations()));
+            } catch (IOException | JsonParseException e) {
+                return ResponseEntity.status(HttpStatus.BAD_GATEWAY)
+                    .body(new QueryResponse(null, "Error: owner node " + owner.getId() + " failed: " + e.getMessage()));
+            }
+        }
         try {
-            String answer = queryService.answer(request.getQuery().trim());
-            return ResponseEntity.ok(new QueryResponse(answer, null));
+            String sessionId = request.getSessionId() != null && !request.getSessionId().isBlank()
+                ? request.getSessionId() : VoiceBotQueryService.DEFAULT_SESSION;
+            String tenantId = request.getTenantId() != null && !request.getTenantId().isBlank()
+                ? request.getTenantId() : tenantHeader;
+            String answer = queryService.answer(tenantId, sessionId, request.getQuery().trim(), Priority.INTERACTIVE, budget);
+            return ResponseEntity.ok(new QueryResponse(answer, null, budget.getDegradations()));
+        } catch (TenantRegistry.UnknownTenantException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new QueryResponse(null, "Error: " + e.getMessage()));
+        } catch (TenantRegistry.QuotaExceededException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(new QueryResponse(null, "Error: " + e.getMessage()));
+        } catch (UpstreamScheduler.DeadlineExceededException e) {
+            return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT)
+                .body(new QueryResponse(null, "Error: " + e.getMessage(), budget.getDegradations()));
         } catch (Exception e) {
             return ResponseEntity.internalServerError()
                 .body(new QueryResponse(null, "Error: " + e.getMessage()));
         }
     }
 
+    /**
+     * Batch mode: request body is JSONL, one {"id", "query", "sessionId"} object per line (id and sessionId optional).
+     * Results stream back as JSONL in completion order, each with its input line number and timing.
+     * Optional parallelism / rps query parameters can only lower the configured limits.
+     */
+    @PostMapping(value = "/query/batch", consumes = {"application/x-ndjson", "application/jsonl", MediaType.TEXT_PLAIN_VALUE})
+    public void queryBatch(@RequestParam(value = "parallelism", required = false) Integer parallelism,
+                           @RequestParam(value = "rps", required = false) Double requestsPerSecond,
+                           @RequestHeader(value = TENANT_HEADER, required = false) String tenantId,
+                           HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType("application/x-ndjson");
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8))) {
+            Writer out = new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8);
+            try {
+                queryService.answerBatch(tenantId, in, out, parallelism, requestsPerSecond);
+            } catch (TenantRegistry.UnknownTenantException e) {
+                // The tenant is resolved before the first result is written, so the status can still change.
+                response.sendError(HttpStatus.NOT_FOUND.value(), e.getMessage());
+                return;
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * Voice turn: the request body is the caller's utterance (Content-Type is its audio format). The response is
+     * NDJSON, flushed line by line: {"type":"transcript"}, then one {"type":"audio","seq","text","format","audio"}
+     * (base64) per sentence as soon as it is synthesized, in order, then {"type":"done"} with timings, or
+     * {"type":"error"}. The first sentence can be played while the rest of the answer is still being generated.
+     */
+    @PostMapping(value = "/voice")
+    public void voice(@RequestParam(value = "sessionId", required = false) String sessionId,
+                      @RequestHeader(value = TENANT_HEADER, required = false) String tenantId,
+                      @RequestHeader(value = ClusterService.FORWARDED_HEADER, required = false) String forwardedBy,
+                      @RequestHeader(value = ClusterService.BUDGET_HEADER, required = false) String budgetMs,
+                      HttpServletRequest request, HttpServletResponse response) throws IOException {
+        RequestBudget budget = budget(budgetMs);
+        byte[] audio = request.getInputStream().readAllBytes();
+        String format = request.getContentType() != null ? request.getContentType() : MediaType.APPLICATION_OCTET_STREAM_VALUE;
+        String session = sessionId != null && !sessionId.isBlank() ? sessionId : VoiceBotQueryService.DEFAULT_SESSION;
+        ClusterNode owner = cluster.remoteOwner(tenantId, session, forwardedBy);
+        if (owner != null) {
+            HttpResponse<InputStream> forwarded;
+            try {
+                forwarded = cluster.forward(owner, "POST",
+                    "/api/voice?sessionId=" + URLEncoder.encode(session, StandardCharsets.UTF_8), format, audio,
+                    tenantId, budget);
+            } catch (UpstreamScheduler.DeadlineExceededException e) {
+                writeError(response, e.getMessage());
+                return;
+            }
+            if (forwarded != null) {
+                // Relay chunk by chunk so the caller still hears the first sentence early.
+                response.setStatus(forwarded.statusCode());
+                response.setContentType("application/x-ndjson");
+                try (InputStream in = forwarded.body()) {
+                    byte[] buffer = new byte[8192];
+                    int n;
+                    while ((n = in.read(buffer)) > 0) {
+                        response.getOutputStream().write(buffer, 0, n);
+                        response.getOutputStream().flush();
+                    }
+                } catch (IOException e) {
+                    // The owner failed mid-turn: end the stream with an error line, as a local turn would.
+                    writeError(response, "owner node " + owner.getId() + " failed: " + e.getMessage());
+                }
+                return;
+            }
+        }
+        String audioFormat = queryService.getVoiceAudioFormat();
+        response.setContentType("application/x-ndjson");
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        Writer out = new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8);
+        try {
+            VoicePipeline.Result result = queryService.answerVoice(tenantId, session, audio, format,
+                new VoicePipeline.AudioSink() {
+                    @Override
+                    public void transcript(String text) throws IOException {
+                        Map<String, Object> line = new LinkedHashMap<>();
+                        line.put("type", "transcript");
+                        line.put("text", text);
+                        writeLine(out, line);
+                    }
+
+                    @Override
+                    public void audio(int seq, String text, byte[] chunk) throws IOException {
+                        Map<String, Object> line = new LinkedHashMap<>();
+                        line.put("type", "audio");
+                        line.put("seq", seq);
+                        line.put("text", text);
+                        line.put("format", audioFormat);
+                        line.put("audio", Base64.getEncoder().encodeToString(chunk));
+                        writeLine(out, line);
+                    }
+                }, budget);
+            Map<String, Object> done = new LinkedHashMap<>();
+            done.put("type", "done");
+            done.put("reply", result.getReply());
+            done.put("sentences", result.getSentences());
+            done.put("first_audio_ms", result.getFirstAudioNanos() / 1_000_000);
+            done.put("total_ms", result.getTotalNanos() / 1_000_000);
+            done.put("degradations", budget.getDegradations());
+            writeLine(out, done);
+        } catch (RuntimeException e) {
+            writeLine(out, errorLine(e.getMessage()));
+        }
+        out.flush();
+    }
+
+    /** Ends a voice response with an error line; ignored if the caller is gone. */
+    private static void writeError(HttpServletResponse response, String message) {
+        try {
+            if (!response.isCommitted()) {
+                response.setContentType("application/x-ndjson");
+                response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+            }
+            Writer out = new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8);
+            writeLine(out, errorLine(message));
+        } catch (IOException e) {
+            // Nobody left to tell.
+        }
+    }
+
+    private static Map<String, Object> errorLine(String message) {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("type", "error");
+        error.put("error", message);
+        return error;
+    }
+
+    /**
+     * Budget of a request: the query deadline, or what a forwarding peer says is left of it if that is less.
+     */
+    private RequestBudget budget(String forwardedBudgetMs) {
+        Duration deadline = queryDeadline;
+        if (forwardedBudgetMs != null) {
+            try {
+                Duration left = Duration.ofMillis(Long.parseLong(forwardedBudgetMs.trim()));
+                if (left.compareTo(deadline) < 0) deadline = left;
+            } catch (NumberFormatException e) {
+                // Ignore a malformed header; the local deadline applies.
+            }
+        }
+        return RequestBudget.of(deadline);
+    }
+
+    private static void writeLine(Writer out, Map<String, Object> line) throws IOException {
+        out.write(GSON.toJson(line));
+        out.write('\n');
+        out.flush();
+    }
+
+    /**
+     * Voice pipeline counters: turns, sentences, mean time to first audio and to the end of the reply.
+     */
+    @GetMapping(value = "/voice/stats", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Object>> voiceStats() {
+        return ResponseEntity.ok(queryService.getVoiceStats());
+    }
+
+    /**
+     * Recent history of a session. With {@code limit} (and optionally the {@code before} cursor from the previous
+     * page) older exchanges are paged from the durable conversation log.
+     */
     @GetMapping(value = "/load", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<ConversationHistoryResponse> loadHistory() {
-        return ResponseEntity.ok(new ConversationHistoryResponse(queryService.getConversationHistory()));
+    public ResponseEntity<ConversationHistoryResponse> loadHistory(
+            @RequestParam(value = "sessionId", required = false) String sessionId,
+            @RequestParam(value = "before", required = false) Long before,
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestHeader(value = TENANT_HEADER, required = false) String tenantId,
+            @RequestHeader(value = ClusterService.FORWARDED_HEADER, required = false) String forwardedBy) {
+        ClusterNode owner = cluster.remoteOwner(tenantId, sessionId, forwardedBy);
+        if (owner != null) {
+            StringBuilder path = new StringBuilder("/api/load?sessionId=")
+                .append(URLEncoder.encode(sessionId != null ? sessionId : VoiceBotQueryService.DEFAULT_SESSION, StandardCharsets.UTF_8));
+            if (before != null) path.append("&before=").append(before);
+            if (limit != null) path.append("&limit=").append(limit);
+            HttpResponse<InputStream> forwarded = cluster.forward(owner, "GET", path.toString(), null, null, tenantId, null);
+            if (forwarded != null) {
+                try (InputStream in = forwarded.body()) {
+                    return ResponseEntity.status(forwarded.statusCode()).body(GSON.fromJson(
+                        new String(in.readAllBytes(), StandardCharsets.UTF_8), ConversationHistoryResponse.class));
+                } catch (IOException | JsonParseException e) {
+                    return ResponseEntity.status(HttpStatus.BAD_GATEWAY).build();
+                }
+            }
+        }
+        try {
+            if (before != null || limit != null) {
+                return ResponseEntity.ok(queryService.getConversationHistoryPage(tenantId, sessionId, before,
+                    limit != null ? limit : 20));
+            }
+            return ResponseEntity.ok(new ConversationHistoryResponse(queryService.getConversationHistory(tenantId, sessionId)));
+        } catch (TenantRegistry.UnknownTenantException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * Token usage totals so far (prompt, cached prompt, completion) to measure prompt-cache hits.
+     */
+    @GetMapping(value = "/usage", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Object>> usage() {
+        return ResponseEntity.ok(queryService.getUsageStats().toMap());
+    }
+
+    /**
+     * Upstream scheduler state per priority class (queued, running, dispatched, dropped, EWMA latency).
+     */
+    @GetMapping(value = "/scheduler", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Object>> scheduler() {
+        return ResponseEntity.ok(queryService.getSchedulerStats());
+    }
+
+    /**
+     * Upstream endpoints with load-balancer state (outstanding, EWMA latency, failures, ejections).
+     */
+    @GetMapping(value = "/backends", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Object>> backends() {
+        return ResponseEntity.ok(queryService.getBackendStats());
+    }
+
+    /**
+     * Per-turn event log: overflow policy, ring occupancy, published / dropped / blocked / written counts.
+     */
+    @GetMapping(value = "/events", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Object>> events() {
+        return ResponseEntity.ok(queryService.getEventLogStats());
+    }
+
+    /**
+     * Loaded tenants (LRU order, estimated footprint), evictions and shared pool sizes.
+     */
+    @GetMapping(value = "/tenants", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Object>> tenants() {
+        return ResponseEntity.ok(queryService.getTenantStats());
     }
 }
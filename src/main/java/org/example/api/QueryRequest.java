@@ -1,12 +1,15 @@
 package org.example.api;
 
 /**
- * Request body for /api/query: the user query string only.
- * Conversation history is maintained on the backend, not sent from the UI.
+ * Request body for /api/query: the user query string, an optional session id and an optional tenant id
+ * (otherwise taken from the X-Tenant-Id header, else the default tenant).
+ * Conversation history is maintained on the backend per session, not sent from the UI.
  */
 public class QueryRequest {
 
     private String query;
+    private String sessionId;
+    private String tenantId;
 
     public String getQuery() {
         return query;
@@ -15,4 +18,20 @@ public class QueryRequest {
     public void setQuery(String query) {
         this.query = query;
     }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public void setSessionId(String sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    public void setTenantId(String tenantId) {
+        this.tenantId = tenantId;
+    }
 }
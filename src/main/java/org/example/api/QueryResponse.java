@@ -1,16 +1,28 @@
 package org.example.api;
 
+import java.util.List;
+
 /**
  * Response for /api/query: answer on success, error message on failure.
+ * {@code degraded} is true when routing stages were skipped to meet the request deadline;
+ * {@code degradedReasons} lists which ones.
  */
 public class QueryResponse {
 
     private final String answer;
     private final String error;
+    private final boolean degraded;
+    private final List<String> degradedReasons;
 
     public QueryResponse(String answer, String error) {
+        this(answer, error, List.of());
+    }
+
+    public QueryResponse(String answer, String error, List<String> degradedReasons) {
         this.answer = answer;
         this.error = error;
+        this.degradedReasons = degradedReasons != null ? degradedReasons : List.of();
+        this.degraded = !this.degradedReasons.isEmpty();
     }
 
     public String getAnswer() {
@@ -20,4 +32,12 @@ public class QueryResponse {
     public String getError() {
         return error;
     }
+
+    public boolean isDegraded() {
+        return degraded;
+    }
+
+    public List<String> getDegradedReasons() {
+        return degradedReasons;
+    }
 }
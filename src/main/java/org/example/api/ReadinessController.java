@@ -0,0 +1,28 @@
+package org.example.api;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * Readiness probe: 200 once warm-up has finished, 503 before.
+ */
+@RestController
+public class ReadinessController {
+
+    private final WarmupService warmupService;
+
+    public ReadinessController(WarmupService warmupService) {
+        this.warmupService = warmupService;
+    }
+
+    @GetMapping(value = "/api/ready", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Object>> ready() {
+        Map<String, Object> body = Map.of("ready", warmupService.isReady(), "status", warmupService.getStatus());
+        return ResponseEntity.status(warmupService.isReady() ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE).body(body);
+    }
+}
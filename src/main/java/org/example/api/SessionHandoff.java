@@ -0,0 +1,80 @@
+package org.example.api;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Body of POST /api/cluster/sessions: conversation histories handed over by a node that no longer owns them.
+ * Session keys are the service's internal "tenant/session" keys.
+ */
+public class SessionHandoff {
+
+    private String from;
+    private List<Session> sessions = new ArrayList<>();
+
+    public String getFrom() {
+        return from;
+    }
+
+    public void setFrom(String from) {
+        this.from = from;
+    }
+
+    public List<Session> getSessions() {
+        return sessions;
+    }
+
+    public void setSessions(List<Session> sessions) {
+        this.sessions = sessions;
+    }
+
+    public static class Session {
+        private String key;
+        private List<Message> messages = new ArrayList<>();
+
+        public String getKey() {
+            return key;
+        }
+
+        public void setKey(String key) {
+            this.key = key;
+        }
+
+        public List<Message> getMessages() {
+            return messages;
+        }
+
+        public void setMessages(List<Message> messages) {
+            this.messages = messages;
+        }
+    }
+
+    public static class Message {
+        private String role;
+        private String content;
+
+        public Message() {
+        }
+
+        public Message(String role, String content) {
+            this.role = role;
+            this.content = content;
+        }
+
+        public String getRole() {
+            return role;
+        }
+
+        public void setRole(String role) {
+            this.role = role;
+        }
+
+        public String getContent() {
+            return content;
+        }
+
+        public void setContent(String content) {
+            this.content = content;
+        }
+    }
+}
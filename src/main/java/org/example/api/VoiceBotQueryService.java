@@ -1,39 +1,113 @@
 package org.example.api;
 
+import org.example.voicebot.BalancedChatBackend;
+import org.example.voicebot.BatchItem;
+import org.example.voicebot.BatchRunner;
+import org.example.voicebot.ChatBackend;
 import org.example.voicebot.ContextCatalog;
+import org.example.voicebot.ContextSchema;
+import org.example.voicebot.ConversationLog;
+import org.example.voicebot.ConversationSessions;
 import org.example.voicebot.CustomerContextStore;
+import org.example.voicebot.EmbeddingProvider;
+import org.example.voicebot.EventLog;
+import org.example.voicebot.GenerationBudget;
+import org.example.voicebot.HashingEmbeddingProvider;
 import org.example.voicebot.KnowledgeBase;
-import org.example.voicebot.OpenAIService;
+import org.example.voicebot.KnowledgeEntry;
+import org.example.voicebot.LocalSpeechToText;
+import org.example.voicebot.LocalTextToSpeech;
+import org.example.voicebot.OpenAICompatibleBackend;
 import org.example.voicebot.OpenAIService.ChatMessage;
+import org.example.voicebot.OpenAIService;
+import org.example.voicebot.Priority;
+import org.example.voicebot.PromptLayout;
+import org.example.voicebot.RateLimiter;
+import org.example.voicebot.RequestBudget;
+import org.example.voicebot.RoutingTrace;
+import org.example.voicebot.SpeechToText;
+import org.example.voicebot.Stage;
+import org.example.voicebot.StageConfig;
+import org.example.voicebot.TenantRegistry;
+import org.example.voicebot.TextToSpeech;
+import org.example.voicebot.TrafficCapture;
+import org.example.voicebot.UpstreamScheduler;
+import org.example.voicebot.UsageStats;
+import org.example.voicebot.VoicePipeline;
+import org.example.voicebot.Warmup;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Service;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 /**
  * Service that answers user queries using the same voicebot logic as Main:
  * knowledge base, context catalog, and OpenAI with category/context routing.
- * Maintains in-memory conversation history (max 10 messages) for follow-up questions.
+ * Maintains in-memory conversation history per session (max 10 messages) for follow-up questions;
+ * requests without a session id share the "default" session. With voicebot.history.dir set, turns are also appended
+ * to a durable {@link ConversationLog}: sessions are rebuilt from it on startup and older history is paged from disk.
+ * Knowledge and context catalog are per tenant ({@link TenantRegistry}, voicebot.tenants.*); sessions are scoped to
+ * their tenant. Voice turns ({@link #answerVoice}) stream the answer into sentence-level speech synthesis through a
+ * {@link VoicePipeline}; {@link SpeechToText} / {@link TextToSpeech} beans replace the local stand-ins.
  * Set OPENAI_API_KEY environment variable (or openai.api.key in application.properties).
  */
 @Service
 public class VoiceBotQueryService {
 
     private static final int MAX_HISTORY_MESSAGES = 10;
+    static final String DEFAULT_SESSION = "default";
 
     private final Environment environment;
-    private final List<ChatMessage> conversationHistory = Collections.synchronizedList(new ArrayList<>());
+    private ConversationSessions sessions;
 
-    private KnowledgeBase knowledge;
-    private ContextCatalog contextCatalog;
+    private TenantRegistry tenants;
     private CustomerContextStore customerData;
     private OpenAIService openAIService;
+    private UpstreamScheduler scheduler;
+    private ConversationLog conversationLog;
+    private TrafficCapture capture;
+    private EventLog eventLog;
+    private VoicePipeline voicePipeline;
+    private GenerationBudget voiceGeneration = GenerationBudget.UNLIMITED;
+    private GenerationBudget textGeneration = GenerationBudget.UNLIMITED;
+    private int batchParallelism;
+    private double batchRequestsPerSecond;
+    /** Per tenant, shared by its concurrent batches. */
+    private final Map<String, RateLimiter> batchLimiters = new ConcurrentHashMap<>();
+    private Duration batchItemDeadline;
+    private String adminToken;
+
+    private final SpeechToText speechToText;
+    private final TextToSpeech textToSpeech;
+    private final EmbeddingProvider embeddingProvider;
 
-    public VoiceBotQueryService(Environment environment) {
+    public VoiceBotQueryService(Environment environment, ObjectProvider<SpeechToText> speechToText,
+                                ObjectProvider<TextToSpeech> textToSpeech,
+                                ObjectProvider<EmbeddingProvider> embeddingProvider) {
         this.environment = environment;
+        this.speechToText = speechToText.getIfAvailable(LocalSpeechToText::new);
+        this.textToSpeech = textToSpeech.getIfAvailable(LocalTextToSpeech::new);
+        this.embeddingProvider = embeddingProvider.getIfAvailable(() -> new HashingEmbeddingProvider(
+            environment.getProperty("voicebot.semantic.dimension", Integer.class, 256)));
     }
 
     @PostConstruct
@@ -45,43 +119,522 @@ public class VoiceBotQueryService {
         if (apiKey == null || apiKey.isBlank()) {
             throw new IllegalStateException("OPENAI_API_KEY environment variable or openai.api.key property must be set.");
         }
-        knowledge = KnowledgeBase.loadFromClasspath("knowledge.json");
-        contextCatalog = ContextCatalog.loadFromClasspath("context_schemas.json");
+        tenants = createTenantRegistry(KnowledgeBase.loadFromClasspath("knowledge.json"),
+            ContextCatalog.loadFromClasspath("context_schemas.json"));
         customerData = CustomerContextStore.fromDemoData();
-        openAIService = new OpenAIService(apiKey);
+        openAIService = new OpenAIService(createBackend(apiKey), null);
+        openAIService.setPromptLayout(PromptLayout.fromString(environment.getProperty("voicebot.prompt.layout")));
+        for (Stage stage : Stage.values()) {
+            openAIService.setStageConfig(stage, stageConfig(stage, openAIService.getStageConfig(stage)));
+        }
+        scheduler = createScheduler();
+        openAIService.setScheduler(scheduler);
+        batchParallelism = environment.getProperty("voicebot.batch.parallelism", Integer.class, 8);
+        batchRequestsPerSecond = environment.getProperty("voicebot.batch.requests-per-second", Double.class, 10.0);
+        batchItemDeadline = Duration.ofMillis(environment.getProperty("voicebot.deadline.batch-ms", Long.class, 120_000L));
+        openAIService.setOptionalStageThresholds(
+            Duration.ofMillis(environment.getProperty("voicebot.deadline.skip-category-below-ms", Long.class, 4_000L)),
+            Duration.ofMillis(environment.getProperty("voicebot.deadline.skip-context-below-ms", Long.class, 2_500L)));
+        openAIService.setFaqMinSimilarity(environment.getProperty("voicebot.faq.min-similarity", Double.class, 0.85));
+        voiceGeneration = generationBudget("voice", 3, 360);
+        textGeneration = generationBudget("text", 0, 0);
+        openAIService.setGenerationMeasureRate(
+            environment.getProperty("voicebot.generation.measure-rate", Double.class, 0.0));
+        configureSemanticRouting();
+        sessions = new ConversationSessions(MAX_HISTORY_MESSAGES,
+            environment.getProperty("voicebot.sessions.max", Integer.class, 100_000),
+            Duration.ofMinutes(environment.getProperty("voicebot.sessions.idle-minutes", Long.class, 60L)));
+        conversationLog = openConversationLog();
+        capture = openCapture();
+        eventLog = openEventLog();
+        adminToken = environment.getProperty("voicebot.admin.token", "");
+        voicePipeline = new VoicePipeline(speechToText, textToSpeech,
+            environment.getProperty("voicebot.voice.tts-concurrency", Integer.class, 4),
+            environment.getProperty("voicebot.voice.min-sentence-chars", Integer.class, 24));
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (voicePipeline != null) voicePipeline.close();
+        if (conversationLog != null) conversationLog.close();
+        if (capture != null) capture.close();
+        if (eventLog != null) eventLog.close();
     }
 
     /**
-     * Answer a single query. Uses and updates in-service conversation history (max 10 messages).
+     * Answer a single query in the default session. Uses and updates its conversation history (max 10 messages).
      */
     public String answer(String query) {
+        return answer(DEFAULT_SESSION, query);
+    }
+
+    /**
+     * Answer a single query in the given session; a null session id answers without history and records nothing.
+     */
+    public String answer(String sessionId, String query) {
+        return answer(sessionId, query, Priority.INTERACTIVE, RequestBudget.unlimited());
+    }
+
+    /**
+     * Answer a single query in the given session, scheduling its upstream calls in the given priority class and
+     * within {@code budget}. Stages skipped to stay within the budget are recorded on it.
+     */
+    public String answer(String sessionId, String query, Priority priority, RequestBudget budget) {
+        return answer(null, sessionId, query, priority, budget);
+    }
+
+    /**
+     * Answer a single query for a tenant (null for the default tenant), charged to that tenant's quota:
+     * background work waits for it (up to each call's deadline), other priorities fail fast with
+     * {@link TenantRegistry.QuotaExceededException}.
+     */
+    public String answer(String tenantId, String sessionId, String query, Priority priority, RequestBudget budget) {
+        return answer(tenantId, sessionId, query, priority, budget, null);
+    }
+
+    /**
+     * Same as above, streaming the reply into {@code onDelta} as it is generated (null: no streaming). Unless
+     * {@code budget} already has one, the text channel's {@link GenerationBudget} limits the reply.
+     */
+    public String answer(String tenantId, String sessionId, String query, Priority priority, RequestBudget budget,
+                         Consumer<String> onDelta) {
         if (query == null || query.isBlank()) {
             return "Please provide a non-empty query.";
         }
-        List<ChatMessage> historySnapshot;
-        synchronized (conversationHistory) {
-            historySnapshot = new ArrayList<>(conversationHistory);
-        }
-        String reply = openAIService.answerWithCategoryRouting(query, knowledge, contextCatalog, customerData, historySnapshot);
-        synchronized (conversationHistory) {
-            conversationHistory.add(new ChatMessage("user", query));
-            conversationHistory.add(new ChatMessage("assistant", reply));
-            while (conversationHistory.size() > MAX_HISTORY_MESSAGES) {
-                conversationHistory.remove(0);
-                conversationHistory.remove(0);
+        TenantRegistry.Tenant tenant = tenants.get(tenantId);
+        // Per upstream call, so a FAQ hit costs nothing and a turn with classifiers costs one permit per stage.
+        budget.withUpstreamQuota(deadline -> tenants.acquireQuota(tenant.getId(),
+            priority == Priority.BACKGROUND ? deadline : System.nanoTime()));
+        String key = sessionKey(tenant.getId(), sessionId);
+        List<ChatMessage> historySnapshot = sessions.snapshot(key);
+        TrafficCapture currentCapture = capture;
+        boolean captured = currentCapture != null && currentCapture.sample();
+        EventLog events = eventLog;
+        RoutingTrace trace = captured || events != null ? new RoutingTrace() : null;
+        if (trace != null) budget.withTrace(trace);
+        if (budget.getGeneration() == null) budget.withGeneration(textGeneration);
+        long start = System.nanoTime();
+        String reply = null;
+        RuntimeException failure = null;
+        try {
+            reply = openAIService.answerWithCategoryRouting(query, tenant.getKnowledge(), tenant.getCatalog(),
+                customerData, historySnapshot, priority, budget, onDelta);
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            if (captured) {
+                trace.setTotalNanos(elapsed);
+                long budgetNanos = budget.isLimited() ? Math.max(1, budget.getDeadlineNanos() - start) : 0;
+                currentCapture.record(start, tenant.getId(), sessionId, priority, budgetNanos, query, historySnapshot,
+                    budget.getDegradations(), trace);
+            }
+            if (events != null) {
+                events.publish(tenant.getId(), sessionId, priority, query, reply, budget.getDegradations(), trace,
+                    elapsed, failure);
             }
         }
+        sessions.append(key, query, reply);
+        if (conversationLog != null && key != null) {
+            conversationLog.append(key, query, reply);
+        }
         return reply;
     }
 
     /**
-     * Returns a snapshot of the current conversation history (max 10 messages).
+     * Session key scoped to the tenant: default-tenant ids stay as they are (unless they contain '/'),
+     * other tenants' are prefixed with "tenant/".
+     */
+    static String sessionKey(String tenantId, String sessionId) {
+        if (sessionId == null) return null;
+        if (TenantRegistry.DEFAULT_TENANT.equals(tenantId) && sessionId.indexOf('/') < 0) return sessionId;
+        return tenantId + "/" + sessionId;
+    }
+
+    /** Keys ("tenant/session", see {@link #sessionKey}) of all sessions held in memory. */
+    Set<String> getSessionKeys() {
+        return sessions.sessionIds();
+    }
+
+    /** The session's history for a handoff, or null if it has none; see {@link ConversationSessions#export}. */
+    ConversationSessions.Export exportSession(String key) {
+        return sessions.export(key);
+    }
+
+    /** Drops a handed-off session; returns the messages appended after its export, which still need handing off. */
+    List<ChatMessage> removeExportedSession(String key, ConversationSessions.Export export) {
+        return sessions.removeExported(key, export);
+    }
+
+    /** Puts back messages whose handoff failed, before anything appended since. */
+    void restoreSession(String key, List<ChatMessage> messages) {
+        sessions.prepend(key, messages);
+    }
+
+    void removeSession(String key) {
+        sessions.remove(key);
+    }
+
+    /**
+     * Takes over a session's history from another node: the messages go after what earlier handoffs brought and
+     * before any turns this node answered for it, in memory and in the durable log when it is enabled.
+     */
+    void importSession(String key, List<ChatMessage> messages) {
+        sessions.importHandedOff(key, messages);
+        if (conversationLog != null) conversationLog.importTurns(key, messages);
+    }
+
+    /**
+     * Voice turn for a tenant's session: transcribes {@code audio}, streams the answer, and hands each synthesized
+     * sentence to {@code sink} in order while the rest is still being generated. The answer is limited by the voice
+     * channel's {@link GenerationBudget}. The turn is recorded in the session history like a text query.
+     */
+    public VoicePipeline.Result answerVoice(String tenantId, String sessionId, byte[] audio, String format,
+                                            VoicePipeline.AudioSink sink, RequestBudget budget) throws IOException {
+        if (budget.getGeneration() == null) budget.withGeneration(voiceGeneration);
+        return voicePipeline.run(audio, format,
+            (transcript, onDelta) -> answer(tenantId, sessionId, transcript, Priority.INTERACTIVE, budget, onDelta),
+            sink);
+    }
+
+    public String getVoiceAudioFormat() {
+        return voicePipeline.getTextToSpeech().getFormat();
+    }
+
+    /**
+     * Voice pipeline counters (turns, sentences, time to first audio).
+     */
+    public Map<String, Object> getVoiceStats() {
+        return voicePipeline.toMap();
+    }
+
+    /**
+     * Answers a JSONL stream of queries and writes JSONL results in completion order.
+     * Parallelism is capped by voicebot.batch.parallelism per call; voicebot.batch.requests-per-second is shared by
+     * all of a tenant's batches. Non-null arguments may only lower them for this call.
+     */
+    public long answerBatch(String tenantId, BufferedReader in, Writer out, Integer parallelism,
+                            Double requestsPerSecond) throws IOException {
+        String tenant = tenants.get(tenantId).getId();
+        int effectiveParallelism = parallelism != null && parallelism > 0
+            ? Math.min(parallelism, batchParallelism) : batchParallelism;
+        RateLimiter shared = batchLimiters.computeIfAbsent(tenant, k -> new RateLimiter(batchRequestsPerSecond));
+        RateLimiter own = requestsPerSecond != null && requestsPerSecond > 0
+            && (batchRequestsPerSecond <= 0 || requestsPerSecond < batchRequestsPerSecond)
+            ? new RateLimiter(requestsPerSecond) : null;
+        BatchRunner runner = new BatchRunner(effectiveParallelism, shared, own);
+        return runner.run(in, out, (BatchItem item) ->
+            answer(tenant, blankToNull(item.getSessionId()), item.getQuery().trim(), Priority.BACKGROUND,
+                RequestBudget.of(batchItemDeadline)));
+    }
+
+    /**
+     * Returns a snapshot of the session's conversation history (max 10 messages).
+     */
+    public List<ConversationHistoryResponse.HistoryMessage> getConversationHistory(String sessionId) {
+        return getConversationHistory(null, sessionId);
+    }
+
+    /**
+     * Returns a snapshot of the tenant's session history (max 10 messages).
+     */
+    public List<ConversationHistoryResponse.HistoryMessage> getConversationHistory(String tenantId, String sessionId) {
+        String key = sessionKey(tenants.get(tenantId).getId(), sessionId != null ? sessionId : DEFAULT_SESSION);
+        return sessions.snapshot(key).stream()
+            .map(m -> new ConversationHistoryResponse.HistoryMessage(m.getRole(), m.getContent()))
+            .toList();
+    }
+
+    /**
+     * Page of older history from the durable log: up to {@code limit} exchanges before the {@code before} cursor
+     * (null for the newest), oldest first. Falls back to the in-memory history when the log is disabled.
+     */
+    public ConversationHistoryResponse getConversationHistoryPage(String tenantId, String sessionId, Long before,
+                                                                  int limit) {
+        if (conversationLog == null) {
+            return new ConversationHistoryResponse(getConversationHistory(tenantId, sessionId));
+        }
+        String key = sessionKey(tenants.get(tenantId).getId(), sessionId != null ? sessionId : DEFAULT_SESSION);
+        ConversationLog.Page page = conversationLog.page(key, before != null ? before : Long.MAX_VALUE, Math.max(1, limit));
+        List<ConversationHistoryResponse.HistoryMessage> messages = new ArrayList<>(page.getTurns().size() * 2);
+        for (ConversationLog.Turn turn : page.getTurns()) {
+            messages.add(new ConversationHistoryResponse.HistoryMessage("user", turn.getQuery()));
+            messages.add(new ConversationHistoryResponse.HistoryMessage("assistant", turn.getReply()));
+        }
+        return new ConversationHistoryResponse(messages, page.getNextBefore() >= 0 ? page.getNextBefore() : null);
+    }
+
+    /**
+     * Returns a snapshot of the default session's conversation history (max 10 messages).
      */
     public List<ConversationHistoryResponse.HistoryMessage> getConversationHistory() {
-        synchronized (conversationHistory) {
-            return conversationHistory.stream()
-                .map(m -> new ConversationHistoryResponse.HistoryMessage(m.getRole(), m.getContent()))
-                .toList();
+        return getConversationHistory(DEFAULT_SESSION);
+    }
+
+    /**
+     * Token usage totals reported by OpenAI, including cached prompt tokens.
+     */
+    public UsageStats getUsageStats() {
+        return openAIService.getUsageStats();
+    }
+
+    /**
+     * Warm-up after init: precomputes routing/prompt artifacts, runs {@code iterations} answers against a local
+     * stub so the hot path is loaded and compiled, opens {@code connections} upstream connections and keeps them
+     * alive every {@code keepAliveInterval}. Returns the number of connections established.
+     */
+    public int warmUp(int iterations, int connections, Duration keepAliveInterval) throws IOException {
+        TenantRegistry.Tenant tenant = tenants.getDefault();
+        Warmup.run(tenant.getKnowledge(), tenant.getCatalog(), customerData, openAIService.getPromptLayout(), iterations);
+        int established = connections > 0 ? openAIService.preconnect(connections) : 0;
+        openAIService.startKeepAlive(connections, keepAliveInterval);
+        return established;
+    }
+
+    /**
+     * Per-class scheduler counters (queued, running, dispatched, dropped).
+     */
+    public Map<String, Object> getSchedulerStats() {
+        return scheduler.toMap();
+    }
+
+    /**
+     * Per-endpoint backend state (outstanding, EWMA latency, failures, ejections).
+     */
+    public Map<String, Object> getBackendStats() {
+        return openAIService.getBackend().toMap();
+    }
+
+    /**
+     * Event log counters (published, dropped, blocked, written, rotations); only "enabled": false when it is off.
+     */
+    public Map<String, Object> getEventLogStats() {
+        if (eventLog == null) return Map.of("enabled", false);
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("enabled", true);
+        map.putAll(eventLog.toMap());
+        return map;
+    }
+
+    /**
+     * Loaded tenants with their estimated footprint, evictions and shared pool sizes.
+     */
+    public Map<String, Object> getTenantStats() {
+        return tenants.toMap();
+    }
+
+    /**
+     * Whether the knowledge admin API is on (voicebot.admin.token is set).
+     */
+    public boolean isAdminEnabled() {
+        return !adminToken.isEmpty();
+    }
+
+    /**
+     * Whether {@code token} matches voicebot.admin.token (compared in constant time).
+     */
+    public boolean isAdminAuthorized(String token) {
+        return isAdminEnabled() && token != null && MessageDigest.isEqual(
+            adminToken.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The tenant's current knowledge base.
+     */
+    public KnowledgeBase getKnowledge(String tenantId) {
+        return tenants.get(tenantId).getKnowledge();
+    }
+
+    /**
+     * The tenant's current context catalog.
+     */
+    public ContextCatalog getCatalog(String tenantId) {
+        return tenants.get(tenantId).getCatalog();
+    }
+
+    /**
+     * Applies one knowledge edit to the tenant and publishes it for the next requests.
+     */
+    public KnowledgeBase editKnowledge(String tenantId, List<KnowledgeEntry> upserts, Collection<String> deletedIds) {
+        return tenants.editKnowledge(tenantId, upserts, deletedIds);
+    }
+
+    /**
+     * Applies one context catalog edit to the tenant and publishes it for the next requests.
+     */
+    public ContextCatalog editContexts(String tenantId, List<ContextSchema> upserts, Collection<String> deletedNames) {
+        return tenants.editContexts(tenantId, upserts, deletedNames);
+    }
+
+    /**
+     * Semantic routing from voicebot.semantic.* (enabled, min-category-score, min-context-score, index-dir); the
+     * default tenant's indexes are built or loaded here, other tenants' on first use.
+     */
+    private void configureSemanticRouting() {
+        if (!environment.getProperty("voicebot.semantic.enabled", Boolean.class, false)) return;
+        String dir = environment.getProperty("voicebot.semantic.index-dir");
+        openAIService.setSemanticRouting(embeddingProvider,
+            environment.getProperty("voicebot.semantic.min-category-score", Double.class, 0.75),
+            environment.getProperty("voicebot.semantic.min-context-score", Double.class, 0.6),
+            dir != null && !dir.isBlank() ? Path.of(dir) : null);
+        TenantRegistry.Tenant tenant = tenants.getDefault();
+        openAIService.prepareSemanticRouting(tenant.getKnowledge(), tenant.getCatalog());
+    }
+
+    /**
+     * Tenants from voicebot.tenants.* (dir with one subdirectory per tenant, max-memory-mb, requests-per-second
+     * with per-tenant overrides voicebot.tenants.&lt;id&gt;.requests-per-second); the default tenant uses the
+     * classpath data.
+     */
+    private TenantRegistry createTenantRegistry(KnowledgeBase defaultKnowledge, ContextCatalog defaultCatalog) {
+        String dir = environment.getProperty("voicebot.tenants.dir");
+        long maxBytes = environment.getProperty("voicebot.tenants.max-memory-mb", Long.class, 256L) * 1024 * 1024;
+        double defaultRate = environment.getProperty("voicebot.tenants.requests-per-second", Double.class, 0.0);
+        return new TenantRegistry(dir != null && !dir.isBlank() ? Path.of(dir) : null, defaultKnowledge, defaultCatalog,
+            maxBytes, id -> environment.getProperty("voicebot.tenants." + id + ".requests-per-second", Double.class, defaultRate));
+    }
+
+    /**
+     * Traffic capture from voicebot.capture.file / sample-rate (disabled unless the file is set).
+     */
+    private TrafficCapture openCapture() {
+        String file = environment.getProperty("voicebot.capture.file");
+        if (file == null || file.isBlank()) return null;
+        try {
+            return TrafficCapture.open(Path.of(file), environment.getProperty("voicebot.capture.sample-rate", Double.class, 1.0));
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot open traffic capture " + file, e);
+        }
+    }
+
+    /**
+     * Per-turn event log from voicebot.events.* (disabled unless dir is set).
+     */
+    private EventLog openEventLog() {
+        String dir = environment.getProperty("voicebot.events.dir");
+        if (dir == null || dir.isBlank()) return null;
+        try {
+            return EventLog.open(Path.of(dir),
+                environment.getProperty("voicebot.events.capacity", Integer.class, 8192),
+                EventLog.OverflowPolicy.fromString(environment.getProperty("voicebot.events.overflow")),
+                environment.getProperty("voicebot.events.max-file-mb", Long.class, 64L) * 1024 * 1024,
+                environment.getProperty("voicebot.events.max-files", Integer.class, 10));
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot open event log " + dir, e);
         }
     }
+
+    /**
+     * Durable log from voicebot.history.* (disabled unless dir is set); replays recent turns into the sessions.
+     */
+    private ConversationLog openConversationLog() {
+        String dir = environment.getProperty("voicebot.history.dir");
+        if (dir == null || dir.isBlank()) return null;
+        long segmentBytes = environment.getProperty("voicebot.history.segment-mb", Long.class, 16L) * 1024 * 1024;
+        if (segmentBytes <= 0 || segmentBytes > Integer.MAX_VALUE) {
+            // Records are addressed by int offsets within a mapped segment.
+            throw new IllegalStateException("voicebot.history.segment-mb must be between 1 and 2047");
+        }
+        try {
+            ConversationLog log = ConversationLog.open(Path.of(dir), (int) segmentBytes,
+                Duration.ofMillis(environment.getProperty("voicebot.history.flush-interval-ms", Long.class, 20L)),
+                Duration.ofDays(environment.getProperty("voicebot.history.retention-days", Long.class, 30L)),
+                Duration.ofMinutes(environment.getProperty("voicebot.history.compact-minutes", Long.class, 10L)));
+            log.replay(Duration.ofHours(environment.getProperty("voicebot.history.replay-hours", Long.class, 24L)),
+                new ConversationLog.TurnSink() {
+                    @Override
+                    public void accept(String sessionId, String query, String reply) {
+                        sessions.append(sessionId, query, reply);
+                    }
+
+                    @Override
+                    public void acceptImported(String sessionId, String query, String reply) {
+                        sessions.importHandedOff(sessionId, List.of(new ChatMessage("user", query),
+                            new ChatMessage("assistant", reply)));
+                    }
+
+                    @Override
+                    public void reset(String sessionId) {
+                        sessions.remove(sessionId);
+                    }
+                });
+            return log;
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot open conversation log in " + dir, e);
+        }
+    }
+
+    /**
+     * Backend from voicebot.backends[i].{name,url,api-key,requests-per-minute,timeout-ms}: several endpoints are load balanced
+     * by least outstanding requests; with none configured, the single default OpenAI endpoint is used.
+     */
+    private ChatBackend createBackend(String defaultApiKey) {
+        List<BalancedChatBackend.Endpoint> endpoints = new ArrayList<>();
+        for (int i = 0; environment.containsProperty("voicebot.backends[" + i + "].url"); i++) {
+            String prefix = "voicebot.backends[" + i + "].";
+            String name = environment.getProperty(prefix + "name", "backend-" + i);
+            URI url = URI.create(environment.getProperty(prefix + "url"));
+            String key = environment.getProperty(prefix + "api-key", defaultApiKey);
+            double rpm = environment.getProperty(prefix + "requests-per-minute", Double.class, 0.0);
+            Duration timeout = Duration.ofMillis(environment.getProperty(prefix + "timeout-ms", Long.class, 0L));
+            endpoints.add(new BalancedChatBackend.Endpoint(name, new OpenAICompatibleBackend(name, url, key), rpm,
+                timeout));
+        }
+        if (endpoints.isEmpty()) {
+            return new OpenAICompatibleBackend("openai", OpenAIService.DEFAULT_CHAT_URI, defaultApiKey);
+        }
+        return new BalancedChatBackend(endpoints);
+    }
+
+    /**
+     * Stage settings from voicebot.stage.{category|context|answer}.* (model, temperature, max-tokens, timeout-ms,
+     * escalation-model, min-confidence, stop[0..3]); anything not set keeps the service default.
+     */
+    private StageConfig stageConfig(Stage stage, StageConfig defaults) {
+        String prefix = "voicebot.stage." + stage.name().toLowerCase() + ".";
+        List<String> stop = new ArrayList<>();
+        // The API accepts up to four stop sequences.
+        for (int i = 0; i < 4 && environment.containsProperty(prefix + "stop[" + i + "]"); i++) {
+            stop.add(environment.getProperty(prefix + "stop[" + i + "]"));
+        }
+        return new StageConfig(
+            environment.getProperty(prefix + "model", defaults.getModel()),
+            environment.getProperty(prefix + "temperature", Double.class, defaults.getTemperature()),
+            environment.getProperty(prefix + "max-tokens", Integer.class, defaults.getMaxTokens()),
+            Duration.ofMillis(environment.getProperty(prefix + "timeout-ms", Long.class, defaults.getTimeout().toMillis())),
+            environment.getProperty(prefix + "escalation-model", defaults.getEscalationModel() != null ? defaults.getEscalationModel() : ""),
+            environment.getProperty(prefix + "min-confidence", Double.class, defaults.getMinConfidence()),
+            stop.isEmpty() ? defaults.getStop() : stop);
+    }
+
+    /**
+     * Answer limit of a channel from voicebot.generation.{channel}.{max-sentences,max-chars} (0 = no limit).
+     */
+    private GenerationBudget generationBudget(String channel, int maxSentences, int maxChars) {
+        String prefix = "voicebot.generation." + channel + ".";
+        return new GenerationBudget(
+            environment.getProperty(prefix + "max-sentences", Integer.class, maxSentences),
+            environment.getProperty(prefix + "max-chars", Integer.class, maxChars));
+    }
+
+    /**
+     * Scheduler from voicebot.scheduler.* properties: total concurrency, then per class
+     * (interactive, follow-up, background) a WFQ weight and a concurrency cap.
+     */
+    private UpstreamScheduler createScheduler() {
+        int maxConcurrency = environment.getProperty("voicebot.scheduler.max-concurrency", Integer.class, 16);
+        Map<Priority, Integer> weights = new EnumMap<>(Priority.class);
+        Map<Priority, Integer> caps = new EnumMap<>(Priority.class);
+        for (Priority p : Priority.values()) {
+            String key = p.name().toLowerCase().replace('_', '-');
+            weights.put(p, environment.getProperty("voicebot.scheduler." + key + ".weight", Integer.class, 1));
+            caps.put(p, environment.getProperty("voicebot.scheduler." + key + ".max-concurrency", Integer.class, maxConcurrency));
+        }
+        return new UpstreamScheduler(maxConcurrency, weights, caps);
+    }
+
+    private static String blankToNull(String s) {
+        return s == null || s.isBlank() ? null : s;
+    }
 }
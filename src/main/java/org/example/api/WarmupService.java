@@ -0,0 +1,64 @@
+package org.example.api;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+
+/**
+ * Runs the voicebot warm-up once the application has started (after {@link VoiceBotQueryService#init()})
+ * on a background thread, and tracks readiness: GET /api/ready only reports ready once warm-up has finished,
+ * so a load balancer doesn't send callers to a cold pod. Configured with voicebot.warmup.*.
+ */
+@Service
+public class WarmupService {
+
+    private final VoiceBotQueryService queryService;
+    private final Environment environment;
+    private volatile boolean ready;
+    private volatile String status = "starting";
+
+    public WarmupService(VoiceBotQueryService queryService, Environment environment) {
+        this.queryService = queryService;
+        this.environment = environment;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!environment.getProperty("voicebot.warmup.enabled", Boolean.class, true)) {
+            status = "warm-up disabled";
+            ready = true;
+            return;
+        }
+        Thread thread = new Thread(this::warmUp, "voicebot-warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void warmUp() {
+        status = "warming up";
+        long start = System.nanoTime();
+        try {
+            int established = queryService.warmUp(
+                environment.getProperty("voicebot.warmup.iterations", Integer.class, 200),
+                environment.getProperty("voicebot.warmup.connections", Integer.class, 4),
+                Duration.ofSeconds(environment.getProperty("voicebot.warmup.keep-alive-seconds", Long.class, 20L)));
+            status = "ready (warm-up " + (System.nanoTime() - start) / 1_000_000 + " ms, "
+                + established + " upstream connections)";
+        } catch (Exception e) {
+            // A failed warm-up only costs latency; serve traffic anyway rather than never becoming ready.
+            status = "ready (warm-up failed: " + e.getMessage() + ")";
+        }
+        ready = true;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+}
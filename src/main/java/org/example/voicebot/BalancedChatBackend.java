@@ -0,0 +1,237 @@
+package org.example.voicebot;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Spreads completions over several OpenAI-compatible endpoints (keys, regions, self-hosted servers).
+ * Each call goes to the healthy endpoint with the lowest (outstanding requests + 1) × EWMA latency that still has
+ * quota; a failed call is retried once on another endpoint while time remains. Endpoints are ejected for an
+ * exponentially growing period after consecutive failures (5xx, I/O errors, exceeding their own timeout), at once on
+ * 401/403 (bad key), and briefly paused on 429. A call that runs out of the caller's budget isn't held against the
+ * endpoint. If every endpoint is ejected, the one whose ejection ends first is tried rather than failing outright.
+ */
+public class BalancedChatBackend implements ChatBackend {
+
+    private static final double EWMA_ALPHA = 0.3;
+    private static final int EJECT_AFTER_FAILURES = 3;
+    private static final long BASE_EJECTION_NANOS = Duration.ofSeconds(5).toNanos();
+    private static final long MAX_EJECTION_NANOS = Duration.ofMinutes(2).toNanos();
+    private static final long THROTTLE_NANOS = Duration.ofSeconds(1).toNanos();
+    /** Unknown latency counts as 1 ms so fresh endpoints are tried early. */
+    private static final double MIN_LATENCY_NANOS = 1_000_000;
+    private static final int MAX_ATTEMPTS = 2;
+
+    private final List<Endpoint> endpoints;
+
+    public BalancedChatBackend(List<Endpoint> endpoints) {
+        if (endpoints == null || endpoints.isEmpty()) {
+            throw new IllegalArgumentException("At least one endpoint is required");
+        }
+        this.endpoints = List.copyOf(endpoints);
+    }
+
+    @Override
+    public ChatCompletion complete(ChatRequest request, Duration timeout) {
+        return execute(request, timeout, null);
+    }
+
+    /**
+     * Streams from the chosen endpoint. A failed stream is retried elsewhere only if none of it was delivered yet.
+     */
+    @Override
+    public ChatCompletion stream(ChatRequest request, Duration timeout, Consumer<String> onDelta) {
+        return execute(request, timeout, onDelta);
+    }
+
+    private ChatCompletion execute(ChatRequest request, Duration timeout, Consumer<String> onDelta) {
+        boolean[] delivered = new boolean[1];
+        Consumer<String> tracked = onDelta == null ? null : delta -> {
+            delivered[0] = true;
+            onDelta.accept(delta);
+        };
+        long deadline = System.nanoTime() + timeout.toNanos();
+        List<Endpoint> tried = new ArrayList<>(MAX_ATTEMPTS);
+        RuntimeException lastError = null;
+        for (int attempt = 0; attempt < Math.min(MAX_ATTEMPTS, endpoints.size()); attempt++) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) break;
+            Endpoint endpoint = choose(tried);
+            if (endpoint == null) break;
+            tried.add(endpoint);
+            endpoint.outstanding.incrementAndGet();
+            endpoint.requests.incrementAndGet();
+            boolean ownTimeout = endpoint.timeoutNanos > 0 && endpoint.timeoutNanos < remaining;
+            Duration callTimeout = Duration.ofNanos(ownTimeout ? endpoint.timeoutNanos : remaining);
+            long start = System.nanoTime();
+            try {
+                ChatCompletion completion = tracked == null
+                    ? endpoint.backend.complete(request, callTimeout)
+                    : endpoint.backend.stream(request, callTimeout, tracked);
+                endpoint.onSuccess(System.nanoTime() - start);
+                return completion;
+            } catch (UpstreamScheduler.DeadlineExceededException e) {
+                // Out of the caller's budget: the endpoint was given too little time, not at fault.
+                if (!ownTimeout) throw e;
+                endpoint.onFailure();
+                if (delivered[0]) throw e;
+                lastError = e;
+            } catch (OpenAIService.OpenAIException e) {
+                int status = e.getStatusCode();
+                if (status == 429) {
+                    endpoint.throttledUntilNanos = System.nanoTime() + THROTTLE_NANOS;
+                } else if (status == 401 || status == 403) {
+                    endpoint.eject(); // Bad key or no access: every call to it will fail the same way.
+                } else if (status >= 400 && status < 500) {
+                    throw e; // The request itself is bad; another endpoint won't help.
+                } else {
+                    endpoint.onFailure();
+                }
+                if (delivered[0]) throw e; // Part of the reply is already out; a retry would repeat it.
+                lastError = e;
+            } finally {
+                endpoint.outstanding.decrementAndGet();
+            }
+        }
+        if (lastError != null) throw lastError;
+        throw new OpenAIService.OpenAIException("No upstream endpoint available (all ejected or at quota)", 503);
+    }
+
+    /**
+     * Best available endpoint not in {@code exclude}: healthy, not throttled, with quota, lowest score.
+     * Falls back to the ejected endpoint that recovers soonest when nothing healthy is left.
+     */
+    private Endpoint choose(List<Endpoint> exclude) {
+        long now = System.nanoTime();
+        List<Endpoint> candidates = new ArrayList<>(endpoints.size());
+        Endpoint soonestEjected = null;
+        for (Endpoint e : endpoints) {
+            if (exclude.contains(e) || e.throttledUntilNanos - now > 0) continue;
+            if (e.ejectedUntilNanos - now > 0) {
+                if (soonestEjected == null || e.ejectedUntilNanos - soonestEjected.ejectedUntilNanos < 0) soonestEjected = e;
+                continue;
+            }
+            candidates.add(e);
+        }
+        candidates.sort((a, b) -> Double.compare(a.score(), b.score()));
+        for (Endpoint e : candidates) {
+            if (e.quota == null || e.quota.tryAcquire()) return e;
+        }
+        if (candidates.isEmpty() && soonestEjected != null
+                && (soonestEjected.quota == null || soonestEjected.quota.tryAcquire())) {
+            return soonestEjected;
+        }
+        return null;
+    }
+
+    @Override
+    public int preconnect(int connections) {
+        int established = 0;
+        for (Endpoint e : endpoints) {
+            established += e.backend.preconnect(connections);
+        }
+        return established;
+    }
+
+    @Override
+    public Map<String, Object> toMap() {
+        List<Map<String, Object>> list = new ArrayList<>();
+        long now = System.nanoTime();
+        for (Endpoint e : endpoints) {
+            Map<String, Object> m = new LinkedHashMap<>(e.backend.toMap());
+            m.put("name", e.name);
+            m.put("healthy", e.ejectedUntilNanos - now <= 0);
+            m.put("outstanding", e.outstanding.get());
+            m.put("ewma_latency_ms", e.ewmaLatencyNanos / 1_000_000);
+            m.put("requests", e.requests.get());
+            m.put("failures", e.failures.get());
+            m.put("ejections", e.ejections.get());
+            m.put("requests_per_minute", e.quota != null ? e.quota.getPermitsPerSecond() * 60 : 0);
+            list.add(m);
+        }
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("endpoints", list);
+        return map;
+    }
+
+    /**
+     * One balanced endpoint with its health and load state.
+     */
+    public static class Endpoint {
+        private final String name;
+        private final ChatBackend backend;
+        private final RateLimiter quota;
+        private final long timeoutNanos;
+        private final long baseEjectionNanos;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong ejections = new AtomicLong();
+        private volatile double ewmaLatencyNanos;
+        private volatile long ejectedUntilNanos = System.nanoTime();
+        private volatile long throttledUntilNanos = System.nanoTime();
+        private int consecutiveFailures;
+
+        /**
+         * @param requestsPerMinute endpoint quota; 0 or less means unlimited
+         */
+        public Endpoint(String name, ChatBackend backend, double requestsPerMinute) {
+            this(name, backend, requestsPerMinute, Duration.ZERO);
+        }
+
+        /**
+         * @param requestsPerMinute endpoint quota; 0 or less means unlimited
+         * @param timeout           longest call the endpoint gets, within the caller's budget; zero for none
+         */
+        public Endpoint(String name, ChatBackend backend, double requestsPerMinute, Duration timeout) {
+            this(name, backend, requestsPerMinute, timeout, Duration.ofNanos(BASE_EJECTION_NANOS));
+        }
+
+        Endpoint(String name, ChatBackend backend, double requestsPerMinute, Duration timeout, Duration baseEjection) {
+            this.name = name;
+            this.backend = backend;
+            this.quota = requestsPerMinute > 0 ? new RateLimiter(requestsPerMinute / 60.0) : null;
+            this.timeoutNanos = timeout.toNanos();
+            this.baseEjectionNanos = baseEjection.toNanos();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        double score() {
+            return (outstanding.get() + 1) * Math.max(ewmaLatencyNanos, MIN_LATENCY_NANOS);
+        }
+
+        synchronized void onSuccess(long latencyNanos) {
+            consecutiveFailures = 0;
+            ewmaLatencyNanos = ewmaLatencyNanos == 0 ? latencyNanos
+                : EWMA_ALPHA * latencyNanos + (1 - EWMA_ALPHA) * ewmaLatencyNanos;
+        }
+
+        synchronized void onFailure() {
+            failures.incrementAndGet();
+            consecutiveFailures++;
+            if (consecutiveFailures >= EJECT_AFTER_FAILURES) ejectFor(consecutiveFailures - EJECT_AFTER_FAILURES);
+        }
+
+        /** Counts a failure that ejects the endpoint right away. */
+        synchronized void eject() {
+            failures.incrementAndGet();
+            consecutiveFailures = Math.max(consecutiveFailures + 1, EJECT_AFTER_FAILURES);
+            ejectFor(consecutiveFailures - EJECT_AFTER_FAILURES);
+        }
+
+        private void ejectFor(int shift) {
+            long ejection = Math.min(baseEjectionNanos << Math.min(shift, 10), MAX_EJECTION_NANOS);
+            ejectedUntilNanos = System.nanoTime() + ejection;
+            ejections.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package org.example.voicebot;
+
+/**
+ * One line of a JSONL batch: {"id": "...", "query": "...", "sessionId": "..."}.
+ * id and sessionId are optional; items without a sessionId are answered without history.
+ */
+public class BatchItem {
+    private String id;
+    private String query;
+    private String sessionId;
+
+    public BatchItem() {}
+
+    public BatchItem(String id, String query, String sessionId) {
+        this.id = id;
+        this.query = query;
+        this.sessionId = sessionId;
+    }
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+    public String getQuery() { return query; }
+    public void setQuery(String query) { this.query = query; }
+    public String getSessionId() { return sessionId; }
+    public void setSessionId(String sessionId) { this.sessionId = sessionId; }
+}
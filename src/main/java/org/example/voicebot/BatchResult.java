@@ -0,0 +1,34 @@
+package org.example.voicebot;
+
+/**
+ * Result line of a batch run, emitted in completion order. {@code line} is the 1-based input line,
+ * {@code startOffsetMs} when the item started relative to the batch start, {@code durationMs} its own latency.
+ */
+public class BatchResult {
+    private final long line;
+    private final String id;
+    private final String sessionId;
+    private final String answer;
+    private final String error;
+    private final long startOffsetMs;
+    private final long durationMs;
+
+    public BatchResult(long line, String id, String sessionId, String answer, String error,
+                       long startOffsetMs, long durationMs) {
+        this.line = line;
+        this.id = id;
+        this.sessionId = sessionId;
+        this.answer = answer;
+        this.error = error;
+        this.startOffsetMs = startOffsetMs;
+        this.durationMs = durationMs;
+    }
+
+    public long getLine() { return line; }
+    public String getId() { return id; }
+    public String getSessionId() { return sessionId; }
+    public String getAnswer() { return answer; }
+    public String getError() { return error; }
+    public long getStartOffsetMs() { return startOffsetMs; }
+    public long getDurationMs() { return durationMs; }
+}
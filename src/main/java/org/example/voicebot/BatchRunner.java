@@ -0,0 +1,168 @@
+package org.example.voicebot;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Runs a JSONL stream of {@link BatchItem}s through an answer function with bounded parallelism and an
+ * upstream rate limit, writing one {@link BatchResult} JSON line per item in completion order.
+ * Input is read lazily (at most 2 × parallelism items in flight), so arbitrarily large batches stream through.
+ * Items sharing a sessionId run one after another in input order so follow-ups see the earlier turns.
+ */
+public class BatchRunner {
+
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+
+    private final int parallelism;
+    private final RateLimiter rateLimiter;
+    private final RateLimiter runLimiter;
+
+    /**
+     * @param parallelism       max concurrent upstream answers (at least 1)
+     * @param requestsPerSecond max items started per second; 0 or less means unlimited
+     */
+    public BatchRunner(int parallelism, double requestsPerSecond) {
+        this(parallelism, new RateLimiter(requestsPerSecond), null);
+    }
+
+    /**
+     * @param parallelism max concurrent upstream answers (at least 1)
+     * @param shared      limits the items started by every runner that shares it
+     * @param own         further limits this runner's items; null for none
+     */
+    public BatchRunner(int parallelism, RateLimiter shared, RateLimiter own) {
+        this.parallelism = Math.max(1, parallelism);
+        this.rateLimiter = shared;
+        this.runLimiter = own;
+    }
+
+    /**
+     * Reads items from {@code in} until EOF, answers them and writes results to {@code out}.
+     * Blocks until every item has completed. Returns the number of items whose result was written (including
+     * invalid items, which get an error result).
+     * Stops reading early if writing to {@code out} fails (e.g. the client disconnected).
+     */
+    public long run(BufferedReader in, Writer out, Function<BatchItem, String> answerer) throws IOException {
+        int maxInFlight = parallelism * 2;
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        Map<String, CompletableFuture<Void>> sessionTails = new ConcurrentHashMap<>();
+        AtomicReference<IOException> writeFailure = new AtomicReference<>();
+        AtomicLong written = new AtomicLong();
+        AtomicInteger threadIds = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, "batch-" + threadIds.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        long batchStart = System.nanoTime();
+        long lineNo = 0;
+        try {
+            String line;
+            while (writeFailure.get() == null && (line = in.readLine()) != null) {
+                lineNo++;
+                if (line.isBlank()) continue;
+                BatchItem item = parse(line);
+                if (item == null || item.getQuery() == null || item.getQuery().isBlank()) {
+                    emit(out, new BatchResult(lineNo, item != null ? item.getId() : null, item != null ? item.getSessionId() : null,
+                        null, "Missing or invalid 'query'", elapsedMs(batchStart), 0), writeFailure, written);
+                    continue;
+                }
+                inFlight.acquireUninterruptibly();
+                long itemLine = lineNo;
+                Runnable task = () -> {
+                    try {
+                        emit(out, answerOne(itemLine, item, answerer, batchStart), writeFailure, written);
+                    } finally {
+                        inFlight.release();
+                    }
+                };
+                String session = item.getSessionId();
+                if (session == null || session.isBlank()) {
+                    pool.execute(task);
+                } else {
+                    // Chain after the previous item of the same session; drop the tail once it is the last one.
+                    CompletableFuture<Void> next = sessionTails
+                        .compute(session, (k, tail) -> tail == null
+                            ? CompletableFuture.runAsync(task, pool)
+                            : tail.thenRunAsync(task, pool));
+                    next.whenComplete((v, e) -> sessionTails.remove(session, next));
+                }
+            }
+        } finally {
+            inFlight.acquireUninterruptibly(maxInFlight);
+            pool.shutdown();
+            try {
+                pool.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (writeFailure.get() != null) throw writeFailure.get();
+        return written.get();
+    }
+
+    private BatchResult answerOne(long line, BatchItem item, Function<BatchItem, String> answerer, long batchStart) {
+        try {
+            if (runLimiter != null) runLimiter.acquire();
+            rateLimiter.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new BatchResult(line, item.getId(), item.getSessionId(), null, "Interrupted", elapsedMs(batchStart), 0);
+        }
+        long start = System.nanoTime();
+        String answer = null;
+        String error = null;
+        try {
+            answer = answerer.apply(item);
+        } catch (Exception e) {
+            error = "Error: " + e.getMessage();
+        }
+        long durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        return new BatchResult(line, item.getId(), item.getSessionId(), answer, error,
+            TimeUnit.NANOSECONDS.toMillis(start - batchStart), durationMs);
+    }
+
+    private static BatchItem parse(String line) {
+        try {
+            return GSON.fromJson(line, BatchItem.class);
+        } catch (JsonParseException e) {
+            return null;
+        }
+    }
+
+    private static void emit(Writer out, BatchResult result, AtomicReference<IOException> writeFailure,
+                             AtomicLong written) {
+        if (writeFailure.get() != null) return;
+        String json = GSON.toJson(result);
+        synchronized (out) {
+            try {
+                out.write(json);
+                out.write('\n');
+                out.flush();
+                written.incrementAndGet();
+            } catch (IOException e) {
+                writeFailure.compareAndSet(null, e);
+            }
+        }
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+}
@@ -0,0 +1,65 @@
+package org.example.voicebot;
+
+import org.example.voicebot.OpenAIService.ChatMessage;
+
+import java.util.List;
+
+/**
+ * One captured request: its input (query, history snapshot, tenant, session, priority), when it arrived relative to
+ * the start of the capture, the time it was given, and what the pipeline did ({@link RoutingTrace}, degradations).
+ */
+public class CapturedTurn {
+    private final long index;
+    private final long offsetNanos;
+    private final long timestampMillis;
+    private final String tenantId;
+    private final String sessionId;
+    private final Priority priority;
+    private final long budgetNanos;
+    private final String query;
+    private final List<ChatMessage> history;
+    private final List<String> degradations;
+    private final RoutingTrace trace;
+
+    /**
+     * @param budgetNanos time the request had left when routing started; 0 if it had no deadline
+     */
+    public CapturedTurn(long index, long offsetNanos, long timestampMillis, String tenantId, String sessionId,
+                        Priority priority, long budgetNanos, String query, List<ChatMessage> history,
+                        List<String> degradations, RoutingTrace trace) {
+        this.index = index;
+        this.offsetNanos = offsetNanos;
+        this.timestampMillis = timestampMillis;
+        this.tenantId = tenantId;
+        this.sessionId = sessionId;
+        this.priority = priority;
+        this.budgetNanos = budgetNanos;
+        this.query = query;
+        this.history = history != null ? List.copyOf(history) : List.of();
+        this.degradations = degradations != null ? List.copyOf(degradations) : List.of();
+        this.trace = trace;
+    }
+
+    /**
+     * Same input and timing with the outcome of a replay.
+     */
+    public CapturedTurn withOutcome(List<String> degradations, RoutingTrace trace) {
+        return new CapturedTurn(index, offsetNanos, timestampMillis, tenantId, sessionId, priority, budgetNanos, query,
+            history, degradations, trace);
+    }
+
+    /** Position in the original capture; replays keep it so runs can be compared turn by turn. */
+    public long getIndex() { return index; }
+    /** Arrival time relative to the first captured request. */
+    public long getOffsetNanos() { return offsetNanos; }
+    public long getTimestampMillis() { return timestampMillis; }
+    public String getTenantId() { return tenantId; }
+    public String getSessionId() { return sessionId; }
+    public Priority getPriority() { return priority; }
+    /** Time the request had left when routing started; 0 if it had no deadline. */
+    public long getBudgetNanos() { return budgetNanos; }
+    public String getQuery() { return query; }
+    public List<ChatMessage> getHistory() { return history; }
+    public List<String> getDegradations() { return degradations; }
+    public RoutingTrace getTrace() { return trace; }
+}
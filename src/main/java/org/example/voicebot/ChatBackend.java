@@ -0,0 +1,50 @@
+package org.example.voicebot;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Where chat completions are executed: one OpenAI-compatible endpoint ({@link OpenAICompatibleBackend}) or a
+ * set of them behind a balancer ({@link BalancedChatBackend}). Implementations must be thread-safe.
+ */
+public interface ChatBackend {
+
+    /**
+     * Runs one completion, waiting at most {@code timeout}.
+     *
+     * @throws UpstreamScheduler.DeadlineExceededException if the call timed out
+     * @throws OpenAIService.OpenAIException               for any other upstream failure
+     */
+    ChatCompletion complete(ChatRequest request, Duration timeout);
+
+    /**
+     * Runs one completion as a stream, passing each piece of content to {@code onDelta} as it arrives, and
+     * returns the assembled completion. {@code onDelta} may throw {@link GenerationControl.Stop} to end the stream
+     * early (the upstream request is cancelled where possible); what was read so far is returned. Backends that
+     * can't stream deliver the whole reply as one piece.
+     */
+    default ChatCompletion stream(ChatRequest request, Duration timeout, Consumer<String> onDelta) {
+        ChatCompletion completion = complete(request, timeout);
+        if (completion.getContent() != null && !completion.getContent().isEmpty()) {
+            try {
+                onDelta.accept(completion.getContent());
+            } catch (GenerationControl.Stop e) {
+                // Already generated in full; the caller keeps the part it wanted.
+            }
+        }
+        return completion;
+    }
+
+    /**
+     * Opens up to {@code connections} connections ahead of traffic. Returns how many succeeded.
+     */
+    default int preconnect(int connections) {
+        return 0;
+    }
+
+    /**
+     * Monitoring view of the backend (per-endpoint state for balancers).
+     */
+    Map<String, Object> toMap();
+}
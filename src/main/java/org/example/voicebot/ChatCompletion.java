@@ -0,0 +1,33 @@
+package org.example.voicebot;
+
+/**
+ * Result of one chat completion: the first choice's message content plus the reported token usage.
+ * Token counts are -1 when the response did not include them. {@code confidence} is the probability of the
+ * generated tokens (exp of the summed logprobs) when logprobs were requested, otherwise NaN.
+ */
+public class ChatCompletion {
+    private final String content;
+    private final long promptTokens;
+    private final long cachedPromptTokens;
+    private final long completionTokens;
+    private final double confidence;
+
+    public ChatCompletion(String content, long promptTokens, long cachedPromptTokens, long completionTokens) {
+        this(content, promptTokens, cachedPromptTokens, completionTokens, Double.NaN);
+    }
+
+    public ChatCompletion(String content, long promptTokens, long cachedPromptTokens, long completionTokens,
+                          double confidence) {
+        this.content = content;
+        this.promptTokens = promptTokens;
+        this.cachedPromptTokens = cachedPromptTokens;
+        this.completionTokens = completionTokens;
+        this.confidence = confidence;
+    }
+
+    public String getContent() { return content; }
+    public long getPromptTokens() { return promptTokens; }
+    public long getCachedPromptTokens() { return cachedPromptTokens; }
+    public long getCompletionTokens() { return completionTokens; }
+    public double getConfidence() { return confidence; }
+}
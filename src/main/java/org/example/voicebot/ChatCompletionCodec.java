@@ -0,0 +1,283 @@
+package org.example.voicebot;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Streaming JSON encoding/decoding for the Chat Completions API.
+ * Requests are written with a {@link JsonWriter} straight into the thread's pooled UTF-8 buffer, and
+ * responses are read with a {@link JsonReader} from the body stream, keeping only
+ * choices[0].message.content and usage (no JsonObject tree, no full-body String). Streaming responses
+ * (server-sent events) are read line by line, handing each content delta to a callback.
+ */
+final class ChatCompletionCodec {
+
+    private ChatCompletionCodec() {}
+
+    /**
+     * Serializes the request body into this thread's pooled buffer. {@link Utf8ByteBuffer#release() Release} it
+     * once the request has been sent and answered.
+     */
+    static Utf8ByteBuffer writeRequest(String model, List<OpenAIService.ChatMessage> messages,
+                                       double temperature, int maxTokens, boolean logprobs) {
+        return writeRequest(model, messages, temperature, maxTokens, logprobs, false, List.of());
+    }
+
+    /**
+     * Same as above; {@code stream} asks for server-sent events, with usage in the final chunk, and a non-empty
+     * {@code stop} is sent as the stop sequences.
+     */
+    static Utf8ByteBuffer writeRequest(String model, List<OpenAIService.ChatMessage> messages,
+                                       double temperature, int maxTokens, boolean logprobs, boolean stream,
+                                       List<String> stop) {
+        Utf8ByteBuffer buffer = Utf8ByteBuffer.acquire();
+        try {
+            JsonWriter w = new JsonWriter(buffer);
+            w.beginObject();
+            w.name("model").value(model);
+            w.name("messages").beginArray();
+            for (OpenAIService.ChatMessage m : messages) {
+                w.beginObject();
+                w.name("role").value(m.getRole());
+                w.name("content").value(m.getContent());
+                w.endObject();
+            }
+            w.endArray();
+            w.name("temperature").value(temperature);
+            w.name("max_tokens").value(maxTokens);
+            if (logprobs) w.name("logprobs").value(true);
+            if (!stop.isEmpty()) {
+                w.name("stop").beginArray();
+                for (String s : stop) w.value(s);
+                w.endArray();
+            }
+            if (stream) {
+                w.name("stream").value(true);
+                w.name("stream_options").beginObject().name("include_usage").value(true).endObject();
+            }
+            w.endObject();
+            w.flush();
+        } catch (IOException e) {
+            // Utf8ByteBuffer never throws; JsonWriter only declares it.
+            buffer.release();
+            throw new OpenAIService.OpenAIException("Failed to serialize OpenAI request", e);
+        }
+        return buffer;
+    }
+
+    /**
+     * Reads a (non-streaming) chat completion response. The stream is consumed to the end so the
+     * HTTP connection can be reused.
+     */
+    static ChatCompletion readResponse(InputStream body) throws IOException {
+        JsonReader r = new JsonReader(new Utf8StreamReader(body));
+        ChoiceReader choice = new ChoiceReader();
+        Usage usage = new Usage();
+        boolean sawChoice = false;
+        r.beginObject();
+        while (r.hasNext()) {
+            String name = r.nextName();
+            if ("choices".equals(name) && r.peek() == JsonToken.BEGIN_ARRAY) {
+                r.beginArray();
+                if (r.hasNext()) {
+                    sawChoice = true;
+                    choice.read(r);
+                }
+                while (r.hasNext()) r.skipValue();
+                r.endArray();
+            } else if ("usage".equals(name) && r.peek() == JsonToken.BEGIN_OBJECT) {
+                usage.read(r);
+            } else {
+                r.skipValue();
+            }
+        }
+        r.endObject();
+        drain(body);
+        if (!sawChoice) {
+            throw new OpenAIService.OpenAIException("No choices in OpenAI response");
+        }
+        if (choice.content == null) {
+            throw new OpenAIService.OpenAIException("No message content in OpenAI response");
+        }
+        return new ChatCompletion(choice.content, usage.prompt, usage.cached, usage.completion,
+            choice.sawLogprobs ? Math.exp(choice.logprobSum) : Double.NaN);
+    }
+
+    /**
+     * Reads a streaming response ({@code data: {...}} lines up to {@code data: [DONE]}), passing every
+     * choices[0].delta.content to {@code onDelta} as it arrives. Returns the assembled completion. If
+     * {@code onDelta} throws {@link GenerationControl.Stop}, reading ends right there and the rest of the body is
+     * left unread, so closing it cancels the upstream request; usage is then unknown (-1).
+     */
+    static ChatCompletion readStream(InputStream body, Consumer<String> onDelta) throws IOException {
+        BufferedReader lines = new BufferedReader(new Utf8StreamReader(body), 1024);
+        StringBuilder content = new StringBuilder();
+        Usage usage = new Usage();
+        try {
+            readEvents(lines, content, usage, onDelta);
+        } catch (GenerationControl.Stop e) {
+            return new ChatCompletion(content.toString(), -1, -1, -1);
+        }
+        drain(body);
+        return new ChatCompletion(content.toString(), usage.prompt, usage.cached, usage.completion);
+    }
+
+    private static void readEvents(BufferedReader lines, StringBuilder content, Usage usage, Consumer<String> onDelta)
+            throws IOException {
+        String line;
+        while ((line = lines.readLine()) != null) {
+            if (!line.startsWith("data:")) continue; // blank separators, comments, event names
+            String data = line.substring(5).trim();
+            if ("[DONE]".equals(data)) break;
+            JsonReader r = new JsonReader(new StringReader(data));
+            r.beginObject();
+            while (r.hasNext()) {
+                String name = r.nextName();
+                if ("choices".equals(name) && r.peek() == JsonToken.BEGIN_ARRAY) {
+                    r.beginArray();
+                    if (r.hasNext()) {
+                        String delta = readDeltaContent(r);
+                        if (delta != null && !delta.isEmpty()) {
+                            content.append(delta);
+                            onDelta.accept(delta);
+                        }
+                    }
+                    while (r.hasNext()) r.skipValue();
+                    r.endArray();
+                } else if ("usage".equals(name) && r.peek() == JsonToken.BEGIN_OBJECT) {
+                    usage.read(r);
+                } else {
+                    r.skipValue();
+                }
+            }
+            r.endObject();
+        }
+    }
+
+    /** choices[i].delta.content of one stream chunk, or null. */
+    private static String readDeltaContent(JsonReader r) throws IOException {
+        if (r.peek() != JsonToken.BEGIN_OBJECT) {
+            r.skipValue();
+            return null;
+        }
+        String content = null;
+        r.beginObject();
+        while (r.hasNext()) {
+            if ("delta".equals(r.nextName()) && r.peek() == JsonToken.BEGIN_OBJECT) {
+                r.beginObject();
+                while (r.hasNext()) {
+                    if ("content".equals(r.nextName()) && r.peek() == JsonToken.STRING) content = r.nextString();
+                    else r.skipValue();
+                }
+                r.endObject();
+            } else {
+                r.skipValue();
+            }
+        }
+        r.endObject();
+        return content;
+    }
+
+    /** The usage object: prompt, cached prompt and completion tokens (-1 if absent). */
+    private static final class Usage {
+        long prompt = -1;
+        long cached = -1;
+        long completion = -1;
+
+        void read(JsonReader r) throws IOException {
+            r.beginObject();
+            while (r.hasNext()) {
+                String field = r.nextName();
+                if ("prompt_tokens".equals(field)) prompt = readLong(r);
+                else if ("completion_tokens".equals(field)) completion = readLong(r);
+                else if ("prompt_tokens_details".equals(field) && r.peek() == JsonToken.BEGIN_OBJECT) {
+                    r.beginObject();
+                    while (r.hasNext()) {
+                        if ("cached_tokens".equals(r.nextName())) cached = readLong(r);
+                        else r.skipValue();
+                    }
+                    r.endObject();
+                } else r.skipValue();
+            }
+            r.endObject();
+        }
+    }
+
+    /** Reads choices[0]: message.content and, if present, the sum of logprobs.content[].logprob. */
+    private static final class ChoiceReader {
+        String content;
+        double logprobSum;
+        boolean sawLogprobs;
+
+        void read(JsonReader r) throws IOException {
+            if (r.peek() != JsonToken.BEGIN_OBJECT) {
+                r.skipValue();
+                return;
+            }
+            r.beginObject();
+            while (r.hasNext()) {
+                String name = r.nextName();
+                if ("message".equals(name) && r.peek() == JsonToken.BEGIN_OBJECT) {
+                    r.beginObject();
+                    while (r.hasNext()) {
+                        if ("content".equals(r.nextName()) && r.peek() == JsonToken.STRING) content = r.nextString();
+                        else r.skipValue();
+                    }
+                    r.endObject();
+                } else if ("logprobs".equals(name) && r.peek() == JsonToken.BEGIN_OBJECT) {
+                    readLogprobs(r);
+                } else {
+                    r.skipValue();
+                }
+            }
+            r.endObject();
+        }
+
+        private void readLogprobs(JsonReader r) throws IOException {
+            r.beginObject();
+            while (r.hasNext()) {
+                if (!"content".equals(r.nextName()) || r.peek() != JsonToken.BEGIN_ARRAY) {
+                    r.skipValue();
+                    continue;
+                }
+                r.beginArray();
+                while (r.hasNext()) {
+                    r.beginObject();
+                    while (r.hasNext()) {
+                        if ("logprob".equals(r.nextName()) && r.peek() == JsonToken.NUMBER) {
+                            logprobSum += r.nextDouble();
+                            sawLogprobs = true;
+                        } else {
+                            r.skipValue();
+                        }
+                    }
+                    r.endObject();
+                }
+                r.endArray();
+            }
+            r.endObject();
+        }
+    }
+
+    private static long readLong(JsonReader r) throws IOException {
+        if (r.peek() != JsonToken.NUMBER) {
+            r.skipValue();
+            return -1;
+        }
+        return r.nextLong();
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        while (in.read() >= 0) {
+            // trailing whitespace only
+        }
+    }
+}
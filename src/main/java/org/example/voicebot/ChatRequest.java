@@ -0,0 +1,49 @@
+package org.example.voicebot;
+
+import org.example.voicebot.OpenAIService.ChatMessage;
+
+import java.util.List;
+
+/**
+ * One chat completion request as handed to a {@link ChatBackend}: model, messages and generation settings, and the
+ * routing stage that sent it (not sent upstream).
+ */
+public class ChatRequest {
+    private final String model;
+    private final List<ChatMessage> messages;
+    private final double temperature;
+    private final int maxTokens;
+    private final boolean logprobs;
+    private final List<String> stop;
+    private final Stage stage;
+
+    public ChatRequest(String model, List<ChatMessage> messages, double temperature, int maxTokens, boolean logprobs) {
+        this(model, messages, temperature, maxTokens, logprobs, List.of());
+    }
+
+    public ChatRequest(String model, List<ChatMessage> messages, double temperature, int maxTokens, boolean logprobs,
+                       List<String> stop) {
+        this(model, messages, temperature, maxTokens, logprobs, stop, null);
+    }
+
+    public ChatRequest(String model, List<ChatMessage> messages, double temperature, int maxTokens, boolean logprobs,
+                       List<String> stop, Stage stage) {
+        this.model = model;
+        this.messages = messages;
+        this.temperature = temperature;
+        this.maxTokens = maxTokens;
+        this.logprobs = logprobs;
+        this.stop = stop != null ? stop : List.of();
+        this.stage = stage;
+    }
+
+    public String getModel() { return model; }
+    public List<ChatMessage> getMessages() { return messages; }
+    public double getTemperature() { return temperature; }
+    public int getMaxTokens() { return maxTokens; }
+    public boolean isLogprobs() { return logprobs; }
+    /** Stop sequences; empty for none. */
+    public List<String> getStop() { return stop; }
+    /** Stage that sent the request, or null if unknown. */
+    public Stage getStage() { return stage; }
+}
@@ -0,0 +1,208 @@
+package org.example.voicebot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cluster membership and the current {@link HashRing}. Members come either from a fixed list, or from a registry
+ * directory shared by the nodes (stand-in for a real service registry, enough for several JVMs on one machine):
+ * every node rewrites {@code <dir>/<id>.node} with its URL each heartbeat, and a node whose file is older than three
+ * heartbeats is considered gone. A registry node is only in its own ring after {@link #join()} (call it once it
+ * can serve requests); until then it routes every key to its peers. When the member set changes the listener gets
+ * the old and new ring, on the heartbeat thread and under this object's lock, so it must not block (a missed
+ * heartbeat makes peers drop the node); leaving the registry on {@link #close()} reports a ring without this node,
+ * so its sessions can be handed off before shutdown.
+ */
+public class ClusterMembership implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterMembership.class);
+
+    private static final String NODE_SUFFIX = ".node";
+    private static final int MISSED_HEARTBEATS = 3;
+
+    /**
+     * Called when ring membership changes; must return quickly (hand slow work to another thread).
+     */
+    @FunctionalInterface
+    public interface Listener {
+        void ringChanged(HashRing previous, HashRing current);
+    }
+
+    private final ClusterNode self;
+    private final int virtualNodes;
+    private final Path registryDir;
+    private final Duration heartbeat;
+    private final ScheduledExecutorService background;
+    private volatile HashRing ring;
+    private volatile Listener listener = (previous, current) -> { };
+    private volatile long ringChanges;
+    private volatile boolean joined;
+    private volatile boolean closed;
+
+    private ClusterMembership(ClusterNode self, List<ClusterNode> initial, int virtualNodes, Path registryDir,
+                              Duration heartbeat) {
+        this.self = self;
+        this.virtualNodes = virtualNodes;
+        this.registryDir = registryDir;
+        this.heartbeat = heartbeat;
+        this.ring = new HashRing(initial, virtualNodes);
+        this.background = registryDir == null ? null : Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "cluster-membership");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Fixed membership; {@code self} is added if it isn't listed.
+     */
+    public static ClusterMembership fixed(ClusterNode self, List<ClusterNode> nodes, int virtualNodes) {
+        List<ClusterNode> members = new ArrayList<>(nodes);
+        if (!members.contains(self)) members.add(self);
+        return new ClusterMembership(self, members, virtualNodes, null, null);
+    }
+
+    /**
+     * Membership from a shared registry directory, refreshed every {@code heartbeat}. The node is not announced
+     * until {@link #join()}.
+     */
+    public static ClusterMembership registry(ClusterNode self, Path dir, Duration heartbeat, int virtualNodes)
+            throws IOException {
+        Files.createDirectories(dir);
+        ClusterMembership membership = new ClusterMembership(self, List.of(self), virtualNodes, dir, heartbeat);
+        List<ClusterNode> peers = membership.readMembers();
+        if (peers.size() > 1) peers.remove(self);
+        membership.ring = new HashRing(peers, virtualNodes);
+        membership.background.scheduleWithFixedDelay(membership::refreshQuietly, heartbeat.toMillis(),
+            heartbeat.toMillis(), TimeUnit.MILLISECONDS);
+        return membership;
+    }
+
+    /**
+     * Announces this node in the registry and takes it into the ring. No-op for fixed membership.
+     */
+    public synchronized void join() throws IOException {
+        if (registryDir == null || joined || closed) return;
+        joined = true;
+        refresh();
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public ClusterNode getSelf() {
+        return self;
+    }
+
+    public HashRing getRing() {
+        return ring;
+    }
+
+    /** Node that owns {@code key} in the current ring. */
+    public ClusterNode owner(String key) {
+        ClusterNode owner = ring.owner(key);
+        return owner != null ? owner : self;
+    }
+
+    /** Re-reads the registry and swaps the ring if the member set changed. No-op for fixed membership. */
+    public synchronized void refresh() throws IOException {
+        if (registryDir == null || closed) return;
+        List<ClusterNode> members = readMembers();
+        if (joined) writeHeartbeat();
+        else if (members.size() > 1) members.remove(self);
+        if (new HashSet<>(members).equals(new HashSet<>(ring.getNodes()))) return;
+        swap(new HashRing(members, virtualNodes));
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Cluster registry refresh failed: {}", e.getMessage());
+        }
+    }
+
+    private void swap(HashRing next) {
+        HashRing previous = ring;
+        ring = next;
+        ringChanges++;
+        listener.ringChanged(previous, next);
+    }
+
+    private void writeHeartbeat() throws IOException {
+        Path file = registryDir.resolve(self.getId() + NODE_SUFFIX);
+        Path tmp = registryDir.resolve(self.getId() + NODE_SUFFIX + ".tmp");
+        Files.writeString(tmp, self.getUrl().toString(), StandardCharsets.UTF_8);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private List<ClusterNode> readMembers() throws IOException {
+        long staleBefore = System.currentTimeMillis() - MISSED_HEARTBEATS * heartbeat.toMillis();
+        List<ClusterNode> members = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(registryDir, "*" + NODE_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String id = name.substring(0, name.length() - NODE_SUFFIX.length());
+                if (id.equals(self.getId())) continue;
+                try {
+                    if (Files.getLastModifiedTime(file).toMillis() < staleBefore) continue;
+                    members.add(new ClusterNode(id, URI.create(Files.readString(file, StandardCharsets.UTF_8).trim())));
+                } catch (IOException | IllegalArgumentException e) {
+                    // Removed or rewritten while listing; the next heartbeat sees it again.
+                }
+            }
+        }
+        members.add(self);
+        return members;
+    }
+
+    /**
+     * Members, ring changes and this node's id.
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("self", self.getId());
+        map.put("mode", registryDir == null ? "static" : "registry");
+        List<String> members = new ArrayList<>();
+        for (ClusterNode n : ring.getNodes()) members.add(n.toString());
+        map.put("members", members);
+        map.put("ring_changes", ringChanges);
+        return map;
+    }
+
+    /**
+     * Leaves the registry: removes this node's file and reports a ring without it. Fixed membership is unchanged.
+     */
+    @Override
+    public synchronized void close() {
+        if (registryDir == null || closed) return;
+        closed = true;
+        background.shutdownNow();
+        try {
+            Files.deleteIfExists(registryDir.resolve(self.getId() + NODE_SUFFIX));
+        } catch (IOException e) {
+            // Peers drop the node once its heartbeat goes stale.
+        }
+        List<ClusterNode> others = new ArrayList<>(ring.getNodes());
+        others.remove(self);
+        if (!others.isEmpty()) swap(new HashRing(others, virtualNodes));
+    }
+}
@@ -0,0 +1,37 @@
+package org.example.voicebot;
+
+import java.net.URI;
+import java.util.Objects;
+
+/**
+ * One voicebot node of a cluster: a stable id (hashed onto the ring) and the base URL peers reach it at.
+ */
+public class ClusterNode {
+    private final String id;
+    private final URI url;
+
+    public ClusterNode(String id, URI url) {
+        this.id = id;
+        this.url = url;
+    }
+
+    public String getId() { return id; }
+    public URI getUrl() { return url; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ClusterNode n)) return false;
+        return id.equals(n.id) && url.equals(n.url);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, url);
+    }
+
+    @Override
+    public String toString() {
+        return id + "@" + url;
+    }
+}
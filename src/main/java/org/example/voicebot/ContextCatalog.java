@@ -10,26 +10,127 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Catalog of context schemas loaded from JSON.
  * Each context has a name, schema (fields + descriptions), and example queries
  * so OpenAI can decide which context to use for a given customer question.
+ * A catalog is an immutable version; {@link #withChanges} returns the next one, reusing the cached prompt parts of
+ * the contexts it doesn't touch and updating a built vector index in place.
  */
 public class ContextCatalog {
     private static final Gson GSON = new Gson();
 
     private final List<ContextSchema> contexts;
+    private final SharedKnowledgePool pool;
+    private final long version;
+    private final Map<String, String> contextSections = new ConcurrentHashMap<>();
+    private final Map<String, String> classifierBlocks = new ConcurrentHashMap<>();
+    private volatile String classifierPrompt;
+    private volatile SemanticIndex<ContextSchema> semanticIndex;
 
     public ContextCatalog(List<ContextSchema> contexts) {
-        this.contexts = contexts != null ? new ArrayList<>(contexts) : new ArrayList<>();
+        this(contexts, null);
+    }
+
+    /**
+     * Catalog whose schemas and prompt sections are deduplicated through {@code pool} (shared with other tenants).
+     */
+    public ContextCatalog(List<ContextSchema> contexts, SharedKnowledgePool pool) {
+        this.pool = pool;
+        this.version = 0;
+        this.contexts = new ArrayList<>();
+        if (contexts != null) {
+            for (ContextSchema c : contexts) {
+                this.contexts.add(pool != null ? pool.context(c) : c);
+            }
+        }
+    }
+
+    private ContextCatalog(List<ContextSchema> contexts, SharedKnowledgePool pool, long version) {
+        this.pool = pool;
+        this.version = version;
+        this.contexts = contexts;
     }
 
     public List<ContextSchema> getContexts() {
         return new ArrayList<>(contexts);
     }
 
+    public int size() {
+        return contexts.size();
+    }
+
+    /**
+     * Number of edits since the catalog was loaded.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Next version of this catalog: each schema of {@code upserts} replaces the context with the same name (in
+     * place) or is appended, and the contexts named in {@code deletedNames} are removed. Callers serialize edits.
+     *
+     * @throws IllegalArgumentException if an upserted schema has no name
+     * @throws NoSuchElementException   if a deleted name isn't in this version
+     */
+    public ContextCatalog withChanges(List<ContextSchema> upserts, Collection<String> deletedNames) {
+        for (ContextSchema c : upserts) {
+            if (c.getName() == null || c.getName().isBlank()) throw new IllegalArgumentException("Context name is required");
+        }
+        for (String name : deletedNames) {
+            if (getContextByName(name) == null) throw new NoSuchElementException("Unknown context: " + name);
+        }
+        List<ContextSchema> next = new ArrayList<>(contexts);
+        List<ContextSchema> added = new ArrayList<>();
+        List<ContextSchema> removed = new ArrayList<>();
+        Set<String> touched = new HashSet<>(deletedNames);
+        next.removeIf(c -> deletedNames.contains(c.getName()) && removed.add(c));
+        for (ContextSchema c : upserts) {
+            ContextSchema schema = pool != null ? pool.context(c) : c;
+            touched.add(schema.getName());
+            int at = -1;
+            for (int i = 0; i < next.size(); i++) {
+                if (schema.getName().equals(next.get(i).getName())) {
+                    at = i;
+                    break;
+                }
+            }
+            if (at < 0) {
+                next.add(schema);
+            } else {
+                ContextSchema old = next.set(at, schema);
+                if (!added.remove(old)) removed.add(old);
+            }
+            added.add(schema);
+        }
+        ContextCatalog catalog = new ContextCatalog(next, pool, version + 1);
+        contextSections.forEach((name, section) -> {
+            if (!touched.contains(name)) catalog.contextSections.put(name, section);
+        });
+        classifierBlocks.forEach((name, block) -> {
+            if (!touched.contains(name)) catalog.classifierBlocks.put(name, block);
+        });
+        catalog.getClassifierPrompt();
+        for (ContextSchema c : added) catalog.toPromptSectionForContext(c.getName());
+        SemanticIndex<ContextSchema> index = semanticIndex;
+        if (index != null) {
+            List<String> texts = new ArrayList<>();
+            List<ContextSchema> targets = new ArrayList<>();
+            addSemanticTexts(added, texts, targets);
+            catalog.semanticIndex = index.withChanges(texts, targets, removed);
+        }
+        return catalog;
+    }
+
     /**
      * Returns the context schema for the given name, or null if not found.
      */
@@ -46,6 +147,68 @@ public class ContextCatalog {
      * Used when only one context's data is being sent to the model.
      */
     public String toPromptSectionForContext(String contextName) {
+        if (contextName == null) return "";
+        return contextSections.computeIfAbsent(contextName, this::computePromptSectionForContext);
+    }
+
+    /**
+     * System prompt for LLM context classification (names, descriptions, example questions), cached.
+     */
+    public String getClassifierPrompt() {
+        String cached = classifierPrompt;
+        if (cached == null) {
+            List<String> blocks = new ArrayList<>(contexts.size());
+            for (ContextSchema ctx : contexts) {
+                blocks.add(classifierBlocks.computeIfAbsent(ctx.getName(), n -> VoiceBotPromptBuilder.contextClassifierBlock(ctx)));
+            }
+            cached = share(VoiceBotPromptBuilder.joinContextClassifierPrompt(blocks));
+            classifierPrompt = cached;
+        }
+        return cached;
+    }
+
+    /**
+     * Vector index over every context's example queries and description for semantic context routing, cached per
+     * provider (and saved under {@code cacheDir} if not null).
+     */
+    public SemanticIndex<ContextSchema> getSemanticIndex(EmbeddingProvider provider, Path cacheDir) {
+        SemanticIndex<ContextSchema> cached = semanticIndex;
+        if (cached == null || cached.getProvider() != provider) {
+            List<String> texts = new ArrayList<>();
+            List<ContextSchema> targets = new ArrayList<>();
+            addSemanticTexts(contexts, texts, targets);
+            cached = SemanticIndex.build(provider, texts, targets, cacheDir, "contexts");
+            semanticIndex = cached;
+        }
+        return cached;
+    }
+
+    private static void addSemanticTexts(List<ContextSchema> contexts, List<String> texts, List<ContextSchema> targets) {
+        for (ContextSchema ctx : contexts) {
+            List<String> examples = ctx.getExampleQueries() != null ? ctx.getExampleQueries() : List.of();
+            for (String text : examples) {
+                if (text == null || text.isBlank()) continue;
+                texts.add(text);
+                targets.add(ctx);
+            }
+            if (ctx.getDescription() != null && !ctx.getDescription().isBlank()) {
+                texts.add(ctx.getDescription());
+                targets.add(ctx);
+            }
+        }
+    }
+
+    /**
+     * Builds the classifier prompt and every per-context prompt section up front.
+     */
+    public void precompute() {
+        getClassifierPrompt();
+        for (ContextSchema ctx : contexts) {
+            toPromptSectionForContext(ctx.getName());
+        }
+    }
+
+    private String computePromptSectionForContext(String contextName) {
         ContextSchema ctx = getContextByName(contextName);
         if (ctx == null) return "";
         StringBuilder sb = new StringBuilder();
@@ -62,7 +225,11 @@ public class ContextCatalog {
             sb.append("- Example queries: ").append(String.join("; ", ctx.getExampleQueries())).append("\n");
         }
         sb.append("\n");
-        return sb.toString();
+        return share(sb.toString());
+    }
+
+    private String share(String s) {
+        return pool != null ? pool.string(s) : s;
     }
 
     /**
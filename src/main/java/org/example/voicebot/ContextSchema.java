@@ -3,6 +3,7 @@ package org.example.voicebot;
 import com.google.gson.annotations.SerializedName;
 
 import java.util.List;
+import java.util.Objects;
 
 /**
  * Defines one customer context "table": name, description, schema (fields), and example queries
@@ -39,5 +40,30 @@ public class ContextSchema {
         public void setField(String field) { this.field = field; }
         public String getDescription() { return description; }
         public void setDescription(String description) { this.description = description; }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof SchemaField f)) return false;
+            return Objects.equals(field, f.field) && Objects.equals(description, f.description);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(field, description);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ContextSchema c)) return false;
+        return Objects.equals(name, c.name) && Objects.equals(description, c.description)
+            && Objects.equals(schema, c.schema) && Objects.equals(exampleQueries, c.exampleQueries);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, description, schema, exampleQueries);
     }
 }
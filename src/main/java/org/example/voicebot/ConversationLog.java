@@ -0,0 +1,633 @@
+package org.example.voicebot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Durable append-only log of conversation turns, written through memory-mapped segment files.
+ * <p>
+ * An append copies the encoded turn into the active segment's mapping (microseconds, no syscall); a background
+ * flusher forces dirty ranges to disk every {@code flushInterval} (group commit). Turns therefore survive a process
+ * crash immediately and an OS crash once flushed. Each record is {@code length, crc32c, seq, timestamp, session id,
+ * query, reply}; on open, segments are scanned up to the first torn or corrupt record, and a fresh segment is
+ * started. The next segment file is created and mapped in the background ahead of time, so a roll only swaps
+ * it in. Each segment keeps a small per-session index of record offsets so history can be paged from disk
+ * without reading whole sessions into the heap. Sealed segments past the retention period are deleted or rewritten
+ * without their expired turns in the background; only the swap of a compacted segment holds up appends.
+ * <p>
+ * Turns handed over from another node ({@link #importTurns}) belong before the session's own turns, so the session
+ * is rewritten: a reset marker, then its handed-over turns, then its own turns. Replay and paging stop looking
+ * further back at a reset marker.
+ */
+public class ConversationLog implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ConversationLog.class);
+    private static final int MAGIC = 0x5642434C; // "VBCL"
+    private static final int FILE_HEADER = 8;    // magic + version
+    private static final int VERSION = 1;
+    private static final int RECORD_HEADER = 8;  // length + crc
+    private static final String SUFFIX = ".log";
+    /** Flags in the high bits of the record's session id length. */
+    private static final int SID_LENGTH_MASK = 0x3FFF;
+    private static final int FLAG_RESET = 0x8000;
+    private static final int FLAG_IMPORTED = 0x4000;
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final Duration retention;
+    private final CopyOnWriteArrayList<Segment> segments = new CopyOnWriteArrayList<>();
+    private final AtomicLong appendedTurns = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong compactedSegments = new AtomicLong();
+    private final AtomicLong deletedSegments = new AtomicLong();
+    private final ScheduledExecutorService background;
+    /** Creates and maps the next segment; separate from {@link #background} so a long compaction can't delay it. */
+    private final ExecutorService preallocator;
+    private final CRC32C crc = new CRC32C();
+    /** Guards the active segment's write position and the segment list on roll; appends are serialized on it. */
+    private final Object writeLock = new Object();
+    /** Serializes compactions (background and direct calls). */
+    private final Object compactLock = new Object();
+    private volatile Segment active;
+    /** The next segment, being prepared or ready; guarded by {@link #writeLock}. */
+    private Future<Segment> spare;
+    private long nextSeq;
+    private long nextSegmentId;
+
+    private ConversationLog(Path dir, int segmentBytes, Duration retention) {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.retention = retention;
+        this.background = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "conversation-log");
+            t.setDaemon(true);
+            return t;
+        });
+        this.preallocator = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "conversation-log-roll");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Opens (or creates) the log in {@code dir}, recovering existing segments, and starts the background
+     * flusher and compactor.
+     *
+     * @param segmentBytes  size of each mapped segment file
+     * @param flushInterval group-commit interval: how long a turn may sit in the page cache before being forced
+     * @param retention     turns older than this are dropped by compaction
+     * @param compactEvery  how often compaction runs
+     */
+    public static ConversationLog open(Path dir, int segmentBytes, Duration flushInterval, Duration retention,
+                                       Duration compactEvery) throws IOException {
+        Files.createDirectories(dir);
+        ConversationLog opened = new ConversationLog(dir, segmentBytes, retention);
+        opened.recover();
+        opened.background.scheduleWithFixedDelay(opened::flush, flushInterval.toMillis(), flushInterval.toMillis(),
+            TimeUnit.MILLISECONDS);
+        opened.background.scheduleWithFixedDelay(opened::compactQuietly, compactEvery.toMillis(),
+            compactEvery.toMillis(), TimeUnit.MILLISECONDS);
+        return opened;
+    }
+
+    /**
+     * Appends one exchange. Does not wait for the disk; see {@link #flush()}.
+     */
+    public void append(String sessionId, String query, String reply) {
+        byte[] sid = sessionId.getBytes(StandardCharsets.UTF_8);
+        byte[] q = query.getBytes(StandardCharsets.UTF_8);
+        byte[] r = reply.getBytes(StandardCharsets.UTF_8);
+        checkSize(sid, q, r);
+        long now = System.currentTimeMillis();
+        synchronized (writeLock) {
+            write(sessionId, sid, 0, q, r, now);
+        }
+        appendedTurns.incrementAndGet();
+    }
+
+    /**
+     * Adds turns handed over from another node ({@code messages}: user/assistant pairs) after the session's
+     * earlier handed-over turns and before the turns answered here, by rewriting the session's records behind a
+     * reset marker. Turns keep their original timestamps.
+     */
+    public void importTurns(String sessionId, List<OpenAIService.ChatMessage> messages) {
+        byte[] sid = sessionId.getBytes(StandardCharsets.UTF_8);
+        List<byte[]> imported = new ArrayList<>();
+        for (int i = 0; i + 1 < messages.size(); i += 2) {
+            byte[] q = messages.get(i).getContent().getBytes(StandardCharsets.UTF_8);
+            byte[] r = messages.get(i + 1).getContent().getBytes(StandardCharsets.UTF_8);
+            checkSize(sid, q, r);
+            imported.add(q);
+            imported.add(r);
+        }
+        if (imported.isEmpty()) return;
+        long now = System.currentTimeMillis();
+        synchronized (writeLock) {
+            List<Turn> current = currentTurns(sessionId);
+            write(sessionId, sid, FLAG_RESET, new byte[0], new byte[0], now);
+            for (Turn t : current) {
+                if (t.imported) rewrite(sessionId, sid, t);
+            }
+            for (int i = 0; i < imported.size(); i += 2) {
+                write(sessionId, sid, FLAG_IMPORTED, imported.get(i), imported.get(i + 1), now);
+            }
+            for (Turn t : current) {
+                if (!t.imported) rewrite(sessionId, sid, t);
+            }
+        }
+        appendedTurns.addAndGet(imported.size() / 2);
+    }
+
+    private void checkSize(byte[] sid, byte[] q, byte[] r) {
+        int payload = 8 + 8 + 2 + sid.length + 4 + q.length + 4 + r.length;
+        if (sid.length > SID_LENGTH_MASK || FILE_HEADER + RECORD_HEADER + payload > segmentBytes) {
+            throw new IllegalArgumentException("Turn too large for a " + segmentBytes + "-byte segment");
+        }
+    }
+
+    /** Caller holds {@link #writeLock}. */
+    private void rewrite(String sessionId, byte[] sid, Turn turn) {
+        write(sessionId, sid, turn.imported ? FLAG_IMPORTED : 0, turn.getQuery().getBytes(StandardCharsets.UTF_8),
+            turn.getReply().getBytes(StandardCharsets.UTF_8), turn.getTimestampMillis());
+    }
+
+    /** The session's turns since its last reset marker, oldest first. Caller holds {@link #writeLock}. */
+    private List<Turn> currentTurns(String sessionId) {
+        List<Turn> turns = new ArrayList<>();
+        outer:
+        for (int s = segments.size() - 1; s >= 0; s--) {
+            Segment segment = segments.get(s);
+            int[] offsets = segment.offsetsFor(sessionId);
+            for (int i = offsets.length - 1; i >= 0; i--) {
+                if (segment.isReset(offsets[i])) break outer;
+                turns.add(segment.read(offsets[i]));
+            }
+        }
+        Collections.reverse(turns);
+        return turns;
+    }
+
+    /** Writes one record into the active segment (rolling if full). Caller holds {@link #writeLock}. */
+    private void write(String sessionId, byte[] sid, int flags, byte[] q, byte[] r, long timestamp) {
+        int payload = 8 + 8 + 2 + sid.length + 4 + q.length + 4 + r.length;
+        Segment segment = active;
+        if (segment.end + RECORD_HEADER + payload > segmentBytes) {
+            segment = roll();
+        }
+        long seq = nextSeq++;
+        ByteBuffer buf = segment.buffer;
+        int offset = segment.end;
+        int pos = offset + RECORD_HEADER;
+        buf.putLong(pos, seq);
+        buf.putLong(pos + 8, timestamp);
+        buf.putShort(pos + 16, (short) (sid.length | flags));
+        buf.put(pos + 18, sid);
+        pos += 18 + sid.length;
+        buf.putInt(pos, q.length);
+        buf.put(pos + 4, q);
+        pos += 4 + q.length;
+        buf.putInt(pos, r.length);
+        buf.put(pos + 4, r);
+        crc.reset();
+        crc.update(buf.slice(offset + RECORD_HEADER, payload));
+        buf.putInt(offset + 4, (int) crc.getValue());
+        // Length last: a record with a zero length is never read, so a crash mid-copy leaves no partial record.
+        buf.putInt(offset, payload);
+        segment.end = offset + RECORD_HEADER + payload;
+        segment.onRecord(sessionId, offset, seq, timestamp);
+    }
+
+    /**
+     * Forces every written-but-unflushed range to disk. Runs on the flusher thread; also safe to call directly.
+     */
+    public synchronized void flush() {
+        for (Segment segment : segments) {
+            if (segment.writable && segment.flushedTo < segment.end) {
+                int end = segment.end;
+                segment.buffer.force(segment.flushedTo, end - segment.flushedTo);
+                segment.flushedTo = end;
+                flushes.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Feeds every turn newer than {@code since} to {@code sink} in append order (used to rebuild in-memory
+     * sessions on startup), and every reset marker of a rewritten session. Segments entirely older than
+     * {@code since} are skipped without being read.
+     */
+    public void replay(Duration since, TurnSink sink) {
+        long cutoff = System.currentTimeMillis() - since.toMillis();
+        for (Segment segment : segments) {
+            if (segment.lastTimestamp < cutoff) continue;
+            for (int offset = FILE_HEADER; offset < segment.end; ) {
+                Turn turn = segment.read(offset);
+                if (segment.isReset(offset)) {
+                    sink.reset(turn.getSessionId());
+                } else if (turn.getTimestampMillis() >= cutoff) {
+                    if (turn.imported) sink.acceptImported(turn.getSessionId(), turn.getQuery(), turn.getReply());
+                    else sink.accept(turn.getSessionId(), turn.getQuery(), turn.getReply());
+                }
+                offset += RECORD_HEADER + segment.buffer.getInt(offset);
+            }
+        }
+    }
+
+    /**
+     * Up to {@code limit} turns of the session older than the {@code before} cursor (a turn's sequence number;
+     * {@link Long#MAX_VALUE} for the newest), oldest first. Only the matching records are read from the mappings.
+     */
+    public Page page(String sessionId, long before, int limit) {
+        List<Turn> turns = new ArrayList<>(Math.max(0, limit));
+        List<Segment> snapshot = new ArrayList<>(segments);
+        boolean more = false;
+        outer:
+        for (int s = snapshot.size() - 1; s >= 0; s--) {
+            Segment segment = snapshot.get(s);
+            if (segment.firstSeq >= before) continue;
+            int[] offsets = segment.offsetsFor(sessionId);
+            for (int i = offsets.length - 1; i >= 0; i--) {
+                if (segment.seqAt(offsets[i]) >= before) continue;
+                if (segment.isReset(offsets[i])) break outer; // Older records were rewritten after it.
+                if (turns.size() == limit) {
+                    more = true;
+                    break outer;
+                }
+                turns.add(segment.read(offsets[i]));
+            }
+        }
+        Collections.reverse(turns);
+        long next = more && !turns.isEmpty() ? turns.get(0).getSeq() : -1;
+        return new Page(turns, next);
+    }
+
+    /**
+     * Deletes sealed segments whose turns are all past retention, and rewrites those that are partly expired
+     * without the expired turns (and without the unused tail of the mapping). Sealed segments never change, so
+     * they are read and rewritten without the write lock; it is only taken to swap the result into the list.
+     */
+    public void compact() throws IOException {
+        synchronized (compactLock) {
+            compactSealed();
+        }
+    }
+
+    private void compactSealed() throws IOException {
+        long cutoff = System.currentTimeMillis() - retention.toMillis();
+        Segment current = active;
+        for (Segment segment : new ArrayList<>(segments)) {
+            if (segment == current || segment.firstTimestamp >= cutoff && segment.lastSeq >= 0) continue;
+            if (segment.lastTimestamp < cutoff) {
+                synchronized (writeLock) {
+                    segments.remove(segment);
+                }
+                Files.deleteIfExists(segment.path);
+                deletedSegments.incrementAndGet();
+                continue;
+            }
+            Path tmp = segment.path.resolveSibling(segment.path.getFileName() + ".compact");
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer header = ByteBuffer.allocate(FILE_HEADER).putInt(MAGIC).putInt(VERSION).flip();
+                out.write(header);
+                for (int offset = FILE_HEADER; offset < segment.end; ) {
+                    int length = RECORD_HEADER + segment.buffer.getInt(offset);
+                    if (segment.timestampAt(offset) >= cutoff) {
+                        out.write(segment.buffer.slice(offset, length));
+                    }
+                    offset += length;
+                }
+                out.force(true);
+            }
+            // Mapped and indexed before the rename; the mapping follows the file.
+            Segment compacted = Segment.load(tmp, segment.path, segment.id);
+            synchronized (writeLock) {
+                int at = segments.indexOf(segment);
+                if (at < 0) {
+                    Files.deleteIfExists(tmp);
+                    continue;
+                }
+                Files.move(tmp, segment.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                segments.set(at, compacted);
+            }
+            compactedSegments.incrementAndGet();
+        }
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Conversation log compaction failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Counters for the admin view: segments, turns appended since start, flushes, compactions.
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("dir", dir.toString());
+        map.put("segments", segments.size());
+        map.put("appended_turns", appendedTurns.get());
+        map.put("flushes", flushes.get());
+        map.put("compacted_segments", compactedSegments.get());
+        map.put("deleted_segments", deletedSegments.get());
+        return map;
+    }
+
+    @Override
+    public void close() {
+        preallocator.shutdownNow();
+        background.shutdownNow();
+        try {
+            background.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    private void recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(dir)) {
+            files = list.filter(p -> p.getFileName().toString().endsWith(SUFFIX)).sorted().toList();
+        }
+        for (Path file : files) {
+            long id = Long.parseLong(file.getFileName().toString().replace(SUFFIX, ""));
+            Segment segment = Segment.load(file, id);
+            nextSegmentId = id + 1;
+            if (segment.lastSeq < 0) {
+                Files.delete(file); // e.g. the active segment of a run that logged nothing
+                continue;
+            }
+            segments.add(segment);
+            if (segment.lastSeq >= nextSeq) nextSeq = segment.lastSeq + 1;
+        }
+        // Never append to a recovered segment: its tail may be torn, and a fresh file keeps recovery simple.
+        synchronized (writeLock) {
+            roll();
+        }
+    }
+
+    /**
+     * Swaps in the prepared next segment (creating one here only if that failed) and starts preparing the one
+     * after it. Caller holds {@link #writeLock}. The sealed segment is forced by the next flush.
+     */
+    private Segment roll() {
+        Segment segment = null;
+        if (spare != null) {
+            try {
+                segment = spare.get();
+            } catch (ExecutionException e) {
+                log.warn("Conversation log segment preallocation failed: {}", e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            spare = null;
+        }
+        if (segment == null) {
+            try {
+                segment = createSegment(nextSegmentId++);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot create conversation log segment", e);
+            }
+        }
+        segments.add(segment);
+        active = segment;
+        // Ids are taken in roll order, so segment files sort in append order. An unused spare is empty and is
+        // deleted on the next open.
+        long id = nextSegmentId++;
+        try {
+            spare = preallocator.submit(() -> createSegment(id));
+        } catch (RejectedExecutionException e) {
+            // Closing.
+        }
+        return segment;
+    }
+
+    private Segment createSegment(long id) throws IOException {
+        return Segment.create(dir.resolve(String.format("%020d%s", id, SUFFIX)), id, segmentBytes);
+    }
+
+    /**
+     * Receives replayed turns.
+     */
+    @FunctionalInterface
+    public interface TurnSink {
+        void accept(String sessionId, String query, String reply);
+
+        /** A turn that was handed over from another node ({@link #importTurns}). */
+        default void acceptImported(String sessionId, String query, String reply) {
+            accept(sessionId, query, reply);
+        }
+
+        /** The session's earlier turns were superseded by the rewrite that follows. */
+        default void reset(String sessionId) {
+        }
+    }
+
+    /**
+     * One logged exchange.
+     */
+    public static class Turn {
+        private final long seq;
+        private final long timestampMillis;
+        private final String sessionId;
+        private final String query;
+        private final String reply;
+        final boolean imported;
+
+        Turn(long seq, long timestampMillis, String sessionId, String query, String reply, boolean imported) {
+            this.seq = seq;
+            this.timestampMillis = timestampMillis;
+            this.sessionId = sessionId;
+            this.query = query;
+            this.reply = reply;
+            this.imported = imported;
+        }
+
+        public long getSeq() { return seq; }
+        public long getTimestampMillis() { return timestampMillis; }
+        public String getSessionId() { return sessionId; }
+        public String getQuery() { return query; }
+        public String getReply() { return reply; }
+    }
+
+    /**
+     * A page of turns, oldest first; {@code nextBefore} is the cursor for the next older page, or -1 if none.
+     */
+    public static class Page {
+        private final List<Turn> turns;
+        private final long nextBefore;
+
+        Page(List<Turn> turns, long nextBefore) {
+            this.turns = turns;
+            this.nextBefore = nextBefore;
+        }
+
+        public List<Turn> getTurns() { return turns; }
+        public long getNextBefore() { return nextBefore; }
+    }
+
+    /**
+     * One segment file: its mapping, used length and per-session record offsets. Records are immutable once
+     * written; {@code end} only grows (under the log's write lock) and is read by flush and readers.
+     */
+    private static final class Segment {
+        final Path path;
+        final long id;
+        final MappedByteBuffer buffer;
+        /** Created by this process (read-write mapping that the flusher forces); recovered segments are read-only. */
+        final boolean writable;
+        final Map<String, int[]> index = new HashMap<>();
+        final Map<String, Integer> indexSizes = new HashMap<>();
+        volatile int end = FILE_HEADER;
+        volatile int flushedTo = FILE_HEADER;
+        volatile long firstSeq = Long.MAX_VALUE;
+        volatile long lastSeq = -1;
+        volatile long firstTimestamp = Long.MAX_VALUE;
+        volatile long lastTimestamp = Long.MIN_VALUE;
+
+        private Segment(Path path, long id, MappedByteBuffer buffer, boolean writable) {
+            this.path = path;
+            this.id = id;
+            this.buffer = buffer;
+            this.writable = writable;
+        }
+
+        static Segment create(Path path, long id, int size) throws IOException {
+            try (FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = ch.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                buffer.putInt(0, MAGIC).putInt(4, VERSION);
+                return new Segment(path, id, buffer, true);
+            }
+        }
+
+        /**
+         * Maps an existing segment and indexes its records up to the first zero length, overrun or CRC mismatch.
+         */
+        static Segment load(Path path, long id) throws IOException {
+            return load(path, path, id);
+        }
+
+        /** Same as above, reading {@code file} for a segment that will live at {@code path}. */
+        static Segment load(Path file, Path path, long id) throws IOException {
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+                Segment segment = new Segment(path, id, buffer, false);
+                if (buffer.capacity() < FILE_HEADER || buffer.getInt(0) != MAGIC) {
+                    return segment;
+                }
+                CRC32C crc = new CRC32C();
+                int offset = FILE_HEADER;
+                while (offset + RECORD_HEADER <= buffer.capacity()) {
+                    int payload = buffer.getInt(offset);
+                    if (payload <= 0 || offset + RECORD_HEADER + payload > buffer.capacity()) break;
+                    crc.reset();
+                    crc.update(buffer.slice(offset + RECORD_HEADER, payload));
+                    if ((int) crc.getValue() != buffer.getInt(offset + 4)) break;
+                    int sidLen = buffer.getShort(offset + RECORD_HEADER + 16) & SID_LENGTH_MASK;
+                    byte[] sid = new byte[sidLen];
+                    buffer.get(offset + RECORD_HEADER + 18, sid);
+                    segment.onRecord(new String(sid, StandardCharsets.UTF_8).intern(), offset,
+                        segment.seqAt(offset), segment.timestampAt(offset));
+                    offset += RECORD_HEADER + payload;
+                }
+                segment.end = offset;
+                segment.flushedTo = offset;
+                return segment;
+            }
+        }
+
+        void onRecord(String sessionId, int offset, long seq, long timestamp) {
+            synchronized (index) {
+                int size = indexSizes.getOrDefault(sessionId, 0);
+                int[] offsets = index.get(sessionId);
+                if (offsets == null || offsets.length == size) {
+                    offsets = offsets == null ? new int[4] : Arrays.copyOf(offsets, size * 2);
+                    index.put(sessionId, offsets);
+                }
+                offsets[size] = offset;
+                indexSizes.put(sessionId, size + 1);
+            }
+            if (firstSeq == Long.MAX_VALUE) firstSeq = seq;
+            lastSeq = seq;
+            // Rewritten turns keep their original timestamps, so records are not in timestamp order.
+            if (timestamp < firstTimestamp) firstTimestamp = timestamp;
+            if (timestamp > lastTimestamp) lastTimestamp = timestamp;
+        }
+
+        int[] offsetsFor(String sessionId) {
+            synchronized (index) {
+                int[] offsets = index.get(sessionId);
+                return offsets == null ? new int[0] : Arrays.copyOf(offsets, indexSizes.get(sessionId));
+            }
+        }
+
+        long seqAt(int offset) {
+            return buffer.getLong(offset + RECORD_HEADER);
+        }
+
+        long timestampAt(int offset) {
+            return buffer.getLong(offset + RECORD_HEADER + 8);
+        }
+
+        boolean isReset(int offset) {
+            return (buffer.getShort(offset + RECORD_HEADER + 16) & FLAG_RESET) != 0;
+        }
+
+        Turn read(int offset) {
+            int pos = offset + RECORD_HEADER;
+            long seq = buffer.getLong(pos);
+            long timestamp = buffer.getLong(pos + 8);
+            int sidField = buffer.getShort(pos + 16);
+            int sidLength = sidField & SID_LENGTH_MASK;
+            String sessionId = readString(pos + 18, sidLength);
+            pos += 18 + sidLength;
+            int qLen = buffer.getInt(pos);
+            String query = readString(pos + 4, qLen);
+            pos += 4 + qLen;
+            String reply = readString(pos + 4, buffer.getInt(pos));
+            return new Turn(seq, timestamp, sessionId, query, reply, (sidField & FLAG_IMPORTED) != 0);
+        }
+
+        private String readString(int pos, int length) {
+            byte[] bytes = new byte[length];
+            buffer.get(pos, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package org.example.voicebot;
+
+import org.example.voicebot.OpenAIService.ChatMessage;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.Map;
+
+/**
+ * In-memory conversation history per session id, trimmed to the last {@code maxMessages} messages
+ * (whole user/assistant exchanges). Safe for concurrent use; turns of one session are appended atomically.
+ * At most {@code maxSessions} sessions are kept: the least recently used one is dropped to make room, and sessions
+ * not used for {@code idleTimeout} are dropped as well.
+ * <p>
+ * Handoff between nodes: {@link #export} snapshots a session, and {@link #removeExported} drops it while
+ * returning the turns appended after the snapshot, so turns answered during a handoff are not lost. On the
+ * receiving side {@link #importHandedOff} keeps handed-over messages in arrival order, ahead of the turns this node
+ * answered itself.
+ */
+public class ConversationSessions {
+
+    private final int maxMessages;
+    private final int maxSessions;
+    private final long idleNanos;
+    /** In access order; guarded by itself. A history's own lock may be taken before this one, never after. */
+    private final LinkedHashMap<String, History> sessions = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Unbounded number of sessions, kept until removed. */
+    public ConversationSessions(int maxMessages) {
+        this(maxMessages, Integer.MAX_VALUE, Duration.ZERO);
+    }
+
+    /**
+     * @param maxSessions max sessions kept (at least 1)
+     * @param idleTimeout sessions unused this long are dropped; zero keeps them until evicted for room
+     */
+    public ConversationSessions(int maxMessages, int maxSessions, Duration idleTimeout) {
+        this.maxMessages = maxMessages;
+        this.maxSessions = Math.max(1, maxSessions);
+        this.idleNanos = idleTimeout.toNanos();
+    }
+
+    /**
+     * Copy of the session's history (empty if the session is unknown or the id is null).
+     */
+    public List<ChatMessage> snapshot(String sessionId) {
+        if (sessionId == null) return new ArrayList<>();
+        History history = get(sessionId);
+        if (history == null) return new ArrayList<>();
+        synchronized (history) {
+            return new ArrayList<>(history.messages);
+        }
+    }
+
+    /** Ids of all sessions with history. */
+    public Set<String> sessionIds() {
+        synchronized (sessions) {
+            return Set.copyOf(sessions.keySet());
+        }
+    }
+
+    /** Drops a session's history. */
+    public void remove(String sessionId) {
+        if (sessionId == null) return;
+        History history = get(sessionId);
+        if (history == null) return;
+        synchronized (history) {
+            unmap(sessionId, history);
+            history.removed = true;
+        }
+    }
+
+    /**
+     * The session's history for a handoff, to be confirmed with {@link #removeExported}; null if the session is
+     * unknown.
+     */
+    public Export export(String sessionId) {
+        History history = sessionId != null ? get(sessionId) : null;
+        if (history == null) return null;
+        synchronized (history) {
+            return new Export(history, new ArrayList<>(history.messages), history.appended);
+        }
+    }
+
+    /**
+     * Drops an exported session and returns the messages appended since the export (empty if none), which the
+     * export didn't contain.
+     */
+    public List<ChatMessage> removeExported(String sessionId, Export export) {
+        History history = get(sessionId);
+        if (history == null) return new ArrayList<>();
+        synchronized (history) {
+            unmap(sessionId, history);
+            history.removed = true;
+            // A different history was started after the exported one was dropped: all of it is new.
+            long since = history == export.history ? export.stamp : 0;
+            int late = (int) Math.min(history.messages.size(), 2 * (history.appended - since));
+            return new ArrayList<>(history.messages.subList(history.messages.size() - late, history.messages.size()));
+        }
+    }
+
+    /**
+     * Puts {@code older} messages back before whatever the session already has (e.g. turns whose handoff
+     * failed), then trims the oldest exchanges.
+     */
+    public void prepend(String sessionId, List<ChatMessage> older) {
+        if (sessionId == null || older.isEmpty()) return;
+        while (true) {
+            History history = getOrCreate(sessionId);
+            synchronized (history) {
+                if (history.removed) continue;
+                history.messages.addAll(0, older);
+                trim(history);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Adds messages handed over from another node: after any handed-over messages the session already has, before
+     * the turns answered here. Trims the oldest exchanges.
+     */
+    public void importHandedOff(String sessionId, List<ChatMessage> messages) {
+        if (sessionId == null || messages.isEmpty()) return;
+        while (true) {
+            History history = getOrCreate(sessionId);
+            synchronized (history) {
+                if (history.removed) continue;
+                history.messages.addAll(history.imported, messages);
+                history.imported += messages.size();
+                trim(history);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Appends one exchange (user query + assistant reply) and trims the oldest exchanges. No-op for a null id.
+     */
+    public void append(String sessionId, String query, String reply) {
+        if (sessionId == null) return;
+        while (true) {
+            History history = getOrCreate(sessionId);
+            synchronized (history) {
+                if (history.removed) continue; // Dropped concurrently; start a new history.
+                history.messages.add(new ChatMessage("user", query));
+                history.messages.add(new ChatMessage("assistant", reply));
+                history.appended++;
+                trim(history);
+                return;
+            }
+        }
+    }
+
+    private History get(String sessionId) {
+        synchronized (sessions) {
+            History history = sessions.get(sessionId);
+            if (history != null) history.lastUsedNanos = System.nanoTime();
+            return history;
+        }
+    }
+
+    /** The session's history, created if needed; drops idle sessions and, over the cap, the least recently used. */
+    private History getOrCreate(String sessionId) {
+        List<History> evicted = new ArrayList<>();
+        History history;
+        synchronized (sessions) {
+            long now = System.nanoTime();
+            history = sessions.get(sessionId);
+            if (history == null) {
+                history = new History();
+                sessions.put(sessionId, history);
+            }
+            history.lastUsedNanos = now;
+            Iterator<History> it = sessions.values().iterator();
+            while (it.hasNext()) {
+                History eldest = it.next();
+                boolean idle = idleNanos > 0 && now - eldest.lastUsedNanos > idleNanos;
+                if (eldest == history || !idle && sessions.size() <= maxSessions) break;
+                it.remove();
+                evicted.add(eldest);
+            }
+        }
+        // Outside the map lock: a history's lock is never taken while holding it.
+        for (History e : evicted) {
+            synchronized (e) {
+                e.removed = true;
+            }
+        }
+        return history;
+    }
+
+    private void unmap(String sessionId, History history) {
+        synchronized (sessions) {
+            sessions.remove(sessionId, history);
+        }
+    }
+
+    private void trim(History history) {
+        while (history.messages.size() > maxMessages) {
+            history.messages.remove(0);
+            history.messages.remove(0);
+            history.imported = Math.max(0, history.imported - 2);
+        }
+    }
+
+    /** Caller synchronizes on the instance. */
+    private static final class History {
+        final List<ChatMessage> messages = new ArrayList<>();
+        /** Leading messages that came from other nodes. */
+        int imported;
+        /** Exchanges appended here; an {@link Export} remembers the count it saw. */
+        long appended;
+        /** Set once the history left the map; writers then start a new one. */
+        boolean removed;
+        /** Guarded by the sessions map. */
+        long lastUsedNanos;
+    }
+
+    /**
+     * A session's messages at export time; pass it back to {@link #removeExported}.
+     */
+    public static class Export {
+        private final History history;
+        private final List<ChatMessage> messages;
+        private final long stamp;
+
+        private Export(History history, List<ChatMessage> messages, long stamp) {
+            this.history = history;
+            this.messages = messages;
+            this.stamp = stamp;
+        }
+
+        public List<ChatMessage> getMessages() { return messages; }
+    }
+}
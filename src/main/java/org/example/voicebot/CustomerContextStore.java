@@ -82,16 +82,17 @@ public class CustomerContextStore {
         balance.put("active_offers", "None");
         balance.put("call_history_summary", "Last 5: 2 min out, 1 min in, 0.5 min out, 3 min in, 1 min out");
         store.putContext("balance_and_usage", balance);
-        store.putContext("loans", Map.of(
-            "customer_id", "CUST-1001",
-            "has_active_loan", "true",
-            "loan_type", "Device loan",
-            "outstanding_amount", "₹4,200",
-            "emi_amount", "₹700",
-            "next_emi_date", "2025-03-01",
-            "loan_tenure_months", "6",
-            "eligibility_for_advance", "Yes (bill advance up to ₹500)"
-        ));
+        // LinkedHashMap (not Map.of) so field order, and therefore the prompt bytes, are the same on every JVM run.
+        Map<String, String> loans = new LinkedHashMap<>();
+        loans.put("customer_id", "CUST-1001");
+        loans.put("has_active_loan", "true");
+        loans.put("loan_type", "Device loan");
+        loans.put("outstanding_amount", "₹4,200");
+        loans.put("emi_amount", "₹700");
+        loans.put("next_emi_date", "2025-03-01");
+        loans.put("loan_tenure_months", "6");
+        loans.put("eligibility_for_advance", "Yes (bill advance up to ₹500)");
+        store.putContext("loans", loans);
         return store;
     }
 }
@@ -0,0 +1,21 @@
+package org.example.voicebot;
+
+/**
+ * Turns text into a fixed-length vector for {@link SemanticIndex}. Register an implementation as a Spring bean to
+ * replace {@link HashingEmbeddingProvider} (e.g. one calling an embeddings API).
+ */
+public interface EmbeddingProvider {
+
+    int dimension();
+
+    /** Embedding of {@code text}, {@link #dimension()} long; need not be normalized. */
+    float[] embed(String text);
+
+    /**
+     * Identifies the model and its settings; part of the on-disk index cache key, so change it whenever the same
+     * text would embed differently.
+     */
+    default String id() {
+        return getClass().getName() + "/" + dimension();
+    }
+}
@@ -0,0 +1,259 @@
+package org.example.voicebot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Structured per-turn event log written off the request path. Request threads copy a turn into a preallocated
+ * {@link TurnEvent} slot of a lock-free {@link EventRing} and return; one background thread drains the ring in
+ * batches, formats them as JSON lines and appends each batch to {@code events.jsonl} with a single write. When the
+ * file would exceed {@code maxFileBytes} it is rotated to {@code events.1.jsonl} (older files shift up, the oldest
+ * beyond {@code maxFiles} is deleted). If the ring is full, {@link OverflowPolicy#DROP} discards the event (counted)
+ * and {@link OverflowPolicy#BLOCK} makes the request thread wait for the writer. On {@link #close} the writer
+ * stops only once no publish is in progress, so every event counted as published is written (or counted as a
+ * write failure).
+ */
+public class EventLog implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(EventLog.class);
+    private static final String ACTIVE = "events.jsonl";
+    private static final String NEXT = "events.jsonl.next";
+    private static final int BATCH = 512;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+    private static final long BLOCKED_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    public enum OverflowPolicy {
+        DROP,
+        BLOCK;
+
+        /** Parses "drop" / "block" (case-insensitive); DROP for null, blank or unknown values. */
+        public static OverflowPolicy fromString(String value) {
+            return value != null && value.trim().equalsIgnoreCase("block") ? BLOCK : DROP;
+        }
+    }
+
+    private final Path dir;
+    private final EventRing<TurnEvent> ring;
+    private final OverflowPolicy policy;
+    private final long maxFileBytes;
+    private final int maxFiles;
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong blockedPublishes = new AtomicLong();
+    /** Publishes between their check of {@link #closed} and the publish of their slot. */
+    private final AtomicInteger publishing = new AtomicInteger();
+    private final Thread writer;
+    private volatile boolean closed;
+    // Writer thread only (counters are read by toMap()).
+    private final StringBuilder batch = new StringBuilder(64 * 1024);
+    private final Consumer<TurnEvent> appender = this::append;
+    private FileChannel out;
+    private long fileBytes;
+    private int batchEvents;
+    private volatile long written;
+    private volatile long writeFailures;
+    private volatile long rotations;
+    private volatile long rotationFailures;
+
+    private EventLog(Path dir, int capacity, OverflowPolicy policy, long maxFileBytes, int maxFiles) throws IOException {
+        this.dir = dir;
+        this.ring = new EventRing<>(capacity, TurnEvent::new);
+        this.policy = policy;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = Math.max(1, maxFiles);
+        openActive();
+        writer = new Thread(this::run, "event-log");
+        writer.setDaemon(true);
+    }
+
+    /**
+     * Opens the log in {@code dir} (appending to an existing {@code events.jsonl}) and starts the writer.
+     *
+     * @param capacity     ring slots, rounded up to a power of two
+     * @param maxFileBytes size at which the active file is rotated
+     * @param maxFiles     files kept, the active one included
+     */
+    public static EventLog open(Path dir, int capacity, OverflowPolicy policy, long maxFileBytes, int maxFiles)
+            throws IOException {
+        Files.createDirectories(dir);
+        int slots = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        EventLog opened = new EventLog(dir, slots, policy, maxFileBytes, maxFiles);
+        opened.writer.start();
+        return opened;
+    }
+
+    /**
+     * Publishes a finished turn ({@code error} set if it failed; {@code trace} and {@code error} may be null).
+     * Returns false if the event was dropped because the ring was full (or the log is closed).
+     */
+    public boolean publish(String tenant, String session, Priority priority, String query, String reply,
+                           List<String> degradations, RoutingTrace trace, long totalNanos, Throwable error) {
+        // Registered before reading closed: the writer doesn't stop while this publish can still land in the ring.
+        publishing.incrementAndGet();
+        try {
+            long seq = closed ? -1 : ring.tryClaim();
+            if (seq < 0 && policy == OverflowPolicy.BLOCK && !closed) {
+                blockedPublishes.incrementAndGet();
+                while ((seq = ring.tryClaim()) < 0 && !closed) LockSupport.parkNanos(BLOCKED_PARK_NANOS);
+            }
+            if (seq < 0) {
+                dropped.incrementAndGet();
+                return false;
+            }
+            published.incrementAndGet();
+            ring.get(seq).set(tenant, session, priority, query, reply, degradations, trace, totalNanos, error);
+            ring.publish(seq);
+            return true;
+        } finally {
+            publishing.decrementAndGet();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            // Once closed with nothing in progress, later publishes see closed and drop; the rest is in the ring.
+            boolean stopping = closed && publishing.get() == 0;
+            if (ring.drain(BATCH, appender) > 0) {
+                writeBatch();
+            } else if (stopping) {
+                break;
+            } else {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            log.warn("Event log close failed: {}", e.getMessage());
+        }
+    }
+
+    private void append(TurnEvent event) {
+        event.appendJson(batch);
+        batch.append('\n');
+        batchEvents++;
+    }
+
+    private void writeBatch() {
+        byte[] bytes = batch.toString().getBytes(StandardCharsets.UTF_8);
+        int events = batchEvents;
+        batch.setLength(0);
+        batchEvents = 0;
+        if (fileBytes > 0 && fileBytes + bytes.length > maxFileBytes) {
+            try {
+                rotate();
+            } catch (IOException e) {
+                // Keep appending to the current file; the next batch tries again.
+                if (rotationFailures == 0) log.warn("Event log rotation failed: {}", e.getMessage());
+                rotationFailures++;
+            }
+        }
+        try {
+            ByteBuffer buf = ByteBuffer.wrap(bytes);
+            while (buf.hasRemaining()) out.write(buf);
+            fileBytes += bytes.length;
+            written += events;
+        } catch (IOException e) {
+            if (writeFailures == 0) log.warn("Event log write failed: {}", e.getMessage());
+            writeFailures += events;
+        }
+    }
+
+    /**
+     * events.jsonl becomes events.1.jsonl, events.1 becomes events.2, ...; the oldest beyond maxFiles goes. The new
+     * file is opened first, so if that fails the log keeps writing to the current one.
+     */
+    private void rotate() throws IOException {
+        Path next = dir.resolve(NEXT);
+        FileChannel fresh = FileChannel.open(next, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            Files.deleteIfExists(rotated(maxFiles - 1));
+            for (int i = maxFiles - 2; i >= 1; i--) {
+                if (Files.exists(rotated(i))) Files.move(rotated(i), rotated(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+            if (maxFiles > 1) {
+                // Missing if an earlier rotation failed after moving it.
+                if (Files.exists(dir.resolve(ACTIVE))) {
+                    Files.move(dir.resolve(ACTIVE), rotated(1), StandardCopyOption.REPLACE_EXISTING);
+                }
+            } else {
+                Files.deleteIfExists(dir.resolve(ACTIVE));
+            }
+            Files.move(next, dir.resolve(ACTIVE), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            fresh.close();
+            throw e;
+        }
+        FileChannel old = out;
+        out = fresh;
+        fileBytes = 0;
+        rotations++;
+        try {
+            old.close();
+        } catch (IOException e) {
+            log.warn("Event log close failed: {}", e.getMessage());
+        }
+    }
+
+    private Path rotated(int index) {
+        return dir.resolve("events." + index + ".jsonl");
+    }
+
+    private void openActive() throws IOException {
+        out = FileChannel.open(dir.resolve(ACTIVE), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.APPEND);
+        fileBytes = out.size();
+    }
+
+    /**
+     * Stops accepting events, writes what is queued and closes the file.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Policy, ring occupancy and counters: published, dropped (ring full or closed), blocked publishes, written,
+     * write failures, rotations, failed rotations.
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("dir", dir.toString());
+        map.put("policy", policy.name().toLowerCase());
+        map.put("capacity", ring.capacity());
+        map.put("queued", ring.size());
+        map.put("published", published.get());
+        map.put("dropped", dropped.get());
+        map.put("blocked_publishes", blockedPublishes.get());
+        map.put("written", written);
+        map.put("write_failures", writeFailures);
+        map.put("rotations", rotations);
+        map.put("rotation_failures", rotationFailures);
+        return map;
+    }
+}
@@ -0,0 +1,76 @@
+package org.example.voicebot;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Bounded lock-free ring of preallocated event slots for many producers and one consumer. A producer claims a
+ * sequence with a CAS on the head, fills the slot and publishes it; the consumer reads published slots in order and
+ * frees them by advancing the tail. Nothing is allocated per event.
+ */
+final class EventRing<T> {
+
+    private final T[] slots;
+    private final int mask;
+    /** Per slot: the sequence last published into it (-1 before the first). */
+    private final AtomicLongArray published;
+    private final AtomicLong head = new AtomicLong();
+    private volatile long tail;
+
+    @SuppressWarnings("unchecked")
+    EventRing(int capacity, Supplier<T> factory) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two >= 2");
+        }
+        slots = (T[]) new Object[capacity];
+        for (int i = 0; i < capacity; i++) slots[i] = factory.get();
+        mask = capacity - 1;
+        published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) published.set(i, -1);
+    }
+
+    int capacity() {
+        return slots.length;
+    }
+
+    /** Claims the next sequence, or returns -1 if the ring is full. */
+    long tryClaim() {
+        while (true) {
+            long h = head.get();
+            if (h - tail >= slots.length) return -1;
+            if (head.compareAndSet(h, h + 1)) return h;
+        }
+    }
+
+    /** The slot of a claimed sequence, to fill before {@link #publish}. */
+    T get(long seq) {
+        return slots[(int) seq & mask];
+    }
+
+    void publish(long seq) {
+        published.set((int) seq & mask, seq);
+    }
+
+    /**
+     * Consumer side: hands up to {@code max} published slots, in sequence order, to {@code handler} and frees them.
+     * Stops early at a slot that is claimed but not yet published. Returns how many were handled.
+     */
+    int drain(int max, Consumer<T> handler) {
+        long t = tail;
+        int n = 0;
+        while (n < max && published.get((int) t & mask) == t) {
+            handler.accept(slots[(int) t & mask]);
+            t++;
+            n++;
+        }
+        if (n > 0) tail = t;
+        return n;
+    }
+
+    /** Claimed but not yet consumed. */
+    long size() {
+        return Math.max(0, head.get() - tail);
+    }
+}
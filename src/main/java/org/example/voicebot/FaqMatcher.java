@@ -0,0 +1,269 @@
+package org.example.voicebot;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Finds the knowledge entry whose customer_query a caller's utterance is essentially identical to. Queries are
+ * normalized (Unicode compatibility form, case, typographic quotes, punctuation, whitespace); an exact normalized
+ * match scores 1, otherwise the score is the Dice coefficient of the padded character trigram sets, looked up
+ * through an inverted trigram index. Every entry is indexed, so a close match to an entry that isn't
+ * {@code serve_verbatim} still wins over a weaker match to one that is; {@link #verbatim} decides what to serve.
+ * Trigram overlap alone can't tell "activate" from "deactivate" or "can" from "why can't", so a served match must
+ * also use the same words as the entry apart from {@link #STOPWORDS}.
+ * <p>
+ * A matcher is an immutable view of an append-only {@link Store}: it sees the entries added before it was made and
+ * not removed since. {@link #withChanges} appends and stamps removals in the shared store and returns a new view,
+ * so an edit costs O(changed entries) and older views keep matching as before. The store is rebuilt when removed
+ * entries outnumber live ones, or when an edit doesn't start from the newest view.
+ */
+public class FaqMatcher {
+
+    /** Words that don't change what is asked; negations and question words are deliberately not among them. */
+    static final Set<String> STOPWORDS = Set.of("a", "an", "the", "i", "me", "my", "you", "your", "it", "this",
+        "that", "do", "does", "can", "could", "is", "are", "am", "be", "to", "of", "on", "in", "for", "with", "at",
+        "by", "please", "how", "any", "some");
+
+    /** Removal stamp of an entry that is still live. */
+    private static final int LIVE = Integer.MAX_VALUE;
+
+    private final Store store;
+    /** Entries with a lower store id are visible to this view ... */
+    private final int limit;
+    /** ... unless they were removed at or before this version. */
+    private final int version;
+
+    public FaqMatcher(List<KnowledgeEntry> knowledge) {
+        this(knowledge.stream().map(KnowledgeEntry::getId).toList(), knowledge);
+    }
+
+    /**
+     * Matcher over {@code knowledge}, where {@code ids.get(i)} names {@code knowledge.get(i)} for {@link #withChanges}
+     * (entries may be shared without an id of their own).
+     */
+    public FaqMatcher(List<String> ids, List<KnowledgeEntry> knowledge) {
+        this(Store.of(ids, knowledge), 0);
+    }
+
+    private FaqMatcher(Store store, int version) {
+        this.store = store;
+        this.limit = store.size;
+        this.version = version;
+    }
+
+    /**
+     * View with {@code added} (named by {@code addedIds}) indexed and the entries with ids in {@code removedIds} gone.
+     * Callers serialize edits.
+     */
+    public FaqMatcher withChanges(List<String> addedIds, List<KnowledgeEntry> added, Collection<String> removedIds) {
+        if (addedIds.size() != added.size()) throw new IllegalArgumentException("ids and entries differ in size");
+        if (store.version != version || store.removed + removedIds.size() > store.size / 2 + 64) {
+            Set<String> removed = new HashSet<>(removedIds);
+            List<String> liveIds = new ArrayList<>();
+            List<KnowledgeEntry> live = new ArrayList<>();
+            for (int id = 0; id < limit; id++) {
+                String entryId = store.entryIds.get(id);
+                if (store.removedAt[id] <= version || removed.contains(entryId)) continue;
+                liveIds.add(entryId);
+                live.add(store.entries[id]);
+            }
+            liveIds.addAll(addedIds);
+            live.addAll(added);
+            return new FaqMatcher(liveIds, live);
+        }
+        int next = version + 1;
+        for (String id : removedIds) {
+            Integer storeId = store.byEntryId.remove(id);
+            if (storeId == null) continue;
+            store.removedAt[storeId] = next;
+            store.removed++;
+        }
+        store.append(addedIds, added);
+        store.version = next;
+        return new FaqMatcher(store, next);
+    }
+
+    /**
+     * Best-scoring entry for {@code query}, or null if nothing shares a trigram with it.
+     */
+    public Match match(String query) {
+        String normalized = normalize(query);
+        if (normalized.isEmpty() || limit == 0) return null;
+        KnowledgeEntry[] entries = store.entries;
+        int[] removedAt = store.removedAt;
+        Posting hit = store.exact.get(normalized);
+        if (hit != null) {
+            for (int id : hit.ids) {
+                if (id < 0 || id >= limit) break;
+                if (removedAt[id] > version) return new Match(entries[id], 1.0);
+            }
+        }
+        int[] trigramCounts = store.trigramCounts;
+        Set<Long> grams = trigrams(normalized);
+        int[] shared = new int[limit];
+        for (Long g : grams) {
+            Posting p = store.postings.get(g);
+            if (p == null) continue;
+            for (int id : p.ids) {
+                if (id < 0 || id >= limit) break;
+                shared[id]++;
+            }
+        }
+        int best = -1;
+        double bestScore = 0;
+        for (int id = 0; id < shared.length; id++) {
+            if (shared[id] == 0 || removedAt[id] <= version) continue;
+            double score = 2.0 * shared[id] / (grams.size() + trigramCounts[id]);
+            if (score > bestScore) {
+                bestScore = score;
+                best = id;
+            }
+        }
+        return best < 0 ? null : new Match(entries[best], bestScore);
+    }
+
+    /**
+     * The {@code serve_verbatim} entry to answer {@code query} with: the best match, if it scores at least
+     * {@code minSimilarity} and has the same words apart from stopwords. Null otherwise.
+     */
+    public KnowledgeEntry verbatim(String query, double minSimilarity) {
+        Match match = match(query);
+        if (match == null || match.getSimilarity() < minSimilarity || !match.getEntry().isServeVerbatim()) return null;
+        if (match.getSimilarity() < 1 && !terms(query).equals(terms(match.getEntry().getCustomerQuery()))) return null;
+        return match.getEntry();
+    }
+
+    /** Normalized words of {@code text} without stopwords. */
+    static Set<String> terms(String text) {
+        Set<String> terms = new HashSet<>();
+        for (String word : normalize(text).split(" ")) {
+            if (!word.isEmpty() && !STOPWORDS.contains(word)) terms.add(word);
+        }
+        return terms;
+    }
+
+    /**
+     * Lower-case letters and digits separated by single spaces; typographic apostrophes are dropped like ASCII ones
+     * ("don’t" and "dont" match).
+     */
+    static String normalize(String text) {
+        if (text == null) return "";
+        String s = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase();
+        StringBuilder sb = new StringBuilder(s.length());
+        boolean space = true;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\'' || c == '’' || c == '‘') continue;
+            if (Character.isLetterOrDigit(c)) {
+                sb.append(c);
+                space = false;
+            } else if (!space) {
+                sb.append(' ');
+                space = true;
+            }
+        }
+        int end = sb.length();
+        if (end > 0 && sb.charAt(end - 1) == ' ') sb.setLength(end - 1);
+        return sb.toString();
+    }
+
+    /** Character trigrams of " text ", packed three chars to a long. */
+    private static Set<Long> trigrams(String normalized) {
+        String padded = " " + normalized + " ";
+        Set<Long> grams = new HashSet<>(padded.length() * 2);
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            grams.add(((long) padded.charAt(i) << 32) | ((long) padded.charAt(i + 1) << 16) | padded.charAt(i + 2));
+        }
+        return grams;
+    }
+
+    /**
+     * Indexed entries, shared by the views of one edit history. Only the editing thread writes; readers get a
+     * consistent prefix because every write happens before the view that exposes it is published. Ids in a posting
+     * ascend, so readers stop at the first id their view doesn't cover (or a -1 free slot).
+     */
+    private static final class Store {
+        volatile KnowledgeEntry[] entries = new KnowledgeEntry[16];
+        volatile int[] trigramCounts = new int[16];
+        volatile int[] removedAt = new int[16];
+        final Map<String, Posting> exact = new ConcurrentHashMap<>();
+        final Map<Long, Posting> postings = new ConcurrentHashMap<>();
+        /** Editing thread only: entry id by store id, and store id of each live entry that has an id. */
+        final List<String> entryIds = new ArrayList<>();
+        final Map<String, Integer> byEntryId = new HashMap<>();
+        int size;
+        int removed;
+        int version;
+
+        static Store of(List<String> ids, List<KnowledgeEntry> knowledge) {
+            if (ids.size() != knowledge.size()) throw new IllegalArgumentException("ids and entries differ in size");
+            Store store = new Store();
+            store.append(ids, knowledge);
+            return store;
+        }
+
+        void append(List<String> ids, List<KnowledgeEntry> added) {
+            for (int i = 0; i < added.size(); i++) {
+                KnowledgeEntry e = added.get(i);
+                String entryId = ids.get(i);
+                String normalized = normalize(e.getCustomerQuery());
+                if (normalized.isEmpty()) continue;
+                int id = size;
+                if (id == entries.length) {
+                    int capacity = id * 2;
+                    entries = Arrays.copyOf(entries, capacity);
+                    trigramCounts = Arrays.copyOf(trigramCounts, capacity);
+                    removedAt = Arrays.copyOf(removedAt, capacity);
+                }
+                Set<Long> grams = trigrams(normalized);
+                entries[id] = e;
+                trigramCounts[id] = grams.size();
+                removedAt[id] = LIVE;
+                exact.computeIfAbsent(normalized, k -> new Posting()).add(id);
+                for (Long g : grams) postings.computeIfAbsent(g, k -> new Posting()).add(id);
+                entryIds.add(entryId);
+                if (entryId != null) byEntryId.put(entryId, id);
+                size = id + 1;
+            }
+        }
+    }
+
+    /** Ascending store ids, -1 past the end. */
+    private static final class Posting {
+        volatile int[] ids = {-1, -1};
+        int size;
+
+        void add(int id) {
+            if (size == ids.length) {
+                int[] grown = Arrays.copyOf(ids, size * 2);
+                Arrays.fill(grown, size, grown.length, -1);
+                ids = grown;
+            }
+            ids[size++] = id;
+        }
+    }
+
+    /**
+     * Matched entry and its similarity (0..1).
+     */
+    public static class Match {
+        private final KnowledgeEntry entry;
+        private final double similarity;
+
+        Match(KnowledgeEntry entry, double similarity) {
+            this.entry = entry;
+            this.similarity = similarity;
+        }
+
+        public KnowledgeEntry getEntry() { return entry; }
+        public double getSimilarity() { return similarity; }
+    }
+}
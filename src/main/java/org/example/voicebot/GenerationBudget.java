@@ -0,0 +1,52 @@
+package org.example.voicebot;
+
+/**
+ * How much answer a channel can use: at most {@code maxSentences} sentences and about {@code maxChars} characters
+ * (0 = no limit). A voice caller hears two or three sentences, so generating more only costs time. The answer
+ * stage caps max_tokens to fit the budget and stops the stream at the first sentence boundary that reaches it
+ * (see {@link GenerationControl}).
+ */
+public class GenerationBudget {
+
+    /** No limit: the stage's own max_tokens, the reply is never cut. */
+    public static final GenerationBudget UNLIMITED = new GenerationBudget(0, 0);
+
+    /** Characters assumed per sentence when only the sentence count is limited. */
+    private static final int CHARS_PER_SENTENCE = 120;
+    /** Rough characters per token of English text. */
+    private static final double CHARS_PER_TOKEN = 4;
+    /** Room left in the token cap so the stream can reach the boundary that ends the budget. */
+    private static final double HEADROOM = 1.5;
+
+    private final int maxSentences;
+    private final int maxChars;
+
+    public GenerationBudget(int maxSentences, int maxChars) {
+        this.maxSentences = Math.max(0, maxSentences);
+        this.maxChars = Math.max(0, maxChars);
+    }
+
+    public int getMaxSentences() { return maxSentences; }
+    public int getMaxChars() { return maxChars; }
+
+    public boolean isLimited() {
+        return maxSentences > 0 || maxChars > 0;
+    }
+
+    /**
+     * max_tokens for a reply within this budget: the estimated tokens of its characters plus headroom, never more
+     * than {@code stageMaxTokens}.
+     */
+    public int maxTokens(int stageMaxTokens) {
+        if (!isLimited()) return stageMaxTokens;
+        long chars = maxChars > 0 ? maxChars : Long.MAX_VALUE;
+        if (maxSentences > 0) chars = Math.min(chars, (long) maxSentences * CHARS_PER_SENTENCE);
+        int tokens = (int) Math.ceil(chars * HEADROOM / CHARS_PER_TOKEN);
+        return Math.min(stageMaxTokens, tokens);
+    }
+
+    @Override
+    public String toString() {
+        return "GenerationBudget{maxSentences=" + maxSentences + ", maxChars=" + maxChars + "}";
+    }
+}
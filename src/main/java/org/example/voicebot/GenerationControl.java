@@ -0,0 +1,143 @@
+package org.example.voicebot;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Stream consumer of one answer call that enforces a {@link GenerationBudget}: streamed text is passed on to the
+ * caller's consumer up to the first sentence boundary where the budget is reached, then {@link Stop} is thrown to
+ * end the stream, which cancels the upstream request (see {@link ChatBackend#stream}).
+ * <p>
+ * In measure mode (a background shadow of a cut answer, sent without the reduced max_tokens) the stream is not
+ * cancelled; the rest is read but not passed on, so the tokens and time a cut saves can be sampled. Not thread-safe;
+ * one instance per call, fed from the streaming thread.
+ */
+final class GenerationControl implements Consumer<String> {
+
+    /** Ends a stream from inside its consumer; thrown without a stack trace. */
+    static final class Stop extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private Stop() {
+            super("generation budget reached", null, false, false);
+        }
+    }
+
+    private static final Stop STOP = new Stop();
+    private static final int CHARS_PER_TOKEN = 4;
+
+    private final GenerationBudget budget;
+    private final Consumer<String> onDelta;
+    private final boolean measure;
+    private final SentenceChunker chunker;
+    private final StringBuilder text = new StringBuilder();
+    private int sentences;
+    private long cutAt = -1;
+    private long cutNanos;
+    private int deltas;
+    private int deltasAtCut;
+    private boolean stopped;
+
+    /**
+     * @param onDelta the caller's consumer, or null if the caller doesn't stream
+     * @param measure read the whole stream instead of cancelling it
+     */
+    GenerationControl(GenerationBudget budget, Consumer<String> onDelta, boolean measure) {
+        this.budget = budget;
+        this.onDelta = onDelta;
+        this.measure = measure;
+        this.chunker = new SentenceChunker(1, this::onSentence);
+    }
+
+    @Override
+    public void accept(String delta) {
+        deltas++;
+        if (cutAt >= 0) {
+            if (measure) return;
+            stopped = true;
+            throw STOP;
+        }
+        int start = text.length();
+        text.append(delta);
+        chunker.accept(delta);
+        if (cutAt < 0) {
+            if (onDelta != null) onDelta.accept(delta);
+            return;
+        }
+        deltasAtCut = deltas;
+        cutNanos = System.nanoTime();
+        // The boundary may have been confirmed only by this piece's leading whitespace.
+        if (onDelta != null && cutAt > start) onDelta.accept(text.substring(start, (int) cutAt));
+        if (!measure) {
+            stopped = true;
+            throw STOP;
+        }
+    }
+
+    private void onSentence(String sentence) {
+        if (cutAt >= 0) return;
+        sentences++;
+        if (budget.getMaxSentences() > 0 && sentences >= budget.getMaxSentences()
+            || budget.getMaxChars() > 0 && chunker.getConsumed() >= budget.getMaxChars()) {
+            cutAt = chunker.getConsumed();
+        }
+    }
+
+    /** True if the reply was cut at the budget. */
+    boolean isCut() {
+        return cutAt >= 0;
+    }
+
+    /**
+     * True if the upstream request was cancelled at the cut (false when the backend had already generated the
+     * whole reply, or in measure mode).
+     */
+    boolean isCancelled(ChatCompletion completion) {
+        return stopped && completion.getCompletionTokens() < 0;
+    }
+
+    /** True if this is a measure-mode call. */
+    boolean isMeasuring() {
+        return measure;
+    }
+
+    /** True if this call read a streamed reply past its cut, so {@link #tailTokens} and {@link #tailNanos} apply. */
+    boolean isMeasured(ChatCompletion completion) {
+        return measure && isCut() && deltasAtCut > 1;
+    }
+
+    /**
+     * Tokens generated after the cut: the share of streamed pieces after it, applied to the reported completion
+     * tokens (one token per piece if not reported), so both sides of the cut are counted in the same unit.
+     */
+    long tailTokens(ChatCompletion completion) {
+        if (deltas == 0) return 0;
+        long tail = deltas - deltasAtCut;
+        if (completion.getCompletionTokens() < 0) return tail;
+        return Math.round((double) completion.getCompletionTokens() * tail / deltas);
+    }
+
+    /** Time from the cut until the stream ended. */
+    long tailNanos(long endNanos) {
+        return Math.max(0, endNanos - cutNanos);
+    }
+
+    /**
+     * The completion as the caller should see it: the reply up to the cut, with usage estimated where a cancelled
+     * stream didn't report it (completion tokens: one per streamed piece; prompt tokens: from {@code messages});
+     * {@link #isCancelled} tells the two apart. Returned unchanged if the reply ended within the budget.
+     */
+    ChatCompletion result(ChatCompletion completion, List<OpenAIService.ChatMessage> messages) {
+        if (!isCut()) return completion;
+        String content = text.substring(0, (int) cutAt).trim();
+        if (!isCancelled(completion)) {
+            return new ChatCompletion(content, completion.getPromptTokens(), completion.getCachedPromptTokens(),
+                completion.getCompletionTokens());
+        }
+        long promptChars = 0;
+        for (OpenAIService.ChatMessage message : messages) {
+            if (message.getContent() != null) promptChars += message.getContent().length();
+        }
+        return new ChatCompletion(content, promptChars / CHARS_PER_TOKEN, -1, deltasAtCut);
+    }
+}
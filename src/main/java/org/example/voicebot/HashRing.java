@@ -0,0 +1,79 @@
+package org.example.voicebot;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Immutable consistent-hash ring: each node is placed at {@code virtualNodes} points, and a key belongs to the node
+ * at the first point clockwise from the key's hash. Adding or removing a node only moves the keys of the arcs it
+ * gains or loses (about 1/n of them). Lookups are a binary search over sorted points.
+ */
+public final class HashRing {
+
+    private final List<ClusterNode> nodes;
+    private final long[] points;
+    private final ClusterNode[] owners;
+
+    public HashRing(Collection<ClusterNode> members, int virtualNodes) {
+        List<ClusterNode> sorted = new ArrayList<>(members);
+        sorted.sort(Comparator.comparing(ClusterNode::getId));
+        this.nodes = List.copyOf(sorted);
+        int vnodes = Math.max(1, virtualNodes);
+        long[][] placed = new long[nodes.size() * vnodes][];
+        int k = 0;
+        for (int n = 0; n < nodes.size(); n++) {
+            for (int v = 0; v < vnodes; v++) {
+                placed[k++] = new long[] {hash(nodes.get(n).getId() + "#" + v), n};
+            }
+        }
+        // Ties (practically never) go to the node with the smaller id, so every node builds the same ring.
+        Arrays.sort(placed, (a, b) -> a[0] != b[0] ? Long.compareUnsigned(a[0], b[0]) : Long.compare(a[1], b[1]));
+        this.points = new long[placed.length];
+        this.owners = new ClusterNode[placed.length];
+        for (int i = 0; i < placed.length; i++) {
+            points[i] = placed[i][0];
+            owners[i] = nodes.get((int) placed[i][1]);
+        }
+    }
+
+    /** Owner of {@code key}, or null if the ring is empty. */
+    public ClusterNode owner(String key) {
+        if (points.length == 0) return null;
+        long h = hash(key);
+        int lo = 0, hi = points.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (Long.compareUnsigned(points[mid], h) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return owners[lo == points.length ? 0 : lo];
+    }
+
+    /** Members sorted by id. */
+    public List<ClusterNode> getNodes() {
+        return nodes;
+    }
+
+    public boolean contains(ClusterNode node) {
+        return nodes.contains(node);
+    }
+
+    /** FNV-1a over UTF-8, finished with the MurmurHash3 mixer so nearby keys spread over the whole ring. */
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
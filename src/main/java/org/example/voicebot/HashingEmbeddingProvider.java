@@ -0,0 +1,63 @@
+package org.example.voicebot;
+
+import java.util.Set;
+
+/**
+ * Deterministic local embeddings with no model or network: signed feature hashing of the normalized words, adjacent
+ * word pairs and the character trigrams of each word (so "payment" and "payments" land close). Catches rewordings
+ * that share vocabulary, not synonyms; good for offline tests and as a baseline.
+ */
+public class HashingEmbeddingProvider implements EmbeddingProvider {
+
+    private static final float WORD_WEIGHT = 1f;
+    private static final float PAIR_WEIGHT = 0.5f;
+    private static final float TRIGRAM_WEIGHT = 0.25f;
+    private static final float STOP_WORD_SCALE = 0.2f;
+    private static final Set<String> STOP_WORDS = Set.of("a", "an", "the", "i", "me", "my", "is", "are", "am", "do",
+        "does", "can", "to", "of", "for", "in", "on", "it", "and", "or", "what", "how", "you", "your", "be", "have");
+
+    private final int dimension;
+
+    public HashingEmbeddingProvider(int dimension) {
+        if (dimension <= 0) throw new IllegalArgumentException("dimension must be positive");
+        this.dimension = dimension;
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    @Override
+    public float[] embed(String text) {
+        float[] v = new float[dimension];
+        String normalized = FaqMatcher.normalize(text);
+        if (normalized.isEmpty()) return v;
+        String[] words = normalized.split(" ");
+        for (int i = 0; i < words.length; i++) {
+            String word = words[i];
+            float scale = STOP_WORDS.contains(word) ? STOP_WORD_SCALE : 1f;
+            add(v, 'w', word, WORD_WEIGHT * scale);
+            if (i + 1 < words.length) add(v, 'p', word + ' ' + words[i + 1], PAIR_WEIGHT * scale);
+            String padded = ' ' + word + ' ';
+            for (int j = 0; j + 3 <= padded.length(); j++) add(v, 't', padded.substring(j, j + 3), TRIGRAM_WEIGHT * scale);
+        }
+        return v;
+    }
+
+    @Override
+    public String id() {
+        return "hashing-v1/" + dimension;
+    }
+
+    /** Adds {@code weight} to the feature's bucket, with a hash-derived sign so collisions cancel out on average. */
+    private void add(float[] v, char kind, String feature, float weight) {
+        long h = 0xcbf29ce484222325L ^ kind;
+        for (int i = 0; i < feature.length(); i++) {
+            h ^= feature.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 29;
+        v[(int) Long.remainderUnsigned(h, dimension)] += (h < 0 ? -weight : weight);
+    }
+}
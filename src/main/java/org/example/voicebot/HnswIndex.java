@@ -0,0 +1,599 @@
+package org.example.voicebot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hierarchical navigable small world graph (HNSW) for approximate nearest-neighbour search by cosine similarity.
+ * <p>
+ * Vectors are L2-normalized and stored off-heap in direct little-endian buffers, one per chunk of nodes; a node's
+ * level-0 neighbour list is a {@code [count, ids...]} slice of a flat int array per chunk, upper levels are small
+ * per-node arrays. Candidate vectors are bulk-copied out of the buffer and scored by {@link VectorKernel}. Adds and
+ * searches may run concurrently (each node's lists are guarded by a lock stripe). Node levels are a function of the
+ * id, so adding the same vectors in the same order builds the same graph. The index can be saved to and loaded
+ * from a file, reading vectors straight into their buffers.
+ */
+public class HnswIndex {
+
+    private static final int MAGIC = 0x4E484256; // "VBHN" little-endian
+    private static final int VERSION = 1;
+    private static final int MAX_CHUNK_BITS = 14;
+    private static final int MAX_LEVEL = 15;
+    private static final int STRIPES = 1024;
+    private static final long NO_ENTRY = -1L;
+
+    private final int dimension;
+    private final int m;
+    private final int maxLinks0;
+    private final int efConstruction;
+    private final int chunkBits;
+    private final double levelMultiplier;
+    private final VectorKernel kernel = VectorKernel.get();
+    private final Object[] stripes = new Object[STRIPES];
+    private final Object growLock = new Object();
+    private final Object entryLock = new Object();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final AtomicInteger size = new AtomicInteger();
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(() -> new Scratch(this));
+    private volatile Chunk[] chunks = new Chunk[0];
+    /** Entry point: level in the high half, id in the low half; {@link #NO_ENTRY} while empty. */
+    private volatile long entry = NO_ENTRY;
+
+    /**
+     * @param dimension      vector length
+     * @param m              links per node per level (twice that on level 0); 16 is a good default
+     * @param efConstruction candidate list size while adding; higher builds a better graph, slower
+     * @param expectedSize   sizes the storage chunks (up to 16384 nodes each); the index grows past it
+     */
+    public HnswIndex(int dimension, int m, int efConstruction, int expectedSize) {
+        if (dimension <= 0 || m < 2 || efConstruction < 1) {
+            throw new IllegalArgumentException("dimension, m and efConstruction must be positive (m >= 2)");
+        }
+        this.dimension = dimension;
+        this.m = m;
+        this.maxLinks0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.chunkBits = Math.max(4, Math.min(MAX_CHUNK_BITS,
+            32 - Integer.numberOfLeadingZeros(Math.max(1, expectedSize - 1))));
+        this.levelMultiplier = 1 / Math.log(m);
+        for (int i = 0; i < STRIPES; i++) stripes[i] = new Object();
+    }
+
+    public int getDimension() { return dimension; }
+    public int size() { return size.get(); }
+
+    /** Name of the distance kernel in use ("vector-api-256", "scalar", ...). */
+    public String getKernelName() { return kernel.name(); }
+
+    /**
+     * Adds a vector (normalized on the way in) and returns its id; ids are assigned 0, 1, 2, ...
+     */
+    public int add(float[] vector) {
+        checkDimension(vector);
+        int id = nextId.getAndIncrement();
+        ensureCapacity(id);
+        insert(id, vector);
+        return id;
+    }
+
+    /**
+     * Adds all vectors with ids in list order, on up to {@code parallelism} threads. With more than one thread the
+     * graph depends on scheduling (search quality doesn't).
+     */
+    public void addAll(List<float[]> vectors, int parallelism) {
+        for (float[] v : vectors) checkDimension(v);
+        int base = nextId.getAndAdd(vectors.size());
+        if (vectors.isEmpty()) return;
+        ensureCapacity(base + vectors.size() - 1);
+        if (parallelism <= 1 || vectors.size() < 2 * parallelism) {
+            for (int i = 0; i < vectors.size(); i++) insert(base + i, vectors.get(i));
+            return;
+        }
+        AtomicInteger cursor = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+        try {
+            List<Future<?>> workers = new ArrayList<>(parallelism);
+            for (int t = 0; t < parallelism; t++) {
+                workers.add(pool.submit(() -> {
+                    for (int i = cursor.getAndIncrement(); i < vectors.size(); i = cursor.getAndIncrement()) {
+                        insert(base + i, vectors.get(i));
+                    }
+                }));
+            }
+            for (Future<?> f : workers) f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while building index", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Index build failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Up to {@code k} approximate nearest neighbours of {@code query}, best first. {@code ef} (at least k) is the
+     * candidate list size: higher gives better recall, slower.
+     */
+    public List<Neighbor> search(float[] query, int k, int ef) {
+        long e = entry;
+        if (e == NO_ENTRY || k <= 0) return List.of();
+        Scratch s = scratch.get();
+        normalize(query, s.query);
+        long best = key(distance(s, s.query, entryId(e)), entryId(e));
+        for (int layer = entryLevel(e); layer > 0; layer--) best = greedy(s, s.query, best, layer);
+        long[] found = searchLayer(s, s.query, new long[]{best}, Math.max(ef, k), 0);
+        List<Neighbor> out = new ArrayList<>(Math.min(k, found.length));
+        for (int i = 0; i < found.length && i < k; i++) out.add(new Neighbor(keyId(found[i]), 1 - keyDistance(found[i])));
+        return out;
+    }
+
+    /** Exact top {@code k} by scanning every vector; for measuring recall and as a baseline. */
+    List<Neighbor> scan(float[] query, int k) {
+        Scratch s = scratch.get();
+        normalize(query, s.query);
+        LongHeap worst = new LongHeap(k + 1);
+        int n = size.get();
+        for (int id = 0; id < n; id++) {
+            long key = key(distance(s, s.query, id), id);
+            if (worst.size() < k) {
+                worst.push(-key);
+            } else if (key < -worst.peek()) {
+                worst.pop();
+                worst.push(-key);
+            }
+        }
+        Neighbor[] out = new Neighbor[worst.size()];
+        for (int i = out.length - 1; i >= 0; i--) {
+            long key = -worst.pop();
+            out[i] = new Neighbor(keyId(key), 1 - keyDistance(key));
+        }
+        return Arrays.asList(out);
+    }
+
+    private void checkDimension(float[] vector) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Expected " + dimension + " dimensions, got " + vector.length);
+        }
+    }
+
+    private void insert(int id, float[] vector) {
+        Scratch s = scratch.get();
+        float[] v = new float[dimension];
+        normalize(vector, v);
+        int level = levelOf(id);
+        Chunk c = chunk(id);
+        int slot = slot(id);
+        c.vectors.put(slot * dimension, v, 0, dimension);
+        c.levels[slot] = (byte) level;
+        if (level > 0) c.upper[slot] = new int[level * (1 + m)];
+
+        long e;
+        synchronized (entryLock) {
+            e = entry;
+            if (e == NO_ENTRY) {
+                entry = ((long) level << 32) | id;
+                size.incrementAndGet();
+                return;
+            }
+        }
+        int top = entryLevel(e);
+        long best = key(distance(s, v, entryId(e)), entryId(e));
+        for (int layer = top; layer > level; layer--) best = greedy(s, v, best, layer);
+        long[] entries = {best};
+        for (int layer = Math.min(level, top); layer >= 0; layer--) {
+            long[] found = searchLayer(s, v, entries, efConstruction, layer);
+            int[] selected = selectNeighbors(s, found, found.length, m);
+            synchronized (stripe(id)) {
+                int[] links = links(id, layer);
+                int base = linksBase(id, layer);
+                links[base] = selected.length;
+                System.arraycopy(selected, 0, links, base + 1, selected.length);
+            }
+            int maxLinks = layer == 0 ? maxLinks0 : m;
+            for (int neighbour : selected) link(s, neighbour, id, layer, maxLinks);
+            entries = found;
+        }
+        if (level > top) {
+            synchronized (entryLock) {
+                if (level > entryLevel(entry)) entry = ((long) level << 32) | id;
+            }
+        }
+        size.incrementAndGet();
+    }
+
+    /** Adds {@code id} to {@code node}'s list on {@code layer}, re-selecting the list if it is full. */
+    private void link(Scratch s, int node, int id, int layer, int maxLinks) {
+        synchronized (stripe(node)) {
+            int[] links = links(node, layer);
+            int base = linksBase(node, layer);
+            int n = links[base];
+            if (n < maxLinks) {
+                links[base + 1 + n] = id;
+                links[base] = n + 1;
+                return;
+            }
+            copyVector(node, s.pivot, 0);
+            long[] keys = s.pruneKeys;
+            for (int i = 0; i < n; i++) {
+                int other = links[base + 1 + i];
+                keys[i] = key(distance(s, s.pivot, other), other);
+            }
+            keys[n] = key(distance(s, s.pivot, id), id);
+            Arrays.sort(keys, 0, n + 1);
+            int[] selected = selectNeighbors(s, keys, n + 1, maxLinks);
+            links[base] = selected.length;
+            System.arraycopy(selected, 0, links, base + 1, selected.length);
+        }
+    }
+
+    /**
+     * Neighbour selection heuristic: walking candidates nearest first, keeps one only if it is closer to the base
+     * vector than to every neighbour kept so far, which spreads links across directions.
+     */
+    private int[] selectNeighbors(Scratch s, long[] sortedKeys, int count, int max) {
+        int[] out = new int[Math.min(count, max)];
+        int kept = 0;
+        float[] block = s.selected;
+        for (int i = 0; i < count && kept < max; i++) {
+            int candidate = keyId(sortedKeys[i]);
+            float toBase = keyDistance(sortedKeys[i]);
+            copyVector(candidate, block, kept * dimension);
+            boolean keep = true;
+            for (int j = 0; j < kept && keep; j++) {
+                keep = 1 - kernel.dot(block, kept * dimension, block, j * dimension, dimension) >= toBase;
+            }
+            if (keep) out[kept++] = candidate;
+        }
+        return kept == out.length ? out : Arrays.copyOf(out, kept);
+    }
+
+    /** Moves to the nearest neighbour on {@code layer} until nothing is closer. */
+    private long greedy(Scratch s, float[] q, long best, int layer) {
+        boolean moved = true;
+        while (moved) {
+            moved = false;
+            int n = neighbours(keyId(best), layer, s.links);
+            for (int i = 0; i < n; i++) {
+                long key = key(distance(s, q, s.links[i]), s.links[i]);
+                if (key < best) {
+                    best = key;
+                    moved = true;
+                }
+            }
+        }
+        return best;
+    }
+
+    /** Best-first search on one layer; returns up to {@code ef} keys, nearest first. */
+    private long[] searchLayer(Scratch s, float[] q, long[] entries, int ef, int layer) {
+        int stamp = s.nextStamp(nextId.get());
+        LongHeap candidates = s.candidates;
+        LongHeap results = s.results; // negated keys: the top is the farthest result
+        candidates.clear();
+        results.clear();
+        for (long e : entries) {
+            s.visit(keyId(e), stamp);
+            candidates.push(e);
+            results.push(-e);
+            if (results.size() > ef) results.pop();
+        }
+        while (candidates.size() > 0) {
+            long c = candidates.pop();
+            if (results.size() >= ef && c > -results.peek()) break;
+            int n = neighbours(keyId(c), layer, s.links);
+            for (int i = 0; i < n; i++) {
+                int next = s.links[i];
+                if (!s.visit(next, stamp)) continue;
+                long key = key(distance(s, q, next), next);
+                if (results.size() < ef || key < -results.peek()) {
+                    candidates.push(key);
+                    results.push(-key);
+                    if (results.size() > ef) results.pop();
+                }
+            }
+        }
+        long[] out = new long[results.size()];
+        for (int i = out.length - 1; i >= 0; i--) out[i] = -results.pop();
+        return out;
+    }
+
+    /** Copies {@code id}'s list on {@code layer} into {@code out}; returns its length. */
+    private int neighbours(int id, int layer, int[] out) {
+        synchronized (stripe(id)) {
+            int[] links = links(id, layer);
+            int base = linksBase(id, layer);
+            int n = links[base];
+            System.arraycopy(links, base + 1, out, 0, n);
+            return n;
+        }
+    }
+
+    private int[] links(int id, int layer) {
+        Chunk c = chunk(id);
+        return layer == 0 ? c.links0 : c.upper[slot(id)];
+    }
+
+    private int linksBase(int id, int layer) {
+        return layer == 0 ? slot(id) * (1 + maxLinks0) : (layer - 1) * (1 + m);
+    }
+
+    private float distance(Scratch s, float[] q, int id) {
+        copyVector(id, s.node, 0);
+        return 1 - kernel.dot(q, 0, s.node, 0, dimension);
+    }
+
+    private void copyVector(int id, float[] dst, int offset) {
+        chunk(id).vectors.get(slot(id) * dimension, dst, offset, dimension);
+    }
+
+    private Chunk chunk(int id) {
+        return chunks[id >>> chunkBits];
+    }
+
+    private int slot(int id) {
+        return id & ((1 << chunkBits) - 1);
+    }
+
+    private Object stripe(int id) {
+        return stripes[id & (STRIPES - 1)];
+    }
+
+    private void ensureCapacity(int id) {
+        int needed = (id >>> chunkBits) + 1;
+        if (chunks.length >= needed) return;
+        synchronized (growLock) {
+            Chunk[] current = chunks;
+            if (current.length >= needed) return;
+            Chunk[] grown = Arrays.copyOf(current, needed);
+            for (int i = current.length; i < needed; i++) grown[i] = new Chunk(1 << chunkBits, dimension, maxLinks0);
+            chunks = grown;
+        }
+    }
+
+    /** Level from a hash of the id: geometric with ratio 1/m, as HNSW prescribes. */
+    private int levelOf(int id) {
+        long h = (id + 1) * 0x9E3779B97F4A7C15L;
+        h = (h ^ (h >>> 32)) * 0xD6E8FEB86659FD93L;
+        h ^= h >>> 32;
+        double u = ((h >>> 11) + 1) * 0x1.0p-53;
+        return Math.min(MAX_LEVEL, (int) (-Math.log(u) * levelMultiplier));
+    }
+
+    private static void normalize(float[] vector, float[] out) {
+        double norm = 0;
+        for (float x : vector) norm += x * x;
+        float scale = norm > 0 ? (float) (1 / Math.sqrt(norm)) : 0;
+        for (int i = 0; i < vector.length; i++) out[i] = vector[i] * scale;
+    }
+
+    /** Orders by distance, then id; distances are clamped to >= 0 so their float bits sort like the values. */
+    private static long key(float distance, int id) {
+        return ((long) Float.floatToRawIntBits(Math.max(0f, distance)) << 32) | (id & 0xFFFFFFFFL);
+    }
+
+    private static int keyId(long key) { return (int) key; }
+    private static float keyDistance(long key) { return Float.intBitsToFloat((int) (key >>> 32)); }
+    private static int entryId(long entry) { return (int) entry; }
+    private static int entryLevel(long entry) { return (int) (entry >>> 32); }
+
+    /**
+     * Writes the index to {@code path}. Must not run concurrently with adds.
+     */
+    public void save(Path path) throws IOException {
+        int n = size.get();
+        if (n != nextId.get()) throw new IllegalStateException("Index is being modified");
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(36).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(dimension).putInt(m).putInt(efConstruction)
+                .putInt(chunkBits).putInt(n).putLong(entry).flip();
+            writeFully(ch, header);
+            for (int first = 0; first < n; first += 1 << chunkBits) {
+                Chunk c = chunk(first);
+                int count = Math.min(1 << chunkBits, n - first);
+                writeFully(ch, c.bytes.duplicate().position(0).limit(count * dimension * Float.BYTES));
+                writeFully(ch, ByteBuffer.wrap(c.levels, 0, count));
+                writeInts(ch, c.links0, 0, count * (1 + maxLinks0));
+                for (int i = 0; i < count; i++) {
+                    if (c.upper[i] != null) writeInts(ch, c.upper[i], 0, c.upper[i].length);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads an index written by {@link #save(Path)}.
+     */
+    public static HnswIndex load(Path path) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(36).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(ch, header);
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not a vector index file: " + path);
+            }
+            int dimension = header.getInt();
+            int m = header.getInt();
+            int efConstruction = header.getInt();
+            int chunkBits = header.getInt();
+            int n = header.getInt();
+            long entry = header.getLong();
+            if (chunkBits < 4 || chunkBits > MAX_CHUNK_BITS || n < 0) throw new IOException("Corrupt vector index: " + path);
+            HnswIndex index = new HnswIndex(dimension, m, efConstruction, 1 << chunkBits);
+            if (n > 0) index.ensureCapacity(n - 1);
+            for (int first = 0; first < n; first += 1 << chunkBits) {
+                Chunk c = index.chunk(first);
+                int count = Math.min(1 << chunkBits, n - first);
+                readFully(ch, c.bytes.duplicate().position(0).limit(count * dimension * Float.BYTES));
+                readFully(ch, ByteBuffer.wrap(c.levels, 0, count));
+                readInts(ch, c.links0, 0, count * (1 + index.maxLinks0));
+                for (int i = 0; i < count; i++) {
+                    if (c.levels[i] > 0) {
+                        c.upper[i] = new int[c.levels[i] * (1 + m)];
+                        readInts(ch, c.upper[i], 0, c.upper[i].length);
+                    }
+                }
+            }
+            index.nextId.set(n);
+            index.size.set(n);
+            index.entry = entry;
+            return index;
+        }
+    }
+
+    private static void writeInts(FileChannel ch, int[] values, int offset, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buf.asIntBuffer().put(values, offset, length);
+        writeFully(ch, buf);
+    }
+
+    private static void readInts(FileChannel ch, int[] values, int offset, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(ch, buf);
+        buf.flip();
+        buf.asIntBuffer().get(values, offset, length);
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) ch.write(buf);
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            if (ch.read(buf) < 0) throw new IOException("Truncated vector index file");
+        }
+    }
+
+    /**
+     * A search hit: vector id and cosine similarity to the query.
+     */
+    public static class Neighbor {
+        private final int id;
+        private final float score;
+
+        Neighbor(int id, float score) {
+            this.id = id;
+            this.score = score;
+        }
+
+        public int getId() { return id; }
+        public float getScore() { return score; }
+
+        @Override
+        public String toString() {
+            return id + ":" + score;
+        }
+    }
+
+    private static final class Chunk {
+        final ByteBuffer bytes;
+        final FloatBuffer vectors;
+        final int[] links0;
+        final byte[] levels;
+        final int[][] upper;
+
+        Chunk(int capacity, int dimension, int maxLinks0) {
+            bytes = ByteBuffer.allocateDirect(capacity * dimension * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            vectors = bytes.asFloatBuffer();
+            links0 = new int[capacity * (1 + maxLinks0)];
+            levels = new byte[capacity];
+            upper = new int[capacity][];
+        }
+    }
+
+    /** Per-thread buffers, so searches allocate nothing but their result. */
+    private static final class Scratch {
+        final float[] query;
+        final float[] node;
+        final float[] pivot;
+        final float[] selected;
+        final int[] links;
+        final long[] pruneKeys;
+        final LongHeap candidates = new LongHeap(64);
+        final LongHeap results = new LongHeap(64);
+        int[] visited = new int[0];
+        int stamp;
+
+        Scratch(HnswIndex index) {
+            query = new float[index.dimension];
+            node = new float[index.dimension];
+            pivot = new float[index.dimension];
+            selected = new float[(index.maxLinks0 + 1) * index.dimension];
+            links = new int[index.maxLinks0 + 1];
+            pruneKeys = new long[index.maxLinks0 + 1];
+        }
+
+        int nextStamp(int capacity) {
+            if (visited.length < capacity) visited = new int[Math.max(capacity, visited.length * 2)];
+            if (++stamp == 0) {
+                Arrays.fill(visited, 0);
+                stamp = 1;
+            }
+            return stamp;
+        }
+
+        /** Marks {@code id} visited; false if it already was. */
+        boolean visit(int id, int stamp) {
+            if (id >= visited.length) visited = Arrays.copyOf(visited, Math.max(id + 1, visited.length * 2));
+            if (visited[id] == stamp) return false;
+            visited[id] = stamp;
+            return true;
+        }
+    }
+
+    /** Binary min-heap of longs. */
+    static final class LongHeap {
+        private long[] heap;
+        private int size;
+
+        LongHeap(int capacity) {
+            heap = new long[Math.max(2, capacity)];
+        }
+
+        int size() { return size; }
+        void clear() { size = 0; }
+        long peek() { return heap[0]; }
+
+        void push(long value) {
+            if (size == heap.length) heap = Arrays.copyOf(heap, size * 2);
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (heap[parent] <= value) break;
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = value;
+        }
+
+        long pop() {
+            long top = heap[0];
+            long last = heap[--size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) break;
+                if (child + 1 < size && heap[child + 1] < heap[child]) child++;
+                if (heap[child] >= last) break;
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = last;
+            return top;
+        }
+    }
+}
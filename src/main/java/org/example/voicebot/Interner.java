@@ -0,0 +1,29 @@
+package org.example.voicebot;
+
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+
+/**
+ * Weak canonicalizing pool: equal values map to one shared instance, which is dropped once nothing else uses it.
+ */
+final class Interner<T> {
+
+    private final WeakHashMap<T, WeakReference<T>> pool = new WeakHashMap<>();
+
+    /**
+     * The canonical instance equal to {@code value}; {@code value} itself if it is the first (identity tells
+     * the caller whether it was added).
+     */
+    synchronized T intern(T value) {
+        if (value == null) return null;
+        WeakReference<T> ref = pool.get(value);
+        T canonical = ref != null ? ref.get() : null;
+        if (canonical != null) return canonical;
+        pool.put(value, new WeakReference<>(value));
+        return value;
+    }
+
+    synchronized int size() {
+        return pool.size();
+    }
+}
@@ -11,22 +11,115 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
 
 /**
  * Configurable knowledge base: array of JSON entries (category, issue, customer_query, agent_response).
  * Load from a JSON file (path or classpath) and use to build the system prompt.
+ * Derived artifacts (categories, per-category slices, prompt sections) are computed once and cached;
+ * {@link #precompute()} builds all of them up front.
+ * <p>
+ * A knowledge base is an immutable version made of one slice per category. {@link #withChanges} returns the next
+ * version: it rebuilds only the slices of the categories it touches, shares the others, and updates the FAQ and
+ * vector indexes in place of rebuilding them, so readers holding the previous version are never blocked or
+ * disturbed. The whole-base parts requests use (categories, classifier prompt, prompt section) are joined from the
+ * slices' cached parts on the editing thread, before the version is returned.
+ * <p>
+ * Each slice maps entry ids to entries. With a {@link SharedKnowledgePool} the entries themselves are pooled
+ * without their id, so equal content under different ids (or tenants) is stored once; {@link #getEntries()} puts
+ * the ids back.
  */
 public class KnowledgeBase {
     private static final Gson GSON = new Gson();
+    /** Category of entries without one. */
+    private static final String OTHER = "Other";
+    private static final String PROMPT_HEADER = "## Knowledge base\n\n"
+        + "Use the following Q&A entries to answer the customer. Match their question to the closest customer_query and respond in the same style as agent_response. "
+        + "If multiple entries could apply, pick the best match. If none match well, say you don't have that information and suggest support or the app.\n\n";
 
+    private final SharedKnowledgePool pool;
+    /** Slice category, or null for a whole knowledge base. */
+    private final String category;
+    /** Whole knowledge base: one slice per category, by name. */
+    private final NavigableMap<String, KnowledgeBase> slices;
+    /** A slice's entries by id, in order; null for a whole knowledge base. */
+    private final Map<String, KnowledgeEntry> byId;
+    /** A slice's entries, in order; null for a whole knowledge base. */
     private final List<KnowledgeEntry> entries;
+    private final int size;
+    private final long version;
+    /** Edit state; touched only by the (serialized) editing thread. */
+    private Lineage lineage;
+    private volatile List<Category> categories;
+    private volatile String categoryClassifierPrompt;
+    private volatile String classifierBlock;
+    private volatile String promptSection;
+    private volatile FaqMatcher faqMatcher;
+    private volatile SemanticIndex<KnowledgeEntry> semanticIndex;
 
     public KnowledgeBase(List<KnowledgeEntry> entries) {
-        this.entries = entries != null ? new ArrayList<>(entries) : new ArrayList<>();
+        this(entries, null);
+    }
+
+    /**
+     * Knowledge base whose entries, slices and prompt sections are deduplicated through {@code pool}
+     * (shared with other tenants); a null pool keeps private copies. Entries without an id get their 1-based
+     * position.
+     *
+     * @throws IllegalArgumentException if two entries have the same id
+     */
+    public KnowledgeBase(List<KnowledgeEntry> entries, SharedKnowledgePool pool) {
+        this.pool = pool;
+        this.category = null;
+        this.byId = null;
+        this.entries = null;
+        this.version = 0;
+        Map<String, Map<String, KnowledgeEntry>> byCategory = new TreeMap<>();
+        Set<String> ids = new HashSet<>();
+        if (entries != null) {
+            int position = 0;
+            for (KnowledgeEntry e : entries) {
+                position++;
+                String id = share(e.getId() != null ? e.getId() : String.valueOf(position));
+                if (!ids.add(id)) throw new IllegalArgumentException("Duplicate knowledge entry id: " + id);
+                byCategory.computeIfAbsent(categoryOf(e), k -> new LinkedHashMap<>()).put(id, pooled(e));
+            }
+        }
+        NavigableMap<String, KnowledgeBase> built = new TreeMap<>();
+        byCategory.forEach((c, slice) -> built.put(c, new KnowledgeBase(c, slice, pool)));
+        this.slices = Collections.unmodifiableNavigableMap(built);
+        this.size = ids.size();
+    }
+
+    private KnowledgeBase(String category, Map<String, KnowledgeEntry> byId, SharedKnowledgePool pool) {
+        this.pool = pool;
+        this.category = category;
+        this.slices = null;
+        this.byId = Collections.unmodifiableMap(byId);
+        this.entries = List.copyOf(byId.values());
+        this.size = byId.size();
+        this.version = 0;
+    }
+
+    private KnowledgeBase(NavigableMap<String, KnowledgeBase> slices, int size, long version,
+                          SharedKnowledgePool pool) {
+        this.pool = pool;
+        this.category = null;
+        this.slices = Collections.unmodifiableNavigableMap(slices);
+        this.byId = null;
+        this.entries = null;
+        this.size = size;
+        this.version = version;
     }
 
     /**
@@ -74,8 +167,31 @@ public class KnowledgeBase {
         return loadFromClasspath(pathOrResource).getEntries();
     }
 
+    /**
+     * All entries with their ids, grouped by category.
+     */
     public List<KnowledgeEntry> getEntries() {
-        return new ArrayList<>(entries);
+        List<KnowledgeEntry> all = new ArrayList<>(size);
+        for (KnowledgeBase slice : orderedSlices(false)) {
+            slice.byId.forEach((id, e) -> all.add(id.equals(e.getId()) ? e : new KnowledgeEntry(id, e.getCategory(),
+                e.getIssue(), e.getCustomerQuery(), e.getAgentResponse(), e.isServeVerbatim())));
+        }
+        return all;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Number of edits since the knowledge base was loaded.
+     */
+    public long getVersion() {
+        return version;
     }
 
     /**
@@ -83,76 +199,278 @@ public class KnowledgeBase {
      * Includes "Other" (with its issues) if there are uncategorized entries.
      */
     public List<Category> getCategories() {
-        Map<String, List<String>> categoryToIssues = new LinkedHashMap<>();
+        List<Category> cached = categories;
+        if (cached == null) {
+            if (category != null) {
+                List<String> issues = new ArrayList<>();
+                for (KnowledgeEntry e : entries) {
+                    issues.add(e.getIssue() != null && !e.getIssue().isBlank() ? e.getIssue() : "(no issue)");
+                }
+                cached = List.of(new Category(category, issues.stream().distinct().toList()));
+            } else {
+                List<Category> all = new ArrayList<>(slices.size());
+                for (KnowledgeBase slice : slices.values()) all.add(slice.getCategories().get(0));
+                cached = List.copyOf(all);
+            }
+            categories = cached;
+        }
+        return cached;
+    }
+
+    /**
+     * System prompt for LLM category classification over {@link #getCategories()}, cached.
+     */
+    public String getCategoryClassifierPrompt() {
+        String cached = categoryClassifierPrompt;
+        if (cached == null) {
+            List<String> blocks = new ArrayList<>();
+            for (KnowledgeBase slice : orderedSlices(false)) blocks.add(slice.classifierBlock());
+            cached = share(VoiceBotPromptBuilder.joinCategoryClassifierPrompt(blocks));
+            categoryClassifierPrompt = cached;
+        }
+        return cached;
+    }
+
+    /** This slice's lines of the category classifier prompt, cached. */
+    private String classifierBlock() {
+        String cached = classifierBlock;
+        if (cached == null) {
+            cached = VoiceBotPromptBuilder.categoryClassifierBlock(getCategories().get(0));
+            classifierBlock = cached;
+        }
+        return cached;
+    }
+
+    /**
+     * Index over all entries' customer_query for serving near-exact FAQ matches verbatim, cached.
+     */
+    public FaqMatcher getFaqMatcher() {
+        FaqMatcher cached = faqMatcher;
+        if (cached == null) {
+            List<String> ids = new ArrayList<>(size);
+            List<KnowledgeEntry> all = new ArrayList<>(size);
+            for (KnowledgeBase slice : orderedSlices(false)) {
+                ids.addAll(slice.byId.keySet());
+                all.addAll(slice.entries);
+            }
+            cached = new FaqMatcher(ids, all);
+            faqMatcher = cached;
+        }
+        return cached;
+    }
+
+    /**
+     * Vector index over all entries' customer_query and issue for semantic category routing, cached per provider
+     * (and saved under {@code cacheDir} if not null).
+     */
+    public SemanticIndex<KnowledgeEntry> getSemanticIndex(EmbeddingProvider provider, Path cacheDir) {
+        SemanticIndex<KnowledgeEntry> cached = semanticIndex;
+        if (cached == null || cached.getProvider() != provider) {
+            List<String> texts = new ArrayList<>();
+            List<KnowledgeEntry> targets = new ArrayList<>();
+            for (KnowledgeBase slice : orderedSlices(false)) addSemanticTexts(slice.entries, texts, targets);
+            cached = SemanticIndex.build(provider, texts, targets, cacheDir, "knowledge");
+            semanticIndex = cached;
+        }
+        return cached;
+    }
+
+    private static void addSemanticTexts(Collection<KnowledgeEntry> entries, List<String> texts,
+                                         List<KnowledgeEntry> targets) {
         for (KnowledgeEntry e : entries) {
-            String cat = (e.getCategory() != null && !e.getCategory().isBlank()) ? e.getCategory() : "Other";
-            String issue = (e.getIssue() != null && !e.getIssue().isBlank()) ? e.getIssue() : "(no issue)";
-            categoryToIssues.computeIfAbsent(cat, k -> new ArrayList<>()).add(issue);
+            for (String text : new String[]{e.getCustomerQuery(), e.getIssue()}) {
+                if (text == null || text.isBlank()) continue;
+                texts.add(text);
+                targets.add(e);
+            }
         }
-        List<Category> result = categoryToIssues.entrySet().stream()
-            .sorted(Map.Entry.comparingByKey())
-            .map(entry -> new Category(entry.getKey(), entry.getValue().stream().distinct().toList()))
-            .toList();
-        return result;
     }
 
     /**
-     * Returns a new KnowledgeBase containing only entries for the given category.
+     * Builds every cached artifact (categories, classifier prompt, FAQ index, each category slice and its prompt
+     * section) so the first requests don't pay for it.
+     */
+    public void precompute() {
+        getCategoryClassifierPrompt();
+        getFaqMatcher();
+        toPromptSection();
+        for (Category c : getCategories()) {
+            forCategory(c.getType()).toPromptSection();
+        }
+    }
+
+    /**
+     * Next version of this knowledge base: each entry of {@code upserts} replaces the entry with the same id or is
+     * added, and the entries with ids in {@code deletedIds} are removed. Only the slices of the categories involved
+     * are rebuilt; their prompt parts and the whole-base ones are computed right away, and the FAQ index and a built
+     * vector index are updated in place. Callers serialize edits; editing a version other than the newest one works, but rebuilds the edit
+     * state and indexes once.
+     *
+     * @throws IllegalArgumentException if an upserted entry has no id
+     * @throws NoSuchElementException   if a deleted id isn't in this version
+     */
+    public KnowledgeBase withChanges(List<KnowledgeEntry> upserts, Collection<String> deletedIds) {
+        if (category != null) throw new IllegalStateException("Edit the whole knowledge base, not a category slice");
+        Lineage l = lineage;
+        if (l == null || l.head != this) l = new Lineage(this);
+        for (KnowledgeEntry e : upserts) {
+            if (e.getId() == null || e.getId().isBlank()) throw new IllegalArgumentException("Knowledge entry id is required");
+        }
+        for (String id : deletedIds) {
+            if (!l.categoryOf.containsKey(id)) throw new NoSuchElementException("Unknown knowledge entry id: " + id);
+        }
+        Map<String, Map<String, KnowledgeEntry>> changed = new HashMap<>();
+        Map<String, KnowledgeEntry> added = new LinkedHashMap<>();
+        Map<String, KnowledgeEntry> removed = new LinkedHashMap<>();
+        for (String id : deletedIds) remove(l, changed, id, added, removed);
+        for (KnowledgeEntry e : upserts) {
+            String id = share(e.getId());
+            KnowledgeEntry entry = pooled(e);
+            remove(l, changed, id, added, removed);
+            String c = categoryOf(e);
+            changed.computeIfAbsent(c, this::sliceCopy).put(id, entry);
+            l.categoryOf.put(id, c);
+            added.put(id, entry);
+        }
+
+        NavigableMap<String, KnowledgeBase> nextSlices = new TreeMap<>(slices);
+        changed.forEach((c, entries) -> {
+            if (entries.isEmpty()) {
+                nextSlices.remove(c);
+            } else {
+                KnowledgeBase slice = new KnowledgeBase(c, entries, pool);
+                slice.toPromptSection();
+                slice.classifierBlock();
+                nextSlices.put(c, slice);
+            }
+        });
+        KnowledgeBase next = new KnowledgeBase(nextSlices, size - removed.size() + added.size(), version + 1, pool);
+        FaqMatcher faq = faqMatcher;
+        if (faq != null) {
+            next.faqMatcher = faq.withChanges(new ArrayList<>(added.keySet()), new ArrayList<>(added.values()),
+                removed.keySet());
+        }
+        SemanticIndex<KnowledgeEntry> index = semanticIndex;
+        if (index != null) {
+            List<String> texts = new ArrayList<>();
+            List<KnowledgeEntry> targets = new ArrayList<>();
+            addSemanticTexts(added.values(), texts, targets);
+            List<String> removedTexts = new ArrayList<>();
+            List<KnowledgeEntry> removedTargets = new ArrayList<>();
+            addSemanticTexts(removed.values(), removedTexts, removedTargets);
+            next.semanticIndex = index.withChanges(texts, targets, removedTexts, removedTargets);
+        }
+        // Joined here rather than by the first request to see this version.
+        next.getCategories();
+        next.getCategoryClassifierPrompt();
+        next.toPromptSection();
+        l.head = next;
+        next.lineage = l;
+        return next;
+    }
+
+    /** Takes entry {@code id} out of its (copied) slice; an entry added earlier in the same edit just disappears. */
+    private void remove(Lineage l, Map<String, Map<String, KnowledgeEntry>> changed, String id,
+                        Map<String, KnowledgeEntry> added, Map<String, KnowledgeEntry> removed) {
+        String c = l.categoryOf.remove(id);
+        if (c == null) return;
+        KnowledgeEntry old = changed.computeIfAbsent(c, this::sliceCopy).remove(id);
+        if (added.remove(id) == null) removed.put(id, old);
+    }
+
+    private Map<String, KnowledgeEntry> sliceCopy(String category) {
+        KnowledgeBase slice = slices.get(category);
+        return slice != null ? new LinkedHashMap<>(slice.byId) : new LinkedHashMap<>();
+    }
+
+    /**
+     * Returns the KnowledgeBase containing only entries for the given category (cached slice).
      * Use "Other" for entries with no category. If the category is unknown or empty, returns an empty KnowledgeBase.
      */
     public KnowledgeBase forCategory(String category) {
         if (category == null || category.isBlank()) {
-            return new KnowledgeBase(new ArrayList<>());
+            return new KnowledgeBase(new ArrayList<>(), pool);
         }
-        List<KnowledgeEntry> filtered = entries.stream()
-            .filter(e -> category.equals("Other")
-                ? (e.getCategory() == null || e.getCategory().isBlank())
-                : category.equals(e.getCategory()))
-            .toList();
-        return new KnowledgeBase(filtered);
+        KnowledgeBase slice = this.category != null ? (this.category.equals(category) ? this : null) : slices.get(category);
+        return slice != null ? slice : new KnowledgeBase(new ArrayList<>(), pool);
     }
 
     /**
      * Build the knowledge section for the system prompt: grouped by category, so the model can answer best.
      */
     public String toPromptSection() {
-        if (entries.isEmpty()) {
+        String cached = promptSection;
+        if (cached == null) {
+            cached = share(computePromptSection());
+            promptSection = cached;
+        }
+        return cached;
+    }
+
+    private String computePromptSection() {
+        if (size == 0) {
             return "## Knowledge base\n(No entries loaded.)\n";
         }
         StringBuilder sb = new StringBuilder();
-        sb.append("## Knowledge base\n\n");
-        sb.append("Use the following Q&A entries to answer the customer. Match their question to the closest customer_query and respond in the same style as agent_response. ");
-        sb.append("If multiple entries could apply, pick the best match. If none match well, say you don't have that information and suggest support or the app.\n\n");
-
-        var byCategory = entries.stream()
-            .filter(e -> e.getCategory() != null && !e.getCategory().isBlank())
-            .collect(Collectors.groupingBy(KnowledgeEntry::getCategory));
-
-        for (String category : byCategory.keySet().stream().sorted().toList()) {
+        sb.append(PROMPT_HEADER);
+        if (category != null) {
             sb.append("### ").append(category).append("\n\n");
-            for (KnowledgeEntry e : byCategory.get(category)) {
+            for (KnowledgeEntry e : entries) {
                 sb.append("- **Issue:** ").append(nullToEmpty(e.getIssue())).append("\n");
                 sb.append("  - **Customer query:** ").append(nullToEmpty(e.getCustomerQuery())).append("\n");
                 sb.append("  - **Agent response:** ").append(nullToEmpty(e.getAgentResponse())).append("\n\n");
             }
+            return sb.toString();
         }
-
-        // entries with no category
-        List<KnowledgeEntry> uncategorized = entries.stream()
-            .filter(e -> e.getCategory() == null || e.getCategory().isBlank())
-            .toList();
-        if (!uncategorized.isEmpty()) {
-            sb.append("### Other\n\n");
-            for (KnowledgeEntry e : uncategorized) {
-                sb.append("- **Issue:** ").append(nullToEmpty(e.getIssue())).append("\n");
-                sb.append("  - **Customer query:** ").append(nullToEmpty(e.getCustomerQuery())).append("\n");
-                sb.append("  - **Agent response:** ").append(nullToEmpty(e.getAgentResponse())).append("\n\n");
-            }
+        // each slice's section minus the header; entries with no category come last
+        for (KnowledgeBase slice : orderedSlices(true)) {
+            String section = slice.toPromptSection();
+            sb.append(section, PROMPT_HEADER.length(), section.length());
         }
         return sb.toString();
     }
 
+    /** Slices in category order ({@code otherLast}: "Other" at the end); a slice is its own only one. */
+    private List<KnowledgeBase> orderedSlices(boolean otherLast) {
+        if (category != null) return List.of(this);
+        List<KnowledgeBase> ordered = new ArrayList<>(slices.size());
+        for (KnowledgeBase slice : slices.values()) {
+            if (!otherLast || !OTHER.equals(slice.category)) ordered.add(slice);
+        }
+        KnowledgeBase other = slices.get(OTHER);
+        if (otherLast && other != null) ordered.add(other);
+        return ordered;
+    }
+
+    private static String categoryOf(KnowledgeEntry e) {
+        return e.getCategory() != null && !e.getCategory().isBlank() ? e.getCategory() : OTHER;
+    }
+
+    private KnowledgeEntry pooled(KnowledgeEntry e) {
+        return pool != null ? pool.entry(e) : e;
+    }
+
+    private String share(String s) {
+        return pool != null ? pool.string(s) : s;
+    }
+
     private static String nullToEmpty(String s) {
         return s != null ? s : "";
     }
+
+    /**
+     * Edit state shared by successive versions: the category of every entry id. Only the version that was derived
+     * last (the head) edits it in place; any other version rebuilds it.
+     */
+    private static final class Lineage {
+        final Map<String, String> categoryOf = new HashMap<>();
+        KnowledgeBase head;
+
+        Lineage(KnowledgeBase head) {
+            this.head = head;
+            for (KnowledgeBase slice : head.slices.values()) {
+                for (String id : slice.byId.keySet()) categoryOf.put(id, slice.category);
+            }
+        }
+    }
 }
@@ -2,26 +2,48 @@ package org.example.voicebot;
 
 import com.google.gson.annotations.SerializedName;
 
+import java.util.Objects;
+
 /**
- * One knowledge item from the JSON config (category, issue, customer_query, agent_response).
+ * One knowledge item from the JSON config (category, issue, customer_query, agent_response). {@code serve_verbatim}
+ * marks a generic answer that doesn't depend on customer data, so a near-exact match of its customer_query may be
+ * answered with agent_response as is ({@link FaqMatcher}). {@code id} names the entry for runtime edits; entries
+ * without one get their 1-based position in the file.
  */
 public class KnowledgeEntry {
+    private String id;
     private String category;
     private String issue;
     @SerializedName("customer_query")
     private String customerQuery;
     @SerializedName("agent_response")
     private String agentResponse;
+    @SerializedName("serve_verbatim")
+    private boolean serveVerbatim;
 
     public KnowledgeEntry() {}
 
     public KnowledgeEntry(String category, String issue, String customerQuery, String agentResponse) {
+        this(category, issue, customerQuery, agentResponse, false);
+    }
+
+    public KnowledgeEntry(String category, String issue, String customerQuery, String agentResponse,
+                          boolean serveVerbatim) {
+        this(null, category, issue, customerQuery, agentResponse, serveVerbatim);
+    }
+
+    public KnowledgeEntry(String id, String category, String issue, String customerQuery, String agentResponse,
+                          boolean serveVerbatim) {
+        this.id = id;
         this.category = category;
         this.issue = issue;
         this.customerQuery = customerQuery;
         this.agentResponse = agentResponse;
+        this.serveVerbatim = serveVerbatim;
     }
 
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
     public String getCategory() { return category; }
     public void setCategory(String category) { this.category = category; }
     public String getIssue() { return issue; }
@@ -30,4 +52,20 @@ public class KnowledgeEntry {
     public void setCustomerQuery(String customerQuery) { this.customerQuery = customerQuery; }
     public String getAgentResponse() { return agentResponse; }
     public void setAgentResponse(String agentResponse) { this.agentResponse = agentResponse; }
+    public boolean isServeVerbatim() { return serveVerbatim; }
+    public void setServeVerbatim(boolean serveVerbatim) { this.serveVerbatim = serveVerbatim; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof KnowledgeEntry e)) return false;
+        return Objects.equals(id, e.id) && Objects.equals(category, e.category) && Objects.equals(issue, e.issue)
+            && Objects.equals(customerQuery, e.customerQuery) && Objects.equals(agentResponse, e.agentResponse)
+            && serveVerbatim == e.serveVerbatim;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, category, issue, customerQuery, agentResponse, serveVerbatim);
+    }
 }
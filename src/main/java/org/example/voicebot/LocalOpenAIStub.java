@@ -0,0 +1,254 @@
+package org.example.voicebot;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal OpenAI-compatible chat completions server on the loopback interface, for warm-up and offline runs.
+ * Classifier prompts ("You are a classifier...") are answered with the first "Category:" / "Context:" name
+ * listed in the system prompt; every other request gets a fixed short answer. Usage is reported with rough
+ * token estimates (4 chars per token). Requests with {@code "stream": true} get the answer as server-sent events,
+ * one word per chunk. GET /v1/models returns an empty list.
+ */
+public class LocalOpenAIStub implements AutoCloseable {
+
+    private static final String DEFAULT_ANSWER = "Thanks for calling. I can help you with that.";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicLong requests = new AtomicLong();
+    private volatile long latencyMillis;
+    private volatile long chunkDelayMillis;
+    private volatile int failureStatus;
+    private volatile String answer = DEFAULT_ANSWER;
+
+    private LocalOpenAIStub(HttpServer server, ExecutorService executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    /**
+     * Starts a stub on an ephemeral loopback port.
+     */
+    public static LocalOpenAIStub start() throws IOException {
+        return start(0);
+    }
+
+    public static LocalOpenAIStub start(int port) throws IOException {
+        // The JDK server leaves Nagle on by default, which adds ~40 ms per small request/response exchange.
+        // Read once when the first server is created, so it has to be set before that.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        ExecutorService executor = Executors.newFixedThreadPool(4, r -> {
+            Thread t = new Thread(r, "openai-stub");
+            t.setDaemon(true);
+            return t;
+        });
+        LocalOpenAIStub stub = new LocalOpenAIStub(server, executor);
+        server.createContext("/v1/chat/completions", stub::handleChat);
+        server.createContext("/v1/models", stub::handleModels);
+        server.setExecutor(executor);
+        server.start();
+        return stub;
+    }
+
+    /** URL to pass to {@link OpenAIService#OpenAIService(String, String, URI)}. */
+    public URI chatUri() {
+        return URI.create("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort()
+            + "/v1/chat/completions");
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /** Delay added before each completion, to simulate a slow endpoint. */
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /** Delay between streamed chunks, to simulate token generation time. */
+    public void setChunkDelayMillis(long chunkDelayMillis) {
+        this.chunkDelayMillis = chunkDelayMillis;
+    }
+
+    /** Answer given to non-classifier requests. */
+    public void setAnswer(String answer) {
+        this.answer = answer;
+    }
+
+    /** Non-zero: every completion fails with this HTTP status (e.g. 429, 503); 0 restores normal answers. */
+    public void setFailureStatus(int failureStatus) {
+        this.failureStatus = failureStatus;
+    }
+
+    private void handleChat(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        String system = "";
+        int promptChars = 0;
+        boolean stream = false;
+        try (InputStream in = exchange.getRequestBody()) {
+            JsonReader r = new JsonReader(new Utf8StreamReader(in));
+            r.beginObject();
+            while (r.hasNext()) {
+                String name = r.nextName();
+                if ("stream".equals(name)) {
+                    stream = r.nextBoolean();
+                    continue;
+                }
+                if (!"messages".equals(name)) {
+                    r.skipValue();
+                    continue;
+                }
+                r.beginArray();
+                while (r.hasNext()) {
+                    String role = null, content = "";
+                    r.beginObject();
+                    while (r.hasNext()) {
+                        String field = r.nextName();
+                        if ("role".equals(field)) role = r.nextString();
+                        else if ("content".equals(field)) content = r.nextString();
+                        else r.skipValue();
+                    }
+                    r.endObject();
+                    promptChars += content.length();
+                    if ("system".equals(role) && system.isEmpty()) system = content;
+                }
+                r.endArray();
+            }
+            r.endObject();
+        } catch (RuntimeException e) {
+            exchange.sendResponseHeaders(400, -1);
+            exchange.close();
+            return;
+        }
+        if (latencyMillis > 0) {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (failureStatus != 0) {
+            exchange.sendResponseHeaders(failureStatus, -1);
+            exchange.close();
+            return;
+        }
+        String content = system.startsWith("You are a classifier") ? firstListedName(system) : answer;
+        if (stream) {
+            streamCompletion(exchange, content, promptChars / 4, content.length() / 4 + 1);
+        } else {
+            sendCompletion(exchange, content, promptChars / 4, content.length() / 4 + 1);
+        }
+    }
+
+    private static String firstListedName(String classifierPrompt) {
+        for (String line : classifierPrompt.split("\n")) {
+            if (line.startsWith("Category: ")) return line.substring("Category: ".length()).trim();
+            if (line.startsWith("Context: ")) return line.substring("Context: ".length()).trim();
+        }
+        return "";
+    }
+
+    private static void sendCompletion(HttpExchange exchange, String content, int promptTokens, int completionTokens)
+            throws IOException {
+        Utf8ByteBuffer body = Utf8ByteBuffer.acquire();
+        try {
+            JsonWriter w = new JsonWriter(body);
+            w.beginObject();
+            w.name("object").value("chat.completion");
+            w.name("choices").beginArray().beginObject();
+            w.name("index").value(0);
+            w.name("message").beginObject().name("role").value("assistant").name("content").value(content).endObject();
+            w.name("finish_reason").value("stop");
+            w.endObject().endArray();
+            w.name("usage").beginObject();
+            w.name("prompt_tokens").value(promptTokens);
+            w.name("completion_tokens").value(completionTokens);
+            w.name("prompt_tokens_details").beginObject().name("cached_tokens").value(0).endObject();
+            w.endObject();
+            w.endObject();
+            w.flush();
+            // Fixed Content-Length rather than chunked, so small responses aren't held back by delayed ACKs.
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.size());
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body.array(), 0, body.size());
+            }
+        } finally {
+            body.release();
+        }
+    }
+
+    private void streamCompletion(HttpExchange exchange, String content, int promptTokens, int completionTokens)
+            throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream out = exchange.getResponseBody()) {
+            int start = 0;
+            while (start < content.length()) {
+                int end = content.indexOf(' ', start);
+                end = end < 0 ? content.length() : end + 1;
+                StringWriter chunk = new StringWriter();
+                JsonWriter w = new JsonWriter(chunk);
+                w.beginObject();
+                w.name("object").value("chat.completion.chunk");
+                w.name("choices").beginArray().beginObject();
+                w.name("index").value(0);
+                w.name("delta").beginObject().name("content").value(content.substring(start, end)).endObject();
+                w.endObject().endArray();
+                w.endObject();
+                writeEvent(out, chunk.toString());
+                start = end;
+                if (chunkDelayMillis > 0 && start < content.length()) {
+                    try {
+                        Thread.sleep(chunkDelayMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+            writeEvent(out, "{\"object\":\"chat.completion.chunk\",\"choices\":[],\"usage\":{\"prompt_tokens\":"
+                + promptTokens + ",\"completion_tokens\":" + completionTokens
+                + ",\"prompt_tokens_details\":{\"cached_tokens\":0}}}");
+            writeEvent(out, "[DONE]");
+        }
+    }
+
+    private static void writeEvent(OutputStream out, String data) throws IOException {
+        out.write(("data: " + data + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private void handleModels(HttpExchange exchange) throws IOException {
+        byte[] body = "{\"object\":\"list\",\"data\":[]}".getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,15 @@
+package org.example.voicebot;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Offline stand-in for a speech recognizer: the "audio" is the caller's words as UTF-8 text, whatever the format.
+ * Lets the voice endpoint be driven with curl or replayed text until a real recognizer is plugged in.
+ */
+public class LocalSpeechToText implements SpeechToText {
+
+    @Override
+    public String transcribe(byte[] audio, String format) {
+        return new String(audio, StandardCharsets.UTF_8).trim();
+    }
+}
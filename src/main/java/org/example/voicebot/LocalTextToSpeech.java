@@ -0,0 +1,48 @@
+package org.example.voicebot;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Offline stand-in for a speech synthesizer: 16 kHz 16-bit mono PCM of a quiet tone, as long as the sentence would
+ * take to speak (about 15 characters per second), after a simulated synthesis delay of {@code baseLatency} plus
+ * {@code perCharLatency} per character.
+ */
+public class LocalTextToSpeech implements TextToSpeech {
+
+    private static final int SAMPLE_RATE = 16_000;
+    private static final int MILLIS_PER_CHAR = 65;
+
+    private final long baseLatencyNanos;
+    private final long perCharLatencyNanos;
+
+    public LocalTextToSpeech() {
+        this(Duration.ofMillis(20), Duration.ofMillis(1));
+    }
+
+    public LocalTextToSpeech(Duration baseLatency, Duration perCharLatency) {
+        this.baseLatencyNanos = baseLatency.toNanos();
+        this.perCharLatencyNanos = perCharLatency.toNanos();
+    }
+
+    @Override
+    public byte[] synthesize(String text) {
+        long delay = baseLatencyNanos + perCharLatencyNanos * text.length();
+        if (delay > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while synthesizing", e);
+            }
+        }
+        int samples = (int) ((long) text.length() * MILLIS_PER_CHAR * SAMPLE_RATE / 1000);
+        byte[] pcm = new byte[samples * 2];
+        for (int i = 0; i < samples; i++) {
+            short s = (short) (512 * Math.sin(2 * Math.PI * 220 * i / SAMPLE_RATE));
+            pcm[2 * i] = (byte) s;
+            pcm[2 * i + 1] = (byte) (s >> 8);
+        }
+        return pcm;
+    }
+}
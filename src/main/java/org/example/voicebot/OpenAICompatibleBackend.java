@@ -0,0 +1,178 @@
+package org.example.voicebot;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * One OpenAI-compatible chat completions endpoint (OpenAI, another region/key, or a self-hosted server)
+ * reached over its own {@link HttpClient}. Request bodies are streamed from the pooled UTF-8 buffer and
+ * responses parsed from the body stream (see {@link ChatCompletionCodec}).
+ */
+public class OpenAICompatibleBackend implements ChatBackend {
+
+    /** Kept short: a voice caller's whole budget is a few seconds, so a slow connect should fail fast. */
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration PRECONNECT_TIMEOUT = Duration.ofSeconds(30);
+    /**
+     * Closes response bodies still being read at their call's deadline: the request timeout only covers the time
+     * until the response headers arrive, not a slow or stalled body.
+     */
+    private static final ScheduledExecutorService BODY_DEADLINES = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "openai-body-deadline");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final String name;
+    private final URI chatUri;
+    private final String apiKey;
+    private final HttpClient httpClient = HttpClient.newBuilder()
+        .connectTimeout(CONNECT_TIMEOUT)
+        .build();
+
+    public OpenAICompatibleBackend(String name, URI chatUri, String apiKey) {
+        this.name = name;
+        this.chatUri = chatUri;
+        this.apiKey = apiKey;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public ChatCompletion complete(ChatRequest chatRequest, Duration timeout) {
+        return call(chatRequest, timeout, null);
+    }
+
+    @Override
+    public ChatCompletion stream(ChatRequest chatRequest, Duration timeout, Consumer<String> onDelta) {
+        return call(chatRequest, timeout, onDelta);
+    }
+
+    /**
+     * One chat completion; a non-null {@code onDelta} requests and reads a streaming response. The whole exchange,
+     * body included, must finish within {@code timeout}.
+     */
+    private ChatCompletion call(ChatRequest chatRequest, Duration timeout, Consumer<String> onDelta) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        // Body is encoded straight into this thread's pooled UTF-8 buffer, which the request publisher reads without
+        // copying; it goes back to the pool only once the exchange is over (response read or abandoned), since the
+        // client may still be sending the body when the response headers arrive.
+        Utf8ByteBuffer body = ChatCompletionCodec.writeRequest(chatRequest.getModel(), chatRequest.getMessages(),
+            chatRequest.getTemperature(), chatRequest.getMaxTokens(), chatRequest.isLogprobs(), onDelta != null,
+            chatRequest.getStop());
+        HttpRequest request = HttpRequest.newBuilder()
+            .uri(chatUri)
+            .header("Content-Type", "application/json")
+            .header("Authorization", "Bearer " + apiKey)
+            .timeout(timeout)
+            .POST(HttpRequest.BodyPublishers.ofByteArray(body.array(), 0, body.size()))
+            .build();
+
+        AtomicBoolean expired = new AtomicBoolean();
+        try {
+            HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            InputStream in = response.body();
+            ScheduledFuture<?> watchdog = BODY_DEADLINES.schedule(() -> {
+                expired.set(true);
+                closeQuietly(in);
+            }, deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            try (in) {
+                if (response.statusCode() != 200) {
+                    String error = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                    throw new OpenAIService.OpenAIException("OpenAI API error: " + response.statusCode() + " " + error,
+                        response.statusCode());
+                }
+                return onDelta == null ? ChatCompletionCodec.readResponse(in) : ChatCompletionCodec.readStream(in, onDelta);
+            } finally {
+                watchdog.cancel(false);
+            }
+        } catch (OpenAIService.OpenAIException e) {
+            if (expired.get()) throw timedOut(timeout);
+            throw e;
+        } catch (CancellationException e) {
+            throw e; // The caller's consumer gave up on the stream; not an upstream failure.
+        } catch (HttpTimeoutException e) {
+            throw new UpstreamScheduler.DeadlineExceededException("OpenAI call timed out after " + timeout.toMillis() + " ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OpenAIService.OpenAIException("Interrupted while calling OpenAI", e);
+        } catch (Exception e) {
+            if (expired.get()) throw timedOut(timeout);
+            throw new OpenAIService.OpenAIException("Failed to call OpenAI: " + e.getMessage(), e);
+        } finally {
+            body.release();
+        }
+    }
+
+    private static UpstreamScheduler.DeadlineExceededException timedOut(Duration timeout) {
+        return new UpstreamScheduler.DeadlineExceededException("OpenAI response not complete after "
+            + timeout.toMillis() + " ms");
+    }
+
+    private static void closeQuietly(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException e) {
+            // The reader fails either way.
+        }
+    }
+
+    /**
+     * Opens connections (TLS handshake, HTTP/2 setup) by sending {@code connections} concurrent lightweight
+     * GET /models requests. Over HTTP/2 they share one multiplexed connection. Counts requests that got any response.
+     */
+    @Override
+    public int preconnect(int connections) {
+        // .../v1/chat/completions -> .../v1/models
+        URI modelsUri = chatUri.resolve("../models");
+        List<CompletableFuture<HttpResponse<Void>>> pending = new ArrayList<>();
+        for (int i = 0; i < connections; i++) {
+            HttpRequest request = HttpRequest.newBuilder()
+                .uri(modelsUri)
+                .header("Authorization", "Bearer " + apiKey)
+                .timeout(PRECONNECT_TIMEOUT)
+                .GET()
+                .build();
+            pending.add(httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding()));
+        }
+        int established = 0;
+        for (CompletableFuture<HttpResponse<Void>> f : pending) {
+            try {
+                f.join();
+                established++;
+            } catch (Exception e) {
+                // Counted as not established; the real call will connect on demand.
+            }
+        }
+        return established;
+    }
+
+    @Override
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("name", name);
+        map.put("url", chatUri.toString());
+        return map;
+    }
+}
@@ -1,44 +1,227 @@
 package org.example.voicebot;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
-
 import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * OpenAI Chat Completions API for text input → text response.
  * Uses KnowledgeBase, ContextCatalog, and per-context customer data (only the relevant context is sent).
+ * Completions are executed by a {@link ChatBackend}: by default a single OpenAI endpoint.
  */
 public class OpenAIService {
 
-    private static final String CHAT_URL = "https://api.openai.com/v1/chat/completions";
+    public static final URI DEFAULT_CHAT_URI = URI.create("https://api.openai.com/v1/chat/completions");
     private static final String DEFAULT_MODEL = "gpt-4o-mini";
     private static final double TEMPERATURE = 0.3;
     private static final int MAX_TOKENS = 256;
     private static final int CLASSIFY_MAX_TOKENS = 30;
     private static final double CLASSIFY_TEMPERATURE = 0;
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
 
-    private final String apiKey;
-    private final String model;
-    private final Gson gson = new Gson();
-    private final HttpClient httpClient = HttpClient.newBuilder()
-        .connectTimeout(Duration.ofSeconds(15))
-        .build();
+    private final ChatBackend backend;
+    private volatile Map<Stage, StageConfig> stageConfigs;
+    private final UsageStats usageStats = new UsageStats();
+    private volatile PromptLayout promptLayout = PromptLayout.LEGACY;
+    private volatile UpstreamScheduler scheduler;
+    private volatile Duration skipCategoryBelow = Duration.ZERO;
+    private volatile Duration skipContextBelow = Duration.ZERO;
+    private volatile boolean logRouting;
+    private volatile double faqMinSimilarity;
+    private volatile EmbeddingProvider embeddingProvider;
+    private volatile double semanticMinCategoryScore;
+    private volatile double semanticMinContextScore;
+    private volatile Path semanticIndexDir;
+    private volatile ScheduledExecutorService keepAlive;
+    private volatile double generationMeasureRate;
+    private volatile ExecutorService generationShadows;
 
     public OpenAIService(String apiKey) {
         this(apiKey, DEFAULT_MODEL);
     }
 
     public OpenAIService(String apiKey, String model) {
-        this.apiKey = apiKey;
-        this.model = model != null ? model : DEFAULT_MODEL;
+        this(apiKey, model, DEFAULT_CHAT_URI);
+    }
+
+    /**
+     * Service against any OpenAI-compatible chat completions URL (e.g. a local stub for warm-up).
+     */
+    public OpenAIService(String apiKey, String model, URI chatUri) {
+        this(new OpenAICompatibleBackend("openai", chatUri != null ? chatUri : DEFAULT_CHAT_URI, apiKey), model);
+    }
+
+    /**
+     * Service on top of any {@link ChatBackend}, e.g. a {@link BalancedChatBackend} over several endpoints.
+     */
+    public OpenAIService(ChatBackend backend, String model) {
+        this.backend = backend;
+        String defaultModel = model != null ? model : DEFAULT_MODEL;
+        Map<Stage, StageConfig> configs = new EnumMap<>(Stage.class);
+        configs.put(Stage.CATEGORY, new StageConfig(defaultModel, CLASSIFY_TEMPERATURE, CLASSIFY_MAX_TOKENS, REQUEST_TIMEOUT, null, 0));
+        configs.put(Stage.CONTEXT, new StageConfig(defaultModel, CLASSIFY_TEMPERATURE, CLASSIFY_MAX_TOKENS, REQUEST_TIMEOUT, null, 0));
+        configs.put(Stage.ANSWER, new StageConfig(defaultModel, TEMPERATURE, MAX_TOKENS, REQUEST_TIMEOUT, null, 0));
+        this.stageConfigs = configs;
+    }
+
+    /**
+     * Overrides model, generation settings, timeout and escalation policy for one stage.
+     * Defaults: the constructor's model for every stage, classifier settings for CATEGORY/CONTEXT.
+     */
+    public synchronized void setStageConfig(Stage stage, StageConfig config) {
+        Map<Stage, StageConfig> copy = new EnumMap<>(stageConfigs);
+        copy.put(stage, config);
+        stageConfigs = copy;
+    }
+
+    public StageConfig getStageConfig(Stage stage) {
+        return stageConfigs.get(stage);
+    }
+
+    /**
+     * Turns the per-request "Category:/Context:" console output on or off. Off by default: servers record routing
+     * through the {@link EventLog}; the interactive console turns it on.
+     */
+    public void setLogRouting(boolean logRouting) {
+        this.logRouting = logRouting;
+    }
+
+    /**
+     * Opens up to {@code connections} upstream connections now (TLS handshake, HTTP/2 setup) so the first real
+     * calls don't pay for it. Returns the number of connection attempts that got a response.
+     */
+    public int preconnect(int connections) {
+        return backend.preconnect(connections);
+    }
+
+    /**
+     * The backend completions are sent to.
+     */
+    public ChatBackend getBackend() {
+        return backend;
+    }
+
+    /**
+     * Re-runs {@link #preconnect(int)} every {@code interval} so idle connections are not closed between bursts.
+     * Replaces any previous keep-alive schedule; a non-positive interval just stops it.
+     */
+    public synchronized void startKeepAlive(int connections, Duration interval) {
+        if (keepAlive != null) keepAlive.shutdownNow();
+        keepAlive = null;
+        if (interval == null || interval.isZero() || interval.isNegative() || connections <= 0) return;
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "openai-keepalive");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.scheduleWithFixedDelay(() -> preconnect(connections), interval.toMillis(), interval.toMillis(),
+            TimeUnit.MILLISECONDS);
+        keepAlive = executor;
+    }
+
+    /**
+     * Selects how the answer prompt is laid out (see {@link PromptLayout}). Default: LEGACY.
+     */
+    public void setPromptLayout(PromptLayout promptLayout) {
+        this.promptLayout = promptLayout != null ? promptLayout : PromptLayout.LEGACY;
+    }
+
+    public PromptLayout getPromptLayout() {
+        return promptLayout;
+    }
+
+    /**
+     * Routes every upstream call through the given priority scheduler; null (default) calls upstream directly.
+     */
+    public void setScheduler(UpstreamScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Queries whose similarity to a {@code serve_verbatim} entry's customer_query is at least this (0..1) are
+     * answered with its agent_response without any upstream call ({@link FaqMatcher}). 0 (default) disables it.
+     */
+    public void setFaqMinSimilarity(double faqMinSimilarity) {
+        this.faqMinSimilarity = faqMinSimilarity;
+    }
+
+    /**
+     * Routes through vector indexes ({@link SemanticIndex}) before the LLM classifiers: if the knowledge text
+     * (customer_query or issue) nearest to the query scores at least {@code minCategoryScore}, its entry's category is
+     * used without a classifier call; likewise a context example query or description scoring at least
+     * {@code minContextScore} selects that context. Otherwise the classifier runs as usual. Indexes are built per
+     * knowledge base and catalog on first use and saved under {@code indexDir} (null keeps them in memory only).
+     * A null provider disables it (default).
+     */
+    public void setSemanticRouting(EmbeddingProvider provider, double minCategoryScore, double minContextScore,
+                                   Path indexDir) {
+        this.semanticIndexDir = indexDir;
+        this.semanticMinCategoryScore = minCategoryScore;
+        this.semanticMinContextScore = minContextScore;
+        this.embeddingProvider = provider;
+    }
+
+    /**
+     * Builds (or loads) the vector indexes of this knowledge base and catalog, so the first query doesn't wait.
+     * No-op unless semantic routing is on.
+     */
+    public void prepareSemanticRouting(KnowledgeBase knowledge, ContextCatalog catalog) {
+        EmbeddingProvider provider = embeddingProvider;
+        if (provider == null) return;
+        if (knowledge != null) knowledge.getSemanticIndex(provider, semanticIndexDir);
+        if (catalog != null) catalog.getSemanticIndex(provider, semanticIndexDir);
+    }
+
+    /**
+     * Share (0..1) of answers cut at their {@link GenerationBudget} that are sent again as a background shadow
+     * request, without the reduced max_tokens, and read to the end, to measure the tokens and time a cut saves
+     * (reported in {@link UsageStats}). Each sample costs a full extra answer call; 0 (default) never measures.
+     */
+    public synchronized void setGenerationMeasureRate(double generationMeasureRate) {
+        this.generationMeasureRate = generationMeasureRate;
+        if (generationMeasureRate > 0 && generationShadows == null) {
+            // One at a time; samples arriving while the queue is full are skipped.
+            generationShadows = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(16),
+                r -> {
+                    Thread t = new Thread(r, "openai-generation-shadow");
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.DiscardPolicy());
+        } else if (generationMeasureRate <= 0 && generationShadows != null) {
+            generationShadows.shutdownNow();
+            generationShadows = null;
+        }
+    }
+
+    /**
+     * Optional routing stages are skipped (and the answer marked degraded) when less than this much of the
+     * request budget is left: LLM category classification first, then context classification.
+     */
+    public void setOptionalStageThresholds(Duration skipCategoryBelow, Duration skipContextBelow) {
+        this.skipCategoryBelow = skipCategoryBelow != null ? skipCategoryBelow : Duration.ZERO;
+        this.skipContextBelow = skipContextBelow != null ? skipContextBelow : Duration.ZERO;
+    }
+
+    /**
+     * Token usage totals (including cached prompt tokens) across all calls made by this service.
+     */
+    public UsageStats getUsageStats() {
+        return usageStats;
     }
 
     /**
@@ -57,52 +240,201 @@ public class OpenAIService {
     public String answerWithCategoryRouting(String customerQuery, KnowledgeBase fullKnowledge,
                                            ContextCatalog catalog, CustomerContextStore customerData,
                                            List<ChatMessage> conversationHistory) {
+        return answerWithCategoryRouting(customerQuery, fullKnowledge, catalog, customerData, conversationHistory,
+            Priority.INTERACTIVE, RequestBudget.unlimited());
+    }
+
+    /**
+     * Same as above, scheduling every upstream call of this answer (classifiers and answer) in the given class
+     * and within the request's remaining budget. Classification stages are skipped when the budget runs low
+     * (recorded on {@code budget} as degradations); the answer call itself fails if the budget is spent.
+     */
+    public String answerWithCategoryRouting(String customerQuery, KnowledgeBase fullKnowledge,
+                                           ContextCatalog catalog, CustomerContextStore customerData,
+                                           List<ChatMessage> conversationHistory, Priority priority,
+                                           RequestBudget budget) {
+        return answerWithCategoryRouting(customerQuery, fullKnowledge, catalog, customerData, conversationHistory,
+            priority, budget, null);
+    }
+
+    /**
+     * Same as above, streaming the answer stage: each piece of the reply is passed to {@code onDelta} as the model
+     * produces it (classifiers are not streamed). The full reply is still returned. Null {@code onDelta} disables
+     * streaming.
+     */
+    public String answerWithCategoryRouting(String customerQuery, KnowledgeBase fullKnowledge,
+                                           ContextCatalog catalog, CustomerContextStore customerData,
+                                           List<ChatMessage> conversationHistory, Priority priority,
+                                           RequestBudget budget, Consumer<String> onDelta) {
+        // 0) Generic FAQ asked (almost) word for word: the stored answer is the answer, no routing needed
+        RoutingTrace trace = budget.getTrace();
+        KnowledgeEntry faq = matchFaq(customerQuery, fullKnowledge);
+        if (faq != null) {
+            usageStats.recordFaqHit();
+            if (logRouting) System.err.println("FAQ: " + faq.getIssue());
+            if (trace != null) {
+                trace.setCategory(faq.getCategory());
+                trace.setCategorySource("faq");
+                trace.setAnswer(faq.getAgentResponse());
+            }
+            if (onDelta != null) onDelta.accept(faq.getAgentResponse());
+            return faq.getAgentResponse();
+        }
+
         // Use conversation context for classification when the current query is a follow-up (e.g. "What is the amount?")
         String queryForClassification = buildQueryWithContext(customerQuery, conversationHistory);
 
         // 1) Classify knowledge category for routing (balance, loans, etc.)
         List<Category> categories = fullKnowledge.getCategories();
         KnowledgeBase knowledge = fullKnowledge;
-        if (categories != null && categories.size() > 1) {
-            String category = classifyCategory(queryForClassification, categories);
-            System.out.println("Category: " + category);
+        String semanticCategory = categories != null && categories.size() > 1
+            ? semanticCategory(queryForClassification, fullKnowledge) : null;
+        if (semanticCategory != null) {
+            if (logRouting) System.err.println("Category (semantic): " + semanticCategory);
+            if (trace != null) {
+                trace.setCategory(semanticCategory);
+                trace.setCategorySource("semantic");
+            }
+            KnowledgeBase filtered = fullKnowledge.forCategory(semanticCategory);
+            if (filtered != null && !filtered.isEmpty()) knowledge = filtered;
+        } else if (categories != null && categories.size() > 1 && !budget.hasAtLeast(skipCategoryBelow)) {
+            // Answer from the full knowledge base instead: bigger prompt, but no extra round trip.
+            budget.degrade("category_classification_skipped");
+            if (trace != null) trace.setCategorySource("skipped");
+        } else if (categories != null && categories.size() > 1) {
+            String category = classifyOptional(budget, "category_classification_timed_out",
+                () -> classifyCategory(queryForClassification, categories, fullKnowledge.getCategoryClassifierPrompt(),
+                    priority, budget));
+            if (logRouting) System.err.println("Category: " + category);
+            if (trace != null) {
+                trace.setCategory(category);
+                trace.setCategorySource("classifier");
+            }
             if (category != null && !category.isBlank()) {
                 KnowledgeBase filtered = fullKnowledge.forCategory(category);
-                if (filtered != null && !filtered.getEntries().isEmpty()) knowledge = filtered;
+                if (filtered != null && !filtered.isEmpty()) knowledge = filtered;
             }
         } else if (categories != null && categories.size() == 1) {
             knowledge = fullKnowledge.forCategory(categories.get(0).getType());
+            if (trace != null) trace.setCategorySource("single");
         }
 
         // 2) Use AI to recognise which context (database table) the query is about — with conversation context
-        String selectedContext = catalog != null ? classifyContext(queryForClassification, catalog) : null;
-        System.out.println("Context: " + (selectedContext != null ? selectedContext : "(none)"));
+        String selectedContext = catalog != null ? semanticContext(queryForClassification, catalog) : null;
+        String contextSource = selectedContext != null ? "semantic" : null;
+        if (selectedContext == null && catalog != null) {
+            if (!budget.hasAtLeast(skipContextBelow)) {
+                budget.degrade("context_classification_skipped");
+                contextSource = "skipped";
+            } else {
+                selectedContext = classifyOptional(budget, "context_classification_timed_out",
+                    () -> classifyContext(queryForClassification, catalog, priority, budget));
+                contextSource = "classifier";
+            }
+        }
+        if (logRouting) System.err.println("Context: " + (selectedContext != null ? selectedContext : "(none)"));
+        if (trace != null) {
+            trace.setContext(selectedContext);
+            trace.setContextSource(contextSource);
+        }
 
         // 3) Build prompt with only the selected context's schema + data (never all contexts)
         String singleContextDataSection = null;
         if (customerData != null && selectedContext != null && !selectedContext.isBlank()) {
             singleContextDataSection = customerData.toPromptSectionForContext(selectedContext);
         }
+        if (promptLayout == PromptLayout.CACHE_FRIENDLY) {
+            return answerCacheFriendly(customerQuery, knowledge, catalog, selectedContext,
+                singleContextDataSection, conversationHistory, priority, budget, onDelta);
+        }
         String systemPrompt = VoiceBotPromptBuilder.buildSystemPromptForContext(
             knowledge, catalog, selectedContext, singleContextDataSection);
 
         // 4) Send with conversation history so the model can resolve "it", "the amount", etc.
         if (conversationHistory != null && !conversationHistory.isEmpty()) {
-            JsonArray messages = new JsonArray();
-            messages.add(messageObject("system", systemPrompt));
-            for (ChatMessage m : conversationHistory) {
-                messages.add(messageObject(m.getRole(), m.getContent()));
-            }
-            messages.add(messageObject("user", customerQuery));
-            return chat(messages, TEMPERATURE, MAX_TOKENS);
+            List<ChatMessage> messages = new ArrayList<>(conversationHistory.size() + 2);
+            messages.add(new ChatMessage("system", systemPrompt));
+            messages.addAll(conversationHistory);
+            messages.add(new ChatMessage("user", customerQuery));
+            return answer(messages, priority, budget, onDelta);
+        }
+        return answer(List.of(new ChatMessage("system", systemPrompt), new ChatMessage("user", customerQuery)),
+            priority, budget, onDelta);
+    }
+
+    /**
+     * The entry to serve verbatim for this query (see {@link FaqMatcher#verbatim}).
+     */
+    private KnowledgeEntry matchFaq(String customerQuery, KnowledgeBase knowledge) {
+        double threshold = faqMinSimilarity;
+        if (threshold <= 0) return null;
+        return knowledge.getFaqMatcher().verbatim(customerQuery, threshold);
+    }
+
+    /**
+     * Category of the knowledge entry nearest to the query, if semantic routing is on and it is similar enough.
+     */
+    private String semanticCategory(String query, KnowledgeBase knowledge) {
+        EmbeddingProvider provider = embeddingProvider;
+        if (provider == null) return null;
+        SemanticIndex.Match<KnowledgeEntry> match = knowledge.getSemanticIndex(provider, semanticIndexDir).best(query);
+        if (match == null || match.getScore() < semanticMinCategoryScore) return null;
+        String category = match.getTarget().getCategory();
+        if (category == null || category.isBlank()) return null;
+        usageStats.recordSemanticRoute(Stage.CATEGORY);
+        return category;
+    }
+
+    /**
+     * Name of the context whose example query is nearest to the query, if semantic routing is on and it is similar
+     * enough.
+     */
+    private String semanticContext(String query, ContextCatalog catalog) {
+        EmbeddingProvider provider = embeddingProvider;
+        if (provider == null) return null;
+        SemanticIndex.Match<ContextSchema> match = catalog.getSemanticIndex(provider, semanticIndexDir).best(query);
+        if (match == null || match.getScore() < semanticMinContextScore) return null;
+        usageStats.recordSemanticRoute(Stage.CONTEXT);
+        return match.getTarget().getName();
+    }
+
+    /**
+     * Runs an optional classification stage; if it runs out of time the answer continues without it.
+     */
+    private static String classifyOptional(RequestBudget budget, String degradation, Supplier<String> stage) {
+        try {
+            return stage.get();
+        } catch (UpstreamScheduler.DeadlineExceededException e) {
+            budget.degrade(degradation);
+            return null;
+        }
+    }
+
+    /**
+     * Cache-friendly layout: static system prompt first (identical for every customer with the same
+     * category/context), then customer data, then history, then the question. Customer data sits before
+     * history because it stays the same for the whole call while history grows every turn.
+     */
+    private String answerCacheFriendly(String customerQuery, KnowledgeBase knowledge, ContextCatalog catalog,
+                                       String selectedContext, String singleContextDataSection,
+                                       List<ChatMessage> conversationHistory, Priority priority,
+                                       RequestBudget budget, Consumer<String> onDelta) {
+        List<ChatMessage> messages = new ArrayList<>();
+        messages.add(new ChatMessage("system", VoiceBotPromptBuilder.buildStaticPromptForContext(knowledge, catalog, selectedContext)));
+        if (singleContextDataSection != null && !singleContextDataSection.isBlank()) {
+            messages.add(new ChatMessage("system", singleContextDataSection));
+        }
+        if (conversationHistory != null) {
+            messages.addAll(conversationHistory);
         }
-        return chat(systemPrompt, customerQuery);
+        messages.add(new ChatMessage("user", customerQuery));
+        return answer(messages, priority, budget, onDelta);
     }
 
     /**
      * Builds a string that includes recent conversation so classifiers understand follow-up questions.
      */
-    private static String buildQueryWithContext(String currentQuery, List<ChatMessage> history) {
+    static String buildQueryWithContext(String currentQuery, List<ChatMessage> history) {
         if (history == null || history.isEmpty()) return currentQuery;
         // Include last 2 exchanges (4 messages) so "What is the amount?" has loan context
         int maxMessages = Math.min(4, history.size());
@@ -122,90 +454,150 @@ public class OpenAIService {
      * Returns the context name (e.g. "balance_and_usage", "loans") or null if none matched.
      */
     public String classifyContext(String customerQuery, ContextCatalog catalog) {
+        return classifyContext(customerQuery, catalog, Priority.INTERACTIVE, RequestBudget.unlimited());
+    }
+
+    public String classifyContext(String customerQuery, ContextCatalog catalog, Priority priority, RequestBudget budget) {
         if (catalog == null) return null;
         List<ContextSchema> contexts = catalog.getContexts();
         if (contexts == null || contexts.isEmpty()) return null;
-        StringBuilder prompt = new StringBuilder();
-        prompt.append("You are a classifier. The customer will ask a question. ");
-        prompt.append("Reply with exactly one context name from the list below — the context (database table) that best matches the question.\n\n");
-        for (ContextSchema ctx : contexts) {
-            prompt.append("Context: ").append(ctx.getName()).append("\n");
-            if (ctx.getDescription() != null) prompt.append("  Description: ").append(ctx.getDescription()).append("\n");
-            if (ctx.getExampleQueries() != null && !ctx.getExampleQueries().isEmpty()) {
-                prompt.append("  Example questions: ").append(String.join("; ", ctx.getExampleQueries())).append("\n");
+        return classify(Stage.CONTEXT, catalog.getClassifierPrompt(), customerQuery, raw -> {
+            for (ContextSchema ctx : contexts) {
+                if (ctx.getName().equalsIgnoreCase(raw)) return ctx.getName();
             }
-            prompt.append("\n");
-        }
-        prompt.append("Reply with only the context name, nothing else.");
-        String raw = chat(prompt.toString(), customerQuery, CLASSIFY_TEMPERATURE, CLASSIFY_MAX_TOKENS);
-        if (raw == null || raw.isBlank()) return null;
-        String trimmed = raw.trim();
-        for (ContextSchema ctx : contexts) {
-            if (ctx.getName().equalsIgnoreCase(trimmed)) return ctx.getName();
-        }
-        return null;
+            return null;
+        }, priority, budget);
     }
 
     /**
      * Uses category names and their issue lists to pick the one category that best matches the user query.
      */
     public String classifyCategory(String userQuery, List<Category> categories) {
+        return classifyCategory(userQuery, categories, Priority.INTERACTIVE, RequestBudget.unlimited());
+    }
+
+    public String classifyCategory(String userQuery, List<Category> categories, Priority priority, RequestBudget budget) {
         if (categories == null || categories.isEmpty()) return null;
-        StringBuilder prompt = new StringBuilder();
-        prompt.append("You are a classifier. For the customer message, reply with exactly one category name from the list below.\n\n");
-        for (Category c : categories) {
-            prompt.append("Category: ").append(c.getType()).append("\n");
-            prompt.append("Issues: ").append(String.join(", ", c.getIssues())).append("\n\n");
-        }
-        prompt.append("Reply with only the category name, nothing else.");
-        String raw = chat(prompt.toString(), userQuery, CLASSIFY_TEMPERATURE, CLASSIFY_MAX_TOKENS);
-        if (raw == null || raw.isBlank()) return null;
-        String trimmed = raw.trim();
-        for (Category c : categories) {
-            if (c.getType().equalsIgnoreCase(trimmed)) return c.getType();
-        }
-        return null;
+        return classifyCategory(userQuery, categories, VoiceBotPromptBuilder.buildCategoryClassifierPrompt(categories),
+            priority, budget);
     }
 
-    public String chat(String systemPrompt, String userMessage) {
-        return chat(systemPrompt, userMessage, TEMPERATURE, MAX_TOKENS);
+    /**
+     * Same as above with a prebuilt classifier prompt (see {@link KnowledgeBase#getCategoryClassifierPrompt()}).
+     */
+    private String classifyCategory(String userQuery, List<Category> categories, String classifierPrompt,
+                                    Priority priority, RequestBudget budget) {
+        return classify(Stage.CATEGORY, classifierPrompt, userQuery, raw -> {
+            for (Category c : categories) {
+                if (c.getType().equalsIgnoreCase(raw)) return c.getType();
+            }
+            return null;
+        }, priority, budget);
     }
 
-    private String chat(String systemPrompt, String userMessage, double temperature, int maxTokens) {
-        JsonArray messages = new JsonArray();
-        messages.add(messageObject("system", systemPrompt));
-        messages.add(messageObject("user", userMessage));
-        return chat(messages, temperature, maxTokens);
+    /**
+     * Runs a classifier stage with its configured (small) model. {@code validator} maps the trimmed reply to a
+     * known name or null. If the reply is invalid, or below the stage's minimum confidence, the stage is re-run
+     * once with its escalation model; if that fails or runs out of time, the first result is kept.
+     */
+    private String classify(Stage stage, String classifierPrompt, String query, Function<String, String> validator,
+                            Priority priority, RequestBudget budget) {
+        StageConfig config = stageConfigs.get(stage);
+        List<ChatMessage> messages = List.of(new ChatMessage("system", classifierPrompt), new ChatMessage("user", query));
+        ChatCompletion first = complete(stage, messages, config, priority, budget, null);
+        String result = validate(first.getContent(), validator);
+        boolean lowConfidence = config.wantsConfidence() && !Double.isNaN(first.getConfidence())
+            && first.getConfidence() < config.getMinConfidence();
+        if ((result == null || lowConfidence) && config.getEscalationModel() != null && !budget.isExpired()) {
+            usageStats.recordEscalation(stage);
+            try {
+                ChatCompletion escalated = complete(stage, messages, config.withModel(config.getEscalationModel()),
+                    priority, budget, null);
+                String escalatedResult = validate(escalated.getContent(), validator);
+                if (escalatedResult != null) return escalatedResult;
+            } catch (UpstreamScheduler.DeadlineExceededException e) {
+                // Keep the cheap result rather than losing the stage.
+            }
+        }
+        return result;
     }
 
-    private JsonObject messageObject(String role, String content) {
-        JsonObject o = new JsonObject();
-        o.addProperty("role", role);
-        o.addProperty("content", content);
-        return o;
+    private static String validate(String raw, Function<String, String> validator) {
+        if (raw == null || raw.isBlank()) return null;
+        return validator.apply(raw.trim());
     }
 
-    private String chat(JsonArray messages, double temperature, int maxTokens) {
-        JsonObject body = new JsonObject();
-        body.addProperty("model", model);
-        body.add("messages", messages);
-        body.addProperty("temperature", temperature);
-        body.addProperty("max_tokens", maxTokens);
+    /**
+     * Answer stage: escalates once to the stage's escalation model if the first reply is empty (an empty stream
+     * has delivered nothing, so the escalated reply can still be streamed). With a {@link GenerationBudget} on
+     * {@code budget}, max_tokens is capped to fit it and the reply is always streamed, so it can be stopped at the
+     * sentence boundary that reaches the budget. A sample of cut answers is measured in the background (see
+     * {@link #setGenerationMeasureRate}).
+     */
+    private String answer(List<ChatMessage> messages, Priority priority, RequestBudget budget,
+                          Consumer<String> onDelta) {
+        StageConfig uncapped = stageConfigs.get(Stage.ANSWER);
+        StageConfig config = uncapped;
+        GenerationBudget generation = budget.getGeneration();
+        if (generation != null && generation.isLimited()) {
+            config = config.withMaxTokens(generation.maxTokens(config.getMaxTokens()));
+        } else {
+            generation = null;
+        }
+        GenerationControl control = generation != null ? new GenerationControl(generation, onDelta, false) : null;
+        String content = complete(Stage.ANSWER, messages, config, priority, budget,
+            control != null ? control : onDelta).getContent();
+        if ((content == null || content.isBlank()) && config.getEscalationModel() != null) {
+            usageStats.recordEscalation(Stage.ANSWER);
+            uncapped = uncapped.withModel(config.getEscalationModel());
+            control = generation != null ? new GenerationControl(generation, onDelta, false) : null;
+            content = complete(Stage.ANSWER, messages, config.withModel(config.getEscalationModel()), priority, budget,
+                control != null ? control : onDelta).getContent();
+        }
+        if (control != null && control.isCut()) measureCut(messages, uncapped, generation);
+        if (budget.getTrace() != null) budget.getTrace().setAnswer(content);
+        return content;
+    }
+
+    /**
+     * Sends a sampled cut answer again at background priority with the stage's own max_tokens and reads it to the
+     * end, so the measured tail is not bounded by the reduced max_tokens and the caller doesn't wait for it.
+     */
+    private void measureCut(List<ChatMessage> messages, StageConfig config, GenerationBudget generation) {
+        double rate = generationMeasureRate;
+        ExecutorService shadows = generationShadows;
+        if (rate <= 0 || shadows == null || ThreadLocalRandom.current().nextDouble() >= rate) return;
+        List<ChatMessage> copy = List.copyOf(messages);
+        try {
+            shadows.execute(() -> {
+                try {
+                    complete(Stage.ANSWER, copy, config, Priority.BACKGROUND, RequestBudget.unlimited(),
+                        new GenerationControl(generation, null, true));
+                } catch (OpenAIException e) {
+                    // A lost sample.
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Measuring was switched off meanwhile.
+        }
+    }
 
-        HttpRequest request = HttpRequest.newBuilder()
-            .uri(URI.create(CHAT_URL))
-            .header("Content-Type", "application/json")
-            .header("Authorization", "Bearer " + apiKey)
-            .timeout(Duration.ofSeconds(30))
-            .POST(HttpRequest.BodyPublishers.ofString(body.toString(), StandardCharsets.UTF_8))
-            .build();
+    public String chat(String systemPrompt, String userMessage) {
+        return answer(List.of(new ChatMessage("system", systemPrompt), new ChatMessage("user", userMessage)),
+            Priority.INTERACTIVE, RequestBudget.unlimited(), null);
+    }
 
+    private ChatCompletion complete(Stage stage, List<ChatMessage> messages, StageConfig config, Priority priority,
+                                    RequestBudget budget, Consumer<String> onDelta) {
+        long deadline = budget.deadlineFor(config.getTimeout());
+        // Before queueing: a throttled tenant waits for its quota without holding a slot other tenants could use.
+        budget.acquireUpstream(deadline);
+        UpstreamScheduler current = scheduler;
+        if (current == null) {
+            return send(stage, messages, config, budget, onDelta);
+        }
         try {
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
-            if (response.statusCode() != 200) {
-                throw new OpenAIException("OpenAI API error: " + response.statusCode() + " " + response.body());
-            }
-            return extractContent(response.body());
+            return current.call(priority, deadline, () -> send(stage, messages, config, budget, onDelta));
         } catch (OpenAIException e) {
             throw e;
         } catch (Exception e) {
@@ -213,18 +605,39 @@ public class OpenAIService {
         }
     }
 
-    private String extractContent(String jsonBody) {
-        JsonObject root = gson.fromJson(jsonBody, JsonObject.class);
-        JsonArray choices = root.getAsJsonArray("choices");
-        if (choices == null || choices.isEmpty()) {
-            throw new OpenAIException("No choices in OpenAI response");
+    private ChatCompletion send(Stage stage, List<ChatMessage> messages, StageConfig config, RequestBudget budget,
+                                Consumer<String> onDelta) {
+        // Only the time left in the request budget (queueing included), never more than the stage's limit.
+        Duration timeout = budget.timeoutFor(config.getTimeout());
+        long start = System.nanoTime();
+        ChatRequest request = new ChatRequest(config.getModel(), messages,
+            config.getTemperature(), config.getMaxTokens(), config.wantsConfidence(), config.getStop(), stage);
+        ChatCompletion completion = onDelta == null
+            ? backend.complete(request, timeout)
+            : backend.stream(request, timeout, onDelta);
+        boolean estimated = false;
+        if (onDelta instanceof GenerationControl control) {
+            if (control.isMeasuring()) {
+                if (control.isMeasured(completion)) {
+                    usageStats.recordGenerationSample(control.tailTokens(completion),
+                        control.tailNanos(System.nanoTime()));
+                }
+            } else if (control.isCut()) {
+                usageStats.recordGenerationCut(control.isCancelled(completion));
+            }
+            estimated = control.isCancelled(completion);
+            completion = control.result(completion, messages);
+        }
+        if (estimated) {
+            usageStats.recordEstimated(completion.getPromptTokens(), completion.getCompletionTokens());
+        } else {
+            usageStats.record(completion.getPromptTokens(), completion.getCachedPromptTokens(),
+                completion.getCompletionTokens());
         }
-        JsonObject first = choices.get(0).getAsJsonObject();
-        JsonObject message = first.getAsJsonObject("message");
-        if (message == null || !message.has("content")) {
-            throw new OpenAIException("No message content in OpenAI response");
+        if (budget.getTrace() != null) {
+            budget.getTrace().recordCall(stage, messages, completion, System.nanoTime() - start);
         }
-        return message.get("content").getAsString();
+        return completion;
     }
 
     public static class ChatMessage {
@@ -240,7 +653,13 @@ public class OpenAIService {
     }
 
     public static class OpenAIException extends RuntimeException {
-        public OpenAIException(String message) { super(message); }
-        public OpenAIException(String message, Throwable cause) { super(message, cause); }
+        private final int statusCode;
+
+        public OpenAIException(String message) { this(message, 0); }
+        public OpenAIException(String message, Throwable cause) { super(message, cause); this.statusCode = 0; }
+        public OpenAIException(String message, int statusCode) { super(message); this.statusCode = statusCode; }
+
+        /** HTTP status of the failed upstream call, or 0 if there was none. */
+        public int getStatusCode() { return statusCode; }
     }
 }
@@ -0,0 +1,13 @@
+package org.example.voicebot;
+
+/**
+ * Scheduling class of an upstream (OpenAI) call, highest priority first.
+ * INTERACTIVE: a live caller is waiting on the answer.
+ * FOLLOW_UP: work for a live session that is off the caller's critical path (summaries, warm-up, retries).
+ * BACKGROUND: batch sweeps, bulk re-answering and reloads.
+ */
+public enum Priority {
+    INTERACTIVE,
+    FOLLOW_UP,
+    BACKGROUND
+}
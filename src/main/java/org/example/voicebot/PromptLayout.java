@@ -0,0 +1,26 @@
+package org.example.voicebot;
+
+/**
+ * Order in which the answer prompt is laid out.
+ * LEGACY: one system message (rules → knowledge → context schema → customer data → safety).
+ * CACHE_FRIENDLY: most static → most dynamic, so providers can reuse the cached prompt prefix
+ * across customers and turns: system (rules, safety, knowledge slice, context schema) →
+ * system (customer data) → conversation history → user question.
+ */
+public enum PromptLayout {
+    LEGACY,
+    CACHE_FRIENDLY;
+
+    /**
+     * Parses a config value such as "cache_friendly" or "cache-friendly" (case-insensitive).
+     * Returns LEGACY for null, blank or unknown values.
+     */
+    public static PromptLayout fromString(String value) {
+        if (value == null || value.isBlank()) return LEGACY;
+        String normalized = value.trim().toUpperCase().replace('-', '_');
+        for (PromptLayout layout : values()) {
+            if (layout.name().equals(normalized)) return layout;
+        }
+        return LEGACY;
+    }
+}
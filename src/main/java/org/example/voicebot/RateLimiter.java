@@ -0,0 +1,90 @@
+package org.example.voicebot;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Simple token-bucket rate limiter: {@code permitsPerSecond} sustained, bursts up to one second's worth.
+ * A non-positive rate means unlimited.
+ */
+public class RateLimiter {
+
+    private final double permitsPerSecond;
+    private final double maxPermits;
+    private double storedPermits;
+    private long lastRefillNanos;
+
+    public RateLimiter(double permitsPerSecond) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.maxPermits = Math.max(1, permitsPerSecond);
+        this.storedPermits = maxPermits;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    public double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    /**
+     * Blocks until a permit is available.
+     */
+    public void acquire() throws InterruptedException {
+        if (permitsPerSecond <= 0) return;
+        while (true) {
+            long waitNanos;
+            synchronized (this) {
+                refill();
+                if (storedPermits >= 1) {
+                    storedPermits -= 1;
+                    return;
+                }
+                waitNanos = (long) ((1 - storedPermits) / permitsPerSecond * TimeUnit.SECONDS.toNanos(1));
+            }
+            LockSupport.parkNanos(Math.max(waitNanos, 100_000));
+            if (Thread.interrupted()) throw new InterruptedException();
+        }
+    }
+
+    /**
+     * Blocks until a permit is available, or gives up (taking nothing) as soon as none can be had by
+     * {@code deadlineNanos} ({@link System#nanoTime()}).
+     *
+     * @return true if a permit was taken
+     */
+    public boolean acquire(long deadlineNanos) throws InterruptedException {
+        if (permitsPerSecond <= 0) return true;
+        while (true) {
+            long waitNanos;
+            synchronized (this) {
+                refill();
+                if (storedPermits >= 1) {
+                    storedPermits -= 1;
+                    return true;
+                }
+                waitNanos = (long) ((1 - storedPermits) / permitsPerSecond * TimeUnit.SECONDS.toNanos(1));
+                if (lastRefillNanos + waitNanos - deadlineNanos > 0) return false;
+            }
+            LockSupport.parkNanos(Math.max(waitNanos, 100_000));
+            if (Thread.interrupted()) throw new InterruptedException();
+        }
+    }
+
+    /**
+     * Takes a permit if one is available right now.
+     */
+    public synchronized boolean tryAcquire() {
+        if (permitsPerSecond <= 0) return true;
+        refill();
+        if (storedPermits >= 1) {
+            storedPermits -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        storedPermits = Math.min(maxPermits, storedPermits + (now - lastRefillNanos) * permitsPerSecond / TimeUnit.SECONDS.toNanos(1));
+        lastRefillNanos = now;
+    }
+}
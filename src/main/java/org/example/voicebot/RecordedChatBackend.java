@@ -0,0 +1,113 @@
+package org.example.voicebot;
+
+import org.example.voicebot.OpenAIService.ChatMessage;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Upstream stand-in for replays that answers from a capture: each call is matched to the captured turn with the
+ * same question and history, and gets that turn's recorded reply for the request's stage (category label, context
+ * label or answer), after the recorded per-call latency. Prompt tokens are the recorded count scaled by how much the
+ * prompt grew or shrank, so prompt-building changes show up in the token totals. Unmatched calls get an empty
+ * classifier reply or a fixed answer.
+ */
+public class RecordedChatBackend implements ChatBackend {
+
+    private static final String FALLBACK_ANSWER = "I don't have that information.";
+
+    /** Answer calls by question + history; classifier calls by the classifier input built from both. */
+    private final Map<String, CapturedTurn> byAnswerInput = new HashMap<>();
+    private final Map<String, CapturedTurn> byClassifierInput = new HashMap<>();
+    private final boolean simulateLatency;
+    private final double speed;
+    private final AtomicLong matched = new AtomicLong();
+    private final AtomicLong unmatched = new AtomicLong();
+
+    /**
+     * @param simulateLatency sleep for the recorded upstream latency of each call
+     */
+    public RecordedChatBackend(List<CapturedTurn> capture, boolean simulateLatency) {
+        this(capture, simulateLatency, 0);
+    }
+
+    /**
+     * @param simulateLatency sleep for the recorded upstream latency of each call
+     * @param speed           replay pace: recorded latencies are divided by it (0 = as recorded)
+     */
+    public RecordedChatBackend(List<CapturedTurn> capture, boolean simulateLatency, double speed) {
+        for (CapturedTurn turn : capture) {
+            byAnswerInput.putIfAbsent(answerKey(turn.getQuery(), turn.getHistory()), turn);
+            byClassifierInput.putIfAbsent(OpenAIService.buildQueryWithContext(turn.getQuery(), turn.getHistory()), turn);
+        }
+        this.simulateLatency = simulateLatency;
+        this.speed = speed;
+    }
+
+    @Override
+    public ChatCompletion complete(ChatRequest request, Duration timeout) {
+        List<ChatMessage> messages = request.getMessages();
+        Stage stage = request.getStage() != null ? request.getStage() : Stage.ANSWER;
+        String user = messages.get(messages.size() - 1).getContent();
+        int promptChars = 0;
+        for (ChatMessage m : messages) promptChars += m.getContent() != null ? m.getContent().length() : 0;
+
+        CapturedTurn turn = stage == Stage.ANSWER
+            ? byAnswerInput.get(answerKey(user, history(messages)))
+            : byClassifierInput.get(user);
+        RoutingTrace.StageStats recorded = turn != null && turn.getTrace() != null ? turn.getTrace().getStage(stage) : null;
+        if (recorded == null || recorded.getCalls() == 0) {
+            unmatched.incrementAndGet();
+            String content = stage == Stage.ANSWER ? FALLBACK_ANSWER : "";
+            return new ChatCompletion(content, promptChars / 4, 0, content.length() / 4 + 1);
+        }
+        matched.incrementAndGet();
+        int calls = recorded.getCalls();
+        if (simulateLatency) {
+            long latency = recorded.getLatencyNanos() / calls;
+            if (speed > 0) latency = (long) (latency / speed);
+            if (latency > timeout.toNanos()) {
+                LockSupport.parkNanos(timeout.toNanos());
+                throw new UpstreamScheduler.DeadlineExceededException(
+                    "Recorded call took " + TimeUnit.NANOSECONDS.toMillis(latency) + " ms, over the timeout");
+            }
+            LockSupport.parkNanos(latency);
+        }
+        long recordedChars = recorded.getPromptChars() / calls;
+        long recordedTokens = recorded.getPromptTokens() / calls;
+        int promptTokens = recordedChars > 0 ? (int) Math.round((double) recordedTokens * promptChars / recordedChars)
+            : promptChars / 4;
+        String reply = recorded.getReply() != null ? recorded.getReply() : "";
+        return new ChatCompletion(reply, promptTokens, 0, (int) (recorded.getCompletionTokens() / calls));
+    }
+
+    /** The history part of an answer request: after the leading system messages, before the question. */
+    private static List<ChatMessage> history(List<ChatMessage> messages) {
+        int from = 0;
+        while (from < messages.size() - 1 && "system".equals(messages.get(from).getRole())) from++;
+        return messages.subList(from, messages.size() - 1);
+    }
+
+    private static String answerKey(String query, List<ChatMessage> history) {
+        StringBuilder key = new StringBuilder();
+        for (ChatMessage m : history) {
+            key.append(m.getRole()).append('\u0000').append(m.getContent()).append('\u0000');
+        }
+        return key.append(query).toString();
+    }
+
+    @Override
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("name", "recorded");
+        map.put("matched", matched.get());
+        map.put("unmatched", unmatched.get());
+        return map;
+    }
+}
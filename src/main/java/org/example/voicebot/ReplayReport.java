@@ -0,0 +1,127 @@
+package org.example.voicebot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.ToLongFunction;
+
+/**
+ * Text report comparing two runs over the same capture (e.g. the capture itself vs a replay, or replays of two
+ * builds): latency percentiles overall, per stage and for local (non-upstream) time, prompt size and token totals,
+ * degradations, and the turns whose category or context changed. Turns are matched by capture index.
+ */
+public final class ReplayReport {
+
+    private static final int MAX_EXAMPLES = 10;
+
+    private ReplayReport() {}
+
+    public static String compare(String baselineName, List<CapturedTurn> baseline,
+                                 String candidateName, List<CapturedTurn> candidate) {
+        Map<Long, CapturedTurn> candidateByIndex = new HashMap<>();
+        for (CapturedTurn t : candidate) candidateByIndex.put(t.getIndex(), t);
+        List<CapturedTurn> a = new ArrayList<>();
+        List<CapturedTurn> b = new ArrayList<>();
+        for (CapturedTurn t : baseline) {
+            CapturedTurn other = candidateByIndex.get(t.getIndex());
+            if (other != null) {
+                a.add(t);
+                b.add(other);
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Replay report: %s (%d turns) vs %s (%d turns), %d matched%n%n",
+            baselineName, baseline.size(), candidateName, candidate.size(), a.size()));
+        sb.append(String.format("%-34s %14s %14s %9s%n", "metric", "baseline", "candidate", "delta"));
+        latencyRows(sb, "total latency", a, b, t -> t.getTrace().getTotalNanos());
+        latencyRows(sb, "local (non-upstream)", a, b, t -> t.getTrace().getLocalNanos());
+        for (Stage stage : Stage.values()) {
+            latencyRows(sb, stage.name().toLowerCase() + " upstream", a, b,
+                t -> t.getTrace().getStage(stage).getLatencyNanos());
+        }
+        for (Stage stage : Stage.values()) {
+            String name = stage.name().toLowerCase();
+            row(sb, name + " calls", sum(a, t -> t.getTrace().getStage(stage).getCalls()),
+                sum(b, t -> t.getTrace().getStage(stage).getCalls()));
+            row(sb, name + " prompt chars (mean)", mean(a, t -> t.getTrace().getStage(stage).getPromptChars()),
+                mean(b, t -> t.getTrace().getStage(stage).getPromptChars()));
+            row(sb, name + " prompt tokens", sum(a, t -> t.getTrace().getStage(stage).getPromptTokens()),
+                sum(b, t -> t.getTrace().getStage(stage).getPromptTokens()));
+            row(sb, name + " completion tokens", sum(a, t -> t.getTrace().getStage(stage).getCompletionTokens()),
+                sum(b, t -> t.getTrace().getStage(stage).getCompletionTokens()));
+        }
+        row(sb, "degraded turns", sum(a, t -> t.getDegradations().isEmpty() ? 0 : 1),
+            sum(b, t -> t.getDegradations().isEmpty() ? 0 : 1));
+
+        List<String> categoryChanges = new ArrayList<>();
+        List<String> contextChanges = new ArrayList<>();
+        for (int i = 0; i < a.size(); i++) {
+            RoutingTrace x = a.get(i).getTrace();
+            RoutingTrace y = b.get(i).getTrace();
+            if (!Objects.equals(x.getCategory(), y.getCategory())) {
+                categoryChanges.add(change(a.get(i), x.getCategory(), y.getCategory()));
+            }
+            if (!Objects.equals(x.getContext(), y.getContext())) {
+                contextChanges.add(change(a.get(i), x.getContext(), y.getContext()));
+            }
+        }
+        sb.append(String.format("%nRouting changes: category %d, context %d (of %d)%n",
+            categoryChanges.size(), contextChanges.size(), a.size()));
+        examples(sb, "category", categoryChanges);
+        examples(sb, "context", contextChanges);
+        return sb.toString();
+    }
+
+    private static void latencyRows(StringBuilder sb, String name, List<CapturedTurn> a, List<CapturedTurn> b,
+                                    ToLongFunction<CapturedTurn> nanos) {
+        long[] x = sorted(a, nanos);
+        long[] y = sorted(b, nanos);
+        for (double p : new double[] {0.50, 0.90, 0.99}) {
+            row(sb, String.format("%s p%d (ms)", name, (int) (p * 100)), percentile(x, p) / 1e6, percentile(y, p) / 1e6);
+        }
+    }
+
+    private static void row(StringBuilder sb, String name, double baseline, double candidate) {
+        String delta = baseline == 0 ? (candidate == 0 ? "0%" : "new")
+            : String.format("%+.1f%%", (candidate - baseline) * 100 / baseline);
+        sb.append(String.format("%-34s %14.2f %14.2f %9s%n", name, baseline, candidate, delta));
+    }
+
+    private static void examples(StringBuilder sb, String kind, List<String> changes) {
+        for (int i = 0; i < Math.min(MAX_EXAMPLES, changes.size()); i++) {
+            sb.append("  ").append(kind).append(": ").append(changes.get(i)).append('\n');
+        }
+        if (changes.size() > MAX_EXAMPLES) {
+            sb.append("  ... ").append(changes.size() - MAX_EXAMPLES).append(" more ").append(kind).append(" changes\n");
+        }
+    }
+
+    private static String change(CapturedTurn turn, String from, String to) {
+        String query = turn.getQuery().length() > 60 ? turn.getQuery().substring(0, 57) + "..." : turn.getQuery();
+        return "#" + turn.getIndex() + " \"" + query + "\": " + from + " -> " + to;
+    }
+
+    private static long[] sorted(List<CapturedTurn> turns, ToLongFunction<CapturedTurn> f) {
+        long[] values = turns.stream().mapToLong(f).toArray();
+        Arrays.sort(values);
+        return values;
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        int i = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, i))];
+    }
+
+    private static double sum(List<CapturedTurn> turns, ToLongFunction<CapturedTurn> f) {
+        return turns.stream().mapToLong(f).sum();
+    }
+
+    private static double mean(List<CapturedTurn> turns, ToLongFunction<CapturedTurn> f) {
+        return turns.isEmpty() ? 0 : sum(turns, f) / turns.size();
+    }
+}
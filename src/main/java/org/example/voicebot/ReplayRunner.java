@@ -0,0 +1,101 @@
+package org.example.voicebot;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Feeds a capture ({@link TrafficCapture}) through the routing pipeline again, with each turn's recorded tenant and
+ * history snapshot, and collects a fresh {@link RoutingTrace} per turn. Turns are started at their original offsets
+ * divided by {@code speed} (0 = back to back), up to {@code parallelism} at a time, each with its original budget
+ * divided by the same factor. Point the {@link OpenAIService} at a {@link RecordedChatBackend} or a
+ * {@link LocalOpenAIStub} for deterministic upstream behaviour.
+ */
+public class ReplayRunner {
+
+    private final OpenAIService service;
+    private final TenantRegistry tenants;
+    private final CustomerContextStore customerData;
+    private final double speed;
+    private final int parallelism;
+
+    public ReplayRunner(OpenAIService service, TenantRegistry tenants, CustomerContextStore customerData, double speed,
+                        int parallelism) {
+        this.service = service;
+        this.tenants = tenants;
+        this.customerData = customerData;
+        this.speed = speed;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Replays every turn and returns the results in capture order; failed turns carry a "replay_error" degradation,
+     * turns of tenants that aren't available here "replay_unknown_tenant".
+     */
+    public List<CapturedTurn> run(List<CapturedTurn> capture) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, "replay");
+            t.setDaemon(true);
+            return t;
+        });
+        List<Future<CapturedTurn>> futures = new ArrayList<>(capture.size());
+        long start = System.nanoTime();
+        try {
+            for (CapturedTurn turn : capture) {
+                if (speed > 0) {
+                    long due = start + (long) (turn.getOffsetNanos() / speed);
+                    long wait = due - System.nanoTime();
+                    if (wait > 0) LockSupport.parkNanos(wait);
+                }
+                futures.add(pool.submit(() -> replay(turn)));
+            }
+            List<CapturedTurn> results = new ArrayList<>(futures.size());
+            for (Future<CapturedTurn> f : futures) {
+                try {
+                    results.add(f.get());
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Replay task failed", e.getCause());
+                }
+            }
+            results.sort(Comparator.comparingLong(CapturedTurn::getIndex));
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private CapturedTurn replay(CapturedTurn turn) {
+        RoutingTrace trace = new RoutingTrace();
+        TenantRegistry.Tenant tenant;
+        try {
+            tenant = tenants.get(turn.getTenantId());
+        } catch (TenantRegistry.UnknownTenantException e) {
+            return turn.withOutcome(List.of("replay_unknown_tenant"), trace);
+        }
+        RequestBudget budget = budgetFor(turn).withTrace(trace);
+        long start = System.nanoTime();
+        List<String> degradations;
+        try {
+            service.answerWithCategoryRouting(turn.getQuery(), tenant.getKnowledge(), tenant.getCatalog(), customerData,
+                turn.getHistory(), turn.getPriority(), budget);
+            degradations = budget.getDegradations();
+        } catch (RuntimeException e) {
+            degradations = new ArrayList<>(budget.getDegradations());
+            degradations.add("replay_error");
+        }
+        trace.setTotalNanos(System.nanoTime() - start);
+        return turn.withOutcome(degradations, trace);
+    }
+
+    private RequestBudget budgetFor(CapturedTurn turn) {
+        long nanos = turn.getBudgetNanos();
+        if (nanos <= 0) return RequestBudget.unlimited();
+        return RequestBudget.of(Duration.ofNanos(speed > 0 ? (long) (nanos / speed) : nanos));
+    }
+}
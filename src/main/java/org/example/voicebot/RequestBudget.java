@@ -0,0 +1,145 @@
+package org.example.voicebot;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongConsumer;
+
+/**
+ * End-to-end time budget of one request, created where the request enters (e.g. QueryController) and passed
+ * through every routing stage so each upstream call only gets the time that is left. Stages that are skipped or
+ * cut short to stay within the budget are recorded, so the response can say the answer is degraded.
+ * An optional {@link RoutingTrace} rides along for captured or replayed requests, and an optional
+ * {@link GenerationBudget} limits the answer for the request's channel, and an optional quota is charged for each
+ * upstream call.
+ */
+public class RequestBudget {
+
+    private final long deadlineNanos;
+    private final boolean limited;
+    private final List<String> degradations = new CopyOnWriteArrayList<>();
+    private volatile RoutingTrace trace;
+    private volatile GenerationBudget generation;
+    private volatile LongConsumer upstreamQuota;
+
+    private RequestBudget(long deadlineNanos, boolean limited) {
+        this.deadlineNanos = deadlineNanos;
+        this.limited = limited;
+    }
+
+    /**
+     * Budget that expires {@code total} from now.
+     */
+    public static RequestBudget of(Duration total) {
+        return new RequestBudget(System.nanoTime() + total.toNanos(), true);
+    }
+
+    /**
+     * Budget without an overall deadline; each call is limited only by its own stage timeout.
+     */
+    public static RequestBudget unlimited() {
+        return new RequestBudget(System.nanoTime() + Duration.ofDays(365).toNanos(), false);
+    }
+
+    /** False for {@link #unlimited()} budgets. */
+    public boolean isLimited() {
+        return limited;
+    }
+
+    /** Absolute {@link System#nanoTime()} deadline. */
+    public long getDeadlineNanos() {
+        return deadlineNanos;
+    }
+
+    public Duration remaining() {
+        return Duration.ofNanos(Math.max(0, deadlineNanos - System.nanoTime()));
+    }
+
+    public boolean isExpired() {
+        return deadlineNanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * True if at least {@code needed} is left; used to decide whether an optional stage is worth running.
+     */
+    public boolean hasAtLeast(Duration needed) {
+        return deadlineNanos - System.nanoTime() >= needed.toNanos();
+    }
+
+    /**
+     * Timeout for the next upstream call: the stage's own limit or the time left, whichever is shorter.
+     *
+     * @throws UpstreamScheduler.DeadlineExceededException if the budget is already spent
+     */
+    public Duration timeoutFor(Duration stageLimit) {
+        long left = deadlineNanos - System.nanoTime();
+        if (left <= 0) {
+            throw new UpstreamScheduler.DeadlineExceededException("Request deadline exceeded");
+        }
+        return stageLimit.toNanos() <= left ? stageLimit : Duration.ofNanos(left);
+    }
+
+    /**
+     * Deadline for the next upstream call as absolute nanoTime: min(now + stageLimit, request deadline).
+     */
+    public long deadlineFor(Duration stageLimit) {
+        long stageDeadline = System.nanoTime() + stageLimit.toNanos();
+        return stageDeadline - deadlineNanos < 0 ? stageDeadline : deadlineNanos;
+    }
+
+    /**
+     * Records that a stage was skipped or cut short (e.g. "category_classification_skipped").
+     */
+    public void degrade(String reason) {
+        degradations.add(reason);
+    }
+
+    public boolean isDegraded() {
+        return !degradations.isEmpty();
+    }
+
+    public List<String> getDegradations() {
+        return List.copyOf(degradations);
+    }
+
+    /**
+     * Attaches a trace that the routing stages fill in; returns this budget.
+     */
+    public RequestBudget withTrace(RoutingTrace trace) {
+        this.trace = trace;
+        return this;
+    }
+
+    /** The attached trace, or null if this request is not traced. */
+    public RoutingTrace getTrace() {
+        return trace;
+    }
+
+    /**
+     * Limits the length of the answer (e.g. for a voice channel); returns this budget.
+     */
+    public RequestBudget withGeneration(GenerationBudget generation) {
+        this.generation = generation;
+        return this;
+    }
+
+    /** The answer length limit, or null if none was set. */
+    public GenerationBudget getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Charges every upstream call of this request to {@code quota}, which runs before the call is queued with the
+     * call's deadline ({@link System#nanoTime()}) and may wait until then or throw; returns this budget.
+     */
+    public RequestBudget withUpstreamQuota(LongConsumer quota) {
+        this.upstreamQuota = quota;
+        return this;
+    }
+
+    /** Takes one upstream call, due by {@code deadlineNanos}, from the attached quota, if any. */
+    public void acquireUpstream(long deadlineNanos) {
+        LongConsumer quota = upstreamQuota;
+        if (quota != null) quota.accept(deadlineNanos);
+    }
+}
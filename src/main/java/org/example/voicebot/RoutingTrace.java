@@ -0,0 +1,97 @@
+package org.example.voicebot;
+
+import org.example.voicebot.OpenAIService.ChatMessage;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What the routing pipeline did for one request: chosen category and context, the reply, and per stage the
+ * upstream calls made (latency, prompt size, tokens, last raw reply). Attached to a {@link RequestBudget} when the
+ * request is captured, replayed or event-logged; stages record into it as they run.
+ */
+public class RoutingTrace {
+
+    private final Map<Stage, StageStats> stages = new EnumMap<>(Stage.class);
+    private volatile String category;
+    private volatile String categorySource;
+    private volatile String context;
+    private volatile String contextSource;
+    private volatile String answer;
+    private volatile long totalNanos;
+
+    public RoutingTrace() {
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, new StageStats());
+        }
+    }
+
+    /**
+     * Records one upstream call of {@code stage}: its prompt, completion and time spent upstream.
+     */
+    public void recordCall(Stage stage, List<ChatMessage> messages, ChatCompletion completion, long latencyNanos) {
+        int chars = 0;
+        for (ChatMessage m : messages) {
+            chars += m.getContent() != null ? m.getContent().length() : 0;
+        }
+        StageStats stats = stages.get(stage);
+        synchronized (stats) {
+            stats.calls++;
+            stats.latencyNanos += latencyNanos;
+            stats.promptChars += chars;
+            stats.promptTokens += completion.getPromptTokens();
+            stats.completionTokens += completion.getCompletionTokens();
+            stats.reply = completion.getContent();
+        }
+    }
+
+    public StageStats getStage(Stage stage) {
+        return stages.get(stage);
+    }
+
+    public String getCategory() { return category; }
+    public void setCategory(String category) { this.category = category; }
+    /** How the category was chosen: "faq", "semantic", "classifier", "single", "skipped"; null if not at all. */
+    public String getCategorySource() { return categorySource; }
+    public void setCategorySource(String categorySource) { this.categorySource = categorySource; }
+    public String getContext() { return context; }
+    public void setContext(String context) { this.context = context; }
+    /** How the context was chosen: "semantic", "classifier", "skipped"; null if not at all. */
+    public String getContextSource() { return contextSource; }
+    public void setContextSource(String contextSource) { this.contextSource = contextSource; }
+    public String getAnswer() { return answer; }
+    public void setAnswer(String answer) { this.answer = answer; }
+    /** End-to-end time of the request including local work and queueing. */
+    public long getTotalNanos() { return totalNanos; }
+    public void setTotalNanos(long totalNanos) { this.totalNanos = totalNanos; }
+
+    /**
+     * Time not spent in upstream calls: prompt building, classification parsing, scheduler queueing.
+     */
+    public long getLocalNanos() {
+        long upstream = 0;
+        for (StageStats s : stages.values()) upstream += s.latencyNanos;
+        return Math.max(0, totalNanos - upstream);
+    }
+
+    /**
+     * Upstream calls of one stage (escalations included).
+     */
+    public static class StageStats {
+        int calls;
+        long latencyNanos;
+        long promptChars;
+        long promptTokens;
+        long completionTokens;
+        String reply;
+
+        public int getCalls() { return calls; }
+        public long getLatencyNanos() { return latencyNanos; }
+        public long getPromptChars() { return promptChars; }
+        public long getPromptTokens() { return promptTokens; }
+        public long getCompletionTokens() { return completionTokens; }
+        /** Raw content of the stage's last call (classifier label or answer), null if it made none. */
+        public String getReply() { return reply; }
+    }
+}
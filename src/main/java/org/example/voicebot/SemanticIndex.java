@@ -0,0 +1,285 @@
+package org.example.voicebot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+/**
+ * Nearest-text lookup over embedded texts, each pointing at a target (a knowledge entry, a context schema).
+ * Backed by an {@link HnswIndex}; with a cache directory the built index is saved as
+ * {@code <cacheDir>/<name>-<hash>.hnsw}, keyed by the provider id and the texts, and loaded instead of rebuilt on
+ * the next start.
+ * <p>
+ * Like {@link FaqMatcher}, an instance is a view of a shared append-only graph: {@link #withChanges} inserts the new
+ * texts and stamps removed targets, whose nodes stay in the graph for navigation but are skipped in results. The
+ * graph is rebuilt when removed nodes outnumber live ones, or when an edit doesn't start from the newest view.
+ * Edited indexes are not saved.
+ */
+public class SemanticIndex<T> {
+
+    private static final Logger log = LoggerFactory.getLogger(SemanticIndex.class);
+
+    private static final int M = 16;
+    private static final int EF_CONSTRUCTION = 100;
+    private static final int EF_SEARCH = 64;
+    /** Hits fetched first; if all of them are removed or newer than the view, the whole candidate list is used. */
+    private static final int CANDIDATES = 4;
+    private static final int LIVE = Integer.MAX_VALUE;
+
+    private final EmbeddingProvider provider;
+    private final Store<T> store;
+    private final int limit;
+    private final int version;
+    private final int live;
+
+    private SemanticIndex(EmbeddingProvider provider, Store<T> store, int version) {
+        this.provider = provider;
+        this.store = store;
+        this.limit = store.size;
+        this.version = version;
+        this.live = store.size - store.removed;
+    }
+
+    /**
+     * Index over {@code texts}, where {@code texts.get(i)} points at {@code targets.get(i)}.
+     *
+     * @param cacheDir where to save/load the built index; null always builds in memory
+     * @param name     file name prefix in {@code cacheDir}
+     */
+    public static <T> SemanticIndex<T> build(EmbeddingProvider provider, List<String> texts, List<T> targets,
+                                             Path cacheDir, String name) {
+        if (texts.size() != targets.size()) throw new IllegalArgumentException("texts and targets differ in size");
+        Path file = cacheDir != null ? cacheDir.resolve(name + "-" + cacheKey(provider, texts) + ".hnsw") : null;
+        if (file != null && Files.isRegularFile(file)) {
+            try {
+                HnswIndex loaded = HnswIndex.load(file);
+                if (loaded.getDimension() == provider.dimension() && loaded.size() == texts.size()) {
+                    return new SemanticIndex<>(provider, new Store<>(loaded, texts, targets), 0);
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                // Unreadable or corrupt (e.g. sizes that don't fit a valid index): build it again.
+                log.warn("Rebuilding vector index {}: {}", file, e.getMessage());
+            }
+        }
+        List<float[]> vectors = new ArrayList<>(texts.size());
+        for (String text : texts) vectors.add(provider.embed(text));
+        HnswIndex index = new HnswIndex(provider.dimension(), M, EF_CONSTRUCTION, texts.size());
+        index.addAll(vectors, 1);
+        if (file != null) {
+            try {
+                Files.createDirectories(cacheDir);
+                Path tmp = Files.createTempFile(cacheDir, name, ".tmp");
+                index.save(tmp);
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                log.warn("Could not save vector index {}: {}", file, e.getMessage());
+            }
+        }
+        return new SemanticIndex<>(provider, new Store<>(index, texts, targets), 0);
+    }
+
+    /**
+     * View with {@code texts} (pointing at the matching {@code targets}) added and every text of
+     * {@code removedTargets} gone. Callers serialize edits.
+     */
+    public SemanticIndex<T> withChanges(List<String> texts, List<T> targets, Collection<T> removedTargets) {
+        if (texts.size() != targets.size()) throw new IllegalArgumentException("texts and targets differ in size");
+        List<Integer> removedNodes = new ArrayList<>();
+        if (store.version == version) {
+            for (T target : removedTargets) {
+                List<Integer> nodes = store.nodes.get(target);
+                if (nodes != null) removedNodes.addAll(nodes);
+            }
+        }
+        if (store.version != version || store.removed + removedNodes.size() > store.size / 2 + 64) {
+            Set<T> removed = new HashSet<>(removedTargets);
+            return rebuild(texts, targets, id -> removed.contains(store.target(id)));
+        }
+        return append(removedNodes, texts, targets);
+    }
+
+    /**
+     * Like {@link #withChanges(List, List, Collection)}, but removes one text per pair: {@code removedTexts.get(i)}
+     * pointing at {@code removedTargets.get(i)}. For targets that may be added more than once (equal pooled entries
+     * under different ids), where removing one must leave the others.
+     */
+    public SemanticIndex<T> withChanges(List<String> texts, List<T> targets, List<String> removedTexts,
+                                        List<T> removedTargets) {
+        if (texts.size() != targets.size() || removedTexts.size() != removedTargets.size()) {
+            throw new IllegalArgumentException("texts and targets differ in size");
+        }
+        Map<T, List<String>> pending = new HashMap<>();
+        for (int i = 0; i < removedTargets.size(); i++) {
+            pending.computeIfAbsent(removedTargets.get(i), k -> new ArrayList<>()).add(removedTexts.get(i));
+        }
+        List<Integer> removedNodes = new ArrayList<>();
+        if (store.version == version) {
+            pending.forEach((target, removing) -> {
+                List<Integer> nodes = store.nodes.get(target);
+                if (nodes == null) return;
+                List<String> left = new ArrayList<>(removing);
+                for (int id : nodes) {
+                    if (left.remove(store.texts.get(id))) removedNodes.add(id);
+                }
+            });
+        }
+        if (store.version != version || store.removed + removedNodes.size() > store.size / 2 + 64) {
+            return rebuild(texts, targets, id -> {
+                List<String> removing = pending.get(store.target(id));
+                return removing != null && removing.remove(store.texts.get(id));
+            });
+        }
+        return append(removedNodes, texts, targets);
+    }
+
+    /** New graph over this view's live texts but the {@code removed} nodes, plus {@code texts}. */
+    private SemanticIndex<T> rebuild(List<String> texts, List<T> targets, IntPredicate removed) {
+        List<String> liveTexts = new ArrayList<>();
+        List<T> liveTargets = new ArrayList<>();
+        for (int id = 0; id < limit; id++) {
+            if (store.removedAt[id] <= version || removed.test(id)) continue;
+            liveTexts.add(store.texts.get(id));
+            liveTargets.add(store.target(id));
+        }
+        liveTexts.addAll(texts);
+        liveTargets.addAll(targets);
+        return build(provider, liveTexts, liveTargets, null, null);
+    }
+
+    /** Next view of the shared graph: {@code removedNodes} stamped, {@code texts} inserted. */
+    private SemanticIndex<T> append(List<Integer> removedNodes, List<String> texts, List<T> targets) {
+        int next = version + 1;
+        for (int id : removedNodes) {
+            if (store.removedAt[id] == next) continue; // target listed twice
+            store.removedAt[id] = next;
+            store.removed++;
+            List<Integer> nodes = store.nodes.get(store.target(id));
+            nodes.remove(Integer.valueOf(id));
+            if (nodes.isEmpty()) store.nodes.remove(store.target(id));
+        }
+        for (int i = 0; i < texts.size(); i++) {
+            int id = store.index.add(provider.embed(texts.get(i)));
+            store.register(id, texts.get(i), targets.get(i));
+        }
+        store.version = next;
+        return new SemanticIndex<>(provider, store, next);
+    }
+
+    public EmbeddingProvider getProvider() {
+        return provider;
+    }
+
+    /** Live texts in this view. */
+    public int size() {
+        return live;
+    }
+
+    /**
+     * Target of the text most similar to {@code query}, or null if the index is empty.
+     */
+    public Match<T> best(String query) {
+        float[] vector = provider.embed(query);
+        List<HnswIndex.Neighbor> hits = store.index.search(vector, CANDIDATES, EF_SEARCH);
+        Match<T> match = firstVisible(hits);
+        if (match == null && hits.size() == CANDIDATES) match = firstVisible(store.index.search(vector, EF_SEARCH, EF_SEARCH));
+        return match;
+    }
+
+    private Match<T> firstVisible(List<HnswIndex.Neighbor> hits) {
+        int[] removedAt = store.removedAt;
+        for (HnswIndex.Neighbor hit : hits) {
+            int id = hit.getId();
+            if (id < limit && removedAt[id] > version) return new Match<>(store.target(id), hit.getScore());
+        }
+        return null;
+    }
+
+    private static String cacheKey(EmbeddingProvider provider, List<String> texts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((provider.id() + "\n" + M + "/" + EF_CONSTRUCTION + "\n").getBytes(StandardCharsets.UTF_8));
+            for (String text : texts) {
+                digest.update(text.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(digest.digest(), 0, 12);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Graph and node targets shared by the views of one edit history; only the editing thread writes, and every
+     * write happens before the view that exposes it is published.
+     */
+    private static final class Store<T> {
+        final HnswIndex index;
+        volatile Object[] targets;
+        volatile int[] removedAt;
+        /** Editing thread only: node texts (for rebuilds) and the nodes of each live target. */
+        final List<String> texts = new ArrayList<>();
+        final Map<T, List<Integer>> nodes = new HashMap<>();
+        int size;
+        int removed;
+        int version;
+
+        Store(HnswIndex index, List<String> texts, List<T> targets) {
+            this.index = index;
+            int capacity = Math.max(16, targets.size());
+            this.targets = new Object[capacity];
+            this.removedAt = new int[capacity];
+            for (int id = 0; id < targets.size(); id++) register(id, texts.get(id), targets.get(id));
+        }
+
+        void register(int id, String text, T target) {
+            if (id != size) throw new IllegalStateException("Node " + id + " added out of order");
+            if (id == targets.length) {
+                targets = Arrays.copyOf(targets, id * 2);
+                removedAt = Arrays.copyOf(removedAt, id * 2);
+            }
+            targets[id] = target;
+            removedAt[id] = LIVE;
+            texts.add(text);
+            nodes.computeIfAbsent(target, k -> new ArrayList<>()).add(id);
+            size = id + 1;
+        }
+
+        @SuppressWarnings("unchecked")
+        T target(int id) {
+            return (T) targets[id];
+        }
+    }
+
+    /**
+     * Matched target and the cosine similarity of its text to the query.
+     */
+    public static class Match<T> {
+        private final T target;
+        private final double score;
+
+        Match(T target, double score) {
+            this.target = target;
+            this.score = score;
+        }
+
+        public T getTarget() { return target; }
+        public double getScore() { return score; }
+    }
+}
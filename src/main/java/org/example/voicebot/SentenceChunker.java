@@ -0,0 +1,112 @@
+package org.example.voicebot;
+
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Cuts streamed reply text into sentences as it arrives. A sentence ends at '.', '!', '?' or '…' (plus closing
+ * quotes/brackets) followed by whitespace, or at a line break; decimals ("2.5"), common abbreviations ("e.g.",
+ * "Mr.") and single-letter initials don't end one; "No." only doesn't before a number ("No. 5"). Sentences shorter than {@code minChars} are merged with the
+ * next, so synthesis isn't called for fragments like "Yes.". Not thread-safe; feed it from the streaming thread.
+ */
+public class SentenceChunker {
+
+    private static final Set<String> ABBREVIATIONS = Set.of(
+        "e.g", "i.e", "etc", "mr", "mrs", "ms", "dr", "st", "nr", "vs", "approx", "incl", "min", "max", "ca");
+
+    private static final int MORE = -2;
+
+    private final int minChars;
+    private final Consumer<String> onSentence;
+    private final StringBuilder pending = new StringBuilder();
+    /** Position in {@link #pending} up to which boundaries have been ruled out. */
+    private int scanned;
+    /** Characters of the streamed text emitted so far (including whitespace between sentences). */
+    private long consumed;
+
+    public SentenceChunker(int minChars, Consumer<String> onSentence) {
+        this.minChars = minChars;
+        this.onSentence = onSentence;
+    }
+
+    /** Adds streamed text and emits every sentence it completes. */
+    public void accept(String delta) {
+        pending.append(delta);
+        int i = scanned;
+        // The character after a terminator decides the boundary, so the last one waits for more text.
+        while (i < pending.length() - 1) {
+            int end = boundaryAfter(i);
+            if (end == MORE) break;
+            if (end < 0) {
+                i++;
+                continue;
+            }
+            String sentence = pending.substring(0, end).trim();
+            if (sentence.length() >= minChars) {
+                consumed += end;
+                onSentence.accept(sentence);
+                pending.delete(0, end);
+                i = 0;
+            } else {
+                i = end;
+            }
+        }
+        scanned = Math.max(0, Math.min(i, pending.length() - 1));
+    }
+
+    /** Emits whatever is left as the last sentence (end of the reply). */
+    public void finish() {
+        String rest = pending.toString().trim();
+        consumed += pending.length();
+        pending.setLength(0);
+        scanned = 0;
+        if (!rest.isEmpty()) onSentence.accept(rest);
+    }
+
+    /**
+     * Offset in the streamed text just past the last emitted sentence; inside {@code onSentence} it is the end of the
+     * sentence being emitted.
+     */
+    public long getConsumed() {
+        return consumed;
+    }
+
+    /**
+     * End offset of a sentence whose terminator is at {@code i}, -1 if {@code i} doesn't end a sentence, or
+     * {@link #MORE} if that depends on text not streamed yet.
+     */
+    private int boundaryAfter(int i) {
+        char c = pending.charAt(i);
+        if (c == '\n') return i + 1;
+        if (c != '.' && c != '!' && c != '?' && c != '…') return -1;
+        int end = i + 1;
+        while (end < pending.length() && isCloser(pending.charAt(end))) end++;
+        if (end >= pending.length() || !Character.isWhitespace(pending.charAt(end))) return -1;
+        if (c == '.' && isAbbreviation(i)) return -1;
+        if (c == '.' && endsWord(i, "no")) {
+            int next = end;
+            while (next < pending.length() && Character.isWhitespace(pending.charAt(next))) next++;
+            if (next == pending.length()) return MORE;
+            if (Character.isDigit(pending.charAt(next))) return -1;
+        }
+        return end;
+    }
+
+    /** True if the word just before {@code dot} is {@code word} (any case). */
+    private boolean endsWord(int dot, String word) {
+        int start = dot - word.length();
+        if (start < 0 || start > 0 && Character.isLetter(pending.charAt(start - 1))) return false;
+        return pending.substring(start, dot).equalsIgnoreCase(word);
+    }
+
+    private boolean isAbbreviation(int dot) {
+        int start = dot;
+        while (start > 0 && (Character.isLetter(pending.charAt(start - 1)) || pending.charAt(start - 1) == '.')) start--;
+        String word = pending.substring(start, dot).toLowerCase();
+        return word.length() == 1 && Character.isUpperCase(pending.charAt(start)) || ABBREVIATIONS.contains(word);
+    }
+
+    private static boolean isCloser(char c) {
+        return c == '"' || c == '\'' || c == ')' || c == ']' || c == '”' || c == '’' || c == '»';
+    }
+}
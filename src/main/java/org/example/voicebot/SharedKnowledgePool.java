@@ -0,0 +1,87 @@
+package org.example.voicebot;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Storage shared by every tenant's {@link KnowledgeBase} and {@link ContextCatalog}: equal strings, knowledge
+ * entries and context schemas (and equal derived prompt sections) are kept once, however many tenants use them.
+ * Pooled instances are weakly held, so data of evicted tenants goes away unless another tenant still uses it.
+ * Pooled entries and schemas are shared and must not be mutated; replace them instead. Pooled entries carry no id
+ * (ids are positions or names within one tenant), so equal content under different ids is still stored once; a
+ * {@link KnowledgeBase} keeps its own ids.
+ */
+public class SharedKnowledgePool {
+
+    /** Rough object/array header cost added to each newly pooled value's character data. */
+    private static final int OBJECT_OVERHEAD = 40;
+
+    private final Interner<String> strings = new Interner<>();
+    private final Interner<KnowledgeEntry> entries = new Interner<>();
+    private final Interner<ContextSchema> contexts = new Interner<>();
+    private final AtomicLong pooledBytes = new AtomicLong();
+
+    /**
+     * Canonical copy of {@code s}.
+     */
+    public String string(String s) {
+        String canonical = strings.intern(s);
+        if (canonical != null && canonical == s) {
+            pooledBytes.addAndGet(OBJECT_OVERHEAD + 2L * s.length());
+        }
+        return canonical;
+    }
+
+    /**
+     * Canonical entry with the content of {@code e} (every field but the id), built from canonical strings.
+     */
+    public KnowledgeEntry entry(KnowledgeEntry e) {
+        if (e == null) return null;
+        KnowledgeEntry candidate = new KnowledgeEntry(null, string(e.getCategory()), string(e.getIssue()),
+            string(e.getCustomerQuery()), string(e.getAgentResponse()), e.isServeVerbatim());
+        KnowledgeEntry canonical = entries.intern(candidate);
+        if (canonical == candidate) pooledBytes.addAndGet(OBJECT_OVERHEAD);
+        return canonical;
+    }
+
+    /**
+     * Canonical context schema equal to {@code c}, with canonical strings and fields.
+     */
+    public ContextSchema context(ContextSchema c) {
+        if (c == null) return null;
+        ContextSchema candidate = new ContextSchema();
+        candidate.setName(string(c.getName()));
+        candidate.setDescription(string(c.getDescription()));
+        if (c.getSchema() != null) {
+            List<ContextSchema.SchemaField> fields = new ArrayList<>(c.getSchema().size());
+            for (ContextSchema.SchemaField f : c.getSchema()) {
+                fields.add(new ContextSchema.SchemaField(string(f.getField()), string(f.getDescription())));
+            }
+            candidate.setSchema(List.copyOf(fields));
+        }
+        if (c.getExampleQueries() != null) {
+            candidate.setExampleQueries(c.getExampleQueries().stream().map(this::string).toList());
+        }
+        ContextSchema canonical = contexts.intern(candidate);
+        if (canonical == candidate) pooledBytes.addAndGet(OBJECT_OVERHEAD * (1L + (c.getSchema() != null ? c.getSchema().size() : 0)));
+        return canonical;
+    }
+
+    /**
+     * Estimated bytes ever added to the pool (monotonic; the delta across one tenant load is what it introduced).
+     */
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("strings", strings.size());
+        map.put("entries", entries.size());
+        map.put("contexts", contexts.size());
+        return map;
+    }
+}
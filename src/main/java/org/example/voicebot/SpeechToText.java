@@ -0,0 +1,13 @@
+package org.example.voicebot;
+
+/**
+ * Speech recognition for the voice pipeline: one caller utterance in, its transcript out.
+ */
+public interface SpeechToText {
+
+    /**
+     * @param audio  the recorded utterance
+     * @param format its media type (e.g. "audio/wav", "audio/L16;rate=16000")
+     */
+    String transcribe(byte[] audio, String format);
+}
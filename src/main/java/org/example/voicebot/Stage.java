@@ -0,0 +1,10 @@
+package org.example.voicebot;
+
+/**
+ * Upstream call stages of one routed answer, each with its own {@link StageConfig}.
+ */
+public enum Stage {
+    CATEGORY,
+    CONTEXT,
+    ANSWER
+}
@@ -0,0 +1,63 @@
+package org.example.voicebot;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Model and generation settings for one {@link Stage}, plus its escalation policy: when the first (small, fast)
+ * model's result is invalid or its confidence is below {@code minConfidence}, the stage is re-run once with
+ * {@code escalationModel}. Confidence comes from token logprobs, which are only requested when
+ * {@code minConfidence > 0}. {@code stop} sequences end generation where the model emits one (not included in the
+ * reply). Immutable; use the with* methods to derive variants.
+ */
+public class StageConfig {
+    private final String model;
+    private final double temperature;
+    private final int maxTokens;
+    private final Duration timeout;
+    private final String escalationModel;
+    private final double minConfidence;
+    private final List<String> stop;
+
+    public StageConfig(String model, double temperature, int maxTokens, Duration timeout,
+                       String escalationModel, double minConfidence) {
+        this(model, temperature, maxTokens, timeout, escalationModel, minConfidence, List.of());
+    }
+
+    public StageConfig(String model, double temperature, int maxTokens, Duration timeout,
+                       String escalationModel, double minConfidence, List<String> stop) {
+        this.model = model;
+        this.temperature = temperature;
+        this.maxTokens = maxTokens;
+        this.timeout = timeout;
+        this.escalationModel = escalationModel != null && !escalationModel.isBlank() ? escalationModel : null;
+        this.minConfidence = minConfidence;
+        this.stop = stop != null ? List.copyOf(stop) : List.of();
+    }
+
+    public String getModel() { return model; }
+    public double getTemperature() { return temperature; }
+    public int getMaxTokens() { return maxTokens; }
+    public Duration getTimeout() { return timeout; }
+    public String getEscalationModel() { return escalationModel; }
+    public double getMinConfidence() { return minConfidence; }
+    public List<String> getStop() { return stop; }
+
+    public boolean wantsConfidence() {
+        return minConfidence > 0;
+    }
+
+    /**
+     * Same settings with another model (used for the escalation call, without further escalation).
+     */
+    public StageConfig withModel(String otherModel) {
+        return new StageConfig(otherModel, temperature, maxTokens, timeout, null, 0, stop);
+    }
+
+    /**
+     * Same settings with another output cap.
+     */
+    public StageConfig withMaxTokens(int otherMaxTokens) {
+        return new StageConfig(model, temperature, otherMaxTokens, timeout, escalationModel, minConfidence, stop);
+    }
+}
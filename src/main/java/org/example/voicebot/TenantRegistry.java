@@ -0,0 +1,287 @@
+package org.example.voicebot;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToDoubleFunction;
+import java.util.regex.Pattern;
+
+/**
+ * Tenant-scoped knowledge bases and context catalogs for hosting many brands on one node.
+ * <p>
+ * Tenant {@code id} is read lazily from {@code <tenantsDir>/<id>/knowledge.json} and
+ * {@code <tenantsDir>/<id>/context_schemas.json}; a missing file means the tenant uses the default one as is.
+ * All tenants share a {@link SharedKnowledgePool}, so overlapping FAQs are stored once. Loaded tenants are kept in
+ * LRU order and evicted when their estimated footprint (the pooled data each one introduced) exceeds the cap; the
+ * default tenant is always loaded. Each tenant has its own upstream request quota, which survives eviction.
+ * <p>
+ * Knowledge and catalogs can be edited at runtime ({@link #editKnowledge}, {@link #editContexts}): each edit
+ * publishes a new immutable version, and requests keep the version they started with. A tenant without its own file
+ * follows the default tenant's current version until its first edit gives it its own. Edits live only in memory, so
+ * edited tenants are never evicted.
+ */
+public class TenantRegistry {
+
+    public static final String DEFAULT_TENANT = "default";
+
+    private static final Pattern TENANT_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+    /** Per-tenant cost of referencing shared entries/schemas (list slot, slices, categories). */
+    private static final int REFERENCE_BYTES = 32;
+
+    private final Path tenantsDir;
+    private final SharedKnowledgePool pool;
+    private final long maxBytes;
+    private final ToDoubleFunction<String> requestsPerSecond;
+    private final Tenant defaultTenant;
+    private final LinkedHashMap<String, Tenant> loaded = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, RateLimiter> quotas = new ConcurrentHashMap<>();
+    /** Loads are serialized so the pool growth across one load is attributable to that tenant. */
+    private final Object loadLock = new Object();
+    /** Edits of all tenants are serialized: a tenant's first edit starts from the default tenant's version. */
+    private final Object editLock = new Object();
+    private long loadedBytes;
+    private long loads;
+    private long evictions;
+
+    /**
+     * @param tenantsDir        directory with one subdirectory per tenant; null hosts only the default tenant
+     * @param maxBytes          cap on the summed estimated footprint of loaded (non-default) tenants
+     * @param requestsPerSecond upstream quota per tenant id; 0 or less means unlimited
+     */
+    public TenantRegistry(Path tenantsDir, KnowledgeBase defaultKnowledge, ContextCatalog defaultCatalog,
+                          long maxBytes, ToDoubleFunction<String> requestsPerSecond) {
+        this.tenantsDir = tenantsDir;
+        this.pool = new SharedKnowledgePool();
+        this.maxBytes = maxBytes;
+        this.requestsPerSecond = requestsPerSecond;
+        this.defaultTenant = new Tenant(DEFAULT_TENANT, new KnowledgeBase(defaultKnowledge.getEntries(), pool),
+            new ContextCatalog(defaultCatalog.getContexts(), pool), null);
+        defaultTenant.precompute();
+    }
+
+    public Tenant getDefault() {
+        return defaultTenant;
+    }
+
+    /**
+     * The tenant's data, loading it on first use. Null or blank selects the default tenant.
+     *
+     * @throws UnknownTenantException if there is no such tenant directory
+     */
+    public Tenant get(String tenantId) {
+        if (tenantId == null || tenantId.isBlank() || DEFAULT_TENANT.equals(tenantId)) return defaultTenant;
+        Tenant tenant;
+        synchronized (loaded) {
+            tenant = loaded.get(tenantId);
+        }
+        if (tenant != null) return tenant;
+        if (!TENANT_ID.matcher(tenantId).matches() || tenantsDir == null
+                || !Files.isDirectory(tenantsDir.resolve(tenantId))) {
+            throw new UnknownTenantException(tenantId);
+        }
+        synchronized (loadLock) {
+            synchronized (loaded) {
+                tenant = loaded.get(tenantId);
+            }
+            if (tenant != null) return tenant;
+            long before = pool.getPooledBytes();
+            tenant = load(tenantId);
+            tenant.estimatedBytes = pool.getPooledBytes() - before
+                + REFERENCE_BYTES * (long) (tenant.getKnowledge().size() + tenant.getCatalog().size());
+            synchronized (loaded) {
+                loaded.put(tenantId, tenant);
+                loadedBytes += tenant.estimatedBytes;
+                loads++;
+                evictOver(tenantId);
+            }
+            return tenant;
+        }
+    }
+
+    private Tenant load(String tenantId) {
+        Path dir = tenantsDir.resolve(tenantId);
+        Path knowledgeFile = dir.resolve("knowledge.json");
+        Path catalogFile = dir.resolve("context_schemas.json");
+        KnowledgeBase knowledge = Files.isRegularFile(knowledgeFile)
+            ? new KnowledgeBase(KnowledgeBase.loadFromFile(knowledgeFile).getEntries(), pool)
+            : null;
+        ContextCatalog catalog = Files.isRegularFile(catalogFile)
+            ? new ContextCatalog(ContextCatalog.loadFromFile(catalogFile).getContexts(), pool)
+            : null;
+        Tenant tenant = new Tenant(tenantId, knowledge, catalog, defaultTenant);
+        tenant.precompute();
+        return tenant;
+    }
+
+    /** Caller holds {@link #loaded}. Evicts least recently used tenants, never {@code keep} or edited ones. */
+    private void evictOver(String keep) {
+        Iterator<Map.Entry<String, Tenant>> it = loaded.entrySet().iterator();
+        while (loadedBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Tenant> eldest = it.next();
+            if (eldest.getKey().equals(keep) || eldest.getValue().pinned) continue;
+            it.remove();
+            loadedBytes -= eldest.getValue().estimatedBytes;
+            evictions++;
+        }
+    }
+
+    /**
+     * Adds or replaces (by id) {@code upserts} and removes {@code deletedIds} in the tenant's knowledge base, and
+     * publishes the result.
+     *
+     * @return the new version
+     * @throws UnknownTenantException          if there is no such tenant
+     * @throws IllegalArgumentException        if an entry has no id
+     * @throws java.util.NoSuchElementException if a deleted id is unknown
+     */
+    public KnowledgeBase editKnowledge(String tenantId, List<KnowledgeEntry> upserts, Collection<String> deletedIds) {
+        Tenant tenant = pin(tenantId);
+        synchronized (editLock) {
+            KnowledgeBase next = tenant.getKnowledge().withChanges(upserts, deletedIds);
+            tenant.knowledge = next;
+            return next;
+        }
+    }
+
+    /**
+     * Adds or replaces (by name) {@code upserts} and removes {@code deletedNames} in the tenant's context catalog,
+     * and publishes the result.
+     *
+     * @return the new version
+     * @throws UnknownTenantException          if there is no such tenant
+     * @throws IllegalArgumentException        if a schema has no name
+     * @throws java.util.NoSuchElementException if a deleted name is unknown
+     */
+    public ContextCatalog editContexts(String tenantId, List<ContextSchema> upserts, Collection<String> deletedNames) {
+        Tenant tenant = pin(tenantId);
+        synchronized (editLock) {
+            ContextCatalog next = tenant.getCatalog().withChanges(upserts, deletedNames);
+            tenant.catalog = next;
+            return next;
+        }
+    }
+
+    /** The loaded tenant, marked so it is never evicted. */
+    private Tenant pin(String tenantId) {
+        while (true) {
+            Tenant tenant = get(tenantId);
+            if (tenant == defaultTenant) return tenant;
+            synchronized (loaded) {
+                if (loaded.get(tenant.id) == tenant) {
+                    tenant.pinned = true;
+                    return tenant;
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes one upstream request from the tenant's quota, waiting for a free permit until {@code waitUntilNanos}
+     * ({@link System#nanoTime()}; background work passes its call's deadline). A deadline that has passed fails
+     * fast.
+     *
+     * @throws QuotaExceededException if no permit is free by {@code waitUntilNanos}
+     */
+    public void acquireQuota(String tenantId, long waitUntilNanos) {
+        String id = tenantId == null || tenantId.isBlank() ? DEFAULT_TENANT : tenantId;
+        RateLimiter quota = quotas.computeIfAbsent(id, k -> new RateLimiter(requestsPerSecond.applyAsDouble(k)));
+        if (quota.getPermitsPerSecond() <= 0) return;
+        boolean acquired;
+        if (waitUntilNanos - System.nanoTime() > 0) {
+            try {
+                acquired = quota.acquire(waitUntilNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new QuotaExceededException("Interrupted while waiting for quota of tenant " + id);
+            }
+        } else {
+            acquired = quota.tryAcquire();
+        }
+        if (!acquired) throw new QuotaExceededException("Request quota exceeded for tenant " + id);
+    }
+
+    /**
+     * Loaded tenants (LRU order, estimated footprint), totals and pool sizes.
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        List<Map<String, Object>> tenants = new ArrayList<>();
+        synchronized (loaded) {
+            for (Tenant t : loaded.values()) {
+                Map<String, Object> m = new LinkedHashMap<>();
+                m.put("id", t.id);
+                m.put("estimated_bytes", t.estimatedBytes);
+                m.put("pinned", t.pinned);
+                tenants.add(m);
+            }
+            map.put("loaded", loaded.size());
+            map.put("loaded_bytes", loadedBytes);
+            map.put("max_bytes", maxBytes);
+            map.put("loads", loads);
+            map.put("evictions", evictions);
+        }
+        map.put("tenants", tenants);
+        map.put("pool", pool.toMap());
+        return map;
+    }
+
+    /**
+     * One tenant's knowledge base and context catalog (current versions).
+     */
+    public static class Tenant {
+        private final String id;
+        /** Tenant whose current knowledge/catalog is used while this one has none of its own. */
+        private final Tenant inherits;
+        private volatile KnowledgeBase knowledge;
+        private volatile ContextCatalog catalog;
+        private long estimatedBytes;
+        /** Edited, so never evicted; guarded by the registry's loaded map. */
+        private boolean pinned;
+
+        Tenant(String id, KnowledgeBase knowledge, ContextCatalog catalog, Tenant inherits) {
+            this.id = id;
+            this.knowledge = knowledge;
+            this.catalog = catalog;
+            this.inherits = inherits;
+        }
+
+        public String getId() { return id; }
+
+        public KnowledgeBase getKnowledge() {
+            KnowledgeBase k = knowledge;
+            return k != null ? k : inherits.getKnowledge();
+        }
+
+        public ContextCatalog getCatalog() {
+            ContextCatalog c = catalog;
+            return c != null ? c : inherits.getCatalog();
+        }
+
+        void precompute() {
+            if (knowledge != null) knowledge.precompute();
+            if (catalog != null) catalog.precompute();
+        }
+    }
+
+    public static class UnknownTenantException extends IllegalArgumentException {
+        private static final long serialVersionUID = 1L;
+
+        public UnknownTenantException(String tenantId) {
+            super("Unknown tenant: " + tenantId);
+        }
+    }
+
+    public static class QuotaExceededException extends OpenAIService.OpenAIException {
+        private static final long serialVersionUID = 1L;
+
+        public QuotaExceededException(String message) {
+            super(message, 429);
+        }
+    }
+}
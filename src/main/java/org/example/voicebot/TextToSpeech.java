@@ -0,0 +1,15 @@
+package org.example.voicebot;
+
+/**
+ * Speech synthesis for the voice pipeline: one sentence of the reply in, its audio out.
+ * Called concurrently for consecutive sentences, so implementations must be thread-safe.
+ */
+public interface TextToSpeech {
+
+    byte[] synthesize(String text);
+
+    /** Media type of the synthesized audio. */
+    default String getFormat() {
+        return "audio/L16;rate=16000";
+    }
+}
@@ -0,0 +1,255 @@
+package org.example.voicebot;
+
+import org.example.voicebot.OpenAIService.ChatMessage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Opt-in capture of live requests to a compact local file for {@link ReplayRunner}: a gzip stream of binary
+ * records (length-prefixed UTF-8 strings, fixed-width numbers), one per {@link CapturedTurn}. Reading stops cleanly
+ * at a truncated tail, so a capture from a process that died is still usable.
+ * <p>
+ * Request threads only queue their turn; one background thread compresses and writes. If the queue is full, the
+ * turn is dropped (counted) rather than delaying the request.
+ */
+public class TrafficCapture implements AutoCloseable {
+
+    private static final int MAGIC = 0x56425443; // "VBTC"
+    /** Version 2 added each turn's budget. */
+    private static final int VERSION = 2;
+    private static final int QUEUE_CAPACITY = 4096;
+    private static final CapturedTurn END = new CapturedTurn(-1, 0, 0, null, null, null, 0, null, null, null, null);
+
+    private final DataOutputStream out;
+    private final double sampleRate;
+    private final long startNanos = System.nanoTime();
+    private final BlockingQueue<CapturedTurn> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicLong nextIndex = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean closed;
+    private volatile IOException writeFailure;
+
+    private TrafficCapture(DataOutputStream out, double sampleRate) {
+        this.out = out;
+        this.sampleRate = sampleRate;
+        this.writer = new Thread(this::run, "traffic-capture");
+        writer.setDaemon(true);
+    }
+
+    /**
+     * Starts a new capture file (replacing an existing one).
+     *
+     * @param sampleRate fraction of requests to capture, 0..1
+     */
+    public static TrafficCapture open(Path file, double sampleRate) throws IOException {
+        if (file.getParent() != null) Files.createDirectories(file.getParent());
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+            new GZIPOutputStream(Files.newOutputStream(file), 64 * 1024), 64 * 1024));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        TrafficCapture capture = new TrafficCapture(out, sampleRate);
+        capture.writer.start();
+        return capture;
+    }
+
+    /**
+     * Whether to capture the next request (sampling decision).
+     */
+    public boolean sample() {
+        return sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+
+    /**
+     * Queues a finished request that started at {@code startNanos} ({@link System#nanoTime()}) with
+     * {@code budgetNanos} to go (0 = no deadline). Returns false if it was dropped (queue full or capture closed).
+     */
+    public boolean record(long startNanos, String tenantId, String sessionId, Priority priority, long budgetNanos,
+                          String query, List<ChatMessage> history, List<String> degradations, RoutingTrace trace) {
+        if (closed) return false;
+        CapturedTurn turn = new CapturedTurn(nextIndex.getAndIncrement(), Math.max(0, startNanos - this.startNanos),
+            System.currentTimeMillis(), tenantId, sessionId, priority, budgetNanos, query, history, degradations, trace);
+        if (queue.offer(turn)) return true;
+        dropped.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Appends an already built turn (e.g. a replay result), keeping its index and offset; waits for queue space.
+     */
+    public void write(CapturedTurn turn) throws IOException {
+        if (closed) throw new IOException("Traffic capture is closed");
+        try {
+            queue.put(turn);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing traffic capture", e);
+        }
+    }
+
+    /** Turns dropped because the writer fell behind. */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    private void run() {
+        try {
+            for (CapturedTurn turn = queue.take(); turn != END; turn = queue.take()) {
+                if (writeFailure != null) continue;
+                try {
+                    write(out, turn);
+                } catch (IOException e) {
+                    writeFailure = e;
+                    System.err.println("Traffic capture write failed: " + e.getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops accepting turns, writes what is queued and closes the file.
+     *
+     * @throws IOException if a queued turn or the file's tail could not be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            queue.put(END);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        out.close();
+        if (writeFailure != null) throw writeFailure;
+    }
+
+    /**
+     * Reads every turn of a capture file in recorded order.
+     */
+    public static List<CapturedTurn> read(Path file) throws IOException {
+        List<CapturedTurn> turns = new ArrayList<>();
+        try (InputStream raw = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(raw, 64 * 1024)))) {
+            int version = in.readInt() == MAGIC ? in.readInt() : -1;
+            if (version != 1 && version != VERSION) {
+                throw new IOException("Not a traffic capture (or unsupported version): " + file);
+            }
+            while (true) {
+                try {
+                    turns.add(readTurn(in, version));
+                } catch (EOFException e) {
+                    break; // end of file, or a tail cut off by a crash
+                }
+            }
+        }
+        return turns;
+    }
+
+    private static void write(DataOutputStream out, CapturedTurn t) throws IOException {
+        out.writeLong(t.getIndex());
+        out.writeLong(t.getOffsetNanos());
+        out.writeLong(t.getTimestampMillis());
+        writeString(out, t.getTenantId());
+        writeString(out, t.getSessionId());
+        out.writeByte(t.getPriority() != null ? t.getPriority().ordinal() : Priority.INTERACTIVE.ordinal());
+        out.writeLong(t.getBudgetNanos());
+        writeString(out, t.getQuery());
+        out.writeShort(t.getHistory().size());
+        for (ChatMessage m : t.getHistory()) {
+            writeString(out, m.getRole());
+            writeString(out, m.getContent());
+        }
+        out.writeShort(t.getDegradations().size());
+        for (String d : t.getDegradations()) writeString(out, d);
+        RoutingTrace trace = t.getTrace() != null ? t.getTrace() : new RoutingTrace();
+        writeString(out, trace.getCategory());
+        writeString(out, trace.getContext());
+        writeString(out, trace.getAnswer());
+        out.writeLong(trace.getTotalNanos());
+        for (Stage stage : Stage.values()) {
+            RoutingTrace.StageStats s = trace.getStage(stage);
+            synchronized (s) {
+                out.writeInt(s.calls);
+                out.writeLong(s.latencyNanos);
+                out.writeLong(s.promptChars);
+                out.writeLong(s.promptTokens);
+                out.writeLong(s.completionTokens);
+                writeString(out, s.reply);
+            }
+        }
+    }
+
+    private static CapturedTurn readTurn(DataInputStream in, int version) throws IOException {
+        long index = in.readLong();
+        long offset = in.readLong();
+        long timestamp = in.readLong();
+        String tenant = readString(in);
+        String session = readString(in);
+        Priority priority = Priority.values()[in.readByte()];
+        long budget = version >= 2 ? in.readLong() : 0;
+        String query = readString(in);
+        int historySize = in.readShort();
+        List<ChatMessage> history = new ArrayList<>(historySize);
+        for (int i = 0; i < historySize; i++) {
+            history.add(new ChatMessage(readString(in), readString(in)));
+        }
+        int degradationCount = in.readShort();
+        List<String> degradations = new ArrayList<>(degradationCount);
+        for (int i = 0; i < degradationCount; i++) degradations.add(readString(in));
+        RoutingTrace trace = new RoutingTrace();
+        trace.setCategory(readString(in));
+        trace.setContext(readString(in));
+        trace.setAnswer(readString(in));
+        trace.setTotalNanos(in.readLong());
+        for (Stage stage : Stage.values()) {
+            RoutingTrace.StageStats s = trace.getStage(stage);
+            s.calls = in.readInt();
+            s.latencyNanos = in.readLong();
+            s.promptChars = in.readLong();
+            s.promptTokens = in.readLong();
+            s.completionTokens = in.readLong();
+            s.reply = readString(in);
+        }
+        return new CapturedTurn(index, offset, timestamp, tenant, session, priority, budget, query, history,
+            degradations, trace);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,131 @@
+package org.example.voicebot;
+
+import java.util.List;
+
+/**
+ * One answered (or failed) turn as written to the {@link EventLog}: who asked, how it was routed, what each stage
+ * cost, and the transcript. Instances are preallocated ring slots that producers overwrite, so every event has the
+ * same fields; unset strings are written as null and unset numbers as 0.
+ */
+final class TurnEvent {
+
+    long timestampMillis;
+    String type;
+    String tenant;
+    String session;
+    String priority;
+    String category;
+    String categorySource;
+    String context;
+    String contextSource;
+    long totalMicros;
+    long categoryMicros;
+    long contextMicros;
+    long answerMicros;
+    int upstreamCalls;
+    long promptTokens;
+    long completionTokens;
+    int queryChars;
+    int replyChars;
+    String degradations;
+    String error;
+    String query;
+    String reply;
+
+    /**
+     * Fills the event from a finished turn; {@code trace} (routing and per-stage costs) and {@code error} may be
+     * null.
+     */
+    void set(String tenant, String session, Priority priority, String query, String reply,
+                    List<String> degradations, RoutingTrace trace, long totalNanos, Throwable error) {
+        this.timestampMillis = System.currentTimeMillis();
+        this.type = error != null ? "error" : "turn";
+        this.tenant = tenant;
+        this.session = session;
+        this.priority = priority != null ? priority.name().toLowerCase() : null;
+        this.totalMicros = totalNanos / 1_000;
+        this.query = query;
+        this.reply = reply;
+        this.queryChars = query != null ? query.length() : 0;
+        this.replyChars = reply != null ? reply.length() : 0;
+        this.degradations = degradations == null || degradations.isEmpty() ? null : String.join(",", degradations);
+        this.error = error != null ? String.valueOf(error.getMessage()) : null;
+        upstreamCalls = 0;
+        promptTokens = 0;
+        completionTokens = 0;
+        if (trace != null) {
+            category = trace.getCategory();
+            categorySource = trace.getCategorySource();
+            context = trace.getContext();
+            contextSource = trace.getContextSource();
+            categoryMicros = addStage(trace.getStage(Stage.CATEGORY));
+            contextMicros = addStage(trace.getStage(Stage.CONTEXT));
+            answerMicros = addStage(trace.getStage(Stage.ANSWER));
+        } else {
+            category = categorySource = context = contextSource = null;
+            categoryMicros = contextMicros = answerMicros = 0;
+        }
+    }
+
+    private long addStage(RoutingTrace.StageStats stats) {
+        synchronized (stats) {
+            upstreamCalls += stats.getCalls();
+            promptTokens += stats.getPromptTokens();
+            completionTokens += stats.getCompletionTokens();
+            return stats.getLatencyNanos() / 1_000;
+        }
+    }
+
+    /** Appends the event as one JSON object (no trailing newline). */
+    void appendJson(StringBuilder sb) {
+        sb.append("{\"ts\":").append(timestampMillis);
+        string(sb, "type", type);
+        string(sb, "tenant", tenant);
+        string(sb, "session", session);
+        string(sb, "priority", priority);
+        string(sb, "category", category);
+        string(sb, "category_source", categorySource);
+        string(sb, "context", context);
+        string(sb, "context_source", contextSource);
+        sb.append(",\"total_us\":").append(totalMicros);
+        sb.append(",\"category_us\":").append(categoryMicros);
+        sb.append(",\"context_us\":").append(contextMicros);
+        sb.append(",\"answer_us\":").append(answerMicros);
+        sb.append(",\"upstream_calls\":").append(upstreamCalls);
+        sb.append(",\"prompt_tokens\":").append(promptTokens);
+        sb.append(",\"completion_tokens\":").append(completionTokens);
+        sb.append(",\"query_chars\":").append(queryChars);
+        sb.append(",\"reply_chars\":").append(replyChars);
+        string(sb, "degradations", degradations);
+        string(sb, "error", error);
+        string(sb, "query", query);
+        string(sb, "reply", reply);
+        sb.append('}');
+    }
+
+    private static void string(StringBuilder sb, String name, String value) {
+        sb.append(",\"").append(name).append("\":");
+        if (value == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else if (c == '\r') {
+                sb.append("\\r");
+            } else if (c == '\t') {
+                sb.append("\\t");
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+}
@@ -0,0 +1,231 @@
+package org.example.voicebot;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Admission scheduler in front of upstream calls. A global concurrency limit is shared by the
+ * {@link Priority} classes using weighted fair queuing (each class advances a virtual clock by 1/weight per
+ * dispatch; the backlogged class with the smallest clock goes next). Each class also has its own concurrency
+ * cap, so background work can never take the slots reserved for live traffic.
+ * <p>
+ * Every call carries a deadline. Waiters whose deadline has passed, or which could not finish before it given
+ * the class's recent call latency (EWMA), are dropped with {@link DeadlineExceededException} instead of
+ * occupying an upstream slot for an answer nobody will hear.
+ */
+public class UpstreamScheduler {
+
+    private static final double EWMA_ALPHA = 0.2;
+
+    private final int maxConcurrency;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<Priority, ClassState> classes = new EnumMap<>(Priority.class);
+    private int running;
+
+    /**
+     * @param maxConcurrency total concurrent upstream calls
+     * @param weights        WFQ weight per class (missing or non-positive = 1)
+     * @param caps           max concurrent calls per class (missing or non-positive = maxConcurrency)
+     */
+    public UpstreamScheduler(int maxConcurrency, Map<Priority, Integer> weights, Map<Priority, Integer> caps) {
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        for (Priority p : Priority.values()) {
+            Integer w = weights != null ? weights.get(p) : null;
+            Integer c = caps != null ? caps.get(p) : null;
+            classes.put(p, new ClassState(w != null && w > 0 ? w : 1,
+                c != null && c > 0 ? Math.min(c, this.maxConcurrency) : this.maxConcurrency));
+        }
+    }
+
+    /**
+     * Runs {@code task} once a slot is granted for {@code priority}. Blocks the caller while queued.
+     *
+     * @param deadlineNanos absolute {@link System#nanoTime()} by which the call must complete
+     * @throws DeadlineExceededException if the call was dropped before it started
+     */
+    public <T> T call(Priority priority, long deadlineNanos, Callable<T> task) throws Exception {
+        Waiter waiter = enqueue(priority, deadlineNanos);
+        awaitGrant(waiter);
+        long start = System.nanoTime();
+        try {
+            return task.call();
+        } finally {
+            release(priority, System.nanoTime() - start);
+        }
+    }
+
+    private Waiter enqueue(Priority priority, long deadlineNanos) {
+        Waiter waiter = new Waiter(Thread.currentThread(), priority, deadlineNanos);
+        lock.lock();
+        try {
+            ClassState cls = classes.get(priority);
+            if (cls.queue.isEmpty()) {
+                // A class that was idle re-enters at the current virtual time: no credit for having been idle.
+                cls.virtualTime = Math.max(cls.virtualTime, minBackloggedVirtualTime());
+            }
+            cls.queue.addLast(waiter);
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+        return waiter;
+    }
+
+    private void awaitGrant(Waiter waiter) {
+        while (true) {
+            int state = waiter.state;
+            if (state == Waiter.GRANTED) return;
+            if (state == Waiter.DROPPED) {
+                throw new DeadlineExceededException("Upstream call dropped: " + waiter.priority
+                    + " request can no longer meet its deadline");
+            }
+            long remaining = waiter.deadlineNanos - System.nanoTime();
+            if (remaining <= 0 || Thread.currentThread().isInterrupted()) {
+                lock.lock();
+                try {
+                    if (waiter.state == Waiter.WAITING) {
+                        classes.get(waiter.priority).queue.remove(waiter);
+                        classes.get(waiter.priority).dropped.incrementAndGet();
+                        waiter.state = Waiter.DROPPED;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                continue;
+            }
+            LockSupport.parkNanos(this, remaining);
+        }
+    }
+
+    private void release(Priority priority, long durationNanos) {
+        lock.lock();
+        try {
+            running--;
+            ClassState cls = classes.get(priority);
+            cls.running--;
+            cls.ewmaNanos = cls.ewmaNanos == 0 ? durationNanos
+                : (long) (EWMA_ALPHA * durationNanos + (1 - EWMA_ALPHA) * cls.ewmaNanos);
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Grants free slots to queued waiters in WFQ order. Caller holds the lock. */
+    private void dispatch() {
+        long now = System.nanoTime();
+        while (running < maxConcurrency) {
+            ClassState next = null;
+            for (ClassState cls : classes.values()) {
+                dropHopeless(cls, now);
+                if (cls.queue.isEmpty() || cls.running >= cls.cap) continue;
+                if (next == null || cls.virtualTime < next.virtualTime) next = cls;
+            }
+            if (next == null) return;
+            Waiter waiter = next.queue.pollFirst();
+            next.virtualTime += 1.0 / next.weight;
+            next.running++;
+            next.dispatched.incrementAndGet();
+            running++;
+            waiter.state = Waiter.GRANTED;
+            LockSupport.unpark(waiter.thread);
+        }
+    }
+
+    /**
+     * Drops waiters at the head of the class queue that cannot finish before their deadline, so the next grant goes
+     * to one that can. Waiters further back are checked once they reach the head (or drop themselves at their
+     * deadline), which keeps this O(dropped) under the lock.
+     */
+    private void dropHopeless(ClassState cls, long now) {
+        Waiter w;
+        while ((w = cls.queue.peekFirst()) != null && now + cls.ewmaNanos >= w.deadlineNanos) {
+            cls.queue.pollFirst();
+            cls.dropped.incrementAndGet();
+            w.state = Waiter.DROPPED;
+            LockSupport.unpark(w.thread);
+        }
+    }
+
+    private double minBackloggedVirtualTime() {
+        double min = Double.MAX_VALUE;
+        for (ClassState cls : classes.values()) {
+            if (!cls.queue.isEmpty() || cls.running > 0) min = Math.min(min, cls.virtualTime);
+        }
+        return min == Double.MAX_VALUE ? 0 : min;
+    }
+
+    /**
+     * Per-class counters (queued, running, dispatched, dropped, EWMA latency) for monitoring.
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            map.put("max_concurrency", maxConcurrency);
+            map.put("running", running);
+            for (Map.Entry<Priority, ClassState> e : classes.entrySet()) {
+                ClassState cls = e.getValue();
+                Map<String, Object> c = new LinkedHashMap<>();
+                c.put("weight", cls.weight);
+                c.put("cap", cls.cap);
+                c.put("queued", cls.queue.size());
+                c.put("running", cls.running);
+                c.put("dispatched", cls.dispatched.get());
+                c.put("dropped", cls.dropped.get());
+                c.put("ewma_latency_ms", TimeUnit.NANOSECONDS.toMillis(cls.ewmaNanos));
+                map.put(e.getKey().name().toLowerCase(), c);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return map;
+    }
+
+    private static final class ClassState {
+        final int weight;
+        final int cap;
+        final ArrayDeque<Waiter> queue = new ArrayDeque<>();
+        final AtomicLong dispatched = new AtomicLong();
+        final AtomicLong dropped = new AtomicLong();
+        int running;
+        double virtualTime;
+        long ewmaNanos;
+
+        ClassState(int weight, int cap) {
+            this.weight = weight;
+            this.cap = cap;
+        }
+    }
+
+    private static final class Waiter {
+        static final int WAITING = 0, GRANTED = 1, DROPPED = 2;
+
+        final Thread thread;
+        final Priority priority;
+        final long deadlineNanos;
+        volatile int state = WAITING;
+
+        Waiter(Thread thread, Priority priority, long deadlineNanos) {
+            this.thread = thread;
+            this.priority = priority;
+            this.deadlineNanos = deadlineNanos;
+        }
+    }
+
+    /**
+     * Thrown when a queued upstream call is dropped because it can no longer meet its deadline.
+     */
+    public static class DeadlineExceededException extends OpenAIService.OpenAIException {
+        private static final long serialVersionUID = 1L;
+
+        public DeadlineExceededException(String message) { super(message); }
+    }
+}
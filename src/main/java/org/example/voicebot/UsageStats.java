@@ -0,0 +1,149 @@
+package org.example.voicebot;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Running totals of the token usage reported by OpenAI ("usage" in each response),
+ * including prompt tokens served from the provider's prompt cache, so the effect of
+ * the prompt layout on cache hits can be measured.
+ */
+public class UsageStats {
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong promptTokens = new AtomicLong();
+    private final AtomicLong cachedPromptTokens = new AtomicLong();
+    private final AtomicLong completionTokens = new AtomicLong();
+    private final AtomicLong estimatedCalls = new AtomicLong();
+    private final AtomicLong estimatedPromptTokens = new AtomicLong();
+    private final AtomicLong estimatedCompletionTokens = new AtomicLong();
+    private final Map<Stage, AtomicLong> escalations = new EnumMap<>(Stage.class);
+    private final AtomicLong faqHits = new AtomicLong();
+    private final AtomicLong semanticCategoryRoutes = new AtomicLong();
+    private final AtomicLong semanticContextRoutes = new AtomicLong();
+    private final AtomicLong generationCuts = new AtomicLong();
+    private final AtomicLong generationCancels = new AtomicLong();
+    private final AtomicLong generationSamples = new AtomicLong();
+    private final AtomicLong sampledTailTokens = new AtomicLong();
+    private final AtomicLong sampledTailNanos = new AtomicLong();
+
+    public UsageStats() {
+        for (Stage stage : Stage.values()) escalations.put(stage, new AtomicLong());
+    }
+
+    /**
+     * Adds the usage of one completion. Negative values (not reported) are ignored.
+     */
+    public void record(long prompt, long cached, long completion) {
+        calls.incrementAndGet();
+        if (prompt > 0) promptTokens.addAndGet(prompt);
+        if (cached > 0) cachedPromptTokens.addAndGet(cached);
+        if (completion > 0) completionTokens.addAndGet(completion);
+    }
+
+    /**
+     * Adds the estimated usage of a call that reported none (an answer stream cancelled at its cut). Kept apart
+     * from the reported totals and the cache hit ratio.
+     */
+    public void recordEstimated(long prompt, long completion) {
+        estimatedCalls.incrementAndGet();
+        if (prompt > 0) estimatedPromptTokens.addAndGet(prompt);
+        if (completion > 0) estimatedCompletionTokens.addAndGet(completion);
+    }
+
+    /**
+     * Counts a stage re-run with its escalation model.
+     */
+    public void recordEscalation(Stage stage) {
+        escalations.get(stage).incrementAndGet();
+    }
+
+    /**
+     * Counts a query answered verbatim from the knowledge base without any upstream call.
+     */
+    public void recordFaqHit() {
+        faqHits.incrementAndGet();
+    }
+
+    /**
+     * Counts a routing stage decided by the vector index instead of an LLM classifier call.
+     */
+    public void recordSemanticRoute(Stage stage) {
+        (stage == Stage.CATEGORY ? semanticCategoryRoutes : semanticContextRoutes).incrementAndGet();
+    }
+
+    /**
+     * Counts an answer cut at its {@link GenerationBudget}; {@code cancelled} if the upstream request was stopped
+     * there.
+     */
+    public void recordGenerationCut(boolean cancelled) {
+        generationCuts.incrementAndGet();
+        if (cancelled) generationCancels.incrementAndGet();
+    }
+
+    /**
+     * Adds the tokens and time after the cut of a measured (shadow) answer, from which the savings of cancelled cuts
+     * are estimated.
+     */
+    public void recordGenerationSample(long tailTokens, long tailNanos) {
+        sampledTailTokens.addAndGet(tailTokens);
+        sampledTailNanos.addAndGet(tailNanos);
+        generationSamples.incrementAndGet();
+    }
+
+    public long getEscalations(Stage stage) { return escalations.get(stage).get(); }
+    public long getFaqHits() { return faqHits.get(); }
+    public long getSemanticCategoryRoutes() { return semanticCategoryRoutes.get(); }
+    public long getSemanticContextRoutes() { return semanticContextRoutes.get(); }
+    public long getCalls() { return calls.get(); }
+    public long getPromptTokens() { return promptTokens.get(); }
+    public long getCachedPromptTokens() { return cachedPromptTokens.get(); }
+    public long getCompletionTokens() { return completionTokens.get(); }
+
+    /**
+     * Share of prompt tokens that were served from the provider cache (0..1).
+     */
+    public double getCacheHitRatio() {
+        long prompt = promptTokens.get();
+        return prompt == 0 ? 0 : (double) cachedPromptTokens.get() / prompt;
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("calls", getCalls());
+        map.put("prompt_tokens", getPromptTokens());
+        map.put("cached_prompt_tokens", getCachedPromptTokens());
+        map.put("completion_tokens", getCompletionTokens());
+        map.put("cache_hit_ratio", getCacheHitRatio());
+        Map<String, Long> estimated = new LinkedHashMap<>();
+        estimated.put("calls", estimatedCalls.get());
+        estimated.put("prompt_tokens", estimatedPromptTokens.get());
+        estimated.put("completion_tokens", estimatedCompletionTokens.get());
+        map.put("estimated", estimated);
+        Map<String, Long> escalated = new LinkedHashMap<>();
+        escalations.forEach((stage, count) -> escalated.put(stage.name().toLowerCase(), count.get()));
+        map.put("escalations", escalated);
+        map.put("faq_hits", getFaqHits());
+        map.put("semantic_category_routes", getSemanticCategoryRoutes());
+        map.put("semantic_context_routes", getSemanticContextRoutes());
+        map.put("generation", generationMap());
+        return map;
+    }
+
+    private Map<String, Object> generationMap() {
+        long samples = generationSamples.get();
+        double tailTokens = samples == 0 ? 0 : (double) sampledTailTokens.get() / samples;
+        double tailMs = samples == 0 ? 0 : sampledTailNanos.get() / 1e6 / samples;
+        long cancelled = generationCancels.get();
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("cuts", generationCuts.get());
+        map.put("cancelled", cancelled);
+        map.put("measured", samples);
+        map.put("avg_tail_tokens", Math.round(tailTokens * 10) / 10.0);
+        map.put("avg_tail_ms", Math.round(tailMs * 10) / 10.0);
+        map.put("est_saved_tokens", Math.round(cancelled * tailTokens));
+        map.put("est_saved_ms", Math.round(cancelled * tailMs));
+        return map;
+    }
+}
@@ -0,0 +1,131 @@
+package org.example.voicebot;
+
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Growable byte buffer that is also a {@link Writer}: characters are encoded straight to UTF-8 into the
+ * backing array (no intermediate String, char[] or encoder buffers). One instance is pooled per thread
+ * via {@link #acquire()} so request bodies are serialized without allocating per call; it is given back with
+ * {@link #release()} once nothing reads it any more (e.g. after the HTTP exchange that sends it).
+ */
+final class Utf8ByteBuffer extends Writer {
+
+    private static final int INITIAL_CAPACITY = 16 * 1024;
+    /** Buffers that grew beyond this are dropped after use instead of being kept by the thread. */
+    private static final int MAX_RETAINED_CAPACITY = 512 * 1024;
+
+    private static final ThreadLocal<Utf8ByteBuffer> POOL = ThreadLocal.withInitial(Utf8ByteBuffer::new);
+
+    private byte[] bytes = new byte[INITIAL_CAPACITY];
+    private int size;
+    private char pendingHighSurrogate;
+    /** Pooled buffer handed out and not released yet; only its thread touches it. */
+    private boolean acquired;
+
+    /**
+     * Returns this thread's buffer, emptied; its content stays valid until {@link #release()}. If the thread's
+     * buffer is still out, a new unpooled one is returned instead.
+     */
+    static Utf8ByteBuffer acquire() {
+        Utf8ByteBuffer buffer = POOL.get();
+        if (buffer.acquired) return new Utf8ByteBuffer();
+        if (buffer.bytes.length > MAX_RETAINED_CAPACITY) {
+            buffer = new Utf8ByteBuffer();
+            POOL.set(buffer);
+        }
+        buffer.acquired = true;
+        buffer.size = 0;
+        buffer.pendingHighSurrogate = 0;
+        return buffer;
+    }
+
+    /** Gives the buffer back to its thread's pool; call on the acquiring thread, and don't use it afterwards. */
+    void release() {
+        acquired = false;
+    }
+
+    byte[] array() { return bytes; }
+    int size() { return size; }
+
+    @Override
+    public void write(int c) {
+        writeChar((char) c);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+        for (int i = off, end = off + len; i < end; i++) writeChar(cbuf[i]);
+    }
+
+    @Override
+    public void write(String str, int off, int len) {
+        ensureCapacity(size + len);
+        for (int i = off, end = off + len; i < end; i++) {
+            char c = str.charAt(i);
+            // Fast path for ASCII, the bulk of JSON and prompt text.
+            if (c < 0x80 && pendingHighSurrogate == 0 && size < bytes.length) {
+                bytes[size++] = (byte) c;
+            } else {
+                writeChar(c);
+            }
+        }
+    }
+
+    private void writeChar(char c) {
+        if (pendingHighSurrogate != 0) {
+            char high = pendingHighSurrogate;
+            pendingHighSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                int cp = Character.toCodePoint(high, c);
+                ensureCapacity(size + 4);
+                bytes[size++] = (byte) (0xF0 | (cp >> 18));
+                bytes[size++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                bytes[size++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                bytes[size++] = (byte) (0x80 | (cp & 0x3F));
+                return;
+            }
+            put('?');
+        }
+        if (c < 0x80) {
+            put(c);
+        } else if (c < 0x800) {
+            ensureCapacity(size + 2);
+            bytes[size++] = (byte) (0xC0 | (c >> 6));
+            bytes[size++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c)) {
+            pendingHighSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            put('?');
+        } else {
+            ensureCapacity(size + 3);
+            bytes[size++] = (byte) (0xE0 | (c >> 12));
+            bytes[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            bytes[size++] = (byte) (0x80 | (c & 0x3F));
+        }
+    }
+
+    private void put(char ascii) {
+        ensureCapacity(size + 1);
+        bytes[size++] = (byte) ascii;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(required, bytes.length * 2));
+        }
+    }
+
+    @Override
+    public void flush() {
+        if (pendingHighSurrogate != 0) {
+            pendingHighSurrogate = 0;
+            put('?');
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+}
@@ -0,0 +1,124 @@
+package org.example.voicebot;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+/**
+ * Minimal UTF-8 {@link Reader} over an {@link InputStream} that decodes from a per-thread scratch buffer,
+ * avoiding the 8 KB buffers {@link java.io.InputStreamReader} allocates per instance.
+ * Malformed input (a byte that can't start a sequence, a missing continuation byte, an overlong form, a surrogate
+ * or a code point above U+10FFFF) is replaced with one U+FFFD per bad sequence. A read returns as soon as it has
+ * decoded anything and the next sequence isn't complete yet, so streamed text is passed on as it arrives. Not
+ * thread-safe; use one reader at a time per thread.
+ */
+final class Utf8StreamReader extends Reader {
+
+    private static final int BUFFER_SIZE = 4096;
+    /** Smallest code point a sequence of 2, 3, 4 bytes may encode (anything less is overlong). */
+    private static final int[] MIN_CODE_POINT = {0, 0, 0x80, 0x800, 0x10000};
+    private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+    private final InputStream in;
+    private final byte[] buf = SCRATCH.get();
+    private int pos;
+    private int limit;
+    private boolean eof;
+    /** Low surrogate left over when a 4-byte sequence was decoded but only one char fitted. */
+    private char pendingLow;
+
+    Utf8StreamReader(InputStream in) {
+        this.in = in;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        int n = 0;
+        if (pendingLow != 0) {
+            cbuf[off + n++] = pendingLow;
+            pendingLow = 0;
+        }
+        while (n < len) {
+            if (!eof && !hasCompleteSequence()) {
+                // Don't wait for more input once there is something to return.
+                if (n > 0) break;
+                fill();
+                continue;
+            }
+            if (pos >= limit) break;
+            int b = buf[pos] & 0xFF;
+            if (b < 0x80) {
+                cbuf[off + n++] = (char) b;
+                pos++;
+                continue;
+            }
+            int need = sequenceLength(b);
+            if (need == 0) {
+                cbuf[off + n++] = '\uFFFD';
+                pos++;
+                continue;
+            }
+            int cp = b & (0xFF >> (need + 1));
+            int i = 1;
+            for (; i < need && pos + i < limit; i++) {
+                int c = buf[pos + i] & 0xFF;
+                if ((c & 0xC0) != 0x80) break;
+                cp = (cp << 6) | (c & 0x3F);
+            }
+            if (i < need || cp < MIN_CODE_POINT[need] || cp > Character.MAX_CODE_POINT
+                || cp >= Character.MIN_SURROGATE && cp <= Character.MAX_SURROGATE) {
+                // Cut short (by a non-continuation byte or the end of the stream) or not a valid scalar value:
+                // the bytes read so far become one U+FFFD, and decoding resumes at the byte that broke it.
+                cbuf[off + n++] = '\uFFFD';
+                pos += i;
+                continue;
+            }
+            pos += need;
+            if (cp >= 0x10000) {
+                cbuf[off + n++] = Character.highSurrogate(cp);
+                if (n < len) cbuf[off + n++] = Character.lowSurrogate(cp);
+                else pendingLow = Character.lowSurrogate(cp);
+            } else {
+                cbuf[off + n++] = (char) cp;
+            }
+        }
+        return n == 0 ? -1 : n;
+    }
+
+    /** Bytes of a sequence starting with {@code b}; 0 if {@code b} can't start one. */
+    private static int sequenceLength(int b) {
+        // 0x80-0xBF are continuation bytes; 0xC0, 0xC1 and 0xF5-0xFF never appear in UTF-8.
+        return b < 0x80 ? 1 : b >= 0xF5 ? 0 : b >= 0xF0 ? 4 : b >= 0xE0 ? 3 : b >= 0xC2 ? 2 : 0;
+    }
+
+    /**
+     * True if the bytes at {@link #pos} can be decoded without more input: a whole sequence, or one already broken
+     * by a non-continuation byte.
+     */
+    private boolean hasCompleteSequence() {
+        if (pos >= limit) return false;
+        int need = sequenceLength(buf[pos] & 0xFF);
+        if (pos + need <= limit) return true;
+        for (int i = pos + 1; i < limit; i++) {
+            if ((buf[i] & 0xC0) != 0x80) return true;
+        }
+        return false;
+    }
+
+    /** Moves the undecoded bytes to the front and reads once (blocking until some input or the end). */
+    private void fill() throws IOException {
+        int remaining = limit - pos;
+        System.arraycopy(buf, pos, buf, 0, remaining);
+        pos = 0;
+        limit = remaining;
+        int r = in.read(buf, limit, buf.length - limit);
+        if (r < 0) eof = true;
+        else limit += r;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,62 @@
+package org.example.voicebot;
+
+/**
+ * Dot product kernel for the vector index. {@link #get()} returns the JDK Vector API implementation when the
+ * {@code jdk.incubator.vector} module is present (run with {@code --add-modules jdk.incubator.vector}) and passes a
+ * self-check, else a scalar loop.
+ */
+abstract class VectorKernel {
+
+    private static final VectorKernel INSTANCE = select();
+
+    static VectorKernel get() {
+        return INSTANCE;
+    }
+
+    /** Dot product of {@code length} elements of {@code a} from {@code aOffset} and {@code b} from {@code bOffset}. */
+    abstract float dot(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+    abstract String name();
+
+    private static VectorKernel select() {
+        VectorKernel scalar = new Scalar();
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) return scalar;
+        try {
+            VectorKernel simd = (VectorKernel) Class.forName("org.example.voicebot.VectorApiKernel")
+                .getDeclaredConstructor().newInstance();
+            float[] a = new float[37];
+            float[] b = new float[37];
+            for (int i = 0; i < a.length; i++) {
+                a[i] = i * 0.25f - 3;
+                b[i] = 1.5f - i * 0.125f;
+            }
+            return Math.abs(simd.dot(a, 0, b, 0, a.length) - scalar.dot(a, 0, b, 0, a.length)) < 1e-3f ? simd : scalar;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return scalar;
+        }
+    }
+
+    /** Four independent accumulators so the loop isn't bound by the latency of one add chain. */
+    static final class Scalar extends VectorKernel {
+        @Override
+        float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+            float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+            int d = bOffset - aOffset;
+            int end = aOffset + length;
+            int i = aOffset;
+            for (; i + 3 < end; i += 4) {
+                s0 += a[i] * b[i + d];
+                s1 += a[i + 1] * b[i + 1 + d];
+                s2 += a[i + 2] * b[i + 2 + d];
+                s3 += a[i + 3] * b[i + 3 + d];
+            }
+            for (; i < end; i++) s0 += a[i] * b[i + d];
+            return (s0 + s1) + (s2 + s3);
+        }
+
+        @Override
+        String name() {
+            return "scalar";
+        }
+    }
+}
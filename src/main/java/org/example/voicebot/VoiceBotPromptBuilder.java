@@ -1,8 +1,13 @@
 package org.example.voicebot;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Builds the system prompt: role + rules → knowledge base → (single) context schema + data → safety.
  * Used with context classification so only the relevant context is included.
+ * For {@link PromptLayout#CACHE_FRIENDLY} the static part and the customer data are built separately
+ * so the static part can be sent as a byte-identical prefix for every customer.
  */
 public class VoiceBotPromptBuilder {
 
@@ -30,4 +35,72 @@ public class VoiceBotPromptBuilder {
         sb.append(SAFETY);
         return sb.toString();
     }
+
+    /**
+     * Static part of the prompt for the cache-friendly layout: role + rules → safety → knowledge → context schema.
+     * Contains no customer data, so for a given category and context it is byte-identical across customers and turns.
+     */
+    public static String buildStaticPromptForContext(KnowledgeBase knowledge, ContextCatalog catalog,
+                                                     String selectedContextName) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(ROLE_AND_RULES).append("\n\n");
+        sb.append(SAFETY).append("\n\n");
+        if (knowledge != null) sb.append(knowledge.toPromptSection()).append("\n");
+        if (catalog != null && selectedContextName != null) sb.append(catalog.toPromptSectionForContext(selectedContextName));
+        return sb.toString();
+    }
+
+    /**
+     * System prompt for the category classifier: category names with their issues.
+     */
+    public static String buildCategoryClassifierPrompt(List<Category> categories) {
+        List<String> blocks = new ArrayList<>(categories.size());
+        for (Category c : categories) blocks.add(categoryClassifierBlock(c));
+        return joinCategoryClassifierPrompt(blocks);
+    }
+
+    /** One category's lines of the category classifier prompt. */
+    static String categoryClassifierBlock(Category c) {
+        return "Category: " + c.getType() + "\n" + "Issues: " + String.join(", ", c.getIssues()) + "\n\n";
+    }
+
+    /** Category classifier prompt around blocks from {@link #categoryClassifierBlock}. */
+    static String joinCategoryClassifierPrompt(Iterable<String> blocks) {
+        StringBuilder prompt = new StringBuilder();
+        prompt.append("You are a classifier. For the customer message, reply with exactly one category name from the list below.\n\n");
+        for (String block : blocks) prompt.append(block);
+        prompt.append("Reply with only the category name, nothing else.");
+        return prompt.toString();
+    }
+
+    /**
+     * System prompt for the context classifier: context names, descriptions and example questions (no customer data).
+     */
+    public static String buildContextClassifierPrompt(List<ContextSchema> contexts) {
+        List<String> blocks = new ArrayList<>(contexts.size());
+        for (ContextSchema ctx : contexts) blocks.add(contextClassifierBlock(ctx));
+        return joinContextClassifierPrompt(blocks);
+    }
+
+    /** One context's lines of the context classifier prompt. */
+    static String contextClassifierBlock(ContextSchema ctx) {
+        StringBuilder prompt = new StringBuilder();
+        prompt.append("Context: ").append(ctx.getName()).append("\n");
+        if (ctx.getDescription() != null) prompt.append("  Description: ").append(ctx.getDescription()).append("\n");
+        if (ctx.getExampleQueries() != null && !ctx.getExampleQueries().isEmpty()) {
+            prompt.append("  Example questions: ").append(String.join("; ", ctx.getExampleQueries())).append("\n");
+        }
+        prompt.append("\n");
+        return prompt.toString();
+    }
+
+    /** Context classifier prompt around blocks from {@link #contextClassifierBlock}. */
+    static String joinContextClassifierPrompt(Iterable<String> blocks) {
+        StringBuilder prompt = new StringBuilder();
+        prompt.append("You are a classifier. The customer will ask a question. ");
+        prompt.append("Reply with exactly one context name from the list below — the context (database table) that best matches the question.\n\n");
+        for (String block : blocks) prompt.append(block);
+        prompt.append("Reply with only the context name, nothing else.");
+        return prompt.toString();
+    }
 }
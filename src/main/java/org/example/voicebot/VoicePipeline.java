@@ -0,0 +1,227 @@
+package org.example.voicebot;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Voice turn with sentence-level pipelining: the utterance is transcribed, the answer is streamed, and every
+ * sentence is sent to synthesis as soon as the {@link SentenceChunker} closes it, while the model keeps generating.
+ * Up to {@code ttsConcurrency} sentences are synthesized at once; audio goes to the {@link AudioSink} strictly in
+ * sentence order, so the caller hears the first sentence while the rest of the reply is still being produced.
+ * If the sink fails (the caller hung up), the answer stream is cancelled and sentences not yet synthesized are
+ * dropped.
+ */
+public class VoicePipeline implements AutoCloseable {
+
+    private final SpeechToText speechToText;
+    private final TextToSpeech textToSpeech;
+    private final int minSentenceChars;
+    /** Synthesis workers; sentences wait in its queue, not on extra threads. */
+    private final ThreadPoolExecutor synthesis;
+    /** One emitter per turn in progress. */
+    private final ExecutorService emitters;
+    private final AtomicLong turns = new AtomicLong();
+    private final AtomicLong sentences = new AtomicLong();
+    private final AtomicLong firstAudioNanosTotal = new AtomicLong();
+    private final AtomicLong replyNanosTotal = new AtomicLong();
+
+    public VoicePipeline(SpeechToText speechToText, TextToSpeech textToSpeech, int ttsConcurrency,
+                         int minSentenceChars) {
+        this.speechToText = speechToText;
+        this.textToSpeech = textToSpeech;
+        this.minSentenceChars = minSentenceChars;
+        this.synthesis = (ThreadPoolExecutor) Executors.newFixedThreadPool(Math.max(1, ttsConcurrency), r -> {
+            Thread t = new Thread(r, "voice-tts");
+            t.setDaemon(true);
+            return t;
+        });
+        this.emitters = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "voice-emitter");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public TextToSpeech getTextToSpeech() {
+        return textToSpeech;
+    }
+
+    /**
+     * Runs one turn. {@code answerer} gets the transcript and must stream the reply into the given consumer
+     * (returning the full reply); audio reaches {@code sink} from a pipeline thread while it runs. Returns once the
+     * last sentence has been delivered. If the answer fails, audio for sentences already produced is still
+     * delivered before the error is rethrown. If the sink fails, the answer is cancelled and the sink's
+     * {@link IOException} is thrown.
+     */
+    public Result run(byte[] audio, String format, Answerer answerer, AudioSink sink) throws IOException {
+        long start = System.nanoTime();
+        String transcript = speechToText.transcribe(audio, format);
+        sink.transcript(transcript);
+        BlockingQueue<Sentence> queue = new LinkedBlockingQueue<>();
+        Emitter emitter = new Emitter(queue, sink, start);
+        CompletableFuture<Void> emitting = CompletableFuture.runAsync(emitter, emitters);
+        int[] seq = new int[1];
+        SentenceChunker chunker = new SentenceChunker(minSentenceChars,
+            sentence -> queue.add(new Sentence(seq[0]++, sentence, synthesize(sentence, emitter))));
+        String reply;
+        try {
+            reply = answerer.answer(transcript, delta -> {
+                // Throwing out of the stream consumer closes the upstream response.
+                emitter.checkOpen();
+                chunker.accept(delta);
+            });
+            chunker.finish();
+        } catch (RuntimeException e) {
+            queue.add(Sentence.END);
+            emitting.exceptionally(t -> null).join();
+            if (emitter.failure != null) throw emitter.failure;
+            throw e;
+        }
+        queue.add(Sentence.END);
+        try {
+            emitting.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException io) throw io;
+            throw e;
+        }
+        long total = System.nanoTime() - start;
+        turns.incrementAndGet();
+        sentences.addAndGet(seq[0]);
+        if (emitter.firstAudioNanos > 0) firstAudioNanosTotal.addAndGet(emitter.firstAudioNanos);
+        replyNanosTotal.addAndGet(total);
+        return new Result(transcript, reply, seq[0], emitter.firstAudioNanos, total);
+    }
+
+    /** Synthesizes on the pool unless the turn's sink has failed by the time the sentence gets a worker. */
+    private CompletableFuture<byte[]> synthesize(String sentence, Emitter emitter) {
+        return CompletableFuture.supplyAsync(() -> emitter.failure != null ? null : textToSpeech.synthesize(sentence),
+            synthesis);
+    }
+
+    /**
+     * Turns, sentences, and mean time to first audio / to the end of the reply.
+     */
+    public Map<String, Object> toMap() {
+        long n = turns.get();
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("turns", n);
+        map.put("sentences", sentences.get());
+        map.put("avg_first_audio_ms", n == 0 ? 0 : firstAudioNanosTotal.get() / n / 1_000_000.0);
+        map.put("avg_total_ms", n == 0 ? 0 : replyNanosTotal.get() / n / 1_000_000.0);
+        map.put("tts_active", synthesis.getActiveCount());
+        map.put("tts_queued", synthesis.getQueue().size());
+        return map;
+    }
+
+    @Override
+    public void close() {
+        emitters.shutdownNow();
+        synthesis.shutdownNow();
+    }
+
+    /** Delivers synthesized sentences in order as each one (and every one before it) is ready. */
+    private static final class Emitter implements Runnable {
+        private final BlockingQueue<Sentence> queue;
+        private final AudioSink sink;
+        private final long start;
+        private volatile long firstAudioNanos;
+        /** The sink's error; once set, the turn is abandoned. */
+        private volatile IOException failure;
+
+        Emitter(BlockingQueue<Sentence> queue, AudioSink sink, long start) {
+            this.queue = queue;
+            this.sink = sink;
+            this.start = start;
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (Sentence s = queue.take(); s != Sentence.END; s = queue.take()) {
+                    byte[] audio = s.audio.join();
+                    if (firstAudioNanos == 0) firstAudioNanos = System.nanoTime() - start;
+                    sink.audio(s.seq, s.text, audio);
+                }
+            } catch (IOException e) {
+                failure = e;
+                throw new CompletionException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+        }
+
+        /** Fails the answer stream once the sink has failed. */
+        void checkOpen() {
+            if (failure != null) throw new CancellationException("audio sink failed: " + failure.getMessage());
+        }
+    }
+
+    private static final class Sentence {
+        static final Sentence END = new Sentence(-1, null, null);
+
+        final int seq;
+        final String text;
+        final CompletableFuture<byte[]> audio;
+
+        Sentence(int seq, String text, CompletableFuture<byte[]> audio) {
+            this.seq = seq;
+            this.text = text;
+            this.audio = audio;
+        }
+    }
+
+    /**
+     * Produces the streamed reply for a transcript.
+     */
+    @FunctionalInterface
+    public interface Answerer {
+        String answer(String transcript, Consumer<String> onDelta);
+    }
+
+    /**
+     * Receives the transcript, then each sentence's audio in order.
+     */
+    public interface AudioSink {
+        default void transcript(String text) throws IOException {
+        }
+
+        void audio(int seq, String text, byte[] audio) throws IOException;
+    }
+
+    /**
+     * Outcome of one voice turn; times are measured from the start of the turn.
+     */
+    public static class Result {
+        private final String transcript;
+        private final String reply;
+        private final int sentences;
+        private final long firstAudioNanos;
+        private final long totalNanos;
+
+        Result(String transcript, String reply, int sentences, long firstAudioNanos, long totalNanos) {
+            this.transcript = transcript;
+            this.reply = reply;
+            this.sentences = sentences;
+            this.firstAudioNanos = firstAudioNanos;
+            this.totalNanos = totalNanos;
+        }
+
+        public String getTranscript() { return transcript; }
+        public String getReply() { return reply; }
+        public int getSentences() { return sentences; }
+        public long getFirstAudioNanos() { return firstAudioNanos; }
+        public long getTotalNanos() { return totalNanos; }
+    }
+}
@@ -0,0 +1,48 @@
+package org.example.voicebot;
+
+import org.example.voicebot.OpenAIService.ChatMessage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Startup warm-up: builds every cached routing/prompt artifact, then runs the full request path
+ * (classification, prompt building, request serialization, HTTP, response parsing) against a
+ * {@link LocalOpenAIStub} so class loading and JIT compilation happen before real callers arrive.
+ */
+public final class Warmup {
+
+    private Warmup() {}
+
+    /**
+     * Precomputes artifacts and exercises {@code iterations} answers against a local stub, using sample queries from
+     * the knowledge base (every other one as a follow-up with history). Returns the number of answers completed.
+     */
+    public static int run(KnowledgeBase knowledge, ContextCatalog catalog, CustomerContextStore customerData,
+                          PromptLayout layout, int iterations) throws IOException {
+        knowledge.precompute();
+        if (catalog != null) catalog.precompute();
+        List<String> samples = new ArrayList<>();
+        for (KnowledgeEntry e : knowledge.getEntries()) {
+            if (e.getCustomerQuery() != null && !e.getCustomerQuery().isBlank()) samples.add(e.getCustomerQuery());
+        }
+        if (samples.isEmpty()) samples.add("What is my balance?");
+
+        int completed = 0;
+        try (LocalOpenAIStub stub = LocalOpenAIStub.start()) {
+            OpenAIService service = new OpenAIService("warmup", null, stub.chatUri());
+            service.setLogRouting(false);
+            service.setPromptLayout(layout);
+            List<ChatMessage> history = new ArrayList<>();
+            for (int i = 0; i < iterations; i++) {
+                String query = samples.get(i % samples.size());
+                String reply = service.answerWithCategoryRouting(query, knowledge, catalog, customerData,
+                    i % 2 == 0 ? List.of() : history, Priority.INTERACTIVE, RequestBudget.unlimited());
+                history = List.of(new ChatMessage("user", query), new ChatMessage("assistant", reply));
+                completed++;
+            }
+        }
+        return completed;
+    }
+}
@@ -0,0 +1,157 @@
+package org.example.api;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpServer;
+import org.example.voicebot.ClusterNode;
+import org.example.voicebot.ConversationSessions;
+import org.example.voicebot.HashRing;
+import org.example.voicebot.OpenAIService.ChatMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ClusterServiceTest {
+
+    private static final String SECRET = "test-secret";
+    private static final Gson GSON = new Gson();
+
+    @TempDir
+    Path registry;
+
+    private final List<AutoCloseable> closing = new ArrayList<>();
+
+    @AfterEach
+    void stop() throws Exception {
+        for (int i = closing.size() - 1; i >= 0; i--) closing.get(i).close();
+    }
+
+    @Test
+    void handsSessionsToTheNodeThatJoinsAndOwnsThem() throws Exception {
+        ConversationSessions sessionsA = new ConversationSessions(10);
+        ConversationSessions sessionsB = new ConversationSessions(10);
+        Node a = start("a", sessionsA);
+        for (int i = 0; i < 60; i++) sessionsA.append("s" + i, "question " + i, "answer " + i);
+
+        Node b = start("b", sessionsB);
+        HashRing both = new HashRing(List.of(a.self, b.self), 128);
+        Set<String> ownedByB = sessionsA.sessionIds().stream().filter(k -> both.owner(k).equals(b.self))
+            .collect(Collectors.toSet());
+        assertFalse(ownedByB.isEmpty());
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        // A drops each session only after B has accepted it.
+        while ((!sessionsB.sessionIds().equals(ownedByB) || sessionsA.sessionIds().size() != 60 - ownedByB.size())
+            && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+
+        assertEquals(ownedByB, sessionsB.sessionIds());
+        assertEquals(60 - ownedByB.size(), sessionsA.sessionIds().size());
+        for (String key : ownedByB) {
+            assertFalse(sessionsA.sessionIds().contains(key), key);
+            List<ChatMessage> history = sessionsB.snapshot(key);
+            assertEquals(2, history.size());
+            assertEquals("question " + key.substring(1), history.get(0).getContent());
+            assertEquals("answer " + key.substring(1), history.get(1).getContent());
+        }
+        assertEquals((long) ownedByB.size(), a.cluster.toMap().get("sessions_handed_off"));
+        assertEquals((long) ownedByB.size(), b.cluster.toMap().get("sessions_received"));
+    }
+
+    @Test
+    void refusesAHandoffWithoutTheSecret() throws Exception {
+        ConversationSessions sessions = new ConversationSessions(10);
+        Node a = start("a", sessions);
+        SessionHandoff handoff = new SessionHandoff();
+        SessionHandoff.Session session = new SessionHandoff.Session();
+        session.setKey("s1");
+        session.getMessages().add(new SessionHandoff.Message("user", "hi"));
+        handoff.setSessions(List.of(session));
+
+        assertFalse(a.cluster.accept(handoff, null));
+        assertFalse(a.cluster.accept(handoff, "wrong"));
+        assertTrue(sessions.sessionIds().isEmpty());
+        assertTrue(a.cluster.accept(handoff, SECRET));
+        assertEquals(Set.of("s1"), sessions.sessionIds());
+    }
+
+    /** A node: its cluster service over {@code sessions}, reachable for handoffs on a local port. */
+    private Node start(String id, ConversationSessions sessions) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        ClusterNode self = new ClusterNode(id, URI.create("http://127.0.0.1:" + server.getAddress().getPort()));
+        MockEnvironment environment = new MockEnvironment()
+            .withProperty("voicebot.cluster.node-id", id)
+            .withProperty("voicebot.cluster.self-url", self.getUrl().toString())
+            .withProperty("voicebot.cluster.secret", SECRET)
+            .withProperty("voicebot.cluster.registry-dir", registry.toString())
+            .withProperty("voicebot.cluster.heartbeat-ms", "100");
+        ClusterService cluster = new ClusterService(queryService(sessions), environment);
+        server.createContext("/api/cluster/sessions", exchange -> {
+            SessionHandoff handoff = GSON.fromJson(new String(exchange.getRequestBody().readAllBytes(),
+                StandardCharsets.UTF_8), SessionHandoff.class);
+            boolean accepted = cluster.accept(handoff, exchange.getRequestHeaders().getFirst(ClusterService.SECRET_HEADER));
+            exchange.sendResponseHeaders(accepted ? 200 : 403, -1);
+            exchange.close();
+        });
+        server.start();
+        closing.add(() -> server.stop(0));
+        cluster.init();
+        cluster.onApplicationReady();
+        closing.add(cluster::close);
+        return new Node(self, cluster);
+    }
+
+    /** Query service whose session operations go to {@code sessions}. */
+    private static VoiceBotQueryService queryService(ConversationSessions sessions) {
+        VoiceBotQueryService service = mock(VoiceBotQueryService.class);
+        when(service.getSessionKeys()).thenAnswer(inv -> sessions.sessionIds());
+        when(service.exportSession(anyString())).thenAnswer(inv -> sessions.export(inv.getArgument(0)));
+        when(service.removeExportedSession(anyString(), any()))
+            .thenAnswer(inv -> sessions.removeExported(inv.getArgument(0), inv.getArgument(1)));
+        doAnswer(inv -> {
+            sessions.prepend(inv.getArgument(0), inv.getArgument(1));
+            return null;
+        }).when(service).restoreSession(anyString(), anyList());
+        doAnswer(inv -> {
+            sessions.remove(inv.getArgument(0));
+            return null;
+        }).when(service).removeSession(anyString());
+        doAnswer(inv -> {
+            sessions.importHandedOff(inv.getArgument(0), inv.getArgument(1));
+            return null;
+        }).when(service).importSession(anyString(), anyList());
+        return service;
+    }
+
+    private static final class Node {
+        final ClusterNode self;
+        final ClusterService cluster;
+
+        Node(ClusterNode self, ClusterService cluster) {
+            this.self = self;
+            this.cluster = cluster;
+        }
+    }
+}
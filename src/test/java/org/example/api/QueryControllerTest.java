@@ -0,0 +1,90 @@
+package org.example.api;
+
+import org.example.voicebot.ClusterNode;
+import org.example.voicebot.UpstreamScheduler;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class QueryControllerTest {
+
+    private static final ClusterNode OWNER = new ClusterNode("b", URI.create("http://127.0.0.1:1"));
+
+    private final VoiceBotQueryService queryService = mock(VoiceBotQueryService.class);
+    private final ClusterService cluster = mock(ClusterService.class);
+    private final QueryController controller = new QueryController(queryService, cluster, new MockEnvironment());
+
+    @Test
+    void answersAForwardThatRanOutOfTimeWithGatewayTimeout() {
+        when(cluster.remoteOwner(any(), any(), any())).thenReturn(OWNER);
+        when(cluster.forward(any(), anyString(), anyString(), any(), any(), any(), any()))
+            .thenThrow(new UpstreamScheduler.DeadlineExceededException("Request deadline exceeded"));
+
+        ResponseEntity<QueryResponse> response = controller.query(request(), null, null, null);
+
+        assertEquals(HttpStatus.GATEWAY_TIMEOUT, response.getStatusCode());
+        assertEquals("Error: Request deadline exceeded", response.getBody().getError());
+        verifyNoInteractions(queryService);
+    }
+
+    @Test
+    void answersAnOwnerThatFailedMidResponseWithBadGateway() throws IOException {
+        when(cluster.remoteOwner(any(), any(), any())).thenReturn(OWNER);
+        HttpResponse<InputStream> broken = failingResponse();
+        when(cluster.forward(any(), anyString(), anyString(), any(), any(), any(), any())).thenReturn(broken);
+
+        assertEquals(HttpStatus.BAD_GATEWAY, controller.query(request(), null, null, null).getStatusCode());
+        assertEquals(HttpStatus.BAD_GATEWAY, controller.loadHistory("s1", null, null, null, null).getStatusCode());
+    }
+
+    @Test
+    void endsAForwardedVoiceTurnThatFailedWithAnErrorLine() throws IOException {
+        when(cluster.remoteOwner(any(), any(), any())).thenReturn(OWNER);
+        HttpResponse<InputStream> broken = failingResponse();
+        when(cluster.forward(any(), anyString(), anyString(), any(), any(), any(), any())).thenReturn(broken);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        controller.voice("s1", null, null, null, new MockHttpServletRequest(), response);
+
+        String body = response.getContentAsString(StandardCharsets.UTF_8);
+        assertTrue(body.startsWith("{\"type\":\"error\""), body);
+        assertTrue(body.contains("owner node b failed"), body);
+    }
+
+    private static QueryRequest request() {
+        QueryRequest request = new QueryRequest();
+        request.setQuery("Where is my refund?");
+        request.setSessionId("s1");
+        return request;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static HttpResponse<InputStream> failingResponse() {
+        HttpResponse<InputStream> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(200);
+        when(response.body()).thenReturn(new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("connection reset");
+            }
+        });
+        return response;
+    }
+}
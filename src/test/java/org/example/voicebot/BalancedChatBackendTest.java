@@ -0,0 +1,153 @@
+package org.example.voicebot;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BalancedChatBackendTest {
+
+    private static final Duration BUDGET = Duration.ofSeconds(5);
+    private static final Duration EJECTION = Duration.ofMillis(300);
+
+    private StubUpstream a;
+    private StubUpstream b;
+
+    @BeforeEach
+    void startStubs() throws Exception {
+        a = new StubUpstream("a");
+        b = new StubUpstream("b");
+        // Slower than the 1 ms floor for unknown latency, so "a" is preferred whenever both are available.
+        b.delay(20);
+    }
+
+    @AfterEach
+    void stopStubs() {
+        a.close();
+        b.close();
+    }
+
+    @Test
+    void sendsToTheEndpointWithFewestOutstandingRequests() throws Exception {
+        BalancedChatBackend backend = balanced(endpoint(a, 0, Duration.ZERO), endpoint(b, 0, Duration.ZERO));
+        a.hold();
+        CompletableFuture<ChatCompletion> first = CompletableFuture.supplyAsync(() -> backend.complete(request(), BUDGET));
+        awaitInFlight(a);
+
+        assertEquals("b", backend.complete(request(), BUDGET).getContent());
+        a.release();
+        assertEquals("a", first.get(5, TimeUnit.SECONDS).getContent());
+        assertEquals(1, a.requests());
+        assertEquals(1, b.requests());
+    }
+
+    @Test
+    void ejectsAFailingEndpointAndTriesItAgainAfterTheEjection() throws Exception {
+        BalancedChatBackend backend = balanced(endpoint(a, 0, Duration.ZERO), endpoint(b, 0, Duration.ZERO));
+        a.respondWith(500);
+        for (int i = 0; i < 3; i++) {
+            assertEquals("b", backend.complete(request(), BUDGET).getContent());
+        }
+        assertEquals(3, a.requests());
+        assertFalse(healthy(backend, 0));
+
+        assertEquals("b", backend.complete(request(), BUDGET).getContent());
+        assertEquals(3, a.requests());
+
+        a.respondWith(200);
+        Thread.sleep(EJECTION.toMillis() + 100);
+        assertEquals("a", backend.complete(request(), BUDGET).getContent());
+        assertTrue(healthy(backend, 0));
+    }
+
+    @Test
+    void ejectsAnEndpointThatRejectsItsKeyAtOnce() {
+        BalancedChatBackend backend = balanced(endpoint(a, 0, Duration.ZERO), endpoint(b, 0, Duration.ZERO));
+        a.respondWith(401);
+
+        assertEquals("b", backend.complete(request(), BUDGET).getContent());
+        assertFalse(healthy(backend, 0));
+        assertEquals("b", backend.complete(request(), BUDGET).getContent());
+        assertEquals(1, a.requests());
+    }
+
+    @Test
+    void skipsAnEndpointOutOfQuota() {
+        // 60 per minute: a burst of one, then one per second.
+        BalancedChatBackend backend = balanced(endpoint(a, 60, Duration.ZERO), endpoint(b, 0, Duration.ZERO));
+
+        assertEquals("a", backend.complete(request(), BUDGET).getContent());
+        assertEquals("b", backend.complete(request(), BUDGET).getContent());
+        assertEquals(1, a.requests());
+    }
+
+    @Test
+    void failsWhenNoEndpointHasQuota() {
+        BalancedChatBackend backend = balanced(endpoint(a, 60, Duration.ZERO), endpoint(b, 60, Duration.ZERO));
+        backend.complete(request(), BUDGET);
+        backend.complete(request(), BUDGET);
+
+        OpenAIService.OpenAIException e = assertThrows(OpenAIService.OpenAIException.class,
+            () -> backend.complete(request(), BUDGET));
+        assertEquals(503, e.getStatusCode());
+    }
+
+    @Test
+    void doesNotHoldTheCallersDeadlineAgainstTheEndpoint() {
+        BalancedChatBackend backend = balanced(endpoint(a, 0, Duration.ZERO), endpoint(b, 0, Duration.ZERO));
+        a.delay(1_000);
+        for (int i = 0; i < 3; i++) {
+            assertThrows(UpstreamScheduler.DeadlineExceededException.class,
+                () -> backend.complete(request(), Duration.ofMillis(100)));
+        }
+        assertTrue(healthy(backend, 0));
+        assertEquals(0L, stats(backend, 0).get("failures"));
+        assertEquals(0, b.requests());
+    }
+
+    @Test
+    void countsAndRetriesACallThatExceedsTheEndpointsOwnTimeout() {
+        BalancedChatBackend backend = balanced(endpoint(a, 0, Duration.ofMillis(100)), endpoint(b, 0, Duration.ZERO));
+        a.delay(1_000);
+
+        assertEquals("b", backend.complete(request(), BUDGET).getContent());
+        assertEquals(1L, stats(backend, 0).get("failures"));
+    }
+
+    private static BalancedChatBackend balanced(BalancedChatBackend.Endpoint... endpoints) {
+        return new BalancedChatBackend(List.of(endpoints));
+    }
+
+    private static BalancedChatBackend.Endpoint endpoint(StubUpstream stub, double requestsPerMinute, Duration timeout) {
+        return new BalancedChatBackend.Endpoint(stub.toString(), stub.backend(), requestsPerMinute, timeout, EJECTION);
+    }
+
+    private static ChatRequest request() {
+        return new ChatRequest("test-model", List.of(new OpenAIService.ChatMessage("user", "hi")), 0, 16, false);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> stats(BalancedChatBackend backend, int endpoint) {
+        return ((List<Map<String, Object>>) backend.toMap().get("endpoints")).get(endpoint);
+    }
+
+    private static boolean healthy(BalancedChatBackend backend, int endpoint) {
+        return (Boolean) stats(backend, endpoint).get("healthy");
+    }
+
+    private static void awaitInFlight(StubUpstream stub) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (stub.inFlight() == 0 && System.nanoTime() < deadline) Thread.sleep(5);
+        assertEquals(1, stub.inFlight());
+    }
+}
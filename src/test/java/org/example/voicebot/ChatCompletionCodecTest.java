@@ -0,0 +1,51 @@
+package org.example.voicebot;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ChatCompletionCodecTest {
+
+    private final ExecutorService reader = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    void stop() {
+        reader.shutdownNow();
+    }
+
+    @Test
+    void passesOnEachDeltaBeforeTheNextEventArrives() throws Exception {
+        PipedOutputStream upstream = new PipedOutputStream();
+        PipedInputStream body = new PipedInputStream(upstream, 4096);
+        BlockingQueue<String> deltas = new LinkedBlockingQueue<>();
+        Future<ChatCompletion> completion = reader.submit(() -> ChatCompletionCodec.readStream(body, deltas::add));
+
+        for (String delta : new String[] {"Hello", " wörld", "."}) {
+            send(upstream, "data: {\"choices\":[{\"delta\":{\"content\":\"" + delta + "\"}}]}\n\n");
+            assertEquals(delta, deltas.poll(5, TimeUnit.SECONDS));
+        }
+        send(upstream, "data: {\"choices\":[],\"usage\":{\"prompt_tokens\":7,\"completion_tokens\":3}}\n\n"
+            + "data: [DONE]\n\n");
+        upstream.close();
+
+        ChatCompletion result = completion.get(5, TimeUnit.SECONDS);
+        assertEquals("Hello wörld.", result.getContent());
+        assertEquals(3, result.getCompletionTokens());
+    }
+
+    private static void send(PipedOutputStream upstream, String event) throws Exception {
+        upstream.write(event.getBytes(StandardCharsets.UTF_8));
+        upstream.flush();
+    }
+}
@@ -0,0 +1,199 @@
+package org.example.voicebot;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConversationLogTest {
+
+    /** Bytes of one record of session "s" with a two-byte query and reply: header, seq, ts, sid, q, r. */
+    private static final int RECORD = 8 + 8 + 8 + 2 + 1 + 4 + 2 + 4 + 2;
+    private static final int HEADER = 8;
+    private static final Duration LONG = Duration.ofHours(1);
+
+    @TempDir
+    Path dir;
+
+    private ConversationLog open(int segmentBytes, Duration retention) throws IOException {
+        return ConversationLog.open(dir, segmentBytes, Duration.ofMillis(50), retention, LONG);
+    }
+
+    private Path segment(long id) {
+        return dir.resolve(String.format("%020d.log", id));
+    }
+
+    private static List<String> queries(ConversationLog.Page page) {
+        List<String> queries = new ArrayList<>();
+        for (ConversationLog.Turn turn : page.getTurns()) queries.add(turn.getQuery());
+        return queries;
+    }
+
+    private static List<String> all(ConversationLog log) {
+        return queries(log.page("s", Long.MAX_VALUE, 100));
+    }
+
+    @Test
+    void dropsATornTailRecordOnRecovery() throws IOException {
+        try (ConversationLog log = open(4096, LONG)) {
+            log.append("s", "q1", "r1");
+            log.append("s", "q2", "r2");
+            log.append("s", "q3", "r3");
+        }
+        // The third record's length made it to disk, half its payload did not.
+        try (FileChannel ch = FileChannel.open(segment(0), StandardOpenOption.WRITE)) {
+            ch.truncate(HEADER + 2 * RECORD + RECORD / 2);
+        }
+
+        try (ConversationLog log = open(4096, LONG)) {
+            assertEquals(List.of("q1", "q2"), all(log));
+            log.append("s", "q4", "r4");
+        }
+        try (ConversationLog log = open(4096, LONG)) {
+            assertEquals(List.of("q1", "q2", "q4"), all(log));
+        }
+    }
+
+    @Test
+    void dropsATailRecordWithABadChecksumOnRecovery() throws IOException {
+        try (ConversationLog log = open(4096, LONG)) {
+            log.append("s", "q1", "r1");
+            log.append("s", "q2", "r2");
+            log.append("s", "q3", "r3");
+        }
+        try (FileChannel ch = FileChannel.open(segment(0), StandardOpenOption.WRITE)) {
+            ch.write(ByteBuffer.wrap("x".getBytes()), HEADER + 2 * RECORD + RECORD - 1); // last byte of "r3"
+        }
+
+        try (ConversationLog log = open(4096, LONG)) {
+            assertEquals(List.of("q1", "q2"), all(log));
+            log.append("s", "q4", "r4");
+            assertTrue(log.page("s", Long.MAX_VALUE, 1).getTurns().get(0).getSeq() >= 2,
+                "sequence numbers carry on after the recovered records");
+        }
+        try (ConversationLog log = open(4096, LONG)) {
+            assertEquals(List.of("q1", "q2", "q4"), all(log));
+        }
+    }
+
+    @Test
+    void pagesBackwardsAcrossSegmentsWithTheCursor() throws IOException {
+        try (ConversationLog log = open(HEADER + 3 * RECORD, LONG)) {
+            for (int i = 1; i <= 5; i++) {
+                log.append("s", "q" + i, "r" + i);
+                log.append("t", "x" + i, "y" + i);
+            }
+
+            ConversationLog.Page page = log.page("s", Long.MAX_VALUE, 2);
+            assertEquals(List.of("q4", "q5"), queries(page));
+            assertEquals(page.getTurns().get(0).getSeq(), page.getNextBefore());
+
+            page = log.page("s", page.getNextBefore(), 2);
+            assertEquals(List.of("q2", "q3"), queries(page));
+
+            page = log.page("s", page.getNextBefore(), 2);
+            assertEquals(List.of("q1"), queries(page));
+            assertEquals(-1, page.getNextBefore());
+            assertEquals(List.of("x1", "x2", "x3", "x4", "x5"), queries(log.page("t", Long.MAX_VALUE, 10)));
+        }
+    }
+
+    @Test
+    void importedTurnsGoBeforeTheSessionsOwnBehindAResetMarker() throws IOException {
+        try (ConversationLog log = open(4096, LONG)) {
+            log.append("s", "a", "ra");
+            log.append("s", "b", "rb");
+            log.importTurns("s", List.of(new OpenAIService.ChatMessage("user", "h1"),
+                new OpenAIService.ChatMessage("assistant", "g1")));
+
+            // Paging stops at the marker instead of returning the superseded records too.
+            assertEquals(List.of("h1", "a", "b"), all(log));
+            long cursor = log.page("s", Long.MAX_VALUE, 2).getNextBefore();
+            assertEquals(List.of("h1"), queries(log.page("s", cursor, 10)));
+        }
+
+        try (ConversationLog log = open(4096, LONG)) {
+            List<String> replayed = new ArrayList<>();
+            List<String> imported = new ArrayList<>();
+            log.replay(LONG, new ConversationLog.TurnSink() {
+                @Override
+                public void accept(String sessionId, String query, String reply) {
+                    replayed.add(query);
+                }
+
+                @Override
+                public void acceptImported(String sessionId, String query, String reply) {
+                    imported.add(query);
+                    replayed.add(query);
+                }
+
+                @Override
+                public void reset(String sessionId) {
+                    replayed.clear();
+                    imported.clear();
+                }
+            });
+            assertEquals(List.of("h1", "a", "b"), replayed);
+            assertEquals(List.of("h1"), imported);
+            assertEquals(List.of("h1", "a", "b"), all(log));
+        }
+    }
+
+    @Test
+    void compactionDeletesExpiredSegmentsAndRewritesPartlyExpiredOnes() throws Exception {
+        Duration retention = Duration.ofMillis(500);
+        try (ConversationLog log = open(HEADER + 4 * RECORD, retention)) {
+            for (int i = 1; i <= 6; i++) log.append("s", "o" + i, "p" + i); // segment 0 full, 2 in segment 1
+            Thread.sleep(800);
+            for (int i = 1; i <= 3; i++) log.append("s", "n" + i, "m" + i); // fills segment 1, 1 in segment 2
+
+            log.compact();
+
+            assertEquals(1L, log.toMap().get("deleted_segments"));
+            assertEquals(1L, log.toMap().get("compacted_segments"));
+            assertFalse(Files.exists(segment(0)));
+            // Rewritten without the expired turns and without the unused tail of the mapping.
+            assertEquals(HEADER + 2 * RECORD, Files.size(segment(1)));
+            assertEquals(List.of("n1", "n2", "n3"), all(log));
+        }
+        try (ConversationLog log = open(HEADER + 4 * RECORD, retention)) {
+            assertEquals(List.of("n1", "n2", "n3"), all(log));
+        }
+    }
+
+    @Test
+    void preparesTheNextSegmentAheadOfTheRollAndDropsAnUnusedOneOnOpen() throws Exception {
+        try (ConversationLog log = open(HEADER + 2 * RECORD, LONG)) {
+            awaitFile(segment(1)); // created and mapped at full size before anything is appended
+
+            log.append("s", "q1", "r1");
+            log.append("s", "q2", "r2");
+            log.append("s", "q3", "r3"); // rolls into the prepared segment 1 and starts preparing segment 2
+            awaitFile(segment(2));
+            assertEquals(List.of("q1", "q2", "q3"), all(log));
+        }
+
+        try (ConversationLog log = open(HEADER + 2 * RECORD, LONG)) {
+            assertFalse(Files.exists(segment(2)), "the unused spare is deleted");
+            assertTrue(Files.exists(segment(3)), "recovery starts a fresh segment");
+            assertEquals(List.of("q1", "q2", "q3"), all(log));
+        }
+    }
+
+    private static void awaitFile(Path file) throws InterruptedException, IOException {
+        for (int i = 0; i < 200 && !(Files.exists(file) && Files.size(file) > 0); i++) Thread.sleep(10);
+        assertTrue(Files.exists(file) && Files.size(file) > 0, file + " was not created");
+    }
+}
@@ -0,0 +1,125 @@
+package org.example.voicebot;
+
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventLogTest {
+
+    private static final long NO_ROTATION = Long.MAX_VALUE;
+    /** Slow to format, so a burst of these overruns a small ring before the writer catches up. */
+    private static final String LARGE = "x".repeat(1 << 20);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void dropsAndCountsEventsThatDoNotFitTheRing() throws IOException {
+        EventLog events = EventLog.open(dir, 2, EventLog.OverflowPolicy.DROP, NO_ROTATION, 1);
+        int accepted = 0;
+        for (int i = 0; i < 50; i++) {
+            if (publish(events, "s" + i, LARGE)) accepted++;
+        }
+        events.close();
+
+        assertTrue(accepted < 50, "a 2-slot ring overflows");
+        assertEquals((long) accepted, events.toMap().get("published"));
+        assertEquals((long) (50 - accepted), events.toMap().get("dropped"));
+        assertEquals((long) accepted, events.toMap().get("written"));
+        assertEquals(accepted, sessions("events.jsonl").size());
+    }
+
+    @Test
+    void blocksInsteadOfDroppingWhenTheRingIsFull() throws IOException {
+        EventLog events = EventLog.open(dir, 2, EventLog.OverflowPolicy.BLOCK, NO_ROTATION, 1);
+        for (int i = 0; i < 50; i++) assertTrue(publish(events, "s" + i, LARGE));
+        events.close();
+
+        assertEquals(0L, events.toMap().get("dropped"));
+        assertTrue((long) events.toMap().get("blocked_publishes") > 0);
+        assertEquals(50L, events.toMap().get("written"));
+        assertEquals(50, sessions("events.jsonl").size());
+    }
+
+    @Test
+    void writesEveryPublishedEventOnCloseAndDropsLaterOnes() throws Exception {
+        EventLog events = EventLog.open(dir, 1 << 14, EventLog.OverflowPolicy.DROP, NO_ROTATION, 1);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < 4; p++) {
+            int producer = p;
+            Thread t = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 2_000; i++) publish(events, producer + "-" + i, "q");
+            });
+            producers.add(t);
+            t.start();
+        }
+        start.countDown();
+        for (Thread t : producers) t.join();
+        events.close();
+
+        assertEquals(8_000L, events.toMap().get("published"));
+        assertEquals(8_000L, events.toMap().get("written"));
+        assertEquals(8_000, sessions("events.jsonl").size());
+
+        assertFalse(publish(events, "late", "q"));
+        assertEquals(1L, events.toMap().get("dropped"));
+    }
+
+    @Test
+    void rotatesTheFileAndKeepsOnlyTheNewestFiles() throws Exception {
+        EventLog events = EventLog.open(dir, 64, EventLog.OverflowPolicy.DROP, 2_000, 3);
+        for (int i = 0; i < 40; i++) {
+            publish(events, "s" + i, "q".repeat(200));
+            long expected = i + 1;
+            for (int wait = 0; wait < 500 && (long) events.toMap().get("written") < expected; wait++) {
+                Thread.sleep(2);
+            }
+        }
+        events.close();
+
+        assertTrue((long) events.toMap().get("rotations") >= 3);
+        assertTrue(Files.exists(dir.resolve("events.1.jsonl")));
+        assertTrue(Files.exists(dir.resolve("events.2.jsonl")));
+        assertFalse(Files.exists(dir.resolve("events.3.jsonl")), "the oldest file is deleted");
+        for (String name : List.of("events.jsonl", "events.1.jsonl", "events.2.jsonl")) {
+            assertTrue(Files.size(dir.resolve(name)) <= 2_000, name);
+        }
+
+        // Oldest file first, the kept events are the newest ones, in order.
+        List<String> kept = new ArrayList<>(sessions("events.2.jsonl"));
+        kept.addAll(sessions("events.1.jsonl"));
+        kept.addAll(sessions("events.jsonl"));
+        int first = 40 - kept.size();
+        assertTrue(first > 0);
+        for (int i = 0; i < kept.size(); i++) assertEquals("s" + (first + i), kept.get(i));
+    }
+
+    private static boolean publish(EventLog events, String session, String query) {
+        return events.publish("acme", session, Priority.INTERACTIVE, query, "r", List.of(), null, 1_000, null);
+    }
+
+    private List<String> sessions(String file) throws IOException {
+        List<String> sessions = new ArrayList<>();
+        for (String line : Files.readAllLines(dir.resolve(file))) {
+            sessions.add(JsonParser.parseString(line).getAsJsonObject().get("session").getAsString());
+        }
+        return sessions;
+    }
+}
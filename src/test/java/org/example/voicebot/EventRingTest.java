@@ -0,0 +1,97 @@
+package org.example.voicebot;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class EventRingTest {
+
+    @Test
+    void refusesClaimsWhenFullUntilTheConsumerFreesSlots() {
+        EventRing<long[]> ring = new EventRing<>(4, () -> new long[1]);
+        for (int i = 0; i < 4; i++) {
+            long seq = ring.tryClaim();
+            ring.get(seq)[0] = i;
+            ring.publish(seq);
+        }
+        assertEquals(-1, ring.tryClaim());
+        assertEquals(4, ring.size());
+
+        List<Long> drained = new ArrayList<>();
+        assertEquals(2, ring.drain(2, slot -> drained.add(slot[0])));
+        assertEquals(List.of(0L, 1L), drained);
+
+        long seq = ring.tryClaim();
+        assertEquals(4, seq);
+        assertEquals(0, (int) seq & 3, "the freed slot is reused");
+    }
+
+    @Test
+    void stopsDrainingAtAClaimedButUnpublishedSlot() {
+        EventRing<long[]> ring = new EventRing<>(4, () -> new long[1]);
+        long first = ring.tryClaim();
+        long second = ring.tryClaim();
+        ring.get(second)[0] = 2;
+        ring.publish(second);
+
+        List<Long> drained = new ArrayList<>();
+        assertEquals(0, ring.drain(4, slot -> drained.add(slot[0])));
+
+        ring.get(first)[0] = 1;
+        ring.publish(first);
+        assertEquals(2, ring.drain(4, slot -> drained.add(slot[0])));
+        assertEquals(List.of(1L, 2L), drained);
+    }
+
+    @Test
+    void deliversEveryEventOfConcurrentProducersInEachProducersOrder() throws Exception {
+        int producers = 4;
+        int perProducer = 5_000;
+        EventRing<long[]> ring = new EventRing<>(64, () -> new long[2]);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            Thread t = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    long seq;
+                    while ((seq = ring.tryClaim()) < 0) Thread.yield();
+                    ring.get(seq)[0] = producer;
+                    ring.get(seq)[1] = i;
+                    ring.publish(seq);
+                }
+            });
+            t.setDaemon(true);
+            threads.add(t);
+            t.start();
+        }
+
+        long[] next = new long[producers];
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(20);
+        int received = 0;
+        while (received < producers * perProducer && System.nanoTime() < deadline) {
+            int n = ring.drain(16, slot -> {
+                int producer = (int) slot[0];
+                assertEquals(next[producer], slot[1]);
+                next[producer]++;
+            });
+            if (n == 0) Thread.yield();
+            received += n;
+        }
+        for (Thread t : threads) t.join(5_000);
+
+        assertEquals(producers * perProducer, received);
+        assertEquals(0, ring.size());
+        for (long n : next) assertEquals(perProducer, n);
+    }
+
+    @Test
+    void requiresAPowerOfTwoCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new EventRing<>(6, () -> new long[1]));
+        assertEquals(8, new EventRing<>(8, () -> new long[1]).capacity());
+    }
+}
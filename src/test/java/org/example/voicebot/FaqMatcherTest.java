@@ -0,0 +1,74 @@
+package org.example.voicebot;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FaqMatcherTest {
+
+    private static final double MIN_SIMILARITY = 0.85;
+
+    private static final List<KnowledgeEntry> FAQ = List.of(
+        verbatim("How do I activate voicemail on my number?"),
+        verbatim("Can I pay my bill in advance?"),
+        verbatim("Can I use mobile data while traveling abroad?"),
+        verbatim("How do I set up internet on my new phone?"));
+
+    private final FaqMatcher matcher = new FaqMatcher(FAQ);
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+        "How do I deactivate voicemail on my number?|How do I activate voicemail on my number?",
+        "Why can't I pay my bill in advance?|Can I pay my bill in advance?",
+        "Can't I use mobile data while traveling abroad?|Can I use mobile data while traveling abroad?",
+        "How do I set up internet on my old phone?|How do I set up internet on my new phone?"})
+    void doesNotServeAnOppositeQuestion(String query, String nearest) {
+        FaqMatcher.Match match = matcher.match(query);
+        // Similar enough by trigrams alone, which is why the words are checked too.
+        assertEquals(nearest, match.getEntry().getCustomerQuery());
+        assertTrue(match.getSimilarity() >= MIN_SIMILARITY, query + ": " + match.getSimilarity());
+        assertNull(matcher.verbatim(query, MIN_SIMILARITY), query);
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+        "can i pay my bill in advance|Can I pay my bill in advance?",
+        "Can I pay my bill in advance, please?|Can I pay my bill in advance?",
+        "How do I activate voicemail on my number|How do I activate voicemail on my number?"})
+    void servesTheSameQuestionWordedAlike(String query, String expected) {
+        assertEquals(expected, matcher.verbatim(query, MIN_SIMILARITY).getCustomerQuery());
+    }
+
+    @Test
+    void servesOnlyAllowListedEntries() {
+        KnowledgeEntry dataDependent = new KnowledgeEntry("x", "Billing", "Balance", "What is my balance?",
+            "Your balance is ...", false);
+        FaqMatcher mixed = new FaqMatcher(List.of(dataDependent, FAQ.get(1)));
+
+        assertSame(dataDependent, mixed.match("What is my balance?").getEntry());
+        assertNull(mixed.verbatim("What is my balance?", MIN_SIMILARITY));
+        assertNull(mixed.verbatim("Can I pay my bill in advance?", 1.01));
+    }
+
+    @Test
+    void rejectsTheReviewedOppositesAgainstTheShippedKnowledge() {
+        FaqMatcher shipped = KnowledgeBase.loadFromClasspath("knowledge.json").getFaqMatcher();
+        for (String query : List.of("How do I deactivate voicemail on my number?", "Why can't I pay my bill in advance?",
+            "Can't I use mobile data while traveling abroad?", "How do I set up internet on my old phone?")) {
+            assertNull(shipped.verbatim(query, MIN_SIMILARITY), query);
+        }
+        assertEquals("Can I pay my bill in advance?",
+            shipped.verbatim("Can I pay my bill in advance", MIN_SIMILARITY).getCustomerQuery());
+    }
+
+    private static KnowledgeEntry verbatim(String query) {
+        return new KnowledgeEntry(null, "Billing & Payments", "FAQ", query, "Answer to: " + query, true);
+    }
+}
@@ -0,0 +1,70 @@
+package org.example.voicebot;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GenerationControlTest {
+
+    private static final String[] REPLY = new String[30];
+
+    static {
+        for (int i = 0; i < REPLY.length; i++) REPLY[i] = "Sentence " + (i + 1) + ". ";
+    }
+
+    private StubUpstream upstream;
+
+    @BeforeEach
+    void start() throws Exception {
+        upstream = new StubUpstream("llm");
+        upstream.streamReply(20, REPLY);
+    }
+
+    @AfterEach
+    void stop() {
+        upstream.close();
+    }
+
+    @Test
+    void closesTheUpstreamStreamAtTheBudget() throws Exception {
+        StringBuilder heard = new StringBuilder();
+        GenerationControl control = new GenerationControl(new GenerationBudget(2, 0), heard::append, false);
+
+        ChatCompletion completion = upstream.backend().stream(request(), Duration.ofSeconds(10), control);
+
+        assertTrue(control.isCut());
+        assertTrue(control.isCancelled(completion));
+        assertEquals("Sentence 1. Sentence 2.", control.result(completion, List.of()).getContent());
+        assertEquals("Sentence 1. Sentence 2.", heard.toString().trim());
+        // The stub notices the closed connection on its next writes, long before the 30th delta.
+        assertTrue(upstream.awaitStreamEnd(5_000));
+        assertTrue(upstream.streamAborted());
+        assertTrue(upstream.deltasSent() < 10, "sent " + upstream.deltasSent());
+    }
+
+    @Test
+    void readsTheRestWithoutPassingItOnInMeasureMode() {
+        StringBuilder heard = new StringBuilder();
+        GenerationControl control = new GenerationControl(new GenerationBudget(2, 0), heard::append, true);
+
+        ChatCompletion completion = upstream.backend().stream(request(), Duration.ofSeconds(10), control);
+
+        assertFalse(control.isCancelled(completion));
+        assertTrue(control.isMeasured(completion));
+        assertEquals("Sentence 1. Sentence 2.", heard.toString().trim());
+        // Reported completion tokens (one per delta here) after the second, whose trailing space confirmed the cut.
+        assertEquals(REPLY.length - 2, control.tailTokens(completion));
+        assertFalse(upstream.streamAborted());
+    }
+
+    private static ChatRequest request() {
+        return new ChatRequest("test-model", List.of(new OpenAIService.ChatMessage("user", "hi")), 0, 256, false);
+    }
+}
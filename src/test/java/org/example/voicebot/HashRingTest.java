@@ -0,0 +1,86 @@
+package org.example.voicebot;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HashRingTest {
+
+    private static final int KEYS = 20_000;
+
+    @Test
+    void everyNodeBuildsTheSameRingWhateverTheMemberOrder() {
+        HashRing ring = new HashRing(List.of(node("a"), node("b"), node("c")), 128);
+        HashRing shuffled = new HashRing(List.of(node("c"), node("a"), node("b")), 128);
+        for (int i = 0; i < KEYS; i++) {
+            assertEquals(ring.owner(key(i)), shuffled.owner(key(i)));
+        }
+        assertEquals(List.of(node("a"), node("b"), node("c")), ring.getNodes());
+    }
+
+    @Test
+    void spreadsKeysEvenly() {
+        List<ClusterNode> nodes = List.of(node("a"), node("b"), node("c"), node("d"));
+        Map<ClusterNode, Integer> owned = owned(new HashRing(nodes, 128));
+        for (ClusterNode n : nodes) {
+            double share = owned.getOrDefault(n, 0) / (double) KEYS;
+            assertTrue(share > 0.18 && share < 0.32, n + " owns " + share);
+        }
+    }
+
+    @Test
+    void aJoiningNodeOnlyTakesKeysForItself() {
+        List<ClusterNode> before = new ArrayList<>(List.of(node("a"), node("b"), node("c")));
+        HashRing ring = new HashRing(before, 128);
+        before.add(node("d"));
+        HashRing grown = new HashRing(before, 128);
+
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            ClusterNode was = ring.owner(key(i));
+            ClusterNode now = grown.owner(key(i));
+            if (was.equals(now)) continue;
+            assertEquals(node("d"), now, key(i));
+            moved++;
+        }
+        // About a quarter of the keys move to the new node, none between the old ones.
+        assertTrue(moved > KEYS * 0.18 && moved < KEYS * 0.32, "moved " + moved);
+    }
+
+    @Test
+    void aLeavingNodesKeysAreTheOnlyOnesThatMove() {
+        HashRing ring = new HashRing(List.of(node("a"), node("b"), node("c")), 128);
+        HashRing shrunk = new HashRing(List.of(node("a"), node("c")), 128);
+        for (int i = 0; i < KEYS; i++) {
+            ClusterNode was = ring.owner(key(i));
+            if (!was.equals(node("b"))) assertEquals(was, shrunk.owner(key(i)), key(i));
+        }
+    }
+
+    @Test
+    void anEmptyRingOwnsNothing() {
+        assertNull(new HashRing(List.of(), 128).owner("tenant/session"));
+    }
+
+    private static Map<ClusterNode, Integer> owned(HashRing ring) {
+        Map<ClusterNode, Integer> owned = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) owned.merge(ring.owner(key(i)), 1, Integer::sum);
+        return owned;
+    }
+
+    private static String key(int i) {
+        return "tenant-" + (i % 7) + "/session-" + i;
+    }
+
+    private static ClusterNode node(String id) {
+        return new ClusterNode(id, URI.create("http://" + id + ":8080"));
+    }
+}
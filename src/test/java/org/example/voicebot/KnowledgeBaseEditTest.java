@@ -0,0 +1,138 @@
+package org.example.voicebot;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KnowledgeBaseEditTest {
+
+    private static final String[] CATEGORIES = {"Billing", "Cards", "Transfers", ""};
+    private static final String[] WORDS = {"card", "blocked", "limit", "transfer", "fee", "refund", "pin", "app"};
+
+    private final EmbeddingProvider provider = new HashingEmbeddingProvider(64);
+
+    @Test
+    void matchesAFreshRebuildAfter300RandomEdits() {
+        Random random = new Random(43);
+        SharedKnowledgePool pool = new SharedKnowledgePool();
+        // Reference: the entries in edit order; an upsert of an existing id moves it to the end, as in a slice.
+        Map<String, KnowledgeEntry> model = new LinkedHashMap<>();
+        for (int i = 0; i < 40; i++) model.put("e" + i, randomEntry(random, "e" + i));
+        KnowledgeBase knowledge = new KnowledgeBase(new ArrayList<>(model.values()), pool);
+        knowledge.getFaqMatcher();
+        knowledge.getSemanticIndex(provider, null);
+
+        for (int edit = 0; edit < 300; edit++) {
+            List<KnowledgeEntry> upserts = new ArrayList<>();
+            List<String> deleted = new ArrayList<>();
+            List<String> ids = new ArrayList<>(model.keySet());
+            int changes = 1 + random.nextInt(3);
+            for (int c = 0; c < changes; c++) {
+                int kind = random.nextInt(3);
+                if (kind == 0 && !ids.isEmpty()) {
+                    String id = ids.remove(random.nextInt(ids.size()));
+                    deleted.add(id);
+                    model.remove(id);
+                } else {
+                    // withChanges deletes before it upserts, so an upserted id isn't deleted in the same edit.
+                    String id = kind == 1 && !ids.isEmpty() ? ids.remove(random.nextInt(ids.size())) : "n" + edit + "-" + c;
+                    KnowledgeEntry entry = randomEntry(random, id);
+                    upserts.add(entry);
+                    model.remove(id);
+                    model.put(id, entry);
+                }
+            }
+            knowledge = knowledge.withChanges(upserts, deleted);
+        }
+
+        KnowledgeBase fresh = new KnowledgeBase(new ArrayList<>(model.values()), pool);
+        assertEquals(300, knowledge.getVersion());
+        assertEquals(fresh.size(), knowledge.size());
+        assertEquals(ids(fresh.getEntries()), ids(knowledge.getEntries()));
+        assertEquals(fresh.getEntries().size(), knowledge.getEntries().size());
+        for (int i = 0; i < fresh.getEntries().size(); i++) {
+            assertEquals(fresh.getEntries().get(i), knowledge.getEntries().get(i));
+        }
+        assertEquals(fresh.getCategoryClassifierPrompt(), knowledge.getCategoryClassifierPrompt());
+        assertEquals(fresh.toPromptSection(), knowledge.toPromptSection());
+        for (Category c : fresh.getCategories()) {
+            assertEquals(fresh.forCategory(c.getType()).toPromptSection(),
+                knowledge.forCategory(c.getType()).toPromptSection());
+        }
+
+        SemanticIndex<KnowledgeEntry> index = knowledge.getSemanticIndex(provider, null);
+        SemanticIndex<KnowledgeEntry> freshIndex = fresh.getSemanticIndex(provider, null);
+        assertEquals(freshIndex.size(), index.size());
+        FaqMatcher faq = knowledge.getFaqMatcher();
+        FaqMatcher freshFaq = fresh.getFaqMatcher();
+        // Ties may pick different (equally good) entries, so compare scores and check the pick is still live.
+        Set<KnowledgeEntry> live = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (KnowledgeEntry e : model.values()) live.add(pool.entry(e));
+        for (int q = 0; q < 200; q++) {
+            String query = sentence(random);
+            FaqMatcher.Match expected = freshFaq.match(query);
+            FaqMatcher.Match actual = faq.match(query);
+            if (expected == null) {
+                assertNull(actual, query);
+            } else {
+                assertNotNull(actual, query);
+                assertEquals(expected.getSimilarity(), actual.getSimilarity(), 1e-9, query);
+                assertTrue(live.contains(actual.getEntry()), query);
+            }
+            SemanticIndex.Match<KnowledgeEntry> best = index.best(query);
+            assertEquals(freshIndex.best(query).getScore(), best.getScore(), 1e-6, query);
+            assertTrue(live.contains(best.getTarget()), query);
+        }
+    }
+
+    @Test
+    void poolsEqualContentUnderDifferentIdsOnce() {
+        SharedKnowledgePool pool = new SharedKnowledgePool();
+        KnowledgeEntry a = new KnowledgeEntry("a", "Cards", "Blocked", "my card is blocked", "Unblock it in the app.", true);
+        KnowledgeEntry b = new KnowledgeEntry("b", "Cards", "Blocked", "my card is blocked", "Unblock it in the app.", true);
+        KnowledgeBase knowledge = new KnowledgeBase(List.of(a, b), pool);
+        KnowledgeBase other = new KnowledgeBase(List.of(new KnowledgeEntry(null, "Cards", "Blocked",
+            "my card is blocked", "Unblock it in the app.", true)), pool);
+
+        assertEquals(1, pool.toMap().get("entries"));
+        assertEquals(List.of("a", "b"), ids(knowledge.getEntries()));
+        assertEquals(List.of("1"), ids(other.getEntries()));
+
+        // Removing one of two equal entries leaves the other matchable.
+        knowledge.getFaqMatcher();
+        knowledge.getSemanticIndex(provider, null);
+        KnowledgeBase edited = knowledge.withChanges(List.of(), List.of("a"));
+        assertEquals(List.of("b"), ids(edited.getEntries()));
+        assertNotNull(edited.getFaqMatcher().match("my card is blocked"));
+        assertEquals(2, edited.getSemanticIndex(provider, null).size());
+        assertSame(edited.getFaqMatcher().match("my card is blocked").getEntry(),
+            edited.getSemanticIndex(provider, null).best("my card is blocked").getTarget());
+    }
+
+    private static KnowledgeEntry randomEntry(Random random, String id) {
+        // A small vocabulary, so some entries repeat others' content under a different id.
+        return new KnowledgeEntry(id, CATEGORIES[random.nextInt(CATEGORIES.length)], WORDS[random.nextInt(3)],
+            sentence(random), "Answer " + random.nextInt(4), random.nextBoolean());
+    }
+
+    private static String sentence(Random random) {
+        return "my " + WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)];
+    }
+
+    private static List<String> ids(List<KnowledgeEntry> entries) {
+        return entries.stream().map(KnowledgeEntry::getId).toList();
+    }
+}
@@ -0,0 +1,31 @@
+package org.example.voicebot;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimiterTest {
+
+    @Test
+    void givesUpAtOnceWhenNoPermitFreesUpByTheDeadline() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(1);
+        assertTrue(limiter.tryAcquire());
+
+        long start = System.nanoTime();
+        assertFalse(limiter.acquire(start + TimeUnit.MILLISECONDS.toNanos(200)));
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @Test
+    void waitsForAPermitThatFreesUpBeforeTheDeadline() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(10);
+        for (int i = 0; i < 10; i++) assertTrue(limiter.tryAcquire());
+
+        long start = System.nanoTime();
+        assertTrue(limiter.acquire(start + TimeUnit.SECONDS.toNanos(2)));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+}
@@ -0,0 +1,61 @@
+package org.example.voicebot;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SentenceChunkerTest {
+
+    private final List<String> sentences = new ArrayList<>();
+
+    @Test
+    void emitsEachSentenceOnceTheNextCharacterConfirmsIt() {
+        SentenceChunker chunker = new SentenceChunker(1, sentences::add);
+        chunker.accept("Your card is blocked.");
+        assertEquals(List.of(), sentences);
+        chunker.accept(" Open the app");
+        assertEquals(List.of("Your card is blocked."), sentences);
+        chunker.accept(" and tap Unblock!\nDone");
+        assertEquals(List.of("Your card is blocked.", "Open the app and tap Unblock!"), sentences);
+        chunker.finish();
+        assertEquals(List.of("Your card is blocked.", "Open the app and tap Unblock!", "Done"), sentences);
+    }
+
+    @Test
+    void doesNotEndSentencesAtDecimalsAbbreviationsOrInitials() {
+        chunk(1, "The fee is 2.5 percent, e.g. on transfers. Ask Dr. Rao or J. Smith. Call us.");
+        assertEquals(List.of("The fee is 2.5 percent, e.g. on transfers.", "Ask Dr. Rao or J. Smith.", "Call us."),
+            sentences);
+    }
+
+    @Test
+    void endsAtNoOnlyWhenNoNumberFollows() {
+        // "No." is held until the next non-space character shows whether a number follows.
+        chunk(1, "Use form No. 5 for that. Is it free? No. It costs a little.");
+        assertEquals(List.of("Use form No. 5 for that.", "Is it free?", "No.", "It costs a little."), sentences);
+    }
+
+    @Test
+    void mergesShortSentencesWithTheNext() {
+        chunk(12, "Yes. Sure. You can pay in advance. Okay.");
+        assertEquals(List.of("Yes. Sure. You can pay in advance.", "Okay."), sentences);
+    }
+
+    @Test
+    void tracksTheOffsetOfTheLastEmittedSentence() {
+        SentenceChunker chunker = new SentenceChunker(1, sentences::add);
+        chunker.accept("One. Two. Thr");
+        assertEquals(List.of("One.", "Two."), sentences);
+        assertEquals("One. Two.".length(), chunker.getConsumed());
+    }
+
+    /** Feeds {@code text} a character at a time, as a slow stream would. */
+    private void chunk(int minChars, String text) {
+        SentenceChunker chunker = new SentenceChunker(minChars, sentences::add);
+        for (int i = 0; i < text.length(); i++) chunker.accept(text.substring(i, i + 1));
+        chunker.finish();
+    }
+}
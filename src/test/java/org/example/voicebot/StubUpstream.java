@@ -0,0 +1,143 @@
+package org.example.voicebot;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process OpenAI-compatible chat endpoint for tests: answers every request with {@code status} (a completion
+ * naming the stub on 200) after {@code delayMs}, or holds requests until {@link #release} while held. With
+ * {@link #streamReply} set, it answers with server-sent events instead, one per delta.
+ */
+class StubUpstream implements AutoCloseable {
+
+    private final String name;
+    private final HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile int status = 200;
+    private volatile long delayMs;
+    private volatile CountDownLatch hold = new CountDownLatch(0);
+    private volatile List<String> deltas;
+    private volatile long gapMs;
+    private volatile int pauseBefore = -1;
+    private volatile CountDownLatch pause = new CountDownLatch(0);
+    private final AtomicInteger deltasSent = new AtomicInteger();
+    private final CountDownLatch streamEnded = new CountDownLatch(1);
+    private volatile boolean streamAborted;
+
+    StubUpstream(String name) throws IOException {
+        this.name = name;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            requests.incrementAndGet();
+            inFlight.incrementAndGet();
+            try {
+                exchange.getRequestBody().readAllBytes();
+                hold.await(10, TimeUnit.SECONDS);
+                if (delayMs > 0) Thread.sleep(delayMs);
+                if (deltas != null && status == 200) {
+                    stream(exchange.getResponseBody(), exchange);
+                    return;
+                }
+                byte[] body = (status == 200
+                    ? "{\"choices\":[{\"message\":{\"role\":\"assistant\",\"content\":\"" + name + "\"}}],"
+                        + "\"usage\":{\"prompt_tokens\":3,\"completion_tokens\":1}}"
+                    : "{\"error\":{\"message\":\"stub " + status + "\"}}").getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(status, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } catch (InterruptedException | IOException e) {
+                // Client gave up or the server is stopping.
+            } finally {
+                inFlight.decrementAndGet();
+                exchange.close();
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    private void stream(OutputStream out, HttpExchange exchange) throws InterruptedException {
+        try {
+            exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, 0);
+            List<String> pieces = deltas;
+            for (int i = 0; i < pieces.size(); i++) {
+                if (i == pauseBefore) pause.await(5, TimeUnit.SECONDS);
+                else if (i > 0 && gapMs > 0) Thread.sleep(gapMs);
+                event(out, "{\"choices\":[{\"delta\":{\"content\":\"" + pieces.get(i) + "\"}}]}");
+                deltasSent.incrementAndGet();
+            }
+            event(out, "{\"choices\":[],\"usage\":{\"prompt_tokens\":3,\"completion_tokens\":" + pieces.size() + "}}");
+            event(out, "[DONE]");
+            out.close();
+        } catch (IOException e) {
+            streamAborted = true;
+        } finally {
+            streamEnded.countDown();
+        }
+    }
+
+    private static void event(OutputStream out, String data) throws IOException {
+        out.write(("data: " + data + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    URI uri() {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/v1/chat/completions");
+    }
+
+    ChatBackend backend() {
+        return new OpenAICompatibleBackend(name, uri(), "test-key");
+    }
+
+    void respondWith(int status) { this.status = status; }
+    void delay(long ms) { this.delayMs = ms; }
+    int requests() { return requests.get(); }
+    int inFlight() { return inFlight.get(); }
+
+    /** Holds requests until {@link #release}. */
+    void hold() { hold = new CountDownLatch(1); }
+    void release() { hold.countDown(); }
+
+    /** Streams {@code deltas} as server-sent events, {@code gapMs} apart. */
+    void streamReply(long gapMs, String... deltas) {
+        this.gapMs = gapMs;
+        this.deltas = List.of(deltas);
+    }
+
+    /** Holds the stream before delta {@code index} until {@code gate} opens (5 s at most). */
+    void pauseBefore(int index, CountDownLatch gate) {
+        this.pause = gate;
+        this.pauseBefore = index;
+    }
+
+    int deltasSent() { return deltasSent.get(); }
+
+    /** True once a streamed reply has ended, false if it didn't within {@code timeoutMs}. */
+    boolean awaitStreamEnd(long timeoutMs) throws InterruptedException {
+        return streamEnded.await(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    /** True if the client closed a streamed reply before its end. */
+    boolean streamAborted() { return streamAborted; }
+
+    @Override
+    public void close() {
+        release();
+        server.stop(0);
+    }
+}
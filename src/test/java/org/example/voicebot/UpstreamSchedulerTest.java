@@ -0,0 +1,171 @@
+package org.example.voicebot;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UpstreamSchedulerTest {
+
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void stopCallers() {
+        callers.shutdownNow();
+    }
+
+    @Test
+    void sharesTheSlotBetweenBackloggedClassesByWeight() throws Exception {
+        UpstreamScheduler scheduler = new UpstreamScheduler(1,
+            Map.of(Priority.INTERACTIVE, 3, Priority.BACKGROUND, 1), Map.of());
+        CountDownLatch hold = new CountDownLatch(1);
+        CompletableFuture<Boolean> blocker = submit(scheduler, Priority.FOLLOW_UP, far(), hold);
+        await(() -> stat(scheduler, Priority.FOLLOW_UP, "running") == 1);
+
+        List<Priority> order = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<Boolean>> calls = new ArrayList<>();
+        for (int i = 0; i < 8; i++) calls.add(record(scheduler, Priority.INTERACTIVE, order));
+        for (int i = 0; i < 8; i++) calls.add(record(scheduler, Priority.BACKGROUND, order));
+        await(() -> stat(scheduler, Priority.INTERACTIVE, "queued") == 8
+            && stat(scheduler, Priority.BACKGROUND, "queued") == 8);
+
+        hold.countDown();
+        blocker.get(5, TimeUnit.SECONDS);
+        for (CompletableFuture<Boolean> call : calls) call.get(5, TimeUnit.SECONDS);
+
+        List<Priority> first = order.subList(0, 8);
+        assertEquals(6, Collections.frequency(first, Priority.INTERACTIVE), order.toString());
+        assertEquals(2, Collections.frequency(first, Priority.BACKGROUND), order.toString());
+        assertEquals(List.of(Priority.INTERACTIVE, Priority.BACKGROUND, Priority.INTERACTIVE, Priority.INTERACTIVE),
+            order.subList(0, 4));
+    }
+
+    @Test
+    void capsAClassBelowTheGlobalLimitWithoutHoldingUpOthers() throws Exception {
+        UpstreamScheduler scheduler = new UpstreamScheduler(4, Map.of(), Map.of(Priority.BACKGROUND, 1));
+        CountDownLatch hold = new CountDownLatch(1);
+        List<CompletableFuture<Boolean>> background = new ArrayList<>();
+        for (int i = 0; i < 3; i++) background.add(submit(scheduler, Priority.BACKGROUND, far(), hold));
+        await(() -> stat(scheduler, Priority.BACKGROUND, "queued") == 2);
+
+        assertEquals(1, stat(scheduler, Priority.BACKGROUND, "running"));
+        assertEquals("live", scheduler.call(Priority.INTERACTIVE, far(), () -> "live"));
+
+        hold.countDown();
+        for (CompletableFuture<Boolean> call : background) call.get(5, TimeUnit.SECONDS);
+        assertEquals(3, stat(scheduler, Priority.BACKGROUND, "dispatched"));
+    }
+
+    @Test
+    void dropsAQueuedCallAtItsDeadline() throws Exception {
+        UpstreamScheduler scheduler = new UpstreamScheduler(1, Map.of(), Map.of());
+        CountDownLatch hold = new CountDownLatch(1);
+        CompletableFuture<Boolean> blocker = submit(scheduler, Priority.BACKGROUND, far(), hold);
+        await(() -> stat(scheduler, Priority.BACKGROUND, "running") == 1);
+
+        AtomicBoolean ran = new AtomicBoolean();
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(100);
+        assertThrows(UpstreamScheduler.DeadlineExceededException.class,
+            () -> scheduler.call(Priority.INTERACTIVE, deadline, () -> ran.getAndSet(true)));
+
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+        assertFalse(ran.get());
+        assertEquals(1, stat(scheduler, Priority.INTERACTIVE, "dropped"));
+        assertEquals(0, stat(scheduler, Priority.INTERACTIVE, "queued"));
+        hold.countDown();
+        blocker.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void dropsTheQueueHeadThatCannotFinishInTimeAndGrantsTheNextWaiter() throws Exception {
+        UpstreamScheduler scheduler = new UpstreamScheduler(1, Map.of(), Map.of());
+        // Calls of this class take about 300 ms.
+        scheduler.call(Priority.INTERACTIVE, far(), () -> {
+            Thread.sleep(300);
+            return null;
+        });
+        CountDownLatch hold = new CountDownLatch(1);
+        CompletableFuture<Boolean> blocker = submit(scheduler, Priority.INTERACTIVE, far(), hold);
+        await(() -> stat(scheduler, Priority.INTERACTIVE, "running") == 1);
+
+        long start = System.nanoTime();
+        AtomicBoolean hopelessRan = new AtomicBoolean();
+        CompletableFuture<Boolean> hopeless = async(() -> scheduler.call(Priority.INTERACTIVE,
+            start + TimeUnit.MILLISECONDS.toNanos(600), () -> hopelessRan.getAndSet(true)));
+        await(() -> stat(scheduler, Priority.INTERACTIVE, "queued") == 1);
+        List<Priority> order = Collections.synchronizedList(new ArrayList<>());
+        CompletableFuture<Boolean> next = record(scheduler, Priority.INTERACTIVE, order);
+        await(() -> stat(scheduler, Priority.INTERACTIVE, "queued") == 2);
+
+        // Freed with ~200 ms left before the head's deadline: less than the class's latency.
+        Thread.sleep(Math.max(0, 400 - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        hold.countDown();
+
+        ExecutionException dropped = assertThrows(ExecutionException.class, () -> hopeless.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(UpstreamScheduler.DeadlineExceededException.class, dropped.getCause());
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(550),
+            "dropped when the slot freed up, not at its deadline");
+        assertFalse(hopelessRan.get());
+        next.get(5, TimeUnit.SECONDS);
+        assertEquals(List.of(Priority.INTERACTIVE), order);
+        blocker.get(5, TimeUnit.SECONDS);
+    }
+
+    private static long far() {
+        return System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+    }
+
+    /** A call that holds its slot until {@code hold} is released. */
+    private CompletableFuture<Boolean> submit(UpstreamScheduler scheduler, Priority priority, long deadline,
+                                              CountDownLatch hold) {
+        return async(() -> scheduler.call(priority, deadline, () -> hold.await(5, TimeUnit.SECONDS)));
+    }
+
+    /** A call that notes its class in {@code order} once granted. */
+    private CompletableFuture<Boolean> record(UpstreamScheduler scheduler, Priority priority, List<Priority> order) {
+        return async(() -> scheduler.call(priority, far(), () -> order.add(priority)));
+    }
+
+    private <T> CompletableFuture<T> async(Callable<T> call) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return call.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, callers);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int stat(UpstreamScheduler scheduler, Priority priority, String key) {
+        Map<String, Object> cls = (Map<String, Object>) scheduler.toMap().get(priority.name().toLowerCase());
+        return ((Number) cls.get(key)).intValue();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 500 && !condition.getAsBoolean(); i++) Thread.sleep(10);
+        assertTrue(condition.getAsBoolean());
+    }
+}
@@ -0,0 +1,73 @@
+package org.example.voicebot;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class Utf8StreamReaderTest {
+
+    private final ExecutorService reader = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    void stop() {
+        reader.shutdownNow();
+    }
+
+    @Test
+    void returnsWhatHasArrivedWithoutWaitingForMore() throws Exception {
+        PipedOutputStream out = new PipedOutputStream();
+        Utf8StreamReader in = new Utf8StreamReader(new PipedInputStream(out, 64));
+        char[] chars = new char[1024];
+
+        out.write("data: one\n".getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        assertEquals("data: one\n", read(in, chars));
+
+        // A sequence split across writes is held back until it is complete, not replaced.
+        byte[] euro = "€".getBytes(StandardCharsets.UTF_8);
+        out.write(new byte[] {'a', euro[0]});
+        out.flush();
+        assertEquals("a", read(in, chars));
+        out.write(euro, 1, 2);
+        out.flush();
+        assertEquals("€", read(in, chars));
+
+        out.close();
+        assertEquals(-1, reader.submit(() -> in.read(chars, 0, chars.length)).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void replacesEachMalformedSequenceOnce() throws IOException {
+        assertEquals("a�b", decode(new byte[] {'a', (byte) 0xC0, 'b'}));
+        // Overlong '/', a surrogate, above U+10FFFF, a truncated sequence at the end.
+        assertEquals("�", decode(new byte[] {(byte) 0xE0, (byte) 0x80}));
+        assertEquals("�", decode(new byte[] {(byte) 0xF4, (byte) 0x90, (byte) 0x80}));
+        assertEquals("x�y", decode(new byte[] {'x', (byte) 0xE2, (byte) 0x82, 'y'}));
+        assertEquals("😀", decode("😀".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private String read(Utf8StreamReader in, char[] chars) throws Exception {
+        Future<Integer> n = reader.submit(() -> in.read(chars, 0, chars.length));
+        return new String(chars, 0, n.get(5, TimeUnit.SECONDS));
+    }
+
+    private static String decode(byte[] bytes) throws IOException {
+        Utf8StreamReader in = new Utf8StreamReader(new ByteArrayInputStream(bytes));
+        StringBuilder text = new StringBuilder();
+        char[] chars = new char[2];
+        int n;
+        while ((n = in.read(chars, 0, chars.length)) >= 0) text.append(chars, 0, n);
+        return text.toString();
+    }
+}
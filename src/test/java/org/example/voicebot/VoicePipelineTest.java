@@ -0,0 +1,63 @@
+package org.example.voicebot;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VoicePipelineTest {
+
+    private StubUpstream upstream;
+    private VoicePipeline pipeline;
+
+    @BeforeEach
+    void start() throws Exception {
+        upstream = new StubUpstream("llm");
+    }
+
+    @AfterEach
+    void stop() {
+        upstream.close();
+        if (pipeline != null) pipeline.close();
+    }
+
+    @Test
+    void synthesizesTheFirstSentenceBeforeTheUpstreamFinishes() throws Exception {
+        CountDownLatch firstSynthesized = new CountDownLatch(1);
+        upstream.streamReply(0, "Your card is blocked for safety. ", "Open the app ", "and tap Unblock.");
+        // The rest of the reply waits until the first sentence has been synthesized (or 5 s, failing the test).
+        upstream.pauseBefore(1, firstSynthesized);
+        Map<String, Integer> sentAtSynthesis = new ConcurrentHashMap<>();
+        pipeline = new VoicePipeline((audio, format) -> "is my card blocked", text -> {
+            sentAtSynthesis.put(text, upstream.deltasSent());
+            firstSynthesized.countDown();
+            return text.getBytes(StandardCharsets.UTF_8);
+        }, 2, 10);
+        ChatBackend backend = upstream.backend();
+        List<String> heard = Collections.synchronizedList(new ArrayList<>());
+
+        VoicePipeline.Result result = pipeline.run(new byte[0], "audio/wav",
+            (transcript, onDelta) -> backend.stream(request(), Duration.ofSeconds(10), onDelta).getContent(),
+            (seq, text, audio) -> heard.add(text));
+
+        assertEquals(List.of("Your card is blocked for safety.", "Open the app and tap Unblock."), heard);
+        assertEquals(1, sentAtSynthesis.get("Your card is blocked for safety."));
+        assertEquals(2, result.getSentences());
+        assertTrue(result.getFirstAudioNanos() < result.getTotalNanos());
+    }
+
+    private static ChatRequest request() {
+        return new ChatRequest("test-model", List.of(new OpenAIService.ChatMessage("user", "hi")), 0, 64, false);
+    }
+}